@@ -37,4 +37,50 @@ public final class DfpTags {
   public static final String PUBLISHER_QUERY_LANGUAGE = "pql";
   public static final String ROLES = "roles";
   public static final String USERS = "users";
+
+  /** Suffix of the tag that line items nested under their orders are sent with. */
+  public static final String LINE_ITEM_CHILD_SUFFIX = "-li";
+
+  /** Suffix of the tag that values nested under their custom targeting keys are sent with. */
+  public static final String VALUE_CHILD_SUFFIX = "-value";
+
+  /** Field of a nested line item that holds the ID of its order. */
+  public static final String LINE_ITEM_PARENT_ID_FIELD = "orderId";
+
+  /** Field of a nested custom targeting value that holds the ID of its key. */
+  public static final String VALUE_PARENT_ID_FIELD = "customTargetingKeyId";
+
+  private DfpTags() {}
+
+  /**
+   * Gets the tag of the request that objects are sent for. Nested child objects are sent with the
+   * request's tag and a suffix, and all other objects with the request's tag.
+   *
+   * @param tag the tag the objects are sent with
+   * @return the tag of the request
+   */
+  public static String getRequestTag(String tag) {
+    for (String suffix : new String[] {LINE_ITEM_CHILD_SUFFIX, VALUE_CHILD_SUFFIX}) {
+      if (tag.endsWith(suffix)) {
+        return tag.substring(0, tag.length() - suffix.length());
+      }
+    }
+    return tag;
+  }
+
+  /**
+   * Gets the field that holds the ID of the parent of nested child objects.
+   *
+   * @param tag the tag the objects are sent with
+   * @return the field, or {@code null} if the objects are not nested children
+   */
+  public static String getParentIdField(String tag) {
+    if (tag.endsWith(LINE_ITEM_CHILD_SUFFIX)) {
+      return LINE_ITEM_PARENT_ID_FIELD;
+    }
+    if (tag.endsWith(VALUE_CHILD_SUFFIX)) {
+      return VALUE_PARENT_ID_FIELD;
+    }
+    return null;
+  }
 }
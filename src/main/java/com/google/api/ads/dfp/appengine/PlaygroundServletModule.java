@@ -21,6 +21,7 @@ import com.google.api.ads.dfp.appengine.fetcher.CreativeTemplateFetcher;
 import com.google.api.ads.dfp.appengine.fetcher.CustomTargetingKeyAndValueFetcher;
 import com.google.api.ads.dfp.appengine.fetcher.CustomTargetingKeyFetcher;
 import com.google.api.ads.dfp.appengine.fetcher.CustomTargetingValueFetcher;
+import com.google.api.ads.dfp.appengine.fetcher.FetchCursors;
 import com.google.api.ads.dfp.appengine.fetcher.FetchService;
 import com.google.api.ads.dfp.appengine.fetcher.Fetcher;
 import com.google.api.ads.dfp.appengine.fetcher.FetcherFactory;
@@ -35,16 +36,29 @@ import com.google.api.ads.dfp.appengine.fetcher.RoleFetcher;
 import com.google.api.ads.dfp.appengine.fetcher.UserFetcher;
 import com.google.api.ads.dfp.appengine.json.GsonModule;
 import com.google.api.ads.dfp.appengine.oauth.AuthorizationCodeFlowFactory;
+import com.google.api.ads.dfp.appengine.oauth.CachingCredentialStore;
 import com.google.api.ads.dfp.appengine.oauth.CredentialFactory;
+import com.google.api.ads.dfp.appengine.oauth.CredentialRefreshSchedule;
 import com.google.api.ads.dfp.appengine.servlet.CreateNetworkServlet;
+import com.google.api.ads.dfp.appengine.servlet.CredentialRefreshServlet;
 import com.google.api.ads.dfp.appengine.servlet.DeniedServlet;
 import com.google.api.ads.dfp.appengine.servlet.DfpServlet;
+import com.google.api.ads.dfp.appengine.servlet.EventStreamServlet;
 import com.google.api.ads.dfp.appengine.servlet.IndexServlet;
 import com.google.api.ads.dfp.appengine.servlet.OAuth2CallbackServlet;
+import com.google.api.ads.dfp.appengine.servlet.PushStatsServlet;
 import com.google.api.ads.dfp.appengine.servlet.TaskDispatchServlet;
+import com.google.api.ads.dfp.appengine.util.CachingDfpServices;
+import com.google.api.ads.dfp.appengine.util.CancellationRegistry;
+import com.google.api.ads.dfp.appengine.util.ChannelOptions;
+import com.google.api.ads.dfp.appengine.util.ChannelOutboxes;
+import com.google.api.ads.dfp.appengine.util.ChannelServiceTransport;
+import com.google.api.ads.dfp.appengine.util.InMemoryPushTransport;
+import com.google.api.ads.dfp.appengine.util.PanelSnapshots;
+import com.google.api.ads.dfp.appengine.util.PushTransport;
+import com.google.api.ads.dfp.appengine.util.ServerSentEventsTransport;
 import com.google.api.ads.dfp.jaxws.factory.DfpServices;
 import com.google.api.client.auth.oauth2.CredentialStore;
-import com.google.api.client.extensions.appengine.auth.oauth2.AppEngineCredentialStore;
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.javanet.NetHttpTransport;
@@ -54,6 +68,8 @@ import com.google.appengine.api.channel.ChannelService;
 import com.google.appengine.api.channel.ChannelServiceFactory;
 import com.google.appengine.api.memcache.MemcacheService;
 import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
 import com.google.apphosting.api.ApiProxy;
@@ -84,6 +100,13 @@ public class PlaygroundServletModule extends ServletModule {
   private static final String CLIENT_SECRET = System.getProperty("dfp.appengine.clientSecret");
   private static final String SCOPE = "https://www.google.com/apis/ads/publisher";
 
+  /**
+   * The transport that messages are pushed to the browser through: "channel" for the App Engine
+   * Channel API, "sse" for server-sent events, or "memory" to keep them in memory for load runs.
+   */
+  private static final String PUSH_TRANSPORT = System.getProperty(
+      "dfp.appengine.pushTransport", ChannelServiceTransport.NAME);
+
   /**
    * The redirect URL must be registered in the API console: https://code.google.com/apis/console/
    * This is so that once the user has authorized your app, they are redirected back to your app.
@@ -117,10 +140,13 @@ public class PlaygroundServletModule extends ServletModule {
     serve("/").with(IndexServlet.class);
     serve("/denied").with(DeniedServlet.class);
     serve("/dfp").with(IndexServlet.class);
+    serve("/events").with(EventStreamServlet.class);
     serveRegex("/[0-9]+").with(IndexServlet.class);
     serve("/fetch").with(DfpServlet.class);
     serve("/get").with(TaskDispatchServlet.class);
     serve("/newnetwork").with(CreateNetworkServlet.class);
+    serve("/pushstats").with(PushStatsServlet.class);
+    serve(CredentialRefreshSchedule.REFRESH_URL).with(CredentialRefreshServlet.class);
     serve(REDIRECT_URL).with(OAuth2CallbackServlet.class);
 
     MapBinder<String, Fetcher> mapbinder =
@@ -171,18 +197,35 @@ public class PlaygroundServletModule extends ServletModule {
     bindConstant().annotatedWith(Names.named("redirectUrl")).to(REDIRECT_URL);
     bindConstant().annotatedWith(Names.named("expirationDelta")).to(EXPIRATION_DELTA);
 
+    bind(FetchCursors.class);
     bind(FetchService.class);
     bind(AuthorizationCodeFlowFactory.class);
+    bind(CancellationRegistry.class);
+    bind(ChannelOptions.class);
+    bind(ChannelOutboxes.class);
     bind(CredentialFactory.class);
-    bind(CredentialStore.class).to(AppEngineCredentialStore.class);
-    bind(DfpServices.class);
+    bind(CredentialRefreshSchedule.class);
+    bind(CredentialStore.class).to(CachingCredentialStore.class);
+    bind(DfpServices.class).to(CachingDfpServices.class);
     bind(FetcherFactory.class);
     bind(GoogleCredential.class);
     bind(HttpTransport.class).to(NetHttpTransport.class);
     bind(JsonFactory.class).to(JacksonFactory.class);
+    bind(PanelSnapshots.class);
+
+    if (PUSH_TRANSPORT.equals(ChannelServiceTransport.NAME)) {
+      bind(PushTransport.class).to(ChannelServiceTransport.class);
+    } else if (PUSH_TRANSPORT.equals(ServerSentEventsTransport.NAME)) {
+      bind(PushTransport.class).to(ServerSentEventsTransport.class);
+    } else if (PUSH_TRANSPORT.equals(InMemoryPushTransport.NAME)) {
+      bind(PushTransport.class).to(InMemoryPushTransport.class);
+    } else {
+      throw new IllegalArgumentException("Unknown push transport: " + PUSH_TRANSPORT);
+    }
 
     bind(ChannelService.class).toProvider(ChannelServiceProvider.class);
     bind(MemcacheService.class).toProvider(MemcacheServiceProvider.class);
+    bind(Queue.class).toProvider(QueueProvider.class);
     bind(UserService.class).toProvider(UserServiceProvider.class);
 
     install(new GsonModule());
@@ -204,6 +247,13 @@ public class PlaygroundServletModule extends ServletModule {
     }
   }
 
+  private static class QueueProvider implements Provider<Queue> {
+
+    public Queue get() {
+      return QueueFactory.getDefaultQueue();
+    }
+  }
+
   private static class UserServiceProvider implements Provider<UserService> {
 
     public UserService get() {
@@ -35,35 +35,44 @@ abstract class AbstractFetcher implements Fetcher {
   private static final Pattern NO_LIMIT_OR_OFFSET =
       Pattern.compile("(?i)(?<=^|\\s)(LIMIT|OFFSET)(?=$|\\s)");
 
+  private static final Pattern ORDER_BY =
+      Pattern.compile("(?i)(?<=^|\\s)ORDER\\s+BY(?=$|\\s)");
+
   protected final Logger log = Logger.getLogger(this.getClass().getName());
   protected final Channels channels;
   protected final DfpServices dfpServices;
+  protected final FetchCursors fetchCursors;
 
   /**
    * Construct a fetcher.
    *
    * @param dfpServices provides DFP services
    * @param channels used for Channel API communication
+   * @param fetchCursors persists the progress of fetches
    */
-  public AbstractFetcher(DfpServices dfpServices, Channels channels) {
+  public AbstractFetcher(DfpServices dfpServices, Channels channels, FetchCursors fetchCursors) {
     Preconditions.checkNotNull(channels);
+    Preconditions.checkNotNull(fetchCursors);
     this.dfpServices = dfpServices;
     this.channels = channels;
+    this.fetchCursors = fetchCursors;
   }
 
   /**
-   * Fetch API objects with a single call or multiple calls. Exceptions are handled by logging and
+   * Fetch API objects with a single call or multiple calls. Fetches with multiple calls resume
+   * from the saved cursor of the request, if there is one. Exceptions are handled by logging and
    * senting error messages back to the user through the channel.
    *
    * @param filterText the PQL syntax filter text to filter objects by
    * @param channelKey the key to send a message via the Channel API
+   * @param networkCode the network to fetch from
    * @param tag identifies that objects that are sent via the channel
    * @param requestId identifies the incoming data request
    * @param pageFetcher used to fetch a page of results
    */
   @VisibleForTesting
-  void fetchObjects(String filterText, String channelKey, String tag, String requestId,
-      PageFetcher pageFetcher) {
+  void fetchObjects(String filterText, String channelKey, String networkCode, String tag,
+      String requestId, PageFetcher pageFetcher) {
     Preconditions.checkNotNull(pageFetcher);
     // Only make a single call if there is a limit or offset.
     if (filterTextHasLimitOrOffset(filterText)) {
@@ -78,19 +87,45 @@ abstract class AbstractFetcher implements Fetcher {
         channels.sendErrorChannelMessage(channelKey, tag, requestId, e.getMessage());
         log.log(Level.SEVERE, "Error fetching objects.", e);
       }
+    } else if (supportsKeysetPaging() && !filterTextHasOrderBy(filterText)) {
+      // Page by ID when the results do not need to be in another order.
+      new AllSingleEntityFetcher(pageFetcher, channels, fetchCursors, channelKey, networkCode,
+          tag, requestId)
+          .fetchAllByKeyset(filterText);
     } else {
-      new AllSingleEntityFetcher(pageFetcher, channels, channelKey, tag, requestId)
+      new AllSingleEntityFetcher(pageFetcher, channels, fetchCursors, channelKey, networkCode,
+          tag, requestId)
           .fetchAll(filterText);
     }
   }
 
+  /**
+   * Checks if all the entities can be fetched by keyset, i.e. they have a numeric {@code id} field
+   * that can be filtered and sorted by.
+   *
+   * @return whether the entities can be fetched by keyset
+   */
+  protected boolean supportsKeysetPaging() {
+    return true;
+  }
+
+  /**
+   * Checks if the filter text contains an order by clause.
+   *
+   * @param filterText the filter text to check
+   * @return whether the filter text contains an order by clause
+   */
+  private boolean filterTextHasOrderBy(String filterText) {
+    return ORDER_BY.matcher(filterText).find();
+  }
+
   /**
    * Checks if the filter text contains a limit or offset clause.
    *
    * @param filterText the filter text to check
    * @return whether the filter text contains a limit or offset clause
    */
-  private boolean filterTextHasLimitOrOffset(String filterText) {
+  protected boolean filterTextHasLimitOrOffset(String filterText) {
     return NO_LIMIT_OR_OFFSET.matcher(filterText).find();
   }
 }
@@ -30,8 +30,8 @@ import com.google.inject.Inject;
 public class AdUnitFetcher extends AbstractFetcher {
 
   @Inject
-  public AdUnitFetcher(DfpServices dfpServices, Channels channels) {
-    super(dfpServices, channels);
+  public AdUnitFetcher(DfpServices dfpServices, Channels channels, FetchCursors fetchCursors) {
+    super(dfpServices, channels, fetchCursors);
   }
 
   public void fetch(String filterText, String channelKey, String tag, String requestId,
@@ -48,6 +48,14 @@ public class AdUnitFetcher extends AbstractFetcher {
       }
     };
     // Fetch the objects.
-    fetchObjects(filterText, channelKey, tag, requestId, pageFetcher);
+    fetchObjects(filterText, channelKey, session.getNetworkCode(), tag, requestId, pageFetcher);
+  }
+
+  /**
+   * Ad unit IDs are strings, so they do not sort in numeric order.
+   */
+  @Override
+  protected boolean supportsKeysetPaging() {
+    return false;
   }
 }
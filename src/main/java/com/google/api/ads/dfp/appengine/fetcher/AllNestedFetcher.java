@@ -15,14 +15,28 @@
 package com.google.api.ads.dfp.appengine.fetcher;
 
 import com.google.api.ads.dfp.appengine.util.Channels;
+import com.google.api.ads.dfp.appengine.util.EntityAdapter;
+import com.google.api.ads.dfp.appengine.util.PageAdapter;
+import com.google.api.ads.dfp.appengine.util.RequestThreads;
 import com.google.api.ads.dfp.jaxws.utils.v201403.StatementBuilder;
 import com.google.api.ads.dfp.jaxws.v201403.ApiException_Exception;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
-
-import org.apache.commons.beanutils.PropertyUtils;
+import com.google.common.base.Strings;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.ListMultimap;
 
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,76 +47,275 @@ import java.util.logging.Logger;
  */
 class AllNestedFetcher {
 
+  /** System property that sets how many child fetches can run at once for a network. */
+  static final String CHILD_CONCURRENCY_PROPERTY = "dfp.appengine.childFetchConcurrency";
+
+  /** The number of child fetches that can run at once if the system property is not set. */
+  static final int DEFAULT_CHILD_CONCURRENCY = 4;
+
+  /** The maximum number of parent IDs in the IN clause of a single child query. */
+  static final int MAX_PARENT_IDS_PER_QUERY = 100;
+
+  /** Limits the child fetches running at once for each network across all requests. */
+  private static final ConcurrentMap<String, Semaphore> NETWORK_PERMITS =
+      new ConcurrentHashMap<String, Semaphore>();
+
   private final Logger log = Logger.getLogger(this.getClass().getName());
 
-  /** Fetcher to get a page of parent entities with the API. */
-  private final PageFetcher parentPageFetcher;
+  /** Fetches pages of parent entities ahead of the ones being sent. */
+  private final PagePipeline parentPagePipeline;
+
+  /** Fetcher to get a page of child entities with the API. */
+  private final PageFetcher childPageFetcher;
 
-  /** Fetcher to get all the entities that belong to the parent. */
-  private final AllSingleEntityFetcher childAllFetcher;
+  /** Chooses the size of each page of child entities. */
+  private final PageSizeController childPageSizeController;
 
   /** Provides communication via the Channel API. */
   private final Channels channels;
 
+  /** Persists the progress of the fetch. */
+  private final FetchCursors fetchCursors;
+
   /** Specifies a client to send messages to via the Channel API. */
   private final String channelKey;
 
-  /** Specifies the objects that are sent via the channel. */
+  /** Specifies the network the entities belong to. */
+  private final String networkCode;
+
+  /** Specifies the parent objects that are sent via the channel. */
   private final String tag;
 
+  /** Specifies the child objects that are sent via the channel. */
+  private final String childTag;
+
   /** Specifies the request to respond to. */
   private final String requestId;
 
+  /** The maximum number of child fetches to run at once for the network. */
+  private final int childConcurrency;
+
   /**
    * Constructor.
    *
    * @param parentPageFetcher fetcher used to make API calls for parent object
-   * @param childAllFetcher fetcher used to fetch all of child objects
+   * @param childPageFetcher fetcher used to make API calls for child objects
    * @param channels provides communication via Channel API
+   * @param fetchCursors persists the progress of the fetch
    * @param channelKey the key to send a message via the Channel API
-   * @param tag identifies that objects that are sent via the channel
+   * @param networkCode the network the entities belong to
+   * @param tag identifies the parent objects that are sent via the channel
+   * @param childTag identifies the child objects that are sent via the channel
    * @param requestId identifies the incoming data request
    */
-  public AllNestedFetcher(PageFetcher parentPageFetcher, AllSingleEntityFetcher childAllFetcher,
-      Channels channels, String channelKey, String tag, String requestId) {
-    this.parentPageFetcher = Preconditions.checkNotNull(parentPageFetcher);
-    this.childAllFetcher = Preconditions.checkNotNull(childAllFetcher);
+  public AllNestedFetcher(PageFetcher parentPageFetcher, PageFetcher childPageFetcher,
+      Channels channels, FetchCursors fetchCursors, String channelKey, String networkCode,
+      String tag, String childTag, String requestId) {
+    this.parentPagePipeline =
+        new PagePipeline(parentPageFetcher, PageSizeController.get(tag, networkCode));
+    this.childPageFetcher = Preconditions.checkNotNull(childPageFetcher);
+    this.childPageSizeController = PageSizeController.get(childTag, networkCode);
     this.channels = Preconditions.checkNotNull(channels);
+    this.fetchCursors = Preconditions.checkNotNull(fetchCursors);
     this.channelKey = channelKey;
+    this.networkCode = Strings.nullToEmpty(networkCode);
     this.tag = tag;
+    this.childTag = childTag;
     this.requestId = requestId;
+    this.childConcurrency =
+        Integer.getInteger(CHILD_CONCURRENCY_PROPERTY, DEFAULT_CHILD_CONCURRENCY);
   }
 
   /**
-   * Method used to fetch all of an entity and it's nested child. Exceptions are handled by logging
-   * and sending error messages back to the user through the channel.
+   * Method used to fetch all of an entity and it's nested child. Parent pages are fetched ahead
+   * while the parents of earlier pages are being sent. The children of a page of parents are
+   * fetched with a few paged queries filtered by {@code IN} clauses of parent IDs, which run
+   * concurrently while the parents are being sent. The children are then grouped by parent ID and
+   * sent a group at a time. Fetching stops between pages if the request is cancelled. The fetch
+   * starts from the saved cursor of the request, and is suspended at its cursor if the request is
+   * close to its deadline. Exceptions are handled by logging and sending error messages back to
+   * the user through the channel.
    *
-   * @param filterText the filter that should be used to filter for the parent ID in the child
+   * @param parentIdField the child field that holds the ID of the parent, such as
+   *     {@code orderId}
    */
   @VisibleForTesting
-  void fetchAll(String filterText) {
+  void fetchAll(final String parentIdField) {
+    final ExecutorService childExecutor = RequestThreads.newFixedThreadPool(childConcurrency);
     try {
-      StatementBuilder statementBuilder =
-          new StatementBuilder().limit(StatementBuilder.SUGGESTED_PAGE_LIMIT);
-      int totalResultSetSize = 0;
-      do {
-        Object page = parentPageFetcher.getByStatement(statementBuilder.toStatement());
-        totalResultSetSize = (Integer) PropertyUtils.getProperty(page, "totalResultSetSize");
-        if (totalResultSetSize == 0) {
-          channels.sendNoResultMessage(channelKey, tag, requestId);
-        }
-        List<?> objects = (List<?>) PropertyUtils.getProperty(page, "results");
-        for (Object object : objects) {
-          channels.sendSingleObject(channelKey, object, tag, requestId);
-          childAllFetcher.fetchAll(filterText + PropertyUtils.getProperty(object, "id"));
-        }
-        statementBuilder.increaseOffsetBy(StatementBuilder.SUGGESTED_PAGE_LIMIT);
-      } while (statementBuilder.getOffset() < totalResultSetSize);
+      FetchCursor cursor = fetchCursors.load(channelKey, tag, requestId);
+      FetchCursor resumeCursor = parentPagePipeline.run(new StatementBuilder(), cursor,
+          new PagePipeline.PageHandler() {
+            public void handle(Object page, FetchCursor nextCursor) throws Exception {
+              handleParentPage(page, parentIdField, childExecutor);
+              if (nextCursor != null) {
+                fetchCursors.save(channelKey, tag, requestId, nextCursor);
+              }
+            }
+          });
+      if (resumeCursor != null) {
+        log.log(Level.INFO, "Suspending fetch at " + resumeCursor + " before the deadline.");
+        fetchCursors.suspend(channelKey, tag, requestId, resumeCursor);
+      } else {
+        fetchCursors.clear(channelKey, tag, requestId);
+      }
     } catch (ApiException_Exception e) {
       channels.sendErrorChannelMessage(channelKey, tag, requestId, e.getMessage());
+    } catch (CancellationException e) {
+      log.log(Level.FINE, "Stopped fetching objects for cancelled request.");
     } catch (Exception e) {
       channels.sendErrorChannelMessage(channelKey, tag, requestId, e.getMessage());
       log.log(Level.SEVERE, "Error fetching objects.", e);
+    } finally {
+      childExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Sends a page of parents and then their children, grouped by parent.
+   *
+   * @param page the page of parents
+   * @param parentIdField the child field that holds the ID of the parent
+   * @param childExecutor runs the child queries
+   * @throws Exception if the page cannot be read or the thread is interrupted
+   * @throws CancellationException if the request is cancelled
+   */
+  private void handleParentPage(Object page, String parentIdField, ExecutorService childExecutor)
+      throws Exception {
+    checkNotCancelled();
+    PageAdapter pageAdapter = PageAdapter.of(page);
+    if (pageAdapter.getTotalResultSetSize(page) == 0) {
+      channels.sendNoResultMessage(channelKey, tag, requestId);
+    }
+    List<?> parents = pageAdapter.getResults(page);
+    List<Object> parentIds = Lists.newArrayList();
+    for (Object parent : parents) {
+      parentIds.add(EntityAdapter.of(parent).getId(parent));
+    }
+
+    // Start the child queries before sending the parents so they run in the meantime.
+    List<List<Object>> parentIdBatches = Lists.partition(parentIds, MAX_PARENT_IDS_PER_QUERY);
+    List<Future<ListMultimap<Object, Object>>> childFetches = Lists.newArrayList();
+    for (List<Object> parentIdBatch : parentIdBatches) {
+      childFetches.add(
+          childExecutor.submit(getChildFetchTask(parentIdField, parentIdBatch)));
+    }
+
+    for (Object parent : parents) {
+      channels.sendSingleObject(channelKey, parent, tag, requestId);
+    }
+    if (!parents.isEmpty()) {
+      parentPagePipeline.getPageSizeController().recordRowBytes(
+          channels.getSerializedBytes(parents.get(parents.size() - 1)));
+    }
+
+    for (int i = 0; i < childFetches.size(); i++) {
+      ListMultimap<Object, Object> childrenByParentId;
+      try {
+        childrenByParentId = childFetches.get(i).get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof CancellationException) {
+          throw (CancellationException) e.getCause();
+        }
+        channels.sendErrorChannelMessage(channelKey, childTag, requestId,
+            e.getCause().getMessage());
+        if (!(e.getCause() instanceof ApiException_Exception)) {
+          log.log(Level.SEVERE, "Error fetching objects.", e.getCause());
+        }
+        continue;
+      }
+      checkNotCancelled();
+      for (Object parentId : parentIdBatches.get(i)) {
+        List<Object> children = childrenByParentId.get(parentId);
+        if (!children.isEmpty()) {
+          channels.sendObjects(channelKey, children, childTag, requestId);
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates a task that fetches all the children of a batch of parents with a single paged query.
+   * The task waits for one of the network's permits before making any API calls.
+   *
+   * @param parentIdField the child field that holds the ID of the parent
+   * @param parentIds the IDs of the parents
+   * @return the task, which returns the children keyed by parent ID
+   */
+  private Callable<ListMultimap<Object, Object>> getChildFetchTask(final String parentIdField,
+      final List<Object> parentIds) {
+    return new Callable<ListMultimap<Object, Object>>() {
+      public ListMultimap<Object, Object> call() throws Exception {
+        Semaphore permits = getNetworkPermits();
+        permits.acquire();
+        try {
+          return fetchChildren(parentIdField, parentIds);
+        } finally {
+          permits.release();
+        }
+      }
+    };
+  }
+
+  /**
+   * Fetches all the children of a batch of parents, paging through the results.
+   *
+   * @param parentIdField the child field that holds the ID of the parent
+   * @param parentIds the IDs of the parents
+   * @return the children keyed by parent ID
+   * @throws Exception if the children cannot be fetched
+   */
+  private ListMultimap<Object, Object> fetchChildren(String parentIdField, List<Object> parentIds)
+      throws Exception {
+    ListMultimap<Object, Object> childrenByParentId = ArrayListMultimap.create();
+    StatementBuilder statementBuilder = new StatementBuilder()
+        .where(parentIdField + " IN (" + Joiner.on(", ").useForNull("null").join(parentIds) + ")");
+    int totalResultSetSize = 0;
+    do {
+      checkNotCancelled();
+      int limit = childPageSizeController.getOffsetPageLimit();
+      long start = System.currentTimeMillis();
+      Object page = childPageFetcher.getByStatement(statementBuilder.limit(limit).toStatement());
+      PageAdapter pageAdapter = PageAdapter.of(page);
+      List<?> children = pageAdapter.getResults(page);
+      childPageSizeController.recordPage(
+          limit, children.size(), System.currentTimeMillis() - start);
+      if (!children.isEmpty()) {
+        childPageSizeController.recordRowBytes(
+            channels.getSerializedBytes(children.get(children.size() - 1)));
+      }
+      totalResultSetSize = pageAdapter.getTotalResultSetSize(page);
+      for (Object child : children) {
+        childrenByParentId.put(EntityAdapter.of(child).getProperty(child, parentIdField), child);
+      }
+      statementBuilder.increaseOffsetBy(limit);
+    } while (statementBuilder.getOffset() < totalResultSetSize);
+    return childrenByParentId;
+  }
+
+  /**
+   * Checks that no newer request has been made for the panel. Child objects are sent with a
+   * different tag, so the channel does not drop them by itself.
+   *
+   * @throws CancellationException if the request is cancelled
+   */
+  private void checkNotCancelled() {
+    if (channels.isCancelled(channelKey, tag, requestId)) {
+      throw new CancellationException("Request " + requestId + " was cancelled.");
+    }
+  }
+
+  /**
+   * Gets the permits that limit the child fetches running at once for the network.
+   *
+   * @return the network's permits
+   */
+  private Semaphore getNetworkPermits() {
+    Semaphore permits = NETWORK_PERMITS.get(networkCode);
+    if (permits == null) {
+      NETWORK_PERMITS.putIfAbsent(networkCode, new Semaphore(childConcurrency));
+      permits = NETWORK_PERMITS.get(networkCode);
     }
+    return permits;
   }
 }
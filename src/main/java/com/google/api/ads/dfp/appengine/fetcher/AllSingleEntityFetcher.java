@@ -15,14 +15,14 @@
 package com.google.api.ads.dfp.appengine.fetcher;
 
 import com.google.api.ads.dfp.appengine.util.Channels;
+import com.google.api.ads.dfp.appengine.util.PageAdapter;
 import com.google.api.ads.dfp.jaxws.utils.v201403.StatementBuilder;
 import com.google.api.ads.dfp.jaxws.v201403.ApiException_Exception;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 
-import org.apache.commons.beanutils.PropertyUtils;
-
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,12 +35,12 @@ class AllSingleEntityFetcher {
 
   private final Logger log = Logger.getLogger(this.getClass().getName());
 
-  /** Fetcher to get a page of entity results with the API. */
-  private final PageFetcher pageFetcher;
-
   /** Provides communication via the Channel API. */
   private final Channels channels;
 
+  /** Persists the progress of the fetch. */
+  private final FetchCursors fetchCursors;
+
   /** Specifies a client to send messages to via the Channel API. */
   private final String channelKey;
 
@@ -50,48 +50,146 @@ class AllSingleEntityFetcher {
   /** Specifies the request to respond to. */
   private final String requestId;
 
+  /** Fetches pages ahead of the ones being sent. */
+  private final PagePipeline pagePipeline;
+
   /**
    * Constructor.
    *
    * @param pageFetcher fetcher used to make a single API call
    * @param channels provides communication via Channel API
+   * @param fetchCursors persists the progress of the fetch
    * @param channelKey the key to send a message via the Channel API
+   * @param networkCode the network the entities belong to
    * @param tag identifies that objects that are sent via the channel
    * @param requestId identifies the incoming data request
    */
-  public AllSingleEntityFetcher(
-      PageFetcher pageFetcher, Channels channels, String channelKey, String tag, String requestId) {
-    this.pageFetcher = Preconditions.checkNotNull(pageFetcher);
+  public AllSingleEntityFetcher(PageFetcher pageFetcher, Channels channels,
+      FetchCursors fetchCursors, String channelKey, String networkCode, String tag,
+      String requestId) {
+    this(new PagePipeline(pageFetcher, PageSizeController.get(tag, networkCode)), channels,
+        fetchCursors, channelKey, tag, requestId);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param pagePipeline fetches the pages to send
+   * @param channels provides communication via Channel API
+   * @param fetchCursors persists the progress of the fetch
+   * @param channelKey the key to send a message via the Channel API
+   * @param tag identifies that objects that are sent via the channel
+   * @param requestId identifies the incoming data request
+   */
+  @VisibleForTesting
+  AllSingleEntityFetcher(PagePipeline pagePipeline, Channels channels, FetchCursors fetchCursors,
+      String channelKey, String tag, String requestId) {
+    this.pagePipeline = Preconditions.checkNotNull(pagePipeline);
     this.channels = Preconditions.checkNotNull(channels);
+    this.fetchCursors = Preconditions.checkNotNull(fetchCursors);
     this.channelKey = channelKey;
     this.tag = tag;
     this.requestId = requestId;
   }
 
   /**
-   * Method used to fetch all of an entity possibly with multiple API calls. Exceptions are handled
-   * by logging and sending error messages back to the user through the channel.
+   * Method used to fetch all of an entity possibly with multiple API calls. Pages are fetched
+   * ahead while earlier pages are being sent, and are always sent in offset order. Fetching stops
+   * between pages if the request is cancelled. The fetch starts from the saved cursor of the
+   * request, and is suspended at its cursor if the request is close to its deadline. Exceptions
+   * are handled by logging and sending error messages back to the user through the channel.
    *
    * @param filterText the text to filter results by
    */
   @VisibleForTesting
   void fetchAll(String filterText) {
     try {
-      StatementBuilder statementBuilder =
-          new StatementBuilder().where(filterText).limit(StatementBuilder.SUGGESTED_PAGE_LIMIT);
-      int totalResultSetSize = 0;
-      do {
-        Object page = pageFetcher.getByStatement(statementBuilder.toStatement());
-        channels.sendObjects(channelKey, (List<?>) PropertyUtils.getProperty(page, "results"), tag,
-            requestId);
-        statementBuilder.increaseOffsetBy(StatementBuilder.SUGGESTED_PAGE_LIMIT);
-        totalResultSetSize = (Integer) PropertyUtils.getProperty(page, "totalResultSetSize");
-      } while (statementBuilder.getOffset() < totalResultSetSize);
+      FetchCursor cursor = fetchCursors.load(channelKey, tag, requestId);
+      finish(pagePipeline.run(new StatementBuilder().where(filterText), cursor,
+          getPageHandler(cursor == null)));
+    } catch (ApiException_Exception e) {
+      channels.sendErrorChannelMessage(channelKey, tag, requestId, e.getMessage());
+    } catch (CancellationException e) {
+      log.log(Level.FINE, "Stopped fetching objects for cancelled request.");
+    } catch (Exception e) {
+      channels.sendErrorChannelMessage(channelKey, tag, requestId, e.getMessage());
+      log.log(Level.SEVERE, "Error fetching objects.", e);
+    }
+  }
+
+  /**
+   * Method used to fetch all of an entity with multiple API calls, paging by ID instead of by
+   * offset. Pages are fetched ahead while earlier pages are being sent, and are sent in ID order.
+   * The filter text must not contain ORDER BY, LIMIT or OFFSET clauses. Fetching stops between
+   * pages if the request is cancelled. The fetch starts from the saved cursor of the request, and
+   * is suspended at its cursor if the request is close to its deadline. Exceptions are handled by
+   * logging and sending error messages back to the user through the channel.
+   *
+   * @param filterText the text to filter results by
+   */
+  @VisibleForTesting
+  void fetchAllByKeyset(String filterText) {
+    try {
+      FetchCursor cursor = fetchCursors.load(channelKey, tag, requestId);
+      finish(pagePipeline.runByKeyset(filterText, cursor, getPageHandler(cursor == null)));
     } catch (ApiException_Exception e) {
       channels.sendErrorChannelMessage(channelKey, tag, requestId, e.getMessage());
+    } catch (CancellationException e) {
+      log.log(Level.FINE, "Stopped fetching objects for cancelled request.");
     } catch (Exception e) {
       channels.sendErrorChannelMessage(channelKey, tag, requestId, e.getMessage());
       log.log(Level.SEVERE, "Error fetching objects.", e);
     }
   }
+
+  /**
+   * Suspends the fetch if the pipeline stopped early, or clears its cursor if it is complete.
+   *
+   * @param resumeCursor the cursor returned by the pipeline
+   */
+  private void finish(FetchCursor resumeCursor) {
+    if (resumeCursor != null) {
+      log.log(Level.INFO, "Suspending fetch at " + resumeCursor + " before the deadline.");
+      fetchCursors.suspend(channelKey, tag, requestId, resumeCursor);
+    } else {
+      fetchCursors.clear(channelKey, tag, requestId);
+    }
+  }
+
+  /**
+   * Creates a page handler that sends the results of each page through the channel and saves the
+   * cursor after it. The size of the last row of each page is reported to the page size
+   * controller. The handler stops the pipeline once a newer request has been made for the panel.
+   *
+   * An empty page is only sent if it is the first page of the request, where it tells the panel
+   * that there are no results. A later empty page, such as the last keyset page of a result set
+   * that fills its pages exactly, is dropped so that it does not clear the panel.
+   *
+   * @param startOfRequest whether the first page handled is the first page of the request, rather
+   *     than the first page of a continued fetch
+   * @return the page handler
+   */
+  private PagePipeline.PageHandler getPageHandler(final boolean startOfRequest) {
+    return new PagePipeline.PageHandler() {
+      private boolean firstPage = startOfRequest;
+
+      public void handle(Object page, FetchCursor nextCursor) throws Exception {
+        if (channels.isCancelled(channelKey, tag, requestId)) {
+          throw new CancellationException("Request " + requestId + " was cancelled.");
+        }
+        List<?> results = PageAdapter.of(page).getResults(page);
+        if (firstPage || !results.isEmpty()) {
+          channels.sendObjects(channelKey, results, tag, requestId);
+        }
+        if (!results.isEmpty()) {
+          pagePipeline.getPageSizeController().recordRowBytes(
+              channels.getSerializedBytes(results.get(results.size() - 1)));
+        }
+        firstPage = false;
+        if (nextCursor != null) {
+          fetchCursors.save(channelKey, tag, requestId, nextCursor);
+        }
+      }
+    };
+  }
 }
@@ -30,8 +30,9 @@ import com.google.inject.Inject;
 public class CreativeTemplateFetcher extends AbstractFetcher {
 
   @Inject
-  public CreativeTemplateFetcher(DfpServices dfpServices, Channels channels) {
-    super(dfpServices, channels);
+  public CreativeTemplateFetcher(DfpServices dfpServices, Channels channels,
+      FetchCursors fetchCursors) {
+    super(dfpServices, channels, fetchCursors);
   }
 
   public void fetch(String filterText, String channelKey, String tag, String requestId,
@@ -48,6 +49,6 @@ public class CreativeTemplateFetcher extends AbstractFetcher {
       }
     };
     // Fetch the objects.
-    fetchObjects(filterText, channelKey, tag, requestId, pageFetcher);
+    fetchObjects(filterText, channelKey, session.getNetworkCode(), tag, requestId, pageFetcher);
   }
 }
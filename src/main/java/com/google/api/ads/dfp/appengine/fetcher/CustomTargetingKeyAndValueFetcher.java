@@ -14,6 +14,7 @@
 
 package com.google.api.ads.dfp.appengine.fetcher;
 
+import com.google.api.ads.dfp.appengine.DfpTags;
 import com.google.api.ads.dfp.appengine.util.Channels;
 import com.google.api.ads.dfp.jaxws.factory.DfpServices;
 import com.google.api.ads.dfp.jaxws.v201403.ApiException_Exception;
@@ -31,8 +32,8 @@ public class CustomTargetingKeyAndValueFetcher extends AbstractFetcher {
 
   @Inject
   public CustomTargetingKeyAndValueFetcher(
-      DfpServices dfpServices, Channels channels) {
-    super(dfpServices, channels);
+      DfpServices dfpServices, Channels channels, FetchCursors fetchCursors) {
+    super(dfpServices, channels, fetchCursors);
   }
 
   public void fetch(String filterText, String channelKey, String tag, String requestId,
@@ -56,13 +57,10 @@ public class CustomTargetingKeyAndValueFetcher extends AbstractFetcher {
       }
     };
 
-    // Create all fetcher that gets all custom targeting values.
-    AllSingleEntityFetcher customTargetingValueAllFetcher = new AllSingleEntityFetcher(
-        customTargetingValuePageFetcher, channels, channelKey, tag + "-value", requestId);
-
     // Fetch all custom targeting keys and nested values.
     new AllNestedFetcher(
-        customTargetingKeyPageFetcher, customTargetingValueAllFetcher, channels, channelKey, tag,
-        requestId).fetchAll("WHERE customTargetingKeyId = ");
+        customTargetingKeyPageFetcher, customTargetingValuePageFetcher, channels, fetchCursors,
+        channelKey, session.getNetworkCode(), tag, tag + DfpTags.VALUE_CHILD_SUFFIX, requestId)
+        .fetchAll(DfpTags.VALUE_PARENT_ID_FIELD);
   }
 }
@@ -31,8 +31,8 @@ public class CustomTargetingValueFetcher extends AbstractFetcher {
 
   @Inject
   public CustomTargetingValueFetcher(
-      DfpServices dfpServices, Channels channels) {
-    super(dfpServices, channels);
+      DfpServices dfpServices, Channels channels, FetchCursors fetchCursors) {
+    super(dfpServices, channels, fetchCursors);
   }
 
   public void fetch(String filterText, String channelKey, String tag, String requestId,
@@ -49,6 +49,6 @@ public class CustomTargetingValueFetcher extends AbstractFetcher {
       }
     };
     // Fetch the objects.
-    fetchObjects(filterText, channelKey, tag, requestId, pageFetcher);
+    fetchObjects(filterText, channelKey, session.getNetworkCode(), tag, requestId, pageFetcher);
   }
 }
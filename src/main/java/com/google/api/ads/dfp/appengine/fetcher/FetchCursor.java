@@ -0,0 +1,118 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.fetcher;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+import java.io.Serializable;
+
+/**
+ * The position to resume paging from: either the offset of the next page, or the last ID of the
+ * previous page when paging by keyset.
+ */
+public final class FetchCursor implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final String OFFSET_PREFIX = "offset:";
+  private static final String LAST_ID_PREFIX = "lastId:";
+
+  private final Integer offset;
+  private final Long lastId;
+
+  private FetchCursor(Integer offset, Long lastId) {
+    this.offset = offset;
+    this.lastId = lastId;
+  }
+
+  /**
+   * Creates a cursor for paging by offset.
+   *
+   * @param offset the offset of the next page
+   * @return the cursor
+   */
+  public static FetchCursor ofOffset(int offset) {
+    return new FetchCursor(offset, null);
+  }
+
+  /**
+   * Creates a cursor for paging by keyset.
+   *
+   * @param lastId the last ID of the previous page
+   * @return the cursor
+   */
+  public static FetchCursor ofLastId(long lastId) {
+    return new FetchCursor(null, lastId);
+  }
+
+  /**
+   * Parses a cursor from its string form.
+   *
+   * @param text the string form of the cursor, as returned by {@link #toString}
+   * @return the cursor
+   * @throws IllegalArgumentException if the text is not a cursor
+   */
+  public static FetchCursor parse(String text) {
+    Preconditions.checkNotNull(text, "Cannot parse null cursor.");
+    try {
+      if (text.startsWith(OFFSET_PREFIX)) {
+        return ofOffset(Integer.parseInt(text.substring(OFFSET_PREFIX.length())));
+      } else if (text.startsWith(LAST_ID_PREFIX)) {
+        return ofLastId(Long.parseLong(text.substring(LAST_ID_PREFIX.length())));
+      }
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid cursor: " + text, e);
+    }
+    throw new IllegalArgumentException("Invalid cursor: " + text);
+  }
+
+  /**
+   * Gets the offset of the next page.
+   *
+   * @return the offset, or {@code null} if this is a keyset cursor
+   */
+  public Integer getOffset() {
+    return offset;
+  }
+
+  /**
+   * Gets the last ID of the previous page.
+   *
+   * @return the last ID, or {@code null} if this is an offset cursor
+   */
+  public Long getLastId() {
+    return lastId;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof FetchCursor)) {
+      return false;
+    }
+    FetchCursor other = (FetchCursor) obj;
+    return Objects.equal(offset, other.offset) && Objects.equal(lastId, other.lastId);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(offset, lastId);
+  }
+
+  @Override
+  public String toString() {
+    return offset != null ? OFFSET_PREFIX + offset : LAST_ID_PREFIX + lastId;
+  }
+}
@@ -0,0 +1,140 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.fetcher;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Persists the progress of fetch tasks in memcache, keyed by channel key, tag and request ID.
+ *
+ * Fetchers save a cursor after every page they send, so a retried task resumes after the last
+ * page that was sent instead of starting over. When a task runs low on time, the fetcher suspends
+ * the fetch at its cursor and the servlet enqueues a continuation task that resumes from it.
+ */
+@Singleton
+public class FetchCursors {
+
+  /** Prefix of the memcache keys for cursors. */
+  static final String CURSOR_PREFIX = "fetchCursor:";
+
+  /** Prefix of the memcache keys that mark suspended fetches. */
+  static final String SUSPENDED_PREFIX = "fetchSuspended:";
+
+  /** The number of seconds to keep a cursor in memcache. */
+  static final int EXPIRATION_SECONDS = 60 * 60;
+
+  private final MemcacheService memcacheService;
+
+  /**
+   * Constructor.
+   *
+   * @param memcacheService the App Engine caching service
+   */
+  @Inject
+  public FetchCursors(MemcacheService memcacheService) {
+    this.memcacheService = Preconditions.checkNotNull(memcacheService);
+  }
+
+  /**
+   * Loads the cursor to resume a fetch from.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the panel that made the request
+   * @param requestId the ID of the request
+   * @return the cursor, or {@code null} if the fetch should start from the beginning
+   */
+  public FetchCursor load(String channelKey, String tag, String requestId) {
+    return (FetchCursor) memcacheService.get(getKey(CURSOR_PREFIX, channelKey, tag, requestId));
+  }
+
+  /**
+   * Saves the cursor after a page has been sent.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the panel that made the request
+   * @param requestId the ID of the request
+   * @param cursor the cursor to resume from
+   */
+  public void save(String channelKey, String tag, String requestId, FetchCursor cursor) {
+    memcacheService.put(getKey(CURSOR_PREFIX, channelKey, tag, requestId), cursor,
+        Expiration.byDeltaSeconds(EXPIRATION_SECONDS));
+  }
+
+  /**
+   * Saves the cursor if there is none yet, such as when memcache has evicted it.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the panel that made the request
+   * @param requestId the ID of the request
+   * @param cursor the cursor to resume from
+   */
+  public void restore(String channelKey, String tag, String requestId, FetchCursor cursor) {
+    memcacheService.put(getKey(CURSOR_PREFIX, channelKey, tag, requestId), cursor,
+        Expiration.byDeltaSeconds(EXPIRATION_SECONDS),
+        MemcacheService.SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+  }
+
+  /**
+   * Saves the cursor and marks the fetch as suspended, so that it is continued by another task.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the panel that made the request
+   * @param requestId the ID of the request
+   * @param cursor the cursor to resume from
+   */
+  public void suspend(String channelKey, String tag, String requestId, FetchCursor cursor) {
+    save(channelKey, tag, requestId, cursor);
+    memcacheService.put(getKey(SUSPENDED_PREFIX, channelKey, tag, requestId), Boolean.TRUE,
+        Expiration.byDeltaSeconds(EXPIRATION_SECONDS));
+  }
+
+  /**
+   * Gets the cursor of a suspended fetch and clears the suspended mark.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the panel that made the request
+   * @param requestId the ID of the request
+   * @return the cursor to continue from, or {@code null} if the fetch is not suspended
+   */
+  public FetchCursor takeSuspended(String channelKey, String tag, String requestId) {
+    if (!memcacheService.delete(getKey(SUSPENDED_PREFIX, channelKey, tag, requestId))) {
+      return null;
+    }
+    return load(channelKey, tag, requestId);
+  }
+
+  /**
+   * Clears the cursor once a fetch has finished.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the panel that made the request
+   * @param requestId the ID of the request
+   */
+  public void clear(String channelKey, String tag, String requestId) {
+    memcacheService.delete(getKey(CURSOR_PREFIX, channelKey, tag, requestId));
+    memcacheService.delete(getKey(SUSPENDED_PREFIX, channelKey, tag, requestId));
+  }
+
+  /**
+   * Gets the memcache key for a request.
+   */
+  private static String getKey(String prefix, String channelKey, String tag, String requestId) {
+    return prefix + channelKey + ":" + tag + ":" + requestId;
+  }
+}
@@ -31,8 +31,8 @@ public class LineItemCreativeAssociationFetcher extends AbstractFetcher {
 
   @Inject
   public LineItemCreativeAssociationFetcher(
-      DfpServices dfpServices, Channels channels) {
-    super(dfpServices, channels);
+      DfpServices dfpServices, Channels channels, FetchCursors fetchCursors) {
+    super(dfpServices, channels, fetchCursors);
   }
 
   public void fetch(String filterText, String channelKey, String tag, String requestId,
@@ -50,6 +50,15 @@ public class LineItemCreativeAssociationFetcher extends AbstractFetcher {
       }
     };
     // Fetch the objects.
-    fetchObjects(filterText, channelKey, tag, requestId, pageFetcher);
+    fetchObjects(filterText, channelKey, session.getNetworkCode(), tag, requestId, pageFetcher);
+  }
+
+  /**
+   * Line item creative associations are identified by line item and creative ID and have no
+   * {@code id} field to page by.
+   */
+  @Override
+  protected boolean supportsKeysetPaging() {
+    return false;
   }
 }
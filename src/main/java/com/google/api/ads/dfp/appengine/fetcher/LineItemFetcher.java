@@ -30,8 +30,8 @@ import com.google.inject.Inject;
 public class LineItemFetcher extends AbstractFetcher {
 
   @Inject
-  public LineItemFetcher(DfpServices dfpServices, Channels channels) {
-    super(dfpServices, channels);
+  public LineItemFetcher(DfpServices dfpServices, Channels channels, FetchCursors fetchCursors) {
+    super(dfpServices, channels, fetchCursors);
   }
 
   public void fetch(String filterText, String channelKey, String tag, String requestId,
@@ -48,6 +48,6 @@ public class LineItemFetcher extends AbstractFetcher {
       }
     };
     // Fetch the objects.
-    fetchObjects(filterText, channelKey, tag, requestId, pageFetcher);
+    fetchObjects(filterText, channelKey, session.getNetworkCode(), tag, requestId, pageFetcher);
   }
 }
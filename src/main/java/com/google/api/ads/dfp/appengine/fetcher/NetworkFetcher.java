@@ -32,8 +32,8 @@ import java.util.List;
 public class NetworkFetcher extends AbstractFetcher {
 
   @Inject
-  public NetworkFetcher(DfpServices dfpServices, Channels channels) {
-    super(dfpServices, channels);
+  public NetworkFetcher(DfpServices dfpServices, Channels channels, FetchCursors fetchCursors) {
+    super(dfpServices, channels, fetchCursors);
   }
 
   public void fetch(String filterText, String channelKey, String tag, String requestId,
@@ -30,8 +30,8 @@ import com.google.inject.Inject;
 public class OrderFetcher extends AbstractFetcher {
 
   @Inject
-  public OrderFetcher(DfpServices dfpServices, Channels channels) {
-    super(dfpServices, channels);
+  public OrderFetcher(DfpServices dfpServices, Channels channels, FetchCursors fetchCursors) {
+    super(dfpServices, channels, fetchCursors);
   }
 
   public void fetch(String filterText, String channelKey, String tag, String requestId,
@@ -48,6 +48,6 @@ public class OrderFetcher extends AbstractFetcher {
       }
     };
     // Fetch the objects.
-    fetchObjects(filterText, channelKey, tag, requestId, pageFetcher);
+    fetchObjects(filterText, channelKey, session.getNetworkCode(), tag, requestId, pageFetcher);
   }
 }
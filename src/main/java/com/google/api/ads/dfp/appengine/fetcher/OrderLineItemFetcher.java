@@ -14,6 +14,7 @@
 
 package com.google.api.ads.dfp.appengine.fetcher;
 
+import com.google.api.ads.dfp.appengine.DfpTags;
 import com.google.api.ads.dfp.appengine.util.Channels;
 import com.google.api.ads.dfp.jaxws.factory.DfpServices;
 import com.google.api.ads.dfp.jaxws.v201403.ApiException_Exception;
@@ -32,8 +33,9 @@ import com.google.inject.Inject;
 public final class OrderLineItemFetcher extends AbstractFetcher {
 
   @Inject
-  public OrderLineItemFetcher(DfpServices dfpServices, Channels channels) {
-    super(dfpServices, channels);
+  public OrderLineItemFetcher(DfpServices dfpServices, Channels channels,
+      FetchCursors fetchCursors) {
+    super(dfpServices, channels, fetchCursors);
   }
 
   public void fetch(String filterText, String channelKey, String tag, String requestId,
@@ -42,7 +44,8 @@ public final class OrderLineItemFetcher extends AbstractFetcher {
         dfpServices.get(session, OrderServiceInterface.class);
     LineItemServiceInterface lineItemService =
         dfpServices.get(session, LineItemServiceInterface.class);
-    fetch(filterText, channelKey, tag, requestId, orderService, lineItemService);
+    fetch(filterText, channelKey, session.getNetworkCode(), tag, requestId, orderService,
+        lineItemService);
   }
 
   /**
@@ -50,14 +53,16 @@ public final class OrderLineItemFetcher extends AbstractFetcher {
    *
    * @param filterText the PQL syntax filter text to filter objects by
    * @param channelKey the key to send a message via the Channel API
+   * @param networkCode the network to fetch from
    * @param tag identifies that objects that are sent via the channel
    * @param requestId identifies the incoming data request
    * @param orderService used to fetch orders
    * @param lineItemService used to fetch line items
    */
   @VisibleForTesting
-  void fetch(String filterText, String channelKey, String tag, String requestId,
-      final OrderServiceInterface orderService, final LineItemServiceInterface lineItemService) {
+  void fetch(String filterText, String channelKey, String networkCode, String tag,
+      String requestId, final OrderServiceInterface orderService,
+      final LineItemServiceInterface lineItemService) {
     // Create the order page fetcher.
     PageFetcher orderPageFetcher = new PageFetcher() {
       public Object getByStatement(Statement statement) throws ApiException_Exception {
@@ -72,12 +77,9 @@ public final class OrderLineItemFetcher extends AbstractFetcher {
       }
     };
 
-    // Create all fetcher that gets all line items.
-    AllSingleEntityFetcher lineItemAllFetcher = new AllSingleEntityFetcher(lineItemPageFetcher,
-        channels, channelKey, tag + "-li", requestId);
-
     // Fetch all orders and nested line items.
-    new AllNestedFetcher(orderPageFetcher, lineItemAllFetcher, channels, channelKey, tag, requestId)
-        .fetchAll("WHERE orderId = ");
+    new AllNestedFetcher(orderPageFetcher, lineItemPageFetcher, channels, fetchCursors, channelKey,
+        networkCode, tag, tag + DfpTags.LINE_ITEM_CHILD_SUFFIX, requestId)
+        .fetchAll(DfpTags.LINE_ITEM_PARENT_ID_FIELD);
   }
 }
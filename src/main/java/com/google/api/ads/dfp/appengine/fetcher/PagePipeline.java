@@ -0,0 +1,528 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.fetcher;
+
+import com.google.api.ads.dfp.appengine.util.EntityAdapter;
+import com.google.api.ads.dfp.appengine.util.PageAdapter;
+import com.google.api.ads.dfp.appengine.util.RequestDeadline;
+import com.google.api.ads.dfp.appengine.util.RequestThreads;
+import com.google.api.ads.dfp.jaxws.utils.v201403.StatementBuilder;
+import com.google.api.ads.dfp.jaxws.v201403.Statement;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * A two stage pipeline for paging through entities. A producer thread fetches pages and hands them
+ * to the calling thread through a bounded queue, so the next pages are requested while the current
+ * page is being sent through the channel.
+ *
+ * Pages are either fetched by offset or by keyset. When paging by offset, once the first page
+ * returns the total result set size, the producer fetches several of the remaining pages at once.
+ * When paging by keyset, each page is ordered by ID and starts after the last ID of the previous
+ * page, which keeps the cost of a page the same however deep the scan is and does not skip or
+ * repeat entities that change during the scan. Keyset pages can only be fetched one at a time.
+ *
+ * The size of each page is chosen by a {@link PageSizeController}, which is told how long every
+ * page took to fetch. Keyset pages may ask for more rows than the API
+ * returns in a page, so a keyset page only ends the scan if it is shorter than both its limit and
+ * {@link PageSizeController#FULL_PAGE_LIMIT}.
+ *
+ * Every page is handed over with a {@link FetchCursor} that resumes after it. The deadline is
+ * checked before each page after the first is requested. Once the request is close to its
+ * deadline, the pipeline stops requesting pages, hands over the pages it has already requested,
+ * and returns the cursor after the last of them so the rest of the pages can be fetched by another
+ * request. Pages are therefore never fetched by both requests.
+ */
+class PagePipeline {
+
+  private final Logger log = Logger.getLogger(this.getClass().getName());
+
+  /** System property that sets how many pages can be fetched at once. */
+  static final String PARALLELISM_PROPERTY = "dfp.appengine.pageFetchParallelism";
+
+  /** The number of pages fetched at once if the system property is not set. */
+  static final int DEFAULT_PARALLELISM = 4;
+
+  /** System property that sets how many fetched pages can wait to be handled. */
+  static final String QUEUE_CAPACITY_PROPERTY = "dfp.appengine.pageQueueCapacity";
+
+  /** The number of fetched pages that can wait if the system property is not set. */
+  static final int DEFAULT_QUEUE_CAPACITY = 2;
+
+  /** System property that sets how close to the deadline the pipeline stops fetching. */
+  static final String CONTINUATION_THRESHOLD_PROPERTY =
+      "dfp.appengine.continuationThresholdMillis";
+
+  /** How close to the deadline the pipeline stops if the system property is not set. */
+  static final long DEFAULT_CONTINUATION_THRESHOLD_MILLIS = 60 * 1000;
+
+  /** The name of the bind variable that holds the last ID of the previous keyset page. */
+  static final String LAST_ID_VARIABLE = "lastId";
+
+  /** Matches the WHERE keyword at the start of filter text. */
+  private static final Pattern WHERE_KEYWORD = Pattern.compile("(?i)^\\s*WHERE(?=$|\\s)");
+
+  /** How long to wait for the producer and fetch threads to stop once the pipeline returns. */
+  static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+  /** Marks the end of the pages in the hand-off queue. */
+  private static final Object END_OF_PAGES = new Object();
+
+  /**
+   * Handles pages of results on the calling thread.
+   */
+  interface PageHandler {
+
+    /**
+     * Handles a single page of results.
+     *
+     * @param page the page of results
+     * @param nextCursor the cursor to resume after this page, or {@code null} if it is the last
+     * @throws Exception if the page cannot be handled, which stops the pipeline
+     */
+    void handle(Object page, FetchCursor nextCursor) throws Exception;
+  }
+
+  /** Fetcher to get a page of entity results with the API. */
+  private final PageFetcher pageFetcher;
+
+  /** Chooses the size of each page. */
+  private final PageSizeController pageSizeController;
+
+  /** The maximum number of pages to fetch at once. */
+  private final int parallelism;
+
+  /** The maximum number of fetched pages waiting to be handled. */
+  private final int queueCapacity;
+
+  /** Reports how much time the request has left. */
+  private final RequestDeadline requestDeadline;
+
+  /** How close to the deadline to stop fetching. */
+  private final long continuationThresholdMillis;
+
+  /**
+   * Constructor with the parallelism, queue capacity and continuation threshold taken from system
+   * properties.
+   *
+   * @param pageFetcher fetcher used to make a single API call
+   * @param pageSizeController chooses the size of each page
+   */
+  public PagePipeline(PageFetcher pageFetcher, PageSizeController pageSizeController) {
+    this(pageFetcher, pageSizeController,
+        Integer.getInteger(PARALLELISM_PROPERTY, DEFAULT_PARALLELISM),
+        Integer.getInteger(QUEUE_CAPACITY_PROPERTY, DEFAULT_QUEUE_CAPACITY));
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param pageFetcher fetcher used to make a single API call
+   * @param pageSizeController chooses the size of each page
+   * @param parallelism the maximum number of pages to fetch at once
+   * @param queueCapacity the maximum number of fetched pages waiting to be handled
+   */
+  public PagePipeline(PageFetcher pageFetcher, PageSizeController pageSizeController,
+      int parallelism, int queueCapacity) {
+    this(pageFetcher, pageSizeController, parallelism, queueCapacity, new RequestDeadline(),
+        Long.getLong(CONTINUATION_THRESHOLD_PROPERTY, DEFAULT_CONTINUATION_THRESHOLD_MILLIS));
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param pageFetcher fetcher used to make a single API call
+   * @param pageSizeController chooses the size of each page
+   * @param parallelism the maximum number of pages to fetch at once
+   * @param queueCapacity the maximum number of fetched pages waiting to be handled
+   * @param requestDeadline reports how much time the request has left
+   * @param continuationThresholdMillis how close to the deadline to stop fetching
+   */
+  public PagePipeline(PageFetcher pageFetcher, PageSizeController pageSizeController,
+      int parallelism, int queueCapacity, RequestDeadline requestDeadline,
+      long continuationThresholdMillis) {
+    Preconditions.checkArgument(parallelism > 0, "Parallelism must be positive.");
+    Preconditions.checkArgument(queueCapacity > 0, "Queue capacity must be positive.");
+    this.pageFetcher = Preconditions.checkNotNull(pageFetcher);
+    this.pageSizeController = Preconditions.checkNotNull(pageSizeController);
+    this.parallelism = parallelism;
+    this.queueCapacity = queueCapacity;
+    this.requestDeadline = Preconditions.checkNotNull(requestDeadline);
+    this.continuationThresholdMillis = continuationThresholdMillis;
+  }
+
+  /**
+   * Gets the controller that chooses the size of each page, so that page handlers can report the
+   * size of the rows they send.
+   *
+   * @return the page size controller
+   */
+  PageSizeController getPageSizeController() {
+    return pageSizeController;
+  }
+
+  /**
+   * Fetches all pages for the statement builder and hands them to the page handler in offset
+   * order. The limit of each page is set by the page size controller. Returns once every page has
+   * been handled, or once the request is close to its deadline.
+   *
+   * @param statementBuilder the statement builder for the pages to fetch
+   * @param startCursor the offset cursor to start at, or {@code null} to start at the first page
+   * @param pageHandler handles each page on the calling thread
+   * @return the cursor to resume from if the pipeline stopped early, or {@code null} if every
+   *     page was handled
+   * @throws IllegalArgumentException if the start cursor is not an offset cursor
+   * @throws Exception if a page cannot be fetched or handled
+   */
+  public FetchCursor run(StatementBuilder statementBuilder, FetchCursor startCursor,
+      PageHandler pageHandler) throws Exception {
+    if (startCursor != null) {
+      Preconditions.checkArgument(startCursor.getOffset() != null,
+          "Cannot page by offset from cursor %s.", startCursor);
+      statementBuilder.offset(startCursor.getOffset());
+    }
+    return run(new OffsetProducer(statementBuilder), pageHandler);
+  }
+
+  /**
+   * Fetches all pages matching the filter text by keyset and hands them to the page handler in ID
+   * order. Returns once every page has been handled, or once the request is close to its deadline.
+   * The filter text must not contain ORDER BY, LIMIT or OFFSET clauses, and the entities must have
+   * an {@code id} field.
+   *
+   * @param filterText the PQL syntax filter text to filter objects by
+   * @param startCursor the keyset cursor to start after, or {@code null} to start at the first
+   *     page
+   * @param pageHandler handles each page on the calling thread
+   * @return the cursor to resume from if the pipeline stopped early, or {@code null} if every
+   *     page was handled
+   * @throws IllegalArgumentException if the start cursor is not a keyset cursor
+   * @throws Exception if a page cannot be fetched or handled
+   */
+  public FetchCursor runByKeyset(String filterText, FetchCursor startCursor,
+      PageHandler pageHandler) throws Exception {
+    Long lastId = null;
+    if (startCursor != null) {
+      Preconditions.checkArgument(startCursor.getLastId() != null,
+          "Cannot page by keyset from cursor %s.", startCursor);
+      lastId = startCursor.getLastId();
+    }
+    return run(new KeysetProducer(filterText, lastId), pageHandler);
+  }
+
+  /**
+   * Starts the producer and hands the pages it fetches to the page handler, stopping early if the
+   * request is close to its deadline.
+   *
+   * @param producer fetches the pages
+   * @param pageHandler handles each page on the calling thread
+   * @return the cursor to resume from, or {@code null} if every page was handled
+   * @throws Exception if a page cannot be fetched or handled
+   */
+  private FetchCursor run(Producer producer, PageHandler pageHandler) throws Exception {
+    BlockingQueue<Object> pages = new ArrayBlockingQueue<Object>(queueCapacity);
+    ExecutorService fetchExecutor = RequestThreads.newFixedThreadPool(parallelism);
+    producer.start(fetchExecutor, pages);
+    Thread producerThread = RequestThreads.getThreadFactory().newThread(producer);
+    producerThread.start();
+    try {
+      FetchCursor resumeCursor = null;
+      for (Object page = pages.take(); page != END_OF_PAGES; page = pages.take()) {
+        if (page instanceof Failure) {
+          Throwable cause = ((Failure) page).cause;
+          Throwables.propagateIfInstanceOf(cause, Exception.class);
+          throw Throwables.propagate(cause);
+        }
+        FetchedPage fetchedPage = (FetchedPage) page;
+        pageHandler.handle(fetchedPage.page, fetchedPage.nextCursor);
+        resumeCursor = fetchedPage.nextCursor;
+      }
+      return resumeCursor;
+    } finally {
+      stop(producerThread, fetchExecutor);
+    }
+  }
+
+  /**
+   * Stops the producer and the page fetches, and waits a short time for them to finish so that no
+   * page is still being fetched once the pipeline returns.
+   *
+   * @param producerThread the thread running the producer
+   * @param fetchExecutor runs page fetches
+   */
+  private void stop(Thread producerThread, ExecutorService fetchExecutor) {
+    producerThread.interrupt();
+    fetchExecutor.shutdownNow();
+    try {
+      long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MILLIS;
+      producerThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+      long remainingMillis = Math.max(1, deadline - System.currentTimeMillis());
+      if (producerThread.isAlive()
+          || !fetchExecutor.awaitTermination(remainingMillis, TimeUnit.MILLISECONDS)) {
+        log.log(Level.WARNING, "Page fetches did not stop within "
+            + SHUTDOWN_TIMEOUT_MILLIS + " ms.");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Checks if the request is close enough to its deadline that no more pages should be requested.
+   *
+   * @return whether the pipeline should stop requesting pages
+   */
+  private boolean isNearDeadline() {
+    return requestDeadline.getRemainingMillis() < continuationThresholdMillis;
+  }
+
+  /**
+   * Fetches pages and puts them on the hand-off queue, blocking while the queue is full.
+   */
+  private abstract class Producer implements Runnable {
+
+    protected ExecutorService fetchExecutor;
+    protected BlockingQueue<Object> pages;
+
+    /**
+     * Sets where the producer fetches and puts pages. Called before the producer runs.
+     *
+     * @param fetchExecutor runs page fetches
+     * @param pages the hand-off queue
+     */
+    void start(ExecutorService fetchExecutor, BlockingQueue<Object> pages) {
+      this.fetchExecutor = fetchExecutor;
+      this.pages = pages;
+    }
+
+    public void run() {
+      try {
+        producePages();
+        pages.put(END_OF_PAGES);
+      } catch (InterruptedException e) {
+        // The consumer has stopped, so there is no one left to hand pages to.
+        Thread.currentThread().interrupt();
+      } catch (Throwable t) {
+        try {
+          pages.put(new Failure(t));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    /**
+     * Fetches all the pages and puts them on the hand-off queue.
+     *
+     * @throws Exception if a page cannot be fetched
+     */
+    abstract void producePages() throws Exception;
+  }
+
+  /**
+   * Fetches pages by offset, several at once after the first page, until the last page or the
+   * deadline.
+   */
+  private class OffsetProducer extends Producer {
+
+    private final StatementBuilder statementBuilder;
+
+    OffsetProducer(StatementBuilder statementBuilder) {
+      this.statementBuilder = statementBuilder;
+    }
+
+    @Override
+    void producePages() throws Exception {
+      int limit = pageSizeController.getOffsetPageLimit();
+      Object page = fetchPage(statementBuilder.limit(limit).toStatement(), limit);
+      statementBuilder.increaseOffsetBy(limit);
+      int totalResultSetSize = PageAdapter.of(page).getTotalResultSetSize(page);
+      pages.put(new FetchedPage(page, getNextCursor(totalResultSetSize)));
+      Queue<Future<Object>> pendingPages = Lists.newLinkedList();
+      Queue<FetchCursor> pendingCursors = Lists.newLinkedList();
+      boolean nearDeadline = false;
+      while (!pendingPages.isEmpty()
+          || (statementBuilder.getOffset() < totalResultSetSize && !nearDeadline)) {
+        while (pendingPages.size() < parallelism
+            && statementBuilder.getOffset() < totalResultSetSize && !nearDeadline) {
+          nearDeadline = isNearDeadline();
+          if (!nearDeadline) {
+            limit = pageSizeController.getOffsetPageLimit();
+            pendingPages.add(fetchExecutor.submit(
+                getPageTask(statementBuilder.limit(limit).toStatement(), limit)));
+            statementBuilder.increaseOffsetBy(limit);
+            pendingCursors.add(getNextCursor(totalResultSetSize));
+          }
+        }
+        if (!pendingPages.isEmpty()) {
+          pages.put(new FetchedPage(getPage(pendingPages.remove()), pendingCursors.remove()));
+        }
+      }
+    }
+
+    /**
+     * Gets the cursor for the current offset of the statement builder.
+     *
+     * @param totalResultSetSize the number of entities in the result set
+     * @return the cursor, or {@code null} if the offset is past the last page
+     */
+    private FetchCursor getNextCursor(int totalResultSetSize) {
+      return statementBuilder.getOffset() < totalResultSetSize
+          ? FetchCursor.ofOffset(statementBuilder.getOffset()) : null;
+    }
+  }
+
+  /**
+   * Fetches pages by keyset, one at a time, until a page is not full or the deadline.
+   */
+  private class KeysetProducer extends Producer {
+
+    private final String conditions;
+    private final Long startAfterId;
+
+    KeysetProducer(String filterText, Long startAfterId) {
+      this.conditions = WHERE_KEYWORD.matcher(Strings.nullToEmpty(filterText)).replaceFirst("")
+          .trim();
+      this.startAfterId = startAfterId;
+    }
+
+    @Override
+    void producePages() throws Exception {
+      Object lastId = startAfterId;
+      boolean lastPage;
+      do {
+        int limit = pageSizeController.getPageLimit();
+        Object page = fetchPage(getStatement(lastId, limit), limit);
+        List<?> results = PageAdapter.of(page).getResults(page);
+        if (!results.isEmpty()) {
+          Object lastEntity = results.get(results.size() - 1);
+          lastId = EntityAdapter.of(lastEntity).getId(lastEntity);
+        }
+        lastPage = results.size() < Math.min(limit, PageSizeController.FULL_PAGE_LIMIT);
+        pages.put(new FetchedPage(page,
+            lastPage ? null : FetchCursor.ofLastId(((Number) lastId).longValue())));
+      } while (!lastPage && !isNearDeadline());
+    }
+
+    /**
+     * Creates the statement for the page after the last ID.
+     *
+     * @param lastId the last ID of the previous page, or {@code null} for the first page
+     * @param limit the size of the page
+     * @return the statement
+     */
+    private Statement getStatement(Object lastId, int limit) {
+      StatementBuilder statementBuilder = new StatementBuilder()
+          .orderBy("id ASC")
+          .limit(limit);
+      String where = conditions;
+      if (lastId != null) {
+        String keysetCondition = "id > :" + LAST_ID_VARIABLE;
+        where = where.isEmpty() ? keysetCondition : "(" + where + ") AND " + keysetCondition;
+        statementBuilder.withBindVariableValue(LAST_ID_VARIABLE, lastId);
+      }
+      if (!where.isEmpty()) {
+        statementBuilder.where(where);
+      }
+      return statementBuilder.toStatement();
+    }
+  }
+
+  /**
+   * Creates a task that fetches a single page.
+   *
+   * @param statement the statement for the page
+   * @param limit the size of the page
+   * @return the task
+   */
+  private Callable<Object> getPageTask(final Statement statement, final int limit) {
+    return new Callable<Object>() {
+      public Object call() throws Exception {
+        return fetchPage(statement, limit);
+      }
+    };
+  }
+
+  /**
+   * Fetches a single page and records how long it took with the page size controller.
+   *
+   * @param statement the statement for the page
+   * @param limit the size of the page
+   * @return the fetched page
+   * @throws Exception if the page could not be fetched
+   */
+  private Object fetchPage(Statement statement, int limit) throws Exception {
+    long start = System.currentTimeMillis();
+    Object page = pageFetcher.getByStatement(statement);
+    int rows = PageAdapter.of(page).getResults(page).size();
+    pageSizeController.recordPage(limit, rows, System.currentTimeMillis() - start);
+    return page;
+  }
+
+  /**
+   * Waits for a page to be fetched, rethrowing any exception thrown while fetching it.
+   *
+   * @param pendingPage the page being fetched
+   * @return the fetched page
+   * @throws Exception if the page could not be fetched
+   */
+  private static Object getPage(Future<Object> pendingPage) throws Exception {
+    try {
+      return pendingPage.get();
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), Exception.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  /**
+   * A fetched page and the cursor to resume after it.
+   */
+  private static class FetchedPage {
+    final Object page;
+    final FetchCursor nextCursor;
+
+    FetchedPage(Object page, FetchCursor nextCursor) {
+      this.page = page;
+      this.nextCursor = nextCursor;
+    }
+  }
+
+  /**
+   * Carries an exception thrown by the producer to the calling thread.
+   */
+  private static class Failure {
+    final Throwable cause;
+
+    Failure(Throwable cause) {
+      this.cause = cause;
+    }
+  }
+}
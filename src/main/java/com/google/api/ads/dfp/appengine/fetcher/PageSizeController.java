@@ -0,0 +1,204 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.fetcher;
+
+import com.google.api.ads.dfp.jaxws.utils.v201403.StatementBuilder;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Chooses the page size of API calls for an entity type in a network. The controller keeps moving
+ * averages of how long each row of a page takes to fetch and of how large each row is when it is
+ * serialized into channel messages, and sizes
+ * pages so that a call takes about the target latency and returns about the target payload.
+ * Entities with large fields, such as creatives with snippets, get smaller pages than small
+ * entities such as roles.
+ *
+ * Pages start at {@link StatementBuilder#SUGGESTED_PAGE_LIMIT} and can grow up to the maximum page
+ * limit. Paging by offset advances by the limit that was asked for, so a page that the API
+ * returned short would skip entities. Offset pages therefore never ask for more than the suggested
+ * limit, and only keyset pages, which start after the last ID actually returned, grow past it.
+ */
+class PageSizeController {
+
+  /** System property that sets the latency to aim for with each API call. */
+  static final String TARGET_LATENCY_PROPERTY = "dfp.appengine.pageTargetLatencyMillis";
+
+  /** The latency to aim for if the system property is not set. */
+  static final long DEFAULT_TARGET_LATENCY_MILLIS = 5000;
+
+  /** System property that sets the payload size in bytes to aim for with each API call. */
+  static final String TARGET_PAGE_BYTES_PROPERTY = "dfp.appengine.pageTargetBytes";
+
+  /** The payload size to aim for if the system property is not set. */
+  static final long DEFAULT_TARGET_PAGE_BYTES = 1024 * 1024;
+
+  /** System property that sets the largest page size to ask for when paging by keyset. */
+  static final String MAX_PAGE_LIMIT_PROPERTY = "dfp.appengine.maxPageLimit";
+
+  /** The largest page size if the system property is not set. */
+  static final int DEFAULT_MAX_PAGE_LIMIT = 1000;
+
+  /** The smallest page size to use. */
+  static final int MIN_PAGE_LIMIT = 50;
+
+  /**
+   * The largest page size to use when paging by offset, and the page size to start at. The API
+   * returns pages of this size in full.
+   */
+  static final int FULL_PAGE_LIMIT = StatementBuilder.SUGGESTED_PAGE_LIMIT;
+
+  /** How much weight a new observation has in the moving average. */
+  private static final double SMOOTHING_FACTOR = 0.3;
+
+  /** The controllers for each entity type and network. */
+  private static final ConcurrentMap<String, PageSizeController> CONTROLLERS =
+      new ConcurrentHashMap<String, PageSizeController>();
+
+  /** The latency to aim for with each API call. */
+  private final long targetLatencyMillis;
+
+  /** The payload size in bytes to aim for with each API call. */
+  private final long targetPageBytes;
+
+  /** The largest page size to ask for when paging by keyset. */
+  private final int maxPageLimit;
+
+  /** The moving average of milliseconds per row, or a negative value before the first page. */
+  private double millisPerRow = -1;
+
+  /** The moving average of bytes per row, or a negative value before the first sample. */
+  private double bytesPerRow = -1;
+
+  /** The page size to use for the next API call. */
+  private int pageLimit;
+
+  /**
+   * Constructor.
+   *
+   * @param targetLatencyMillis the latency to aim for with each API call
+   */
+  PageSizeController(long targetLatencyMillis) {
+    this(targetLatencyMillis, DEFAULT_TARGET_PAGE_BYTES, DEFAULT_MAX_PAGE_LIMIT);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param targetLatencyMillis the latency to aim for with each API call
+   * @param targetPageBytes the payload size in bytes to aim for with each API call
+   * @param maxPageLimit the largest page size to ask for when paging by keyset
+   */
+  PageSizeController(long targetLatencyMillis, long targetPageBytes, int maxPageLimit) {
+    Preconditions.checkArgument(targetLatencyMillis > 0, "Target latency must be positive.");
+    Preconditions.checkArgument(targetPageBytes > 0, "Target page bytes must be positive.");
+    Preconditions.checkArgument(maxPageLimit >= MIN_PAGE_LIMIT,
+        "Maximum page limit must be at least %s.", MIN_PAGE_LIMIT);
+    this.targetLatencyMillis = targetLatencyMillis;
+    this.targetPageBytes = targetPageBytes;
+    this.maxPageLimit = maxPageLimit;
+    this.pageLimit = Math.min(FULL_PAGE_LIMIT, maxPageLimit);
+  }
+
+  /**
+   * Gets the controller shared by all requests for an entity type in a network.
+   *
+   * @param entityType the type of entity being fetched, such as the tag of the objects
+   * @param networkCode the network the entities belong to
+   * @return the controller
+   */
+  static PageSizeController get(String entityType, String networkCode) {
+    String key = Strings.nullToEmpty(networkCode) + ":" + Strings.nullToEmpty(entityType);
+    PageSizeController controller = CONTROLLERS.get(key);
+    if (controller == null) {
+      CONTROLLERS.putIfAbsent(key, new PageSizeController(
+          Long.getLong(TARGET_LATENCY_PROPERTY, DEFAULT_TARGET_LATENCY_MILLIS),
+          Long.getLong(TARGET_PAGE_BYTES_PROPERTY, DEFAULT_TARGET_PAGE_BYTES),
+          Integer.getInteger(MAX_PAGE_LIMIT_PROPERTY, DEFAULT_MAX_PAGE_LIMIT)));
+      controller = CONTROLLERS.get(key);
+    }
+    return controller;
+  }
+
+  /**
+   * Gets the page size to use for the next API call when paging by keyset.
+   *
+   * @return the page size
+   */
+  synchronized int getPageLimit() {
+    return pageLimit;
+  }
+
+  /**
+   * Gets the page size to use for the next API call when paging by offset, which is never more
+   * than {@link #FULL_PAGE_LIMIT}.
+   *
+   * @return the page size
+   */
+  synchronized int getOffsetPageLimit() {
+    return Math.min(pageLimit, FULL_PAGE_LIMIT);
+  }
+
+  /**
+   * Records how long a page took to fetch and resizes the following pages. Only full pages are
+   * used, since the latency of the last page of a result set is mostly fixed overhead. A page of
+   * {@link #FULL_PAGE_LIMIT} rows counts as full even if more were asked for.
+   *
+   * @param limit the page size that was asked for
+   * @param rows the number of rows in the page
+   * @param latencyMillis how long the API call took
+   */
+  synchronized void recordPage(int limit, int rows, long latencyMillis) {
+    if (rows == 0 || rows < Math.min(limit, FULL_PAGE_LIMIT)) {
+      return;
+    }
+    double pageMillisPerRow = (double) latencyMillis / rows;
+    millisPerRow = millisPerRow < 0 ? pageMillisPerRow
+        : SMOOTHING_FACTOR * pageMillisPerRow + (1 - SMOOTHING_FACTOR) * millisPerRow;
+    updatePageLimit();
+  }
+
+  /**
+   * Records the size of a row as it is serialized into channel messages, and resizes the following
+   * pages.
+   *
+   * @param rowBytes the size of the row in bytes, which is ignored unless positive
+   */
+  synchronized void recordRowBytes(long rowBytes) {
+    if (rowBytes <= 0) {
+      return;
+    }
+    bytesPerRow = bytesPerRow < 0 ? rowBytes
+        : SMOOTHING_FACTOR * rowBytes + (1 - SMOOTHING_FACTOR) * bytesPerRow;
+    updatePageLimit();
+  }
+
+  /**
+   * Sets the page size to the largest one that meets both the latency and the payload target.
+   */
+  private void updatePageLimit() {
+    double limitForTargets = millisPerRow < 0 ? FULL_PAGE_LIMIT : maxPageLimit;
+    if (millisPerRow > 0) {
+      limitForTargets = Math.min(limitForTargets, targetLatencyMillis / millisPerRow);
+    }
+    if (bytesPerRow > 0) {
+      limitForTargets = Math.min(limitForTargets, targetPageBytes / bytesPerRow);
+    }
+    pageLimit = (int) Math.max(MIN_PAGE_LIMIT, Math.min(maxPageLimit, limitForTargets));
+  }
+}
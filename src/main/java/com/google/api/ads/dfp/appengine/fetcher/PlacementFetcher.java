@@ -30,13 +30,13 @@ import com.google.inject.Inject;
 public class PlacementFetcher extends AbstractFetcher {
 
   @Inject
-  public PlacementFetcher(DfpServices dfpServices, Channels channels) {
-    super(dfpServices, channels);
+  public PlacementFetcher(DfpServices dfpServices, Channels channels, FetchCursors fetchCursors) {
+    super(dfpServices, channels, fetchCursors);
   }
 
   public void fetch(String filterText, String channelKey, String tag, String requestId,
       DfpSession session) {
-    fetch(filterText, channelKey, tag, requestId,
+    fetch(filterText, channelKey, session.getNetworkCode(), tag, requestId,
         dfpServices.get(session, PlacementServiceInterface.class));
   }
 
@@ -45,12 +45,13 @@ public class PlacementFetcher extends AbstractFetcher {
    *
    * @param filterText the PQL syntax filter text to filter objects by
    * @param channelKey the key to send a message via the Channel API
+   * @param networkCode the network to fetch from
    * @param tag identifies that objects that are sent via the channel
    * @param requestId identifies the incoming data request
    * @param placementService used to fetch placements
    */
-  public void fetch(String filterText, String channelKey, String tag, String requestId,
-      final PlacementServiceInterface placementService) {
+  public void fetch(String filterText, String channelKey, String networkCode, String tag,
+      String requestId, final PlacementServiceInterface placementService) {
     // Create the page fetcher.
     PageFetcher pageFetcher = new PageFetcher() {
 
@@ -59,6 +60,6 @@ public class PlacementFetcher extends AbstractFetcher {
       }
     };
     // Fetch the objects.
-    fetchObjects(filterText, channelKey, tag, requestId, pageFetcher);
+    fetchObjects(filterText, channelKey, networkCode, tag, requestId, pageFetcher);
   }
 }
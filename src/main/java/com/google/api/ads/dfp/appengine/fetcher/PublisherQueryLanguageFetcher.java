@@ -15,30 +15,49 @@
 package com.google.api.ads.dfp.appengine.fetcher;
 
 import com.google.api.ads.dfp.appengine.util.Channels;
+import com.google.api.ads.dfp.appengine.util.RequestDeadline;
 import com.google.api.ads.dfp.jaxws.factory.DfpServices;
 import com.google.api.ads.dfp.jaxws.utils.v201403.Pql;
+import com.google.api.ads.dfp.jaxws.utils.v201403.StatementBuilder;
 import com.google.api.ads.dfp.jaxws.v201403.ApiException_Exception;
 import com.google.api.ads.dfp.jaxws.v201403.PublisherQueryLanguageServiceInterface;
 import com.google.api.ads.dfp.jaxws.v201403.ResultSet;
+import com.google.api.ads.dfp.jaxws.v201403.Row;
 import com.google.api.ads.dfp.jaxws.v201403.Statement;
 import com.google.api.ads.dfp.lib.client.DfpSession;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 
 import java.util.List;
 import java.util.logging.Level;
+import java.util.regex.Pattern;
 
 /**
  * A class to make API requests to fetch publisher query language table results.
  *
+ * Queries without a LIMIT or OFFSET clause are paged with LIMIT and OFFSET, and each page of rows
+ * is sent through the channel as soon as it arrives, so only one page is held in memory. The
+ * column labels are only sent with the first page, since the panel makes its first row the table
+ * header.
+ *
  * @author Jeff Sham
  */
 public class PublisherQueryLanguageFetcher extends AbstractFetcher {
 
+  /** The number of rows to select in each page. */
+  static final int PAGE_LIMIT = StatementBuilder.SUGGESTED_PAGE_LIMIT;
+
+  /** Matches the semicolons and whitespace that end a query. */
+  private static final Pattern QUERY_END = Pattern.compile("[\\s;]+$");
+
+  /** Reports how much time the request has left. */
+  private final RequestDeadline requestDeadline = new RequestDeadline();
+
   @Inject
   public PublisherQueryLanguageFetcher(
-      DfpServices dfpServices, Channels channels) {
-    super(dfpServices, channels);
+      DfpServices dfpServices, Channels channels, FetchCursors fetchCursors) {
+    super(dfpServices, channels, fetchCursors);
   }
 
   public void fetch(String filterText, String channelKey, String tag, String requestId,
@@ -48,7 +67,8 @@ public class PublisherQueryLanguageFetcher extends AbstractFetcher {
   }
 
   /**
-   * Fetch publisher query language table results.
+   * Fetch publisher query language table results. Exceptions are handled by logging and sending
+   * error messages back to the user through the channel.
    *
    * @param filterText the PQL syntax filter text to filter objects by
    * @param channelKey the key to send a message via the Channel API
@@ -60,15 +80,20 @@ public class PublisherQueryLanguageFetcher extends AbstractFetcher {
   void fetch(String filterText, String channelKey, String tag, String requestId,
       final PublisherQueryLanguageServiceInterface pqlService) {
     try {
-      // Create statement with filter.
-      Statement filterStatement = new Statement();
-      filterStatement.setQuery(filterText);
+      // Only make a single call if there is a limit or offset.
+      if (filterTextHasLimitOrOffset(filterText)) {
+        // Create statement with filter.
+        Statement filterStatement = new Statement();
+        filterStatement.setQuery(filterText);
 
-      // Make select request.
-      ResultSet resultSet = pqlService.select(filterStatement);
-      List<String[]> stringResult = Pql.resultSetToStringArrayList(resultSet);
+        // Make select request.
+        ResultSet resultSet = pqlService.select(filterStatement);
+        List<String[]> stringResult = Pql.resultSetToStringArrayList(resultSet);
 
-      channels.sendObjects(channelKey, stringResult, tag, requestId);
+        channels.sendObjects(channelKey, stringResult, tag, requestId);
+      } else {
+        fetchPages(filterText, channelKey, tag, requestId, pqlService);
+      }
     } catch (ApiException_Exception e) {
       channels.sendErrorChannelMessage(channelKey, tag, requestId, e.getMessage());
     } catch (Exception e) {
@@ -76,4 +101,68 @@ public class PublisherQueryLanguageFetcher extends AbstractFetcher {
       log.log(Level.SEVERE, "Error fetching objects.", e);
     }
   }
+
+  /**
+   * Pages through the query results with LIMIT and OFFSET, sending each page of rows as soon as it
+   * is selected. The fetch starts from the saved cursor of the request, stops between pages if the
+   * request is cancelled, and is suspended at its cursor if the request is close to its deadline.
+   *
+   * @param query the PQL select statement without a LIMIT or OFFSET clause
+   * @param channelKey the key to send a message via the Channel API
+   * @param tag identifies that objects that are sent via the channel
+   * @param requestId identifies the incoming data request
+   * @param pqlService used to fetch tables
+   * @throws ApiException_Exception if a page cannot be selected
+   */
+  private void fetchPages(String query, String channelKey, String tag, String requestId,
+      PublisherQueryLanguageServiceInterface pqlService) throws ApiException_Exception {
+    FetchCursor cursor = fetchCursors.load(channelKey, tag, requestId);
+    int offset = (cursor == null || cursor.getOffset() == null) ? 0 : cursor.getOffset();
+    long continuationThresholdMillis = Long.getLong(
+        PagePipeline.CONTINUATION_THRESHOLD_PROPERTY,
+        PagePipeline.DEFAULT_CONTINUATION_THRESHOLD_MILLIS);
+    String pagedQuery = QUERY_END.matcher(query).replaceFirst("") + " LIMIT " + PAGE_LIMIT
+        + " OFFSET ";
+    int rowCount;
+    do {
+      if (channels.isCancelled(channelKey, tag, requestId)) {
+        log.log(Level.FINE, "Stopped fetching rows for cancelled request.");
+        return;
+      }
+      Statement pageStatement = new Statement();
+      pageStatement.setQuery(pagedQuery + offset);
+      ResultSet resultSet = pqlService.select(pageStatement);
+      rowCount = resultSet.getRows().size();
+      if (offset == 0) {
+        channels.sendObjects(
+            channelKey, Pql.resultSetToStringArrayList(resultSet), tag, requestId);
+      } else if (rowCount > 0) {
+        channels.sendObjects(channelKey, getRowStringValues(resultSet), tag, requestId);
+      }
+      offset += PAGE_LIMIT;
+      if (rowCount >= PAGE_LIMIT) {
+        fetchCursors.save(channelKey, tag, requestId, FetchCursor.ofOffset(offset));
+        if (requestDeadline.getRemainingMillis() < continuationThresholdMillis) {
+          log.log(Level.INFO, "Suspending fetch at offset " + offset + " before the deadline.");
+          fetchCursors.suspend(channelKey, tag, requestId, FetchCursor.ofOffset(offset));
+          return;
+        }
+      }
+    } while (rowCount >= PAGE_LIMIT);
+    fetchCursors.clear(channelKey, tag, requestId);
+  }
+
+  /**
+   * Converts the rows of a result set to strings, without the column labels.
+   *
+   * @param resultSet the result set
+   * @return the string values of each row
+   */
+  private static List<String[]> getRowStringValues(ResultSet resultSet) {
+    List<String[]> rows = Lists.newArrayList();
+    for (Row row : resultSet.getRows()) {
+      rows.add(Pql.getRowStringValues(row));
+    }
+    return rows;
+  }
 }
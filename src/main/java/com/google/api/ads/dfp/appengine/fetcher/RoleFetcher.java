@@ -32,8 +32,8 @@ import java.util.List;
 public class RoleFetcher extends AbstractFetcher {
 
   @Inject
-  public RoleFetcher(DfpServices dfpServices, Channels channels) {
-    super(dfpServices, channels);
+  public RoleFetcher(DfpServices dfpServices, Channels channels, FetchCursors fetchCursors) {
+    super(dfpServices, channels, fetchCursors);
   }
 
   public void fetch(String filterText, String channelKey, String tag, String requestId,
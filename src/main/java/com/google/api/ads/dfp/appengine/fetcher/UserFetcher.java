@@ -30,8 +30,8 @@ import com.google.inject.Inject;
 public class UserFetcher extends AbstractFetcher {
 
   @Inject
-  public UserFetcher(DfpServices dfpServices, Channels channels) {
-    super(dfpServices, channels);
+  public UserFetcher(DfpServices dfpServices, Channels channels, FetchCursors fetchCursors) {
+    super(dfpServices, channels, fetchCursors);
   }
 
   public void fetch(String filterText, String channelKey, String tag, String requestId,
@@ -47,6 +47,6 @@ public class UserFetcher extends AbstractFetcher {
       }
     };
     // Fetch the objects.
-    fetchObjects(filterText, channelKey, tag, requestId, pageFetcher);
+    fetchObjects(filterText, channelKey, session.getNetworkCode(), tag, requestId, pageFetcher);
   }
 }
@@ -14,18 +14,45 @@
 
 package com.google.api.ads.dfp.appengine.json;
 
+import com.google.api.ads.dfp.jaxws.v201403.AdUnit;
+import com.google.api.ads.dfp.jaxws.v201403.Company;
+import com.google.api.ads.dfp.jaxws.v201403.Creative;
+import com.google.api.ads.dfp.jaxws.v201403.CreativeTemplate;
+import com.google.api.ads.dfp.jaxws.v201403.CustomTargetingKey;
+import com.google.api.ads.dfp.jaxws.v201403.CustomTargetingValue;
+import com.google.api.ads.dfp.jaxws.v201403.LineItem;
+import com.google.api.ads.dfp.jaxws.v201403.LineItemCreativeAssociation;
+import com.google.api.ads.dfp.jaxws.v201403.Network;
+import com.google.api.ads.dfp.jaxws.v201403.Order;
+import com.google.api.ads.dfp.jaxws.v201403.Placement;
+import com.google.api.ads.dfp.jaxws.v201403.Role;
+import com.google.api.ads.dfp.jaxws.v201403.User;
+import com.google.common.collect.ImmutableList;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.inject.AbstractModule;
 
 /**
- * A module to configure a JSON serializer.
+ * A module to configure a JSON serializer. The entity classes the fetchers return are written
+ * with type adapters from a {@link PrecomputedTypeAdapterFactory}, which is built when the module
+ * is configured.
  *
  * @author Jeff Sham
  */
 public class GsonModule extends AbstractModule {
+
+  /** The entity classes the fetchers return. */
+  static final ImmutableList<Class<?>> ENTITY_CLASSES = ImmutableList.<Class<?>>of(
+      AdUnit.class, Company.class, Creative.class, CreativeTemplate.class,
+      CustomTargetingKey.class, CustomTargetingValue.class, LineItem.class,
+      LineItemCreativeAssociation.class, Network.class, Order.class, Placement.class, Role.class,
+      User.class);
+
   @Override
   protected void configure() {
-    bind(Gson.class).toInstance(new GsonBuilder().serializeNulls().create());
+    bind(Gson.class).toInstance(new GsonBuilder()
+        .serializeNulls()
+        .registerTypeAdapterFactory(new PrecomputedTypeAdapterFactory(ENTITY_CLASSES))
+        .create());
   }
 }
@@ -0,0 +1,365 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.json;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.internal.bind.ReflectiveTypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Creates type adapters for DFP entity classes from field plans that are built when the factory
+ * is created, in place of Gson's reflective adapters. The reflective adapters wrap every field
+ * value in a new runtime type adapter and look up the adapter of its class each time an object is
+ * written, which adds up over the thousands of entities a fetch sends.
+ *
+ * The plans follow the same rules as Gson's defaults, so the output is the same: fields are
+ * written in declaration order, the class's own fields before its superclasses', static,
+ * transient and synthetic fields are left out, and a value is written with the adapter of its
+ * runtime class when that is more specific than the field's declared type. The factory must not
+ * be used with a Gson that names or excludes fields some other way.
+ *
+ * The factory handles the given classes and the other classes in their packages, such as the
+ * value types of entity fields and the subclasses of abstract entities. Reading JSON is left to
+ * the reflective adapters, and classes whose fields use type variables are left to them too.
+ */
+public final class PrecomputedTypeAdapterFactory implements TypeAdapterFactory {
+
+  /**
+   * Marks a class that is left to the reflective adapters. It is compared by identity, so it is
+   * not the shared empty list that classes without fields get.
+   */
+  private static final List<FieldPlan> UNSUPPORTED =
+      Collections.unmodifiableList(Lists.<FieldPlan>newArrayList());
+
+  private final Set<String> packageNames;
+  private final ConcurrentMap<Class<?>, List<FieldPlan>> plans =
+      new ConcurrentHashMap<Class<?>, List<FieldPlan>>();
+
+  /**
+   * Constructor. Builds the plans of the given classes and of the classes their fields refer to.
+   *
+   * @param classes the entity classes to create type adapters for
+   */
+  public PrecomputedTypeAdapterFactory(Collection<Class<?>> classes) {
+    Set<String> names = Sets.newHashSet();
+    for (Class<?> type : classes) {
+      names.add(getPackageName(type));
+    }
+    packageNames = ImmutableSet.copyOf(names);
+    Deque<Class<?>> pending = Lists.newLinkedList(classes);
+    while (!pending.isEmpty()) {
+      Class<?> type = pending.removeFirst();
+      if (!handles(type) || plans.containsKey(type)) {
+        continue;
+      }
+      for (FieldPlan fieldPlan : getPlan(type)) {
+        addReferencedClasses(fieldPlan.type, pending);
+      }
+    }
+  }
+
+  @Override
+  public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+    if (!(typeToken.getType() instanceof Class) || !handles(typeToken.getRawType())) {
+      return null;
+    }
+    List<FieldPlan> plan = getPlan(typeToken.getRawType());
+    if (plan == UNSUPPORTED) {
+      return null;
+    }
+    List<BoundField> boundFields = Lists.newArrayListWithCapacity(plan.size());
+    for (FieldPlan fieldPlan : plan) {
+      boundFields.add(new BoundField(gson, fieldPlan));
+    }
+    return new Adapter<T>(gson, this, typeToken, boundFields);
+  }
+
+  /**
+   * Checks if a class is one the factory creates type adapters for.
+   */
+  private boolean handles(Class<?> type) {
+    return !type.isPrimitive() && !type.isArray() && !type.isInterface() && !type.isEnum()
+        && packageNames.contains(getPackageName(type));
+  }
+
+  /**
+   * Gets the plan of a class, building it the first time.
+   *
+   * @param type the class
+   * @return the fields to write, or {@link #UNSUPPORTED} if the class is left to the reflective
+   *     adapters
+   */
+  private List<FieldPlan> getPlan(Class<?> type) {
+    List<FieldPlan> plan = plans.get(type);
+    if (plan == null) {
+      plan = buildPlan(type);
+      plans.putIfAbsent(type, plan);
+    }
+    return plan;
+  }
+
+  /**
+   * Builds the plan of a class the way Gson binds its fields.
+   */
+  private static List<FieldPlan> buildPlan(Class<?> type) {
+    if (type.getTypeParameters().length > 0) {
+      return UNSUPPORTED;
+    }
+    Map<String, FieldPlan> fieldPlans = Maps.newLinkedHashMap();
+    for (Class<?> raw = type; raw != Object.class; raw = raw.getSuperclass()) {
+      if (!(raw.getGenericSuperclass() instanceof Class)) {
+        return UNSUPPORTED;
+      }
+      for (Field field : raw.getDeclaredFields()) {
+        if (isExcluded(field)) {
+          continue;
+        }
+        if (!isResolved(field.getGenericType())) {
+          return UNSUPPORTED;
+        }
+        field.setAccessible(true);
+        FieldPlan fieldPlan = new FieldPlan(field, getFieldName(field));
+        if (fieldPlans.put(fieldPlan.name, fieldPlan) != null) {
+          // Gson rejects the class, so leave it to say why.
+          return UNSUPPORTED;
+        }
+      }
+    }
+    return ImmutableList.copyOf(fieldPlans.values());
+  }
+
+  /**
+   * Checks if Gson's default exclusion rules leave a field out.
+   */
+  private static boolean isExcluded(Field field) {
+    if ((field.getModifiers() & (Modifier.STATIC | Modifier.TRANSIENT)) != 0
+        || field.isSynthetic()) {
+      return true;
+    }
+    Class<?> fieldType = field.getType();
+    return !Enum.class.isAssignableFrom(fieldType)
+        && (fieldType.isAnonymousClass() || fieldType.isLocalClass());
+  }
+
+  /**
+   * Checks if a field type is made only of classes, so it does not depend on the type the field
+   * is read through.
+   */
+  private static boolean isResolved(Type type) {
+    if (type instanceof Class) {
+      return true;
+    }
+    if (!(type instanceof ParameterizedType)) {
+      return false;
+    }
+    for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+      if (!isResolved(argument)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets the JSON name of a field.
+   */
+  private static String getFieldName(Field field) {
+    SerializedName serializedName = field.getAnnotation(SerializedName.class);
+    return serializedName == null ? field.getName() : serializedName.value();
+  }
+
+  /**
+   * Adds the classes a field type refers to, so their plans are built up front too.
+   */
+  private static void addReferencedClasses(Type type, Deque<Class<?>> pending) {
+    if (type instanceof Class) {
+      pending.add((Class<?>) type);
+    } else if (type instanceof ParameterizedType) {
+      for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+        addReferencedClasses(argument, pending);
+      }
+    }
+  }
+
+  /**
+   * Gets the name of the package of a class.
+   */
+  private static String getPackageName(Class<?> type) {
+    String name = type.getName();
+    int index = name.lastIndexOf('.');
+    return index < 0 ? "" : name.substring(0, index);
+  }
+
+  /**
+   * A field to write and the name to write it with.
+   */
+  private static final class FieldPlan {
+    final Field field;
+    final String name;
+    final Type type;
+
+    /**
+     * Whether values are always written with the adapter of the declared type. Gson only looks
+     * at the runtime class of values of fields declared with a class, and the runtime class of
+     * a primitive or final class has the same adapter as the declared one.
+     */
+    final boolean fixedType;
+
+    FieldPlan(Field field, String name) {
+      this.field = field;
+      this.name = name;
+      this.type = field.getGenericType();
+      Class<?> rawType = field.getType();
+      this.fixedType = !(type instanceof Class) || rawType.isPrimitive()
+          || Modifier.isFinal(rawType.getModifiers());
+    }
+  }
+
+  /**
+   * A field of a class with the adapter of its declared type, and the adapter of the runtime
+   * class its values last had.
+   */
+  private static final class BoundField {
+    private final Gson gson;
+    private final Field field;
+    private final String name;
+    private final Class<?> rawType;
+    private final boolean fixedType;
+    private final TypeAdapter<Object> declaredAdapter;
+    private volatile RuntimeAdapter lastRuntimeAdapter;
+
+    @SuppressWarnings("unchecked")
+    BoundField(Gson gson, FieldPlan plan) {
+      this.gson = gson;
+      this.field = plan.field;
+      this.name = plan.name;
+      this.rawType = plan.field.getType();
+      this.fixedType = plan.fixedType;
+      this.declaredAdapter = (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(plan.type));
+    }
+
+    void write(JsonWriter out, Object object) throws IOException, IllegalAccessException {
+      Object value = field.get(object);
+      TypeAdapter<Object> adapter = declaredAdapter;
+      if (!fixedType && value != null && value.getClass() != rawType) {
+        adapter = getRuntimeAdapter(value.getClass());
+      }
+      out.name(name);
+      adapter.write(out, value);
+    }
+
+    /**
+     * Gets the adapter for a value of a more specific class than the declared type, choosing
+     * between the two adapters the way Gson does.
+     */
+    @SuppressWarnings("unchecked")
+    private TypeAdapter<Object> getRuntimeAdapter(Class<?> runtimeClass) {
+      RuntimeAdapter last = lastRuntimeAdapter;
+      if (last != null && last.runtimeClass == runtimeClass) {
+        return last.adapter;
+      }
+      TypeAdapter<Object> adapter = (TypeAdapter<Object>) gson.getAdapter(runtimeClass);
+      if (adapter instanceof ReflectiveTypeAdapterFactory.Adapter
+          && !(declaredAdapter instanceof ReflectiveTypeAdapterFactory.Adapter)) {
+        adapter = declaredAdapter;
+      }
+      lastRuntimeAdapter = new RuntimeAdapter(runtimeClass, adapter);
+      return adapter;
+    }
+  }
+
+  /**
+   * An adapter for values of a runtime class.
+   */
+  private static final class RuntimeAdapter {
+    final Class<?> runtimeClass;
+    final TypeAdapter<Object> adapter;
+
+    RuntimeAdapter(Class<?> runtimeClass, TypeAdapter<Object> adapter) {
+      this.runtimeClass = runtimeClass;
+      this.adapter = adapter;
+    }
+  }
+
+  /**
+   * Writes objects of a class field by field, and reads them with the reflective adapter.
+   */
+  private static final class Adapter<T> extends TypeAdapter<T> {
+    private final Gson gson;
+    private final TypeAdapterFactory factory;
+    private final TypeToken<T> typeToken;
+    private final List<BoundField> boundFields;
+    private volatile TypeAdapter<T> readAdapter;
+
+    Adapter(Gson gson, TypeAdapterFactory factory, TypeToken<T> typeToken,
+        List<BoundField> boundFields) {
+      this.gson = gson;
+      this.factory = factory;
+      this.typeToken = typeToken;
+      this.boundFields = boundFields;
+    }
+
+    @Override
+    public void write(JsonWriter out, T value) throws IOException {
+      if (value == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      try {
+        for (BoundField boundField : boundFields) {
+          boundField.write(out, value);
+        }
+      } catch (IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+      out.endObject();
+    }
+
+    @Override
+    public T read(JsonReader in) throws IOException {
+      TypeAdapter<T> adapter = readAdapter;
+      if (adapter == null) {
+        adapter = gson.getDelegateAdapter(factory, typeToken);
+        readAdapter = adapter;
+      }
+      return adapter.read(in);
+    }
+  }
+}
@@ -0,0 +1,275 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.api.ads.dfp.appengine.oauth;
+
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.auth.oauth2.CredentialStore;
+import com.google.api.client.auth.oauth2.StoredCredential;
+import com.google.api.client.extensions.appengine.auth.oauth2.AppEngineCredentialStore;
+import com.google.api.client.util.Clock;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A credential store that caches the credentials of another store, in memory on each instance
+ * and in memcache across instances. Credentials that are stored or deleted are written through to
+ * the other store and to both caches, so credentials are only read from the other store when they
+ * are in neither cache.
+ *
+ * Another instance may refresh or delete a credential that is cached in memory on this one, and
+ * only memcache sees the change. Credentials are therefore only kept in memory for a short while,
+ * and only served from memory while their access token is valid for longer than the
+ * {@link CredentialFactory} refreshes ahead of expiration. A credential that is loaded because its
+ * access token is about to expire comes from memcache, where the refreshes of other instances
+ * show.
+ *
+ * A credential read from the other store is only added to memcache if memcache holds nothing for
+ * the user, so a load that overlaps with a store or delete cannot put back the older credential.
+ * A deleted credential is marked as deleted in memcache for a while for the same reason.
+ */
+@Singleton
+public class CachingCredentialStore implements CredentialStore {
+
+  static final Logger log = Logger.getLogger(CachingCredentialStore.class.getName());
+
+  /** Prefix of the memcache keys of credentials. */
+  static final String MEMCACHE_PREFIX = "credential:";
+
+  /** The number of seconds a credential is kept in memcache. */
+  static final int MEMCACHE_SECONDS = 60 * 60;
+
+  /** The value memcache holds for a deleted credential. */
+  static final String DELETED = "deleted";
+
+  /** The number of seconds a credential is marked as deleted, which is longer than a load takes. */
+  static final int DELETED_SECONDS = 60;
+
+  /** The number of seconds a credential is kept in memory. */
+  static final long MEMORY_SECONDS = 60;
+
+  /** The maximum number of credentials to keep in memory. */
+  static final int MAX_CACHED_CREDENTIALS = 1000;
+
+  private final CredentialStore credentialStore;
+  private final MemcacheService memcacheService;
+  private final Clock clock;
+  private final Cache<String, StoredCredential> credentials = CacheBuilder.newBuilder()
+      .maximumSize(MAX_CACHED_CREDENTIALS)
+      .expireAfterWrite(MEMORY_SECONDS, TimeUnit.SECONDS)
+      .build();
+  private final AtomicLong loadCount = new AtomicLong();
+  private final AtomicLong storeLoadCount = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param credentialStore the store of credentials in the App Engine Datastore
+   * @param memcacheService the App Engine caching service
+   */
+  @Inject
+  public CachingCredentialStore(AppEngineCredentialStore credentialStore,
+      MemcacheService memcacheService) {
+    this((CredentialStore) credentialStore, memcacheService, Clock.SYSTEM);
+  }
+
+  @VisibleForTesting
+  CachingCredentialStore(CredentialStore credentialStore, MemcacheService memcacheService,
+      Clock clock) {
+    this.credentialStore = credentialStore;
+    this.memcacheService = memcacheService;
+    this.clock = clock;
+  }
+
+  public boolean load(String userId, Credential credential) throws IOException {
+    loadCount.incrementAndGet();
+    StoredCredential stored = credentials.getIfPresent(userId);
+    if (stored == null || !isFresh(stored)) {
+      Object cached = getFromMemcache(userId);
+      if (DELETED.equals(cached)) {
+        credentials.invalidate(userId);
+        return false;
+      }
+      stored = (StoredCredential) cached;
+      if (stored == null) {
+        storeLoadCount.incrementAndGet();
+        if (!credentialStore.load(userId, credential)) {
+          return false;
+        }
+        stored = new StoredCredential(credential);
+        if (!addToMemcache(userId, stored)) {
+          // The credential was stored or deleted since it was read, which the next load sees.
+          return true;
+        }
+      }
+      credentials.put(userId, stored);
+    }
+    credential.setAccessToken(stored.getAccessToken());
+    credential.setRefreshToken(stored.getRefreshToken());
+    credential.setExpirationTimeMilliseconds(stored.getExpirationTimeMilliseconds());
+    return true;
+  }
+
+  public void store(String userId, Credential credential) throws IOException {
+    try {
+      credentialStore.store(userId, credential);
+    } catch (IOException e) {
+      invalidate(userId);
+      throw e;
+    }
+    StoredCredential stored = new StoredCredential(credential);
+    credentials.put(userId, stored);
+    putInMemcache(userId, stored);
+  }
+
+  public void delete(String userId, Credential credential) throws IOException {
+    credentials.invalidate(userId);
+    markDeleted(userId);
+    try {
+      credentialStore.delete(userId, credential);
+    } catch (IOException e) {
+      invalidate(userId);
+      throw e;
+    }
+    // A load on this instance may have read the credential before it was deleted.
+    credentials.invalidate(userId);
+  }
+
+  /**
+   * Gets the number of credentials that were loaded.
+   */
+  public long getLoadCount() {
+    return loadCount.get();
+  }
+
+  /**
+   * Gets the number of credentials that were in neither cache and were read from the other
+   * store.
+   */
+  public long getStoreLoadCount() {
+    return storeLoadCount.get();
+  }
+
+  /**
+   * Removes the credential of a user from both caches. A credential that cannot be removed from
+   * memcache is left to expire there.
+   *
+   * @param userId the App Engine assigned user ID
+   */
+  private void invalidate(String userId) {
+    credentials.invalidate(userId);
+    try {
+      memcacheService.delete(MEMCACHE_PREFIX + userId);
+    } catch (RuntimeException e) {
+      log.log(Level.WARNING, "Cannot remove cached credential.", e);
+    }
+  }
+
+  /**
+   * Gets the credential of a user from memcache. Memcache errors are logged and treated as a
+   * miss, so that credentials are still loaded without memcache.
+   *
+   * @param userId the App Engine assigned user ID
+   * @return the cached credential, {@link #DELETED} if it was deleted, or {@code null} if there
+   *     is none
+   */
+  private Object getFromMemcache(String userId) {
+    try {
+      return memcacheService.get(MEMCACHE_PREFIX + userId);
+    } catch (RuntimeException e) {
+      log.log(Level.WARNING, "Cannot get cached credential.", e);
+      return null;
+    }
+  }
+
+  /**
+   * Puts the credential of a user in memcache. If that fails, the credential is removed so that
+   * an older one is not served in its place.
+   *
+   * @param userId the App Engine assigned user ID
+   * @param stored the credential
+   */
+  private void putInMemcache(String userId, StoredCredential stored) {
+    try {
+      memcacheService.put(MEMCACHE_PREFIX + userId, stored,
+          Expiration.byDeltaSeconds(MEMCACHE_SECONDS));
+    } catch (RuntimeException e) {
+      log.log(Level.WARNING, "Cannot cache credential.", e);
+      invalidate(userId);
+    }
+  }
+
+  /**
+   * Adds a credential read from the other store to memcache, unless memcache already holds a
+   * credential for the user or marks it as deleted. If memcache fails, the credential is removed
+   * as if it had been put.
+   *
+   * @param userId the App Engine assigned user ID
+   * @param stored the credential
+   * @return whether nothing was stored or deleted since the credential was read
+   */
+  private boolean addToMemcache(String userId, StoredCredential stored) {
+    try {
+      return memcacheService.put(MEMCACHE_PREFIX + userId, stored,
+          Expiration.byDeltaSeconds(MEMCACHE_SECONDS), SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+    } catch (RuntimeException e) {
+      log.log(Level.WARNING, "Cannot cache credential.", e);
+      invalidate(userId);
+      return true;
+    }
+  }
+
+  /**
+   * Marks the credential of a user as deleted in memcache, or removes it from memcache if it
+   * cannot be marked.
+   *
+   * @param userId the App Engine assigned user ID
+   */
+  private void markDeleted(String userId) {
+    try {
+      memcacheService.put(MEMCACHE_PREFIX + userId, DELETED,
+          Expiration.byDeltaSeconds(DELETED_SECONDS));
+    } catch (RuntimeException e) {
+      log.log(Level.WARNING, "Cannot mark credential as deleted.", e);
+      invalidate(userId);
+    }
+  }
+
+  /**
+   * Checks if a credential kept in memory can be served from there, i.e. if its access token is
+   * valid for longer than credentials are refreshed ahead of expiration.
+   *
+   * @param stored the credential
+   * @return whether the credential can be served from memory
+   */
+  private boolean isFresh(StoredCredential stored) {
+    Long expirationTimeMillis = stored.getExpirationTimeMilliseconds();
+    return stored.getAccessToken() != null && expirationTimeMillis != null
+        && expirationTimeMillis - clock.currentTimeMillis()
+            > TimeUnit.SECONDS.toMillis(CredentialFactory.REFRESH_AHEAD_SECONDS);
+  }
+}
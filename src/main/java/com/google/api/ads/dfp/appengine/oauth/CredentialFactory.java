@@ -16,41 +16,132 @@ package com.google.api.ads.dfp.appengine.oauth;
 
 import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.auth.oauth2.CredentialStore;
+import com.google.api.client.auth.oauth2.CredentialStoreRefreshListener;
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.JsonFactory;
+import com.google.api.client.util.Clock;
+import com.google.api.client.util.Sleeper;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 
 import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Factory for creating OAuth2 credentials.
  *
+ * Credentials are cached for each user and reused until shortly before their access token
+ * expires. A user without a usable cached credential gets the one in the credential store, which
+ * is only refreshed if its access token is about to expire too. Refreshed tokens are written back
+ * to the store, so other instances can use them without refreshing them again.
+ *
+ * Only one credential of a user is loaded at a time on an instance, whether for a request or for
+ * a background refresh, and callers that ask for it while it is loading wait for that load. Across
+ * instances, a refresh takes a lease in memcache. An instance that finds the lease taken waits for
+ * the stored credential to be refreshed by the lease holder, and only refreshes it itself if that
+ * takes too long.
+ *
+ * The credentials of active users are refreshed in the background before they expire, by tasks
+ * that the {@link CredentialRefreshSchedule} schedules whenever a credential is loaded. Users who
+ * have been idle for a while are no longer refreshed, and refresh their credential on demand once
+ * they are back.
+ *
  * @author Jeff Sham
  */
+@Singleton
 public class CredentialFactory {
 
+  static final Logger log = Logger.getLogger(CredentialFactory.class.getName());
+
+  /** How long before its access token expires that a credential is no longer used as is. */
+  static final long EXPIRY_MARGIN_SECONDS = 5 * 60;
+
+  /** How long before its access token expires that a credential is refreshed in the background. */
+  static final long REFRESH_AHEAD_SECONDS = 15 * 60;
+
+  /** The maximum number of users to cache a credential for. */
+  static final int MAX_CACHED_CREDENTIALS = 1000;
+
+  /** Prefix of the memcache keys for refresh leases. */
+  static final String LEASE_PREFIX = "credentialRefreshLease:";
+
+  /** The number of seconds a refresh lease is held for if it is not released. */
+  static final int LEASE_SECONDS = 30;
+
+  /** How long to wait for the holder of a refresh lease before refreshing anyway. */
+  static final long LEASE_WAIT_MILLIS = 5000;
+
+  /** How often to check the stored credential while another instance refreshes it. */
+  static final long LEASE_POLL_MILLIS = 250;
+
   private final String clientId;
   private final String clientSecret;
   private final CredentialStore credentialStore;
   private final HttpTransport httpTransport;
   private final JsonFactory jsonFactory;
+  private final MemcacheService memcacheService;
+  private final CredentialRefreshSchedule refreshSchedule;
+  private final Clock clock;
+  private final Sleeper sleeper;
+  private final Cache<String, Credential> credentials =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_CREDENTIALS).build();
+  private final ConcurrentMap<String, FutureTask<Credential>> loads =
+      new ConcurrentHashMap<String, FutureTask<Credential>>();
+  private final AtomicLong requestCount = new AtomicLong();
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong coalescedCount = new AtomicLong();
+  private final AtomicLong refreshCount = new AtomicLong();
+  private final AtomicLong leaseWaitCount = new AtomicLong();
+  private final AtomicLong backgroundRefreshCount = new AtomicLong();
+  private final AtomicLong idleCount = new AtomicLong();
 
   @Inject
   public CredentialFactory(CredentialStore credentialStore, HttpTransport httpTransport,
-      JsonFactory jsonFactory, @Named("clientId") String clientId,
+      JsonFactory jsonFactory, MemcacheService memcacheService,
+      CredentialRefreshSchedule refreshSchedule, @Named("clientId") String clientId,
       @Named("clientSecret") String clientSecret) {
+    this(credentialStore, httpTransport, jsonFactory, memcacheService, refreshSchedule, clientId,
+        clientSecret, Clock.SYSTEM, Sleeper.DEFAULT);
+  }
+
+  @VisibleForTesting
+  CredentialFactory(CredentialStore credentialStore, HttpTransport httpTransport,
+      JsonFactory jsonFactory, MemcacheService memcacheService,
+      CredentialRefreshSchedule refreshSchedule, String clientId, String clientSecret, Clock clock,
+      Sleeper sleeper) {
     this.clientId = clientId;
     this.clientSecret = clientSecret;
     this.credentialStore = credentialStore;
     this.httpTransport = httpTransport;
     this.jsonFactory = jsonFactory;
+    this.memcacheService = memcacheService;
+    this.refreshSchedule = refreshSchedule;
+    this.clock = clock;
+    this.sleeper = sleeper;
   }
 
   /**
-   * Fetch the OAuth2 credential from the App Engine Datastore.
+   * Gets the OAuth2 credential of a user, from the cache if its access token is not about to
+   * expire, or from the credential store otherwise. A stored credential is refreshed if its
+   * access token is about to expire.
    *
    * @param userId the App Engine assigned user ID
    * @return the oAuth2 credential
@@ -59,22 +150,300 @@ public class CredentialFactory {
   public Credential getInstance(String userId) throws CredentialException {
     Preconditions.checkNotNull(clientId);
     Preconditions.checkNotNull(clientSecret);
-    GoogleCredential credential = new GoogleCredential.Builder()
+    requestCount.incrementAndGet();
+    refreshSchedule.recordUse(userId);
+    Credential credential = credentials.getIfPresent(userId);
+    if (credential != null && isUsable(credential, EXPIRY_MARGIN_SECONDS)) {
+      hitCount.incrementAndGet();
+      return credential;
+    }
+    return loadOnce(userId, false);
+  }
+
+  /**
+   * Refreshes the credential of a user ahead of the expiration of its access token, if the user
+   * is active. A credential that another instance has already refreshed is only loaded.
+   *
+   * @param userId the App Engine assigned user ID
+   * @return whether the user is active
+   * @throws CredentialException if the credential cannot be obtained
+   */
+  public boolean refreshAhead(String userId) throws CredentialException {
+    if (!refreshSchedule.isActive(userId)) {
+      idleCount.incrementAndGet();
+      log.log(Level.FINE, "Not refreshing the credential of an idle user.");
+      return false;
+    }
+    loadOnce(userId, true);
+    return true;
+  }
+
+  /**
+   * Loads the credential of a user, unless a load of it is already running on this instance, in
+   * which case that load is waited for. A background refresh that waits for a load on the request
+   * path, which may leave the access token expiring sooner than it needs, runs again once that
+   * load is done, and then finds the loaded credential cached.
+   *
+   * @param userId the App Engine assigned user ID
+   * @param inBackground whether the credential is refreshed ahead of expiration rather than for a
+   *     request
+   * @return the oAuth2 credential
+   * @throws CredentialException if the credential cannot be obtained
+   */
+  private Credential loadOnce(final String userId, final boolean inBackground)
+      throws CredentialException {
+    while (true) {
+      FutureTask<Credential> load = new FutureTask<Credential>(new Callable<Credential>() {
+        public Credential call() throws CredentialException {
+          return load(userId, inBackground);
+        }
+      });
+      FutureTask<Credential> inFlight = loads.putIfAbsent(userId, load);
+      if (inFlight == null) {
+        try {
+          load.run();
+        } finally {
+          loads.remove(userId, load);
+        }
+        return getLoaded(load);
+      }
+      coalescedCount.incrementAndGet();
+      Credential credential = getLoaded(inFlight);
+      if (!inBackground || isUsable(credential, REFRESH_AHEAD_SECONDS)) {
+        return credential;
+      }
+    }
+  }
+
+  /**
+   * Waits for a load of a credential to finish.
+   *
+   * @param load the load
+   * @return the loaded credential
+   * @throws CredentialException if the credential cannot be obtained
+   */
+  private static Credential getLoaded(FutureTask<Credential> load) throws CredentialException {
+    try {
+      return load.get();
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), CredentialException.class);
+      throw new CredentialException("Credential cannot be loaded.", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CredentialException("Interrupted while waiting for the credential.", e);
+    }
+  }
+
+  /**
+   * Loads the credential of a user from the store, refreshes it if its access token is about to
+   * expire, caches it and schedules its next refresh.
+   *
+   * @param userId the App Engine assigned user ID
+   * @param inBackground whether the credential is refreshed ahead of expiration rather than for a
+   *     request
+   * @return the oAuth2 credential
+   * @throws CredentialException if the credential cannot be obtained
+   */
+  private Credential load(String userId, boolean inBackground) throws CredentialException {
+    long minExpiresInSeconds = inBackground ? REFRESH_AHEAD_SECONDS : EXPIRY_MARGIN_SECONDS;
+    // A load that finished just before this one started may have cached the credential.
+    Credential cached = credentials.getIfPresent(userId);
+    if (cached != null && isUsable(cached, minExpiresInSeconds)) {
+      return cached;
+    }
+    Credential credential = new GoogleCredential.Builder()
         .setJsonFactory(jsonFactory)
         .setTransport(httpTransport)
         .setClientSecrets(clientId, clientSecret)
+        .setClock(clock)
+        .addRefreshListener(new CredentialStoreRefreshListener(userId, credentialStore))
         .build();
     try {
       credentialStore.load(userId, credential);
-      try {
-        credential.refreshToken();
-      } catch (IOException e) {
-        credentialStore.delete(userId, credential);
-        throw new CredentialException("Credential cannot be refreshed.", e);
+      if (!isUsable(credential, minExpiresInSeconds)) {
+        refresh(userId, credential, minExpiresInSeconds, inBackground);
       }
     } catch (IOException e) {
       throw new CredentialException("Credential cannot be loaded.", e);
     }
+    if (isUsable(credential, EXPIRY_MARGIN_SECONDS)) {
+      credentials.put(userId, credential);
+      refreshSchedule.schedule(userId, credential.getExpirationTimeMilliseconds(),
+          TimeUnit.SECONDS.toMillis(REFRESH_AHEAD_SECONDS));
+    }
     return credential;
   }
+
+  /**
+   * Refreshes a credential under the user's refresh lease. If another instance holds the lease,
+   * the stored credential is reloaded until that instance has refreshed it, or until the wait is
+   * over, in which case the credential is refreshed anyway.
+   *
+   * @param userId the App Engine assigned user ID
+   * @param credential the credential loaded from the store
+   * @param minExpiresInSeconds how long the access token must be valid for to not be refreshed
+   * @param inBackground whether the credential is refreshed ahead of expiration
+   * @throws IOException if the credential cannot be reloaded or deleted
+   * @throws CredentialException if the credential cannot be refreshed
+   */
+  private void refresh(String userId, Credential credential, long minExpiresInSeconds,
+      boolean inBackground) throws IOException, CredentialException {
+    String leaseKey = LEASE_PREFIX + userId;
+    boolean leased = acquireLease(leaseKey);
+    long waitEnd = clock.currentTimeMillis() + LEASE_WAIT_MILLIS;
+    while (!leased && clock.currentTimeMillis() < waitEnd) {
+      try {
+        sleeper.sleep(LEASE_POLL_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CredentialException("Interrupted while waiting for the credential.", e);
+      }
+      credentialStore.load(userId, credential);
+      if (isUsable(credential, minExpiresInSeconds)) {
+        leaseWaitCount.incrementAndGet();
+        return;
+      }
+      leased = acquireLease(leaseKey);
+    }
+    try {
+      credential.refreshToken();
+    } catch (IOException e) {
+      try {
+        credentialStore.delete(userId, credential);
+      } finally {
+        invalidate(userId);
+      }
+      throw new CredentialException("Credential cannot be refreshed.", e);
+    } finally {
+      if (leased) {
+        releaseLease(leaseKey);
+      }
+    }
+    (inBackground ? backgroundRefreshCount : refreshCount).incrementAndGet();
+    log.log(Level.FINE, "Refreshed credential. " + getStats());
+  }
+
+  /**
+   * Takes a refresh lease. Memcache errors are logged and the lease is treated as taken, so that
+   * credentials can still be refreshed without memcache.
+   *
+   * @param leaseKey the memcache key of the lease
+   * @return whether the lease was taken
+   */
+  private boolean acquireLease(String leaseKey) {
+    try {
+      return memcacheService.put(leaseKey, Boolean.TRUE, Expiration.byDeltaSeconds(LEASE_SECONDS),
+          SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+    } catch (RuntimeException e) {
+      log.log(Level.WARNING, "Cannot take credential refresh lease.", e);
+      return true;
+    }
+  }
+
+  /**
+   * Releases a refresh lease. Memcache errors are logged, and the lease expires on its own.
+   *
+   * @param leaseKey the memcache key of the lease
+   */
+  private void releaseLease(String leaseKey) {
+    try {
+      memcacheService.delete(leaseKey);
+    } catch (RuntimeException e) {
+      log.log(Level.WARNING, "Cannot release credential refresh lease.", e);
+    }
+  }
+
+  /**
+   * Removes the cached credential of a user, so that the next credential of the user is loaded
+   * from the store. This is called whenever the stored credential is replaced or deleted.
+   *
+   * @param userId the App Engine assigned user ID
+   */
+  public void invalidate(String userId) {
+    credentials.invalidate(userId);
+  }
+
+  /**
+   * Gets the number of credentials that were asked for.
+   */
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  /**
+   * Gets the number of credentials that were served from the cache.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Gets the number of credentials that were served by a load that another caller started.
+   */
+  public long getCoalescedCount() {
+    return coalescedCount.get();
+  }
+
+  /**
+   * Gets the number of credentials that were refreshed.
+   */
+  public long getRefreshCount() {
+    return refreshCount.get();
+  }
+
+  /**
+   * Gets the number of credentials that were refreshed in the background.
+   */
+  public long getBackgroundRefreshCount() {
+    return backgroundRefreshCount.get();
+  }
+
+  /**
+   * Gets the number of background refreshes that were skipped because the user was idle.
+   */
+  public long getIdleCount() {
+    return idleCount.get();
+  }
+
+  /**
+   * Gets the number of credentials that were refreshed by another instance while this one
+   * waited for its refresh lease.
+   */
+  public long getLeaseWaitCount() {
+    return leaseWaitCount.get();
+  }
+
+  /**
+   * Gets the number of refreshes saved, i.e. the number of credentials that were served without
+   * being refreshed on the request path, which used to happen every time.
+   */
+  public long getRefreshesSaved() {
+    return getRequestCount() - getRefreshCount();
+  }
+
+  /**
+   * Describes the cache hit rate and the refreshes saved.
+   */
+  String getStats() {
+    long requests = getRequestCount();
+    long hits = getHitCount();
+    return hits + " of " + requests + " credentials served from the cache ("
+        + (requests == 0 ? 0 : hits * 100 / requests) + "%), " + getCoalescedCount()
+        + " waited for another load, " + getLeaseWaitCount() + " for another instance, "
+        + getRefreshesSaved() + " refreshes saved, " + getBackgroundRefreshCount()
+        + " refreshed in the background, " + getIdleCount() + " idle users dropped.";
+  }
+
+  /**
+   * Checks if a credential has an access token that is valid for long enough.
+   *
+   * @param credential the credential
+   * @param minExpiresInSeconds how long the access token must be valid for
+   * @return whether the credential can be used without refreshing it
+   */
+  private static boolean isUsable(Credential credential, long minExpiresInSeconds) {
+    Long expiresInSeconds = credential.getExpiresInSeconds();
+    return credential.getAccessToken() != null && expiresInSeconds != null
+        && expiresInSeconds > minExpiresInSeconds;
+  }
 }
@@ -0,0 +1,154 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.oauth;
+
+import static com.google.appengine.api.taskqueue.TaskOptions.Builder.withUrl;
+
+import com.google.api.client.util.Clock;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.TaskAlreadyExistsException;
+import com.google.appengine.api.taskqueue.TaskOptions.Method;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of the users who have used their credential recently, and schedules the tasks that
+ * refresh their credentials before they expire.
+ *
+ * A user is active while their key in memcache has not expired. The key is written when the user's
+ * credential is used, at most once a minute on each instance, and expires after the user has been
+ * idle for a while. A refresh task is scheduled for each access token a credential is loaded
+ * with. The task is named after the user and the expiration time of the token, so the instances
+ * that load the same token schedule it only once.
+ */
+@Singleton
+public class CredentialRefreshSchedule {
+
+  static final Logger log = Logger.getLogger(CredentialRefreshSchedule.class.getName());
+
+  /** The URL of the refresh task. */
+  public static final String REFRESH_URL = "/refreshcredential";
+
+  /** The request parameter of the refresh task that holds the user ID. */
+  public static final String USER_ID_PARAM = "userId";
+
+  /** Prefix of the memcache keys that mark users as active. */
+  static final String ACTIVE_PREFIX = "credentialActive:";
+
+  /** The number of seconds after their last use that a user is no longer active. */
+  static final int IDLE_SECONDS = 30 * 60;
+
+  /** How often each instance records the use of a user's credential. */
+  static final long USE_RECORD_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  /** The maximum number of users to remember the last recorded use of. */
+  static final int MAX_RECORDED_USERS = 1000;
+
+  /** Prefix of the names of refresh tasks. */
+  private static final String TASK_NAME_PREFIX = "credential-refresh-";
+
+  private final MemcacheService memcacheService;
+  private final Queue queue;
+  private final Clock clock;
+  private final Cache<String, Long> recordedUses =
+      CacheBuilder.newBuilder().maximumSize(MAX_RECORDED_USERS).build();
+
+  /**
+   * Constructor.
+   *
+   * @param memcacheService the App Engine caching service
+   * @param queue the queue to add refresh tasks to
+   */
+  @Inject
+  public CredentialRefreshSchedule(MemcacheService memcacheService, Queue queue) {
+    this(memcacheService, queue, Clock.SYSTEM);
+  }
+
+  @VisibleForTesting
+  CredentialRefreshSchedule(MemcacheService memcacheService, Queue queue, Clock clock) {
+    this.memcacheService = memcacheService;
+    this.queue = queue;
+    this.clock = clock;
+  }
+
+  /**
+   * Records that a user's credential was used, which keeps the user active.
+   *
+   * @param userId the App Engine assigned user ID
+   */
+  public void recordUse(String userId) {
+    long now = clock.currentTimeMillis();
+    Long recorded = recordedUses.getIfPresent(userId);
+    if (recorded != null && now - recorded < USE_RECORD_INTERVAL_MILLIS) {
+      return;
+    }
+    recordedUses.put(userId, now);
+    try {
+      memcacheService.put(ACTIVE_PREFIX + userId, now, Expiration.byDeltaSeconds(IDLE_SECONDS));
+    } catch (RuntimeException e) {
+      log.log(Level.WARNING, "Cannot record credential use.", e);
+    }
+  }
+
+  /**
+   * Checks if a user has used their credential recently. Users are treated as idle if memcache
+   * cannot be reached, so that their credentials are refreshed on demand instead.
+   *
+   * @param userId the App Engine assigned user ID
+   * @return whether the user is active
+   */
+  public boolean isActive(String userId) {
+    try {
+      return memcacheService.contains(ACTIVE_PREFIX + userId);
+    } catch (RuntimeException e) {
+      log.log(Level.WARNING, "Cannot check credential use.", e);
+      return false;
+    }
+  }
+
+  /**
+   * Schedules the refresh of a user's credential ahead of the expiration of its access token.
+   *
+   * @param userId the App Engine assigned user ID
+   * @param expirationTimeMillis when the access token expires, in milliseconds since the epoch
+   * @param refreshAheadMillis how long before the access token expires to refresh it
+   */
+  public void schedule(String userId, long expirationTimeMillis, long refreshAheadMillis) {
+    String taskName = TASK_NAME_PREFIX
+        + Hashing.murmur3_128().hashString(userId, Charsets.UTF_8) + "-" + expirationTimeMillis;
+    try {
+      queue.add(withUrl(REFRESH_URL)
+          .param(USER_ID_PARAM, userId)
+          .taskName(taskName)
+          .etaMillis(Math.max(clock.currentTimeMillis(), expirationTimeMillis - refreshAheadMillis))
+          .method(Method.GET));
+    } catch (TaskAlreadyExistsException e) {
+      // Another instance loaded the same token and scheduled its refresh.
+    } catch (RuntimeException e) {
+      log.log(Level.WARNING, "Cannot schedule credential refresh.", e);
+    }
+  }
+}
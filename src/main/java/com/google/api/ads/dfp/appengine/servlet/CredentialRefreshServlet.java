@@ -0,0 +1,62 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.servlet;
+
+import com.google.api.ads.dfp.appengine.oauth.CredentialException;
+import com.google.api.ads.dfp.appengine.oauth.CredentialFactory;
+import com.google.api.ads.dfp.appengine.oauth.CredentialRefreshSchedule;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Handles the tasks that refresh the credentials of active users before they expire, so their
+ * requests do not wait for a refresh.
+ */
+@Singleton
+@SuppressWarnings("serial")
+public class CredentialRefreshServlet extends HttpServlet {
+
+  static final Logger log = Logger.getLogger(CredentialRefreshServlet.class.getName());
+
+  private final CredentialFactory credentialFactory;
+
+  /**
+   * Constructor.
+   *
+   * @param credentialFactory used to refresh the credential
+   */
+  @Inject
+  public CredentialRefreshServlet(CredentialFactory credentialFactory) {
+    this.credentialFactory = credentialFactory;
+  }
+
+  @Override
+  public void doGet(HttpServletRequest req, HttpServletResponse resp) {
+    String userId = req.getParameter(CredentialRefreshSchedule.USER_ID_PARAM);
+    try {
+      credentialFactory.refreshAhead(userId);
+    } catch (CredentialException e) {
+      // The user is asked to authorize again on their next request, so the task is not retried.
+      log.log(Level.WARNING, "Credential cannot be refreshed ahead of expiry.", e);
+    }
+  }
+}
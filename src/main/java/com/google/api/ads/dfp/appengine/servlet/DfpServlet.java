@@ -14,13 +14,27 @@
 
 package com.google.api.ads.dfp.appengine.servlet;
 
+import static com.google.appengine.api.taskqueue.TaskOptions.Builder.withUrl;
+
+import com.google.api.ads.dfp.appengine.fetcher.FetchCursor;
+import com.google.api.ads.dfp.appengine.fetcher.FetchCursors;
 import com.google.api.ads.dfp.appengine.fetcher.FetchService;
 import com.google.api.ads.dfp.appengine.fetcher.Fetcher;
 import com.google.api.ads.dfp.appengine.fetcher.FetcherFactory;
 import com.google.api.ads.dfp.appengine.fetcher.ServiceException;
+import com.google.api.ads.dfp.appengine.util.ChannelOptions;
+import com.google.api.ads.dfp.appengine.util.ChannelOutboxes;
+import com.google.api.ads.dfp.appengine.util.Channels;
+import com.google.api.ads.dfp.appengine.util.DeltaTracker;
+import com.google.api.ads.dfp.appengine.util.FieldProjection;
+import com.google.api.ads.dfp.appengine.util.PanelSnapshots;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.appengine.api.taskqueue.TaskOptions.Method;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
+import java.util.Enumeration;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,7 +43,16 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
- * Base servlet for all DFP entity requests.
+ * Base servlet for all DFP entity requests. A fetch that is suspended before the request deadline
+ * is continued by enqueueing another task with the cursor to resume from. The cursor is also kept
+ * in memcache, so a retried task resumes after the last page it sent.
+ *
+ * The wire format and fields the client asked for are registered in {@link ChannelOptions} while
+ * the fetch runs, and the fetch's messages are sent through an outbox that is flushed before the
+ * request returns.
+ *
+ * A client that passes the ID of the last request whose results it has for the panel only gets
+ * the entities that changed since, based on the snapshot in {@link PanelSnapshots}.
  *
  * @author Jeff Sham
  */
@@ -39,11 +62,36 @@ public class DfpServlet extends HttpServlet {
   static final Logger log = Logger.getLogger(DfpServlet.class.getName());
   private final FetcherFactory fetcherFactory;
   private final FetchService fetchService;
+  private final FetchCursors fetchCursors;
+  private final ChannelOptions channelOptions;
+  private final ChannelOutboxes channelOutboxes;
+  private final Channels channels;
+  private final PanelSnapshots panelSnapshots;
+
+  /** The parameter that holds the cursor of a continuation task. */
+  static final String CURSOR_PARAM = "cursor";
+
+  /**
+   * The parameter that holds the ID of the last request whose results the client has for the
+   * panel. Only the changes since are sent if it is present, and it is empty if the client has no
+   * results yet.
+   */
+  static final String BASE_REQUEST_ID_PARAM = "baseReqId";
+
+  /** The value of the compression parameter that asks for deflated messages. */
+  static final String COMPRESSION_DEFLATE = "deflate";
 
   @Inject
-  public DfpServlet(FetcherFactory fetcherFactory, FetchService fetchService) {
+  public DfpServlet(FetcherFactory fetcherFactory, FetchService fetchService,
+      FetchCursors fetchCursors, ChannelOptions channelOptions, ChannelOutboxes channelOutboxes,
+      Channels channels, PanelSnapshots panelSnapshots) {
     this.fetcherFactory = fetcherFactory;
     this.fetchService = fetchService;
+    this.fetchCursors = fetchCursors;
+    this.channelOptions = channelOptions;
+    this.channelOutboxes = channelOutboxes;
+    this.channels = channels;
+    this.panelSnapshots = panelSnapshots;
   }
 
   @Override
@@ -55,13 +103,116 @@ public class DfpServlet extends HttpServlet {
     String typeOverride = req.getParameter("typeOverride");
     String userId = req.getParameter("userId");
     String requestId = req.getParameter("reqId");
+    String cursorText = req.getParameter(CURSOR_PARAM);
+    String baseRequestId = req.getParameter(BASE_REQUEST_ID_PARAM);
+    // A task without a cursor parameter that already has a saved cursor is a retry.
+    boolean resumed =
+        cursorText != null || fetchCursors.load(channelKey, tag, requestId) != null;
+    restoreCursor(cursorText, channelKey, tag, requestId);
+    channelOptions.setWireFormat(channelKey, tag, requestId,
+        ChannelOptions.WireFormat.fromParameter(req.getParameter("wireFormat")));
+    channelOptions.setFieldProjection(channelKey, tag, requestId,
+        FieldProjection.parse(req.getParameter("fields")));
+    channelOptions.setCompressed(channelKey, tag, requestId,
+        COMPRESSION_DEFLATE.equals(req.getParameter("compression")));
+    channelOutboxes.open(channelKey, tag, requestId);
+    FetchCursor cursor;
     try {
-      Fetcher fetcher = fetcherFactory.getInstance(tag, typeOverride);
+      String snapshotKey = null;
+      DeltaTracker deltaTracker = null;
+      if (baseRequestId != null) {
+        snapshotKey = PanelSnapshots.getSnapshotKey(userId, networkCode, tag, filterText,
+            req.getParameter("fields"), typeOverride);
+        if (resumed) {
+          deltaTracker = panelSnapshots.resume(snapshotKey, requestId);
+        } else {
+          deltaTracker = panelSnapshots.start(snapshotKey, baseRequestId);
+          channels.sendDeltaStartMessage(channelKey, tag, requestId, deltaTracker.isFull());
+        }
+        channelOptions.setDeltaTracker(channelKey, tag, requestId, deltaTracker);
+      }
+      try {
+        Fetcher fetcher = fetcherFactory.getInstance(tag, typeOverride);
         fetchService.fetch(fetcher, filterText, channelKey, networkCode, tag, requestId, userId);
+      } catch (IllegalArgumentException e) {
+        log.log(Level.WARNING, "Fetcher cannot be found.", e);
+        markFailed(deltaTracker);
+      } catch (ServiceException e) {
+        log.log(Level.SEVERE, "Error fetching with service.", e);
+        markFailed(deltaTracker);
+      }
+      cursor = fetchCursors.takeSuspended(channelKey, tag, requestId);
+      if (baseRequestId != null) {
+        finishDelta(channelKey, tag, requestId, snapshotKey, deltaTracker, cursor != null);
+      }
+    } finally {
+      channelOutboxes.close(channelKey, tag, requestId);
+      channelOptions.clear(channelKey, tag, requestId);
+    }
+    if (cursor != null) {
+      enqueueContinuation(req, cursor);
+    }
+  }
+
+  /**
+   * Saves the state of a panel refresh once its fetch has stopped. The tracker of a suspended
+   * fetch is kept for the continuation task. Otherwise the snapshot is saved for the next refresh
+   * and the client is told which entities to remove, or that the refresh is incomplete if it
+   * failed or some of its entities were not tracked.
+   */
+  private void finishDelta(String channelKey, String tag, String requestId, String snapshotKey,
+      DeltaTracker deltaTracker, boolean suspended) {
+    if (deltaTracker != null && suspended) {
+      panelSnapshots.suspend(snapshotKey, requestId, deltaTracker);
+    } else if (suspended || channels.isCancelled(channelKey, tag, requestId)) {
+      return;
+    } else if (deltaTracker == null || deltaTracker.isFailed()) {
+      channels.sendDeltaSyncMessage(channelKey, tag, requestId, null);
+    } else {
+      panelSnapshots.finish(snapshotKey, requestId, deltaTracker);
+      channels.sendDeltaSyncMessage(channelKey, tag, requestId, deltaTracker.getRemovedIds());
+      log.log(Level.FINE, "Refreshed " + tag + " panel: " + deltaTracker + ".");
+    }
+  }
+
+  /**
+   * Marks a panel refresh as failed, if the request is one.
+   */
+  private static void markFailed(DeltaTracker deltaTracker) {
+    if (deltaTracker != null) {
+      deltaTracker.markFailed();
+    }
+  }
+
+  /**
+   * Saves the cursor passed to a continuation task, in case memcache has evicted it. A cursor that
+   * is already saved is newer, since it was saved by a retry of this task.
+   */
+  private void restoreCursor(String cursorText, String channelKey, String tag,
+      String requestId) {
+    if (cursorText == null) {
+      return;
+    }
+    try {
+      fetchCursors.restore(channelKey, tag, requestId, FetchCursor.parse(cursorText));
     } catch (IllegalArgumentException e) {
-      log.log(Level.WARNING, "Fetcher cannot be found.", e);
-    } catch (ServiceException e) {
-      log.log(Level.SEVERE, "Error fetching with service.", e);
+      log.log(Level.WARNING, "Ignoring invalid cursor.", e);
+    }
+  }
+
+  /**
+   * Enqueues a task with the same parameters as the request to continue the fetch from the cursor.
+   */
+  @SuppressWarnings("unchecked")
+  private void enqueueContinuation(HttpServletRequest req, FetchCursor cursor) {
+    TaskOptions taskOptions = withUrl("/fetch");
+    for (Enumeration<String> names = req.getParameterNames(); names.hasMoreElements();) {
+      String name = names.nextElement();
+      if (!CURSOR_PARAM.equals(name)) {
+        taskOptions.param(name, req.getParameter(name));
+      }
     }
+    taskOptions.param(CURSOR_PARAM, cursor.toString());
+    QueueFactory.getDefaultQueue().add(taskOptions.method(Method.GET));
   }
 }
@@ -0,0 +1,78 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.servlet;
+
+import com.google.api.ads.dfp.appengine.util.PushTransport;
+import com.google.api.ads.dfp.appengine.util.ServerSentEventsTransport;
+import com.google.appengine.api.users.UserService;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Streams the messages for the current user as server-sent events, if the application pushes
+ * messages with a {@link ServerSentEventsTransport}. A stream ends after a while and the browser
+ * reconnects, so no request is held open indefinitely.
+ */
+@Singleton
+@SuppressWarnings("serial")
+public class EventStreamServlet extends HttpServlet {
+
+  /** System property that sets how long an event stream runs. */
+  static final String STREAM_MILLIS_PROPERTY = "dfp.appengine.eventStreamMillis";
+
+  /** How long an event stream runs if the system property is not set. */
+  static final long DEFAULT_STREAM_MILLIS = 50000;
+
+  private final PushTransport pushTransport;
+  private final UserService userService;
+  private final long streamMillis;
+
+  /**
+   * Constructor.
+   *
+   * @param pushTransport the transport that messages are pushed through
+   * @param userService service to get the App Engine user entity
+   */
+  @Inject
+  public EventStreamServlet(PushTransport pushTransport, UserService userService) {
+    this.pushTransport = pushTransport;
+    this.userService = userService;
+    this.streamMillis = Long.getLong(STREAM_MILLIS_PROPERTY, DEFAULT_STREAM_MILLIS);
+  }
+
+  @Override
+  public void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+    if (!(pushTransport instanceof ServerSentEventsTransport)) {
+      resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    resp.setContentType("text/event-stream");
+    resp.setCharacterEncoding("UTF-8");
+    resp.setHeader("Cache-Control", "no-cache");
+    String channelKey = userService.getCurrentUser().getUserId();
+    try {
+      ((ServerSentEventsTransport) pushTransport).writeEvents(channelKey, resp.getWriter(),
+          System.currentTimeMillis() + streamMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
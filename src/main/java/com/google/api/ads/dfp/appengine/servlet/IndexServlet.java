@@ -18,9 +18,9 @@ import com.google.api.ads.common.lib.exception.ValidationException;
 import com.google.api.ads.dfp.appengine.oauth.AuthorizationCodeFlowFactory;
 import com.google.api.ads.dfp.appengine.oauth.CredentialException;
 import com.google.api.ads.dfp.appengine.util.Networks;
+import com.google.api.ads.dfp.appengine.util.PushTransport;
 import com.google.api.ads.dfp.jaxws.v201403.ApiException_Exception;
 import com.google.api.ads.dfp.jaxws.v201403.Network;
-import com.google.appengine.api.channel.ChannelService;
 import com.google.appengine.api.memcache.Expiration;
 import com.google.appengine.api.memcache.MemcacheService;
 import com.google.appengine.api.users.UserService;
@@ -58,7 +58,7 @@ public class IndexServlet extends AuthServlet {
 
   static final Logger log = Logger.getLogger(IndexServlet.class.getName());
   private final Networks networks;
-  private final ChannelService channelService;
+  private final PushTransport pushTransport;
   private final MemcacheService memcacheService;
   private final UserService userService;
   private final int expirationDelta;
@@ -66,7 +66,7 @@ public class IndexServlet extends AuthServlet {
   /**
    * Constructor.
    *
-   * @param channelService service for handling channel communication
+   * @param pushTransport the transport that messages are pushed to the browser through
    * @param networks used to get a list of networks
    * @param userService the App Engine service for user management
    * @param memcacheService the App Engine caching service
@@ -75,7 +75,7 @@ public class IndexServlet extends AuthServlet {
    * @param redirectUrl where to direct the user once authorization is done
    */
   @Inject
-  public IndexServlet(ChannelService channelService,
+  public IndexServlet(PushTransport pushTransport,
       Networks networks,
       UserService userService,
       MemcacheService memcacheService,
@@ -83,7 +83,7 @@ public class IndexServlet extends AuthServlet {
       AuthorizationCodeFlowFactory authorizationCodeFlowFactory,
       @Named("redirectUrl") String redirectUrl) {
     super(authorizationCodeFlowFactory, redirectUrl);
-    this.channelService = channelService;
+    this.pushTransport = pushTransport;
     this.networks = networks;
     this.memcacheService = memcacheService;
     this.userService = userService;
@@ -141,8 +141,9 @@ public class IndexServlet extends AuthServlet {
     req.setAttribute("logout_url", userService.createLogoutURL("/"));
     req.setAttribute("user", userService.getCurrentUser().getEmail());
     req.setAttribute("new_network_code", req.getParameter("newNetworkCode"));
-    String token = channelService.createChannel(userId);
+    String token = pushTransport.open(userId);
     req.setAttribute("channel_token", token);
+    req.setAttribute("push_transport", pushTransport.getName());
     requestDispatcher.forward(req, resp);
   }
 
@@ -15,11 +15,13 @@
 package com.google.api.ads.dfp.appengine.servlet;
 
 import com.google.api.ads.dfp.appengine.oauth.AuthorizationCodeFlowFactory;
+import com.google.api.ads.dfp.appengine.oauth.CredentialFactory;
 import com.google.api.client.auth.oauth2.AuthorizationCodeFlow;
 import com.google.api.client.auth.oauth2.AuthorizationCodeResponseUrl;
 import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.extensions.appengine.auth.oauth2.AbstractAppEngineAuthorizationCodeCallbackServlet;
 import com.google.api.client.http.GenericUrl;
+import com.google.appengine.api.users.UserService;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 
@@ -34,6 +36,9 @@ import javax.servlet.http.HttpServletResponse;
  * Holds information used in the authorization flow, such as which URL to redirect to on
  * success/failure.
  *
+ * The credential that the flow stores replaces the one cached by the {@link CredentialFactory}, so
+ * the cached credential is dropped once the new one is stored.
+ *
  * @author Jeff Sham
  */
 @Singleton
@@ -41,12 +46,17 @@ public class OAuth2CallbackServlet extends AbstractAppEngineAuthorizationCodeCal
 
   private static final Logger LOG = Logger.getLogger(OAuth2CallbackServlet.class.getName());
   private final AuthorizationCodeFlowFactory authorizationCodeFlowFactory;
+  private final CredentialFactory credentialFactory;
+  private final UserService userService;
   private final String redirectUrl;
 
   @Inject
   public OAuth2CallbackServlet(AuthorizationCodeFlowFactory authorizationCodeFlowFactory,
+      CredentialFactory credentialFactory, UserService userService,
       @Named("redirectUrl") String redirectUrl) {
     this.authorizationCodeFlowFactory = authorizationCodeFlowFactory;
+    this.credentialFactory = credentialFactory;
+    this.userService = userService;
     this.redirectUrl = redirectUrl;
   }
 
@@ -62,9 +72,15 @@ public class OAuth2CallbackServlet extends AbstractAppEngineAuthorizationCodeCal
     return url.build();
   }
 
+  @Override
+  protected String getUserId(HttpServletRequest req) {
+    return userService.getCurrentUser().getUserId();
+  }
+
   @Override
   protected void onSuccess(
       HttpServletRequest request, HttpServletResponse response, Credential credential) {
+    credentialFactory.invalidate(getUserId(request));
     try {
       response.sendRedirect("/dfp");
     } catch (IOException e) {
@@ -0,0 +1,72 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.servlet;
+
+import com.google.api.ads.dfp.appengine.util.InMemoryPushTransport;
+import com.google.api.ads.dfp.appengine.util.PushTransport;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves the counts of the messages pushed since the instance started, if the application keeps
+ * its messages in memory. Reading the counts before and after a load run gives the throughput of
+ * the requests, fetches and pushes on the instance, and whether any messages were dropped.
+ */
+@Singleton
+@SuppressWarnings("serial")
+public class PushStatsServlet extends HttpServlet {
+
+  private final PushTransport pushTransport;
+  private final Gson gson;
+
+  /**
+   * Constructor.
+   *
+   * @param pushTransport the transport that messages are pushed through
+   * @param gson the Gson to write the counts with
+   */
+  @Inject
+  public PushStatsServlet(PushTransport pushTransport, Gson gson) {
+    this.pushTransport = pushTransport;
+    this.gson = gson;
+  }
+
+  @Override
+  public void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+    if (!(pushTransport instanceof InMemoryPushTransport)) {
+      resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    InMemoryPushTransport transport = (InMemoryPushTransport) pushTransport;
+    resp.setContentType("application/json");
+    resp.setCharacterEncoding("UTF-8");
+    resp.setHeader("Cache-Control", "no-cache");
+    resp.getWriter().print(gson.toJson(ImmutableMap.<String, Object>builder()
+        .put("transport", transport.getName())
+        .put("channels", transport.getChannelCount())
+        .put("sent", transport.getSentCount())
+        .put("sentBytes", transport.getSentBytes())
+        .put("dropped", transport.getDroppedCount())
+        .build()));
+  }
+}
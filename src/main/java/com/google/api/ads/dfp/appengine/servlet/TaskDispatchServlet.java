@@ -16,11 +16,13 @@ package com.google.api.ads.dfp.appengine.servlet;
 
 import static com.google.appengine.api.taskqueue.TaskOptions.Builder.withUrl;
 
+import com.google.api.ads.dfp.appengine.util.CancellationRegistry;
 import com.google.appengine.api.taskqueue.Queue;
 import com.google.appengine.api.taskqueue.QueueFactory;
 import com.google.appengine.api.taskqueue.TaskOptions;
 import com.google.appengine.api.taskqueue.TaskOptions.Method;
 import com.google.appengine.api.users.UserService;
+import com.google.common.base.Strings;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
@@ -32,8 +34,8 @@ import javax.servlet.http.HttpServletResponse;
 
 /**
  * Handles all entity fetch requests and creates tasks for API requests. If a task is running to
- * fetch a type of entity and another request is made, the older task is deleted before adding the
- * new task.
+ * fetch a type of entity and another request is made, the new request is recorded as the latest
+ * for the panel so the older task stops at its next page.
  *
  * @author Jeff Sham
  */
@@ -42,15 +44,19 @@ import javax.servlet.http.HttpServletResponse;
 public class TaskDispatchServlet extends HttpServlet {
 
   private final UserService userService;
+  private final CancellationRegistry cancellationRegistry;
 
   /**
    * Constructor.
    *
    * @param userService service to get the App Engine user entity
+   * @param cancellationRegistry keeps track of the latest request for each panel
    */
   @Inject
-  public TaskDispatchServlet(UserService userService) {
+  public TaskDispatchServlet(UserService userService,
+      CancellationRegistry cancellationRegistry) {
     this.userService = userService;
+    this.cancellationRegistry = cancellationRegistry;
   }
 
   @Override
@@ -71,8 +77,16 @@ public class TaskDispatchServlet extends HttpServlet {
         .param("userId", userId)
         .param("tag", tag)
         .param("reqId", requestId)
-        .param("typeOverride", req.getParameter("typeOverride"));
+        .param("typeOverride", req.getParameter("typeOverride"))
+        .param("wireFormat", Strings.nullToEmpty(req.getParameter("wireFormat")))
+        .param("fields", Strings.nullToEmpty(req.getParameter("fields")))
+        .param("compression", Strings.nullToEmpty(req.getParameter("compression")));
+    String baseRequestId = req.getParameter("baseReqId");
+    if (baseRequestId != null) {
+      taskOptions.param("baseReqId", baseRequestId);
+    }
 
+    cancellationRegistry.setLatestRequest(channelKey, tag, requestId);
     queue.add(taskOptions.method(Method.GET));
     resp.getWriter().print(channelKey);
   }
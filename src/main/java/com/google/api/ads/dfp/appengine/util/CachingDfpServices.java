@@ -0,0 +1,161 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.api.ads.dfp.jaxws.factory.DfpServices;
+import com.google.api.ads.dfp.lib.client.DfpSession;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Singleton;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides DFP service stubs, building stubs only once for a session. Building a JAX-WS stub is
+ * expensive, and {@link Sessions} hands out the same session for a user and network until the
+ * user's credential changes, so the fetches of a user reuse the stubs of earlier fetches.
+ *
+ * JAX-WS does not promise that a stub can be called from several threads at once, and the pages
+ * of a fetch are fetched in parallel through the stub the fetcher got. The stub handed out is
+ * therefore a proxy over a pool of stubs, and each call takes a stub from the pool that no other
+ * thread is using, building a new one if there is none. Once the call is done the stub goes back
+ * to the pool, which keeps at most {@link #MAX_IDLE_STUBS} of them.
+ *
+ * Sessions are compared by identity. The stubs of a session are dropped once the session has not
+ * been used for the lifetime of a session in {@link Sessions}, by which time any fetch that still
+ * uses it has ended and {@link Sessions} hands out a new session for the user and network. The
+ * pools hold their session to build new stubs with, so the session could not be held weakly. The
+ * number of sessions with cached stubs is also capped.
+ */
+@Singleton
+public class CachingDfpServices extends DfpServices {
+
+  /** The maximum number of sessions to cache stubs for. */
+  static final int MAX_CACHED_SESSIONS = 1000;
+
+  /** The maximum number of unused stubs to keep for a session and service. */
+  static final int MAX_IDLE_STUBS = 8;
+
+  private final Cache<DfpSession, ConcurrentMap<Class<?>, Object>> stubs;
+
+  public CachingDfpServices() {
+    this(Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  CachingDfpServices(Ticker ticker) {
+    stubs = CacheBuilder.newBuilder()
+        .maximumSize(MAX_CACHED_SESSIONS)
+        .expireAfterAccess(Sessions.SESSION_LIFETIME_MINUTES, TimeUnit.MINUTES)
+        .ticker(ticker)
+        .build();
+  }
+
+  @Override
+  public <T> T get(DfpSession session, Class<T> interfaceClass) {
+    ConcurrentMap<Class<?>, Object> sessionStubs = stubs.getIfPresent(session);
+    if (sessionStubs == null) {
+      ConcurrentMap<Class<?>, Object> created = new ConcurrentHashMap<Class<?>, Object>();
+      sessionStubs = stubs.asMap().putIfAbsent(session, created);
+      if (sessionStubs == null) {
+        sessionStubs = created;
+      }
+    }
+    Object stub = sessionStubs.get(interfaceClass);
+    if (stub == null) {
+      Object created = Proxy.newProxyInstance(interfaceClass.getClassLoader(),
+          new Class<?>[] {interfaceClass}, new StubPool<T>(session, interfaceClass));
+      stub = sessionStubs.putIfAbsent(interfaceClass, created);
+      if (stub == null) {
+        stub = created;
+      }
+    }
+    return interfaceClass.cast(stub);
+  }
+
+  /**
+   * Builds a service stub.
+   *
+   * @param session the DFP session
+   * @param interfaceClass the interface of the service
+   * @return the stub
+   */
+  @VisibleForTesting
+  <T> T create(DfpSession session, Class<T> interfaceClass) {
+    return super.get(session, interfaceClass);
+  }
+
+  /**
+   * The stubs of a session and service, which are lent to one call at a time.
+   */
+  private class StubPool<T> implements InvocationHandler {
+
+    private final DfpSession session;
+    private final Class<T> interfaceClass;
+    private final Queue<T> idleStubs = new ConcurrentLinkedQueue<T>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    StubPool(DfpSession session, Class<T> interfaceClass) {
+      this.session = session;
+      this.interfaceClass = interfaceClass;
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+        return invokeObjectMethod(proxy, method, args);
+      }
+      T stub = idleStubs.poll();
+      if (stub == null) {
+        stub = create(session, interfaceClass);
+      } else {
+        idleCount.decrementAndGet();
+      }
+      try {
+        return method.invoke(stub, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      } finally {
+        if (idleCount.incrementAndGet() <= MAX_IDLE_STUBS) {
+          idleStubs.add(stub);
+        } else {
+          idleCount.decrementAndGet();
+        }
+      }
+    }
+
+    /**
+     * Answers the methods of {@link Object} for the proxy itself rather than for a stub.
+     */
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+      if (method.getName().equals("equals")) {
+        return proxy == args[0];
+      } else if (method.getName().equals("hashCode")) {
+        return System.identityHashCode(proxy);
+      }
+      return interfaceClass.getSimpleName() + " stubs";
+    }
+  }
+}
@@ -0,0 +1,131 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps track of the latest request for each panel of each client, so that tasks still working on
+ * an older request for the panel can stop early. Each panel only shows the results of its latest
+ * request, so the results of older requests would be thrown away by the client anyway.
+ *
+ * The latest request IDs are kept in memcache because tasks can run on any instance. Lookups are
+ * cached on the instance for a short interval, since they are made between every page and message.
+ */
+@Singleton
+public class CancellationRegistry {
+
+  /** Prefix of the memcache keys for the latest requests. */
+  static final String KEY_PREFIX = "latestRequest:";
+
+  /** The number of seconds to keep a panel's latest request in memcache. */
+  static final int EXPIRATION_SECONDS = 60 * 60;
+
+  /** How long a lookup is cached on the instance. */
+  static final long DEFAULT_CHECK_INTERVAL_MILLIS = 1000;
+
+  private final MemcacheService memcacheService;
+  private final long checkIntervalMillis;
+
+  /** The latest request IDs looked up on this instance, keyed by memcache key. */
+  private final ConcurrentMap<String, LatestRequest> latestRequests =
+      new ConcurrentHashMap<String, LatestRequest>();
+
+  /**
+   * Constructor.
+   *
+   * @param memcacheService the App Engine caching service
+   */
+  @Inject
+  public CancellationRegistry(MemcacheService memcacheService) {
+    this(memcacheService, DEFAULT_CHECK_INTERVAL_MILLIS);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param memcacheService the App Engine caching service
+   * @param checkIntervalMillis how long a lookup is cached on the instance
+   */
+  @VisibleForTesting
+  CancellationRegistry(MemcacheService memcacheService, long checkIntervalMillis) {
+    this.memcacheService = Preconditions.checkNotNull(memcacheService);
+    this.checkIntervalMillis = checkIntervalMillis;
+  }
+
+  /**
+   * Records a new request for a panel, which cancels any older requests for the panel.
+   *
+   * @param channelKey the key of the client making the request
+   * @param tag the panel making the request
+   * @param requestId the ID of the new request
+   */
+  public void setLatestRequest(String channelKey, String tag, String requestId) {
+    String key = getKey(channelKey, tag);
+    memcacheService.put(key, requestId, Expiration.byDeltaSeconds(EXPIRATION_SECONDS));
+    latestRequests.put(key, new LatestRequest(requestId, System.currentTimeMillis()));
+  }
+
+  /**
+   * Checks if a newer request has been made for the panel.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the panel that made the request
+   * @param requestId the ID of the request
+   * @return whether the request has been superseded by a newer one
+   */
+  public boolean isCancelled(String channelKey, String tag, String requestId) {
+    String key = getKey(channelKey, tag);
+    long now = System.currentTimeMillis();
+    LatestRequest latestRequest = latestRequests.get(key);
+    if (latestRequest == null || now - latestRequest.checkedAtMillis >= checkIntervalMillis) {
+      latestRequest = new LatestRequest((String) memcacheService.get(key), now);
+      latestRequests.put(key, latestRequest);
+    }
+    return latestRequest.requestId != null && !latestRequest.requestId.equals(requestId);
+  }
+
+  /**
+   * Gets the memcache key for a panel.
+   *
+   * @param channelKey the key of the client
+   * @param tag the panel
+   * @return the memcache key
+   */
+  private static String getKey(String channelKey, String tag) {
+    return KEY_PREFIX + channelKey + ":" + tag;
+  }
+
+  /**
+   * The latest request ID of a panel and when it was looked up.
+   */
+  private static class LatestRequest {
+    final String requestId;
+    final long checkedAtMillis;
+
+    LatestRequest(String requestId, long checkedAtMillis) {
+      this.requestId = requestId;
+      this.checkedAtMillis = checkedAtMillis;
+    }
+  }
+}
@@ -0,0 +1,204 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+import com.google.inject.Singleton;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the options a client chose for how the results of a request are sent through the channel.
+ * Options are set by the servlet that handles the request and are read by {@link Channels} while
+ * the request's results are sent on the same instance. Options are kept by the tag of the request,
+ * which {@link Channels} maps the tags of nested child objects back to.
+ */
+@Singleton
+public class ChannelOptions {
+
+  /**
+   * The encodings of objects in channel messages.
+   */
+  public enum WireFormat {
+    /** Each object is sent as a JSON object. */
+    JSON,
+
+    /**
+     * Objects are sent as positional rows under a header of field names, and string values are
+     * replaced with indexes into a table of the distinct strings in the message.
+     */
+    COLUMNAR;
+
+    /**
+     * Gets the wire format named by a request parameter.
+     *
+     * @param parameter the parameter value, such as {@code columnar}
+     * @return the wire format, or {@link #JSON} if the parameter does not name one
+     */
+    public static WireFormat fromParameter(String parameter) {
+      return "columnar".equalsIgnoreCase(parameter) ? COLUMNAR : JSON;
+    }
+  }
+
+  private final ConcurrentMap<String, WireFormat> wireFormats =
+      new ConcurrentHashMap<String, WireFormat>();
+  private final ConcurrentMap<String, FieldProjection> fieldProjections =
+      new ConcurrentHashMap<String, FieldProjection>();
+  private final ConcurrentMap<String, DeltaTracker> deltaTrackers =
+      new ConcurrentHashMap<String, DeltaTracker>();
+  private final Set<String> compressedRequests = Sets.newConcurrentHashSet();
+
+  /**
+   * Sets the wire format for the messages of a request.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the tag of the request
+   * @param requestId the ID of the request
+   * @param wireFormat the wire format
+   */
+  public void setWireFormat(String channelKey, String tag, String requestId,
+      WireFormat wireFormat) {
+    Preconditions.checkNotNull(wireFormat);
+    if (wireFormat == WireFormat.JSON) {
+      wireFormats.remove(getKey(channelKey, tag, requestId));
+    } else {
+      wireFormats.put(getKey(channelKey, tag, requestId), wireFormat);
+    }
+  }
+
+  /**
+   * Gets the wire format for the messages of a request.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the tag of the request
+   * @param requestId the ID of the request
+   * @return the wire format, which is {@link WireFormat#JSON} unless another one was set
+   */
+  public WireFormat getWireFormat(String channelKey, String tag, String requestId) {
+    WireFormat wireFormat = wireFormats.get(getKey(channelKey, tag, requestId));
+    return wireFormat == null ? WireFormat.JSON : wireFormat;
+  }
+
+  /**
+   * Sets the fields of the entities to send for a request.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the tag of the request
+   * @param requestId the ID of the request
+   * @param fieldProjection the fields to send, or {@code null} to send every field
+   */
+  public void setFieldProjection(String channelKey, String tag, String requestId,
+      FieldProjection fieldProjection) {
+    if (fieldProjection == null) {
+      fieldProjections.remove(getKey(channelKey, tag, requestId));
+    } else {
+      fieldProjections.put(getKey(channelKey, tag, requestId), fieldProjection);
+    }
+  }
+
+  /**
+   * Gets the fields of the entities to send for a request.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the tag of the request
+   * @param requestId the ID of the request
+   * @return the fields to send, or {@code null} if every field is sent
+   */
+  public FieldProjection getFieldProjection(String channelKey, String tag, String requestId) {
+    return fieldProjections.get(getKey(channelKey, tag, requestId));
+  }
+
+  /**
+   * Sets whether the messages of a request are compressed when that makes them smaller.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the tag of the request
+   * @param requestId the ID of the request
+   * @param compressed whether to compress messages
+   */
+  public void setCompressed(String channelKey, String tag, String requestId, boolean compressed) {
+    if (compressed) {
+      compressedRequests.add(getKey(channelKey, tag, requestId));
+    } else {
+      compressedRequests.remove(getKey(channelKey, tag, requestId));
+    }
+  }
+
+  /**
+   * Checks if the messages of a request are compressed when that makes them smaller.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the tag of the request
+   * @param requestId the ID of the request
+   * @return whether to compress messages
+   */
+  public boolean isCompressed(String channelKey, String tag, String requestId) {
+    return compressedRequests.contains(getKey(channelKey, tag, requestId));
+  }
+
+  /**
+   * Sets the tracker that filters out the entities the client already has for a request.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the tag of the request
+   * @param requestId the ID of the request
+   * @param deltaTracker the tracker, or {@code null} to send every entity
+   */
+  public void setDeltaTracker(String channelKey, String tag, String requestId,
+      DeltaTracker deltaTracker) {
+    if (deltaTracker == null) {
+      deltaTrackers.remove(getKey(channelKey, tag, requestId));
+    } else {
+      deltaTrackers.put(getKey(channelKey, tag, requestId), deltaTracker);
+    }
+  }
+
+  /**
+   * Gets the tracker that filters out the entities the client already has for a request.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the tag of the request
+   * @param requestId the ID of the request
+   * @return the tracker, or {@code null} if every entity is sent
+   */
+  public DeltaTracker getDeltaTracker(String channelKey, String tag, String requestId) {
+    return deltaTrackers.get(getKey(channelKey, tag, requestId));
+  }
+
+  /**
+   * Clears the options of a request once its results have been sent.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the tag of the request
+   * @param requestId the ID of the request
+   */
+  public void clear(String channelKey, String tag, String requestId) {
+    wireFormats.remove(getKey(channelKey, tag, requestId));
+    fieldProjections.remove(getKey(channelKey, tag, requestId));
+    deltaTrackers.remove(getKey(channelKey, tag, requestId));
+    compressedRequests.remove(getKey(channelKey, tag, requestId));
+  }
+
+  /**
+   * Gets the key of the options of a request. Panels that are loaded together can share a request
+   * ID, so the key includes the tag.
+   */
+  private static String getKey(String channelKey, String tag, String requestId) {
+    return channelKey + ":" + tag + ":" + requestId;
+  }
+}
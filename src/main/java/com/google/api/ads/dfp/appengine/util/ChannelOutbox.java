@@ -0,0 +1,196 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.appengine.api.channel.ChannelMessage;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends the channel messages of a fetch from a sender thread, so that the latency of each send is
+ * not added to the fetch loop. Messages are sent in the order they were queued. The queue is
+ * bounded, and a fetcher that queues a message while it is full waits for the sender to catch
+ * up.
+ *
+ * The sender can coalesce messages. Messages queued within a short window of each other are sent
+ * together, as long as they fit in the message byte budget, in a message of the form
+ * {@code {"messages":[...]}} that keeps each original message, and so its tag, in order. This
+ * merges the many small messages of nested fetches, which send every parent on its own.
+ */
+class ChannelOutbox {
+
+  static final Logger log = Logger.getLogger(ChannelOutbox.class.getName());
+
+  /** Marks the end of the queued messages. */
+  private static final Object END_OF_MESSAGES = new Object();
+
+  /** The number of bytes in a coalesced message without its messages or their separators. */
+  private static final int COALESCED_ENVELOPE_BYTES =
+      ("{\"" + Channels.MESSAGES_TAG + "\":[]}").length();
+
+  private final PushTransport pushTransport;
+  private final int messageByteBudget;
+  private final long coalesceWindowNanos;
+  private final BlockingQueue<Object> messages;
+  private final Thread senderThread;
+  private long sentCount;
+  private long coalescedCount;
+  private long waitNanos;
+
+  /**
+   * Constructor. The sender thread is started right away.
+   *
+   * @param pushTransport used to send the messages
+   * @param capacity the maximum number of messages that can wait to be sent
+   * @param messageByteBudget the maximum number of bytes in a coalesced message
+   * @param coalesceWindowMillis how long to wait for more messages to send with the first one, or
+   *     zero to send each message on its own
+   */
+  ChannelOutbox(PushTransport pushTransport, int capacity, int messageByteBudget,
+      long coalesceWindowMillis) {
+    Preconditions.checkArgument(capacity > 0, "Outbox capacity must be positive.");
+    Preconditions.checkArgument(coalesceWindowMillis >= 0, "Coalesce window cannot be negative.");
+    this.pushTransport = pushTransport;
+    this.messageByteBudget = messageByteBudget;
+    this.coalesceWindowNanos = TimeUnit.MILLISECONDS.toNanos(coalesceWindowMillis);
+    this.messages = new ArrayBlockingQueue<Object>(capacity);
+    this.senderThread = RequestThreads.getThreadFactory().newThread(new Runnable() {
+      public void run() {
+        drain();
+      }
+    });
+    senderThread.start();
+  }
+
+  /**
+   * Queues a message to be sent, waiting while the queue is full.
+   *
+   * @param message the message
+   * @throws InterruptedException if the calling thread is interrupted while waiting
+   */
+  void send(ChannelMessage message) throws InterruptedException {
+    if (!messages.offer(message)) {
+      long start = System.nanoTime();
+      messages.put(message);
+      synchronized (this) {
+        waitNanos += System.nanoTime() - start;
+      }
+    }
+  }
+
+  /**
+   * Waits for every queued message to be sent and stops the sender thread. Messages that are
+   * queued after the outbox is closed are not sent.
+   *
+   * @throws InterruptedException if the calling thread is interrupted while waiting
+   */
+  void close() throws InterruptedException {
+    try {
+      messages.put(END_OF_MESSAGES);
+      senderThread.join();
+    } catch (InterruptedException e) {
+      senderThread.interrupt();
+      throw e;
+    }
+    synchronized (this) {
+      log.log(Level.FINE, "Sent " + sentCount + " messages, " + coalescedCount
+          + " of them coalesced; fetchers waited "
+          + TimeUnit.NANOSECONDS.toMillis(waitNanos) + " ms for the outbox.");
+    }
+  }
+
+  /**
+   * Sends queued messages until the end of the queue is reached. Pending messages are sent once
+   * the coalesce window of the first one has passed, once the next message would not fit with
+   * them, or at the end of the queue.
+   */
+  private void drain() {
+    List<ChannelMessage> pending = Lists.newArrayList();
+    int pendingBytes = 0;
+    long windowEnd = 0;
+    try {
+      while (true) {
+        Object message = pending.isEmpty() ? messages.take()
+            : messages.poll(windowEnd - System.nanoTime(), TimeUnit.NANOSECONDS);
+        if (message == END_OF_MESSAGES) {
+          send(pending);
+          return;
+        }
+        if (message == null) {
+          send(pending);
+          pendingBytes = 0;
+          continue;
+        }
+        ChannelMessage channelMessage = (ChannelMessage) message;
+        int bytes = Channels.getUtf8Length(channelMessage.getMessage());
+        if (!pending.isEmpty() && COALESCED_ENVELOPE_BYTES + pendingBytes + pending.size() + bytes
+            > messageByteBudget) {
+          send(pending);
+          pendingBytes = 0;
+        }
+        if (pending.isEmpty()) {
+          windowEnd = System.nanoTime() + coalesceWindowNanos;
+        }
+        pending.add(channelMessage);
+        pendingBytes += bytes;
+        if (coalesceWindowNanos == 0) {
+          send(pending);
+          pendingBytes = 0;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Sends the pending messages, coalesced into one message if there is more than one, and clears
+   * the list. A message that fails to send is logged and skipped.
+   *
+   * @param pending the messages to send
+   */
+  private void send(List<ChannelMessage> pending) {
+    if (pending.isEmpty()) {
+      return;
+    }
+    ChannelMessage message = pending.get(0);
+    if (pending.size() > 1) {
+      List<String> parts = Lists.newArrayListWithCapacity(pending.size());
+      for (ChannelMessage part : pending) {
+        parts.add(part.getMessage());
+      }
+      message = new ChannelMessage(message.getClientId(),
+          "{\"" + Channels.MESSAGES_TAG + "\":[" + Joiner.on(',').join(parts) + "]}");
+    }
+    try {
+      pushTransport.send(message);
+      synchronized (this) {
+        sentCount += pending.size();
+        coalescedCount += pending.size() > 1 ? pending.size() : 0;
+      }
+    } catch (RuntimeException e) {
+      log.log(Level.SEVERE, "Error sending channel message.", e);
+    }
+    pending.clear();
+  }
+}
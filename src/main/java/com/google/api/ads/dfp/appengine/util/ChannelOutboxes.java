@@ -0,0 +1,171 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the outboxes of the fetches running on this instance. A fetch opens an outbox for its
+ * channel key, tag and request ID before it starts and closes it when it is done, which waits
+ * until everything it sent, including the final info or error message, has gone out.
+ *
+ * The outboxes share a bounded pool of senders. Each open outbox holds one of them until it is
+ * closed. A fetch that opens an outbox while every sender is busy gets none, and its messages are
+ * sent directly on the fetch thread, so the number of sender threads on the instance stays
+ * bounded however many fetches run. Sender threads cannot be kept between fetches, because App
+ * Engine threads belong to the request that created them. The sender of an outbox is therefore
+ * started by the request that opens it, and the outbox must be closed before that request
+ * returns.
+ */
+@Singleton
+public class ChannelOutboxes {
+
+  static final Logger log = Logger.getLogger(ChannelOutboxes.class.getName());
+
+  /** System property that sets the number of messages that can wait in an outbox. */
+  static final String CAPACITY_PROPERTY = "dfp.appengine.channelOutboxCapacity";
+
+  /** The outbox capacity if the system property is not set. */
+  static final int DEFAULT_CAPACITY = 4;
+
+  /** System property that sets how long an outbox waits for messages to coalesce. */
+  static final String COALESCE_WINDOW_PROPERTY = "dfp.appengine.channelCoalesceMillis";
+
+  /** The coalesce window if the system property is not set. */
+  static final long DEFAULT_COALESCE_WINDOW_MILLIS = 100;
+
+  /** System property that sets how many outboxes can have a sender at once. */
+  static final String MAX_SENDERS_PROPERTY = "dfp.appengine.channelSenderThreads";
+
+  /** The number of senders if the system property is not set. */
+  static final int DEFAULT_MAX_SENDERS = 4;
+
+  private final PushTransport pushTransport;
+  private final int capacity;
+  private final int messageByteBudget;
+  private final long coalesceWindowMillis;
+  private final Semaphore senders;
+  private final ConcurrentMap<String, ChannelOutbox> outboxes =
+      new ConcurrentHashMap<String, ChannelOutbox>();
+
+  @Inject
+  public ChannelOutboxes(PushTransport pushTransport) {
+    this(pushTransport, Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY),
+        Integer.getInteger(Channels.MESSAGE_BYTE_BUDGET_PROPERTY,
+            Channels.DEFAULT_MESSAGE_BYTE_BUDGET),
+        Long.getLong(COALESCE_WINDOW_PROPERTY, DEFAULT_COALESCE_WINDOW_MILLIS),
+        Integer.getInteger(MAX_SENDERS_PROPERTY, DEFAULT_MAX_SENDERS));
+  }
+
+  @VisibleForTesting
+  ChannelOutboxes(PushTransport pushTransport, int capacity, int messageByteBudget,
+      long coalesceWindowMillis, int maxSenders) {
+    Preconditions.checkArgument(maxSenders >= 0, "Sender count cannot be negative.");
+    this.pushTransport = pushTransport;
+    this.senders = new Semaphore(maxSenders);
+    this.capacity = capacity;
+    this.messageByteBudget = messageByteBudget;
+    this.coalesceWindowMillis = coalesceWindowMillis;
+  }
+
+  /**
+   * Opens an outbox for the messages of a request if a sender is free. Otherwise no outbox is
+   * opened, and the messages of the request are sent directly.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the tag of the request
+   * @param requestId the ID of the request
+   */
+  public void open(String channelKey, String tag, String requestId) {
+    String key = getKey(channelKey, tag, requestId);
+    ChannelOutbox previous = outboxes.remove(key);
+    if (previous != null) {
+      close(previous);
+    }
+    if (!senders.tryAcquire()) {
+      log.log(Level.FINE, "Every channel sender is busy, so messages of request " + requestId
+          + " are sent directly.");
+      return;
+    }
+    ChannelOutbox outbox;
+    try {
+      outbox = new ChannelOutbox(pushTransport, capacity, messageByteBudget, coalesceWindowMillis);
+    } catch (RuntimeException e) {
+      senders.release();
+      throw e;
+    }
+    previous = outboxes.put(key, outbox);
+    if (previous != null) {
+      close(previous);
+    }
+  }
+
+  /**
+   * Gets the open outbox for the messages of a request.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the tag of the request
+   * @param requestId the ID of the request
+   * @return the outbox, or {@code null} if none is open
+   */
+  ChannelOutbox get(String channelKey, String tag, String requestId) {
+    return outboxes.get(getKey(channelKey, tag, requestId));
+  }
+
+  /**
+   * Closes the outbox of a request once every message in it has been sent.
+   *
+   * @param channelKey the key of the client that made the request
+   * @param tag the tag of the request
+   * @param requestId the ID of the request
+   */
+  public void close(String channelKey, String tag, String requestId) {
+    ChannelOutbox outbox = outboxes.remove(getKey(channelKey, tag, requestId));
+    if (outbox != null) {
+      close(outbox);
+    }
+  }
+
+  /**
+   * Closes an outbox and frees its sender, keeping the interrupt status of the calling thread.
+   */
+  private void close(ChannelOutbox outbox) {
+    try {
+      outbox.close();
+    } catch (InterruptedException e) {
+      log.log(Level.WARNING, "Interrupted while flushing channel messages.", e);
+      Thread.currentThread().interrupt();
+    } finally {
+      senders.release();
+    }
+  }
+
+  /**
+   * Gets the key of the outbox of a request. Panels that are loaded together can share a request
+   * ID, so the key includes the tag.
+   */
+  private static String getKey(String channelKey, String tag, String requestId) {
+    return channelKey + ":" + tag + ":" + requestId;
+  }
+}
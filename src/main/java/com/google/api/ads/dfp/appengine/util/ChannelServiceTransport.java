@@ -0,0 +1,47 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.appengine.api.channel.ChannelMessage;
+import com.google.appengine.api.channel.ChannelService;
+import com.google.inject.Inject;
+
+/**
+ * Pushes messages through the App Engine Channel API.
+ */
+public class ChannelServiceTransport implements PushTransport {
+
+  /** The name of the transport. */
+  public static final String NAME = "channel";
+
+  private final ChannelService channelService;
+
+  @Inject
+  public ChannelServiceTransport(ChannelService channelService) {
+    this.channelService = channelService;
+  }
+
+  public String getName() {
+    return NAME;
+  }
+
+  public String open(String channelKey) {
+    return channelService.createChannel(channelKey);
+  }
+
+  public void send(ChannelMessage message) {
+    channelService.sendMessage(message);
+  }
+}
@@ -14,26 +14,46 @@
 
 package com.google.api.ads.dfp.appengine.util;
 
+import com.google.api.ads.dfp.appengine.DfpTags;
 import com.google.appengine.api.channel.ChannelMessage;
-import com.google.appengine.api.channel.ChannelService;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.inject.Inject;
 
-import org.apache.commons.beanutils.PropertyUtils;
-
-import java.lang.reflect.InvocationTargetException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Utility class for sending API entities through the Channel API.
+ * Utility class for sending API entities through the Channel API, or through whichever
+ * {@link PushTransport} the application is configured with.
+ *
+ * Objects are serialized straight into a reusable buffer for each thread, and are packed into as
+ * few messages as fit in the message byte budget. A message that is larger than the budget by
+ * itself, i.e. a single large object, is split into chunk messages that the client joins back
+ * together.
+ *
+ * Clients can opt in to the columnar wire format for a request through {@link ChannelOptions},
+ * in which case batches of objects are sent as {@link ColumnarBatch columnar batches}. They can
+ * also choose the fields of the entities to send with a {@link FieldProjection}. When a panel is
+ * refreshed, a {@link DeltaTracker} leaves out the entities the client already has, and the
+ * refresh is framed by a delta message before its data and a sync message after it.
+ *
+ * Clients can also opt in to compressed messages, which are deflated and sent as base64 when that
+ * is smaller than the JSON. Batches of objects are then packed up to a multiple of the message
+ * byte budget, since they shrink to a fraction of it once compressed.
+ *
+ * While a fetch has an outbox open in {@link ChannelOutboxes}, its messages are sent from the
+ * outbox's sender thread rather than the calling thread, and small messages sent close together
+ * are coalesced into one.
  *
  * @author Jeff Sham
  */
@@ -56,22 +76,93 @@ public class Channels {
   /** Tag to use for an error message. */
   public static final String ERROR_TAG = "error";
 
-  /** Controls how many entities are returned per message. */
-  @VisibleForTesting
-  static final int BATCH_SIZE = 5;
+  /** Tag to use for a piece of a message that is too large to send at once. */
+  public static final String CHUNK_TAG = "chunk";
+
+  /** Tag to use for a message that holds several messages, in the order they were sent. */
+  public static final String MESSAGES_TAG = "messages";
+
+  /** Tag to use for the message that starts the results of a panel refresh. */
+  public static final String DELTA_TAG = "delta";
+
+  /** Tag to use for the message that ends the results of a panel refresh. */
+  public static final String SYNC_TAG = "sync";
+
+  /** Tag to use for a message whose JSON is deflated and encoded as base64. */
+  public static final String DEFLATE_TAG = "deflate";
+
+  /** System property that sets the maximum number of bytes in a message. */
+  static final String MESSAGE_BYTE_BUDGET_PROPERTY = "dfp.appengine.channelMessageBytes";
+
+  /** The message byte budget if the system property is not set, just under the 32K cap. */
+  static final int DEFAULT_MESSAGE_BYTE_BUDGET = 30 * 1024;
+
+  /**
+   * System property that sets how many times the message byte budget a batch of objects can take
+   * up before it is compressed.
+   */
+  static final String COMPRESSED_PACKING_FACTOR_PROPERTY = "dfp.appengine.compressedPackingFactor";
+
+  /**
+   * The compressed packing factor if the system property is not set. Entity JSON deflates to
+   * about a tenth of its size as base64, so batches packed to four times the budget fit in one
+   * message with room to spare. Batches that do not are split into chunks.
+   */
+  static final int DEFAULT_COMPRESSED_PACKING_FACTOR = 4;
 
-  private final ChannelService channelService;
+  private final PushTransport pushTransport;
   private final Gson gson;
+  private final CancellationRegistry cancellationRegistry;
+  private final ChannelOptions channelOptions;
+  private final ChannelOutboxes channelOutboxes;
+  private final int messageByteBudget;
+  private final int compressedPackingFactor;
+  private final AtomicLong chunkedMessageCount = new AtomicLong();
+  private final ThreadLocal<MessageBuffer> messageBuffers = new ThreadLocal<MessageBuffer>() {
+    @Override
+    protected MessageBuffer initialValue() {
+      return new MessageBuffer(gson);
+    }
+  };
 
   @Inject
-  public Channels(ChannelService channelService, Gson gson) {
-    this.channelService = channelService;
+  public Channels(PushTransport pushTransport, Gson gson,
+      CancellationRegistry cancellationRegistry, ChannelOptions channelOptions,
+      ChannelOutboxes channelOutboxes) {
+    this(pushTransport, gson, cancellationRegistry, channelOptions, channelOutboxes,
+        Integer.getInteger(MESSAGE_BYTE_BUDGET_PROPERTY, DEFAULT_MESSAGE_BYTE_BUDGET));
+  }
+
+  @VisibleForTesting
+  Channels(PushTransport pushTransport, Gson gson, CancellationRegistry cancellationRegistry,
+      ChannelOptions channelOptions, ChannelOutboxes channelOutboxes, int messageByteBudget) {
+    Preconditions.checkArgument(messageByteBudget > 0, "Message byte budget must be positive.");
+    this.pushTransport = pushTransport;
     this.gson = gson;
+    this.cancellationRegistry = cancellationRegistry;
+    this.channelOptions = channelOptions;
+    this.channelOutboxes = channelOutboxes;
+    this.messageByteBudget = messageByteBudget;
+    this.compressedPackingFactor = Math.max(1,
+        Integer.getInteger(COMPRESSED_PACKING_FACTOR_PROPERTY, DEFAULT_COMPRESSED_PACKING_FACTOR));
   }
 
   /**
-   * Sends a list of objects via the channel API. Objects are broken up into batches because the
-   * size of each message is capped.
+   * Checks if a newer request has been made for the panel. Messages for cancelled requests are
+   * not sent, and fetchers should stop working on them.
+   *
+   * @param channelKey the key to send a message via the Channel API
+   * @param tag the name of the content panel
+   * @param requestId the ID of the incoming data request
+   * @return whether the request has been superseded by a newer one
+   */
+  public boolean isCancelled(String channelKey, String tag, String requestId) {
+    return cancellationRegistry.isCancelled(channelKey, tag, requestId);
+  }
+
+  /**
+   * Sends a list of objects via the channel API. Objects are packed into batches by their
+   * serialized size because the size of each message is capped.
    *
    * @param channelKey the key to send a message via the Channel API
    * @param objects a list of objects to send via the channel
@@ -80,41 +171,298 @@ public class Channels {
    */
   public void sendObjects(String channelKey, List<?> objects, String tag, String requestId) {
     checkPreconditions(channelKey, tag, requestId);
-    List<Object> list = Lists.newArrayList();
-    int count = 0;
+    String requestTag = DfpTags.getRequestTag(tag);
+    FieldProjection fieldProjection =
+        channelOptions.getFieldProjection(channelKey, requestTag, requestId);
+    if (fieldProjection != null) {
+      String parentIdField = DfpTags.getParentIdField(tag);
+      if (parentIdField != null) {
+        // Nested children are placed under their parent by its ID.
+        fieldProjection = fieldProjection.withField(parentIdField);
+      }
+      objects = fieldProjection.project(objects, gson);
+    }
+    DeltaTracker deltaTracker = channelOptions.getDeltaTracker(channelKey, requestTag, requestId);
+    if (deltaTracker != null && !objects.isEmpty()) {
+      objects = deltaTracker.filter(tag, objects, gson);
+      if (objects.isEmpty()) {
+        // The client already has every object.
+        return;
+      }
+    }
+    int packingBudget = channelOptions.isCompressed(channelKey, requestTag, requestId)
+        ? messageByteBudget * compressedPackingFactor : messageByteBudget;
+    if (channelOptions.getWireFormat(channelKey, requestTag, requestId)
+            == ChannelOptions.WireFormat.COLUMNAR
+        && sendColumnarObjects(channelKey, objects, tag, requestId, packingBudget)) {
+      return;
+    }
+    MessageBuffer buffer = messageBuffers.get();
+    buffer.start(tag, requestId);
     for (Object object : objects) {
-      count += 1;
-      list.add(object);
-      if (count % BATCH_SIZE == 0) {
-        sendMessage(channelKey, ImmutableList.copyOf(list), tag, requestId);
-        list.clear();
+      int bytes = buffer.serialize(object);
+      if (buffer.getObjectCount() > 0 && buffer.getMessageBytes() + bytes > packingBudget) {
+        // The object stays serialized in the buffer for the next message.
+        sendMessage(channelKey, buffer.finishMessage(), tag, requestId);
       }
+      buffer.append();
     }
-    if (!list.isEmpty()) {
-      sendMessage(channelKey, list, tag, requestId);
+    if (buffer.getObjectCount() > 0) {
+      sendMessage(channelKey, buffer.finishMessage(), tag, requestId);
     }
-    if (count == 0) {
+    if (objects.isEmpty()) {
       sendNoResultMessage(channelKey, tag, requestId);
     }
   }
 
   /**
-   * Sends a single message through the channel.
+   * Sends a list of objects in the columnar wire format, packing rows into batches by their
+   * encoded size. Lists of fewer than two objects, and lists of values that are not JSON objects
+   * such as PQL rows, gain nothing from the format and are left to the JSON path.
    *
    * @param channelKey the key to send a message via the Channel API
-   * @param list objects to send back
+   * @param objects a list of objects to send via the channel
+   * @param tag the name of the content panel to send objects
+   * @param requestId the ID of the incoming data request to respond to
+   * @param packingBudget the maximum number of bytes in a batch before it is compressed
+   * @return whether the objects were sent
+   */
+  private boolean sendColumnarObjects(String channelKey, List<?> objects, String tag,
+      String requestId, int packingBudget) {
+    if (objects.size() < 2) {
+      return false;
+    }
+    List<JsonObject> trees = Lists.newArrayListWithCapacity(objects.size());
+    for (Object object : objects) {
+      JsonElement tree =
+          object instanceof JsonElement ? (JsonElement) object : gson.toJsonTree(object);
+      if (!tree.isJsonObject()) {
+        return false;
+      }
+      trees.add(tree.getAsJsonObject());
+    }
+    int envelopeBytes = getUtf8Length(createColumnarMessage(new JsonObject(), tag, requestId));
+    ColumnarBatch batch = new ColumnarBatch(gson);
+    for (JsonObject tree : trees) {
+      ColumnarBatch.PendingRow row = batch.prepare(tree);
+      if (batch.getRowCount() > 0
+          && envelopeBytes + batch.getBytes() + row.getBytes() > packingBudget) {
+        sendMessage(channelKey, createColumnarMessage(batch.toJson(), tag, requestId), tag,
+            requestId);
+        batch = new ColumnarBatch(gson);
+        row = batch.prepare(tree);
+      }
+      batch.add(row);
+    }
+    sendMessage(channelKey, createColumnarMessage(batch.toJson(), tag, requestId), tag,
+        requestId);
+    return true;
+  }
+
+  /**
+   * Creates the JSON of a message holding a columnar batch.
+   *
+   * @param batch the JSON tree of the batch
+   * @param tag the name of the content panel to send objects
+   * @param requestId the ID of the incoming data request to respond to
+   * @return the JSON of the message
+   */
+  private String createColumnarMessage(JsonObject batch, String tag, String requestId) {
+    JsonObject message = new JsonObject();
+    message.add(tag, batch);
+    message.addProperty(REQUEST_ID, requestId);
+    return gson.toJson(message);
+  }
+
+  /**
+   * Sends a single message through the channel, compressing it if the client asked for that and
+   * splitting it into chunks if it is larger than the message byte budget.
+   *
+   * @param channelKey the key to send a message via the Channel API
+   * @param message the JSON message
    * @param tag the name of the content panel to send message to
    * @param requestId the ID of the incoming data request to respond to
    */
-  private void sendMessage(String channelKey, List<Object> list, String tag, String requestId) {
+  private void sendMessage(String channelKey, String message, String tag, String requestId) {
+    if (isCancelled(channelKey, tag, requestId)) {
+      return;
+    }
     try {
-      channelService.sendMessage(
-          createMessage(channelKey, ImmutableMap.of(tag, list, REQUEST_ID, requestId)));
+      if (channelOptions.isCompressed(channelKey, DfpTags.getRequestTag(tag), requestId)) {
+        message = compress(message);
+      }
+      if (getUtf8Length(message) > messageByteBudget) {
+        sendChunks(channelKey, message, tag, requestId);
+      } else {
+        deliver(tag, requestId, new ChannelMessage(channelKey, message));
+      }
     } catch (IllegalArgumentException e) {
       log.log(Level.SEVERE, "Error sending channel message.", e);
     }
   }
 
+  /**
+   * Compresses a message if the compressed message is smaller.
+   *
+   * @param message the JSON message
+   * @return the compressed message, or the message itself if it does not compress
+   */
+  private String compress(String message) {
+    // Base64 needs no escaping in a JSON string.
+    String compressed =
+        "{\"" + DEFLATE_TAG + "\":\"" + MessageCompression.compress(message) + "\"}";
+    return compressed.length() < getUtf8Length(message) ? compressed : message;
+  }
+
+  /**
+   * Hands a message to the outbox of the request if one is open, or sends it right away
+   * otherwise. Going through the outbox keeps the final info or error message of a request behind
+   * the data that was sent before it.
+   *
+   * @param tag the name of the content panel to send message to
+   * @param requestId the ID of the incoming data request to respond to
+   * @param message the message
+   */
+  private void deliver(String tag, String requestId, ChannelMessage message) {
+    ChannelOutbox outbox =
+        channelOutboxes.get(message.getClientId(), DfpTags.getRequestTag(tag), requestId);
+    if (outbox == null) {
+      pushTransport.send(message);
+      return;
+    }
+    try {
+      outbox.send(message);
+    } catch (InterruptedException e) {
+      log.log(Level.WARNING, "Interrupted while queueing channel message.", e);
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Sends a message that is too large for the message byte budget as several chunk messages.
+   * Each chunk holds a piece of the message's JSON and the client joins the pieces in index order
+   * once it has all of them.
+   *
+   * @param channelKey the key to send a message via the Channel API
+   * @param message the JSON message
+   * @param tag the name of the content panel to send message to
+   * @param requestId the ID of the incoming data request to respond to
+   */
+  private void sendChunks(String channelKey, String message, String tag, String requestId) {
+    String chunkId = requestId + "-" + chunkedMessageCount.incrementAndGet();
+    // Size the pieces with the largest index and count the chunk messages could have.
+    int chunkEnvelopeBytes =
+        getUtf8Length(createChunk(chunkId, Integer.MAX_VALUE, Integer.MAX_VALUE, "", requestId));
+    List<String> pieces = splitJsonString(message, messageByteBudget - chunkEnvelopeBytes);
+    log.log(Level.INFO, "Splitting " + message.length() + " character message into "
+        + pieces.size() + " chunks.");
+    for (int i = 0; i < pieces.size(); i++) {
+      deliver(tag, requestId, new ChannelMessage(channelKey,
+          createChunk(chunkId, i, pieces.size(), pieces.get(i), requestId)));
+    }
+  }
+
+  /**
+   * Creates the JSON of a chunk message.
+   *
+   * @param chunkId identifies the message the chunk is a piece of
+   * @param index the position of the chunk in the message
+   * @param count the number of chunks in the message
+   * @param data the piece of the message
+   * @param requestId the ID of the incoming data request to respond to
+   * @return the JSON of the chunk message
+   */
+  private String createChunk(String chunkId, int index, int count, String data,
+      String requestId) {
+    Map<String, Object> chunk = ImmutableMap.<String, Object>of(
+        "id", chunkId, "index", index, "count", count, "data", data);
+    return gson.toJson(ImmutableMap.of(CHUNK_TAG, chunk, REQUEST_ID, requestId));
+  }
+
+  /**
+   * Splits a string into pieces that are each at most the given number of bytes once escaped as a
+   * JSON string. Surrogate pairs are not split.
+   *
+   * @param string the string to split
+   * @param maxBytes the maximum number of escaped bytes in a piece
+   * @return the pieces
+   */
+  @VisibleForTesting
+  static List<String> splitJsonString(String string, int maxBytes) {
+    Preconditions.checkArgument(maxBytes >= 12, "Pieces must fit at least one character.");
+    List<String> pieces = Lists.newArrayList();
+    int start = 0;
+    int bytes = 0;
+    for (int i = 0; i < string.length(); i++) {
+      int charBytes = getEscapedLength(string.charAt(i));
+      if (bytes + charBytes > maxBytes) {
+        int end = Character.isLowSurrogate(string.charAt(i)) ? i - 1 : i;
+        pieces.add(string.substring(start, end));
+        start = end;
+        bytes = 0;
+        i = end - 1;
+        continue;
+      }
+      bytes += charBytes;
+    }
+    pieces.add(string.substring(start));
+    return pieces;
+  }
+
+  /**
+   * Gets the most bytes a character can take in a JSON string, assuming HTML-safe escaping.
+   *
+   * @param c the character
+   * @return the number of bytes
+   */
+  static int getEscapedLength(char c) {
+    switch (c) {
+      case '"':
+      case '\\':
+      case '\n':
+      case '\r':
+      case '\t':
+      case '\b':
+      case '\f':
+        return 2;
+      case '<':
+      case '>':
+      case '&':
+      case '=':
+      case '\'':
+      case '\u2028':
+      case '\u2029':
+        return 6;
+      default:
+        if (c < 0x20) {
+          return 6;
+        }
+        return c < 0x80 ? 1 : (c < 0x800 || Character.isSurrogate(c)) ? 2 : 3;
+    }
+  }
+
+  /**
+   * Gets the size in bytes of an object as it is serialized into a channel message, before any
+   * field projection or delta filtering of the request.
+   *
+   * @param object the object
+   * @return the size of its JSON form in bytes
+   */
+  public int getSerializedBytes(Object object) {
+    return getUtf8Length(gson.toJson(object));
+  }
+
+  /**
+   * Gets the number of bytes in the UTF-8 encoding of a string.
+   *
+   * @param string the string
+   * @return the number of bytes
+   */
+  @VisibleForTesting
+  static int getUtf8Length(String string) {
+    return MessageBuffer.getUtf8Length(string, 0, string.length());
+  }
+
   /**
    * Sends a message for no results found through the channel.
    *
@@ -137,8 +485,11 @@ public class Channels {
    */
   public void sendInfoMessage(String channelKey, String tag, String requestId, String message) {
     checkPreconditions(channelKey, tag, message);
+    if (isCancelled(channelKey, tag, requestId)) {
+      return;
+    }
     Map<String, String> info = ImmutableMap.of(TAG, tag, MESSAGE, message);
-    channelService.sendMessage(createMessage(channelKey,
+    deliver(tag, requestId, createMessage(channelKey,
         ImmutableMap.of(INFO_TAG, info, REQUEST_ID, requestId)));
   }
 
@@ -153,11 +504,60 @@ public class Channels {
   public void sendErrorChannelMessage(String channelKey, String tag, String requestId,
       String message) {
     checkPreconditions(channelKey, tag, requestId, message);
+    DeltaTracker deltaTracker =
+        channelOptions.getDeltaTracker(channelKey, DfpTags.getRequestTag(tag), requestId);
+    if (deltaTracker != null) {
+      deltaTracker.markFailed();
+    }
+    if (isCancelled(channelKey, tag, requestId)) {
+      return;
+    }
     Map<String, String> info = ImmutableMap.of(TAG, tag, MESSAGE, message);
-    channelService.sendMessage(createMessage(channelKey,
+    deliver(tag, requestId, createMessage(channelKey,
         ImmutableMap.of(ERROR_TAG, info, REQUEST_ID, requestId)));
   }
 
+  /**
+   * Sends the message that starts the results of a panel refresh. If the refresh is full, the
+   * client clears the panel. Otherwise it keeps the entities it has and replaces the ones that are
+   * sent again.
+   *
+   * @param channelKey the key to send a message via the Channel API
+   * @param tag the name of the content panel that is refreshed
+   * @param requestId the ID of the incoming data request to respond to
+   * @param full whether every entity is sent
+   */
+  public void sendDeltaStartMessage(String channelKey, String tag, String requestId,
+      boolean full) {
+    checkPreconditions(channelKey, tag, requestId);
+    if (isCancelled(channelKey, tag, requestId)) {
+      return;
+    }
+    Map<String, Object> delta = ImmutableMap.<String, Object>of(TAG, tag, "full", full);
+    deliver(tag, requestId, createMessage(channelKey,
+        ImmutableMap.of(DELTA_TAG, delta, REQUEST_ID, requestId)));
+  }
+
+  /**
+   * Sends the message that ends the results of a panel refresh, with the IDs of the entities the
+   * client has to remove. A refresh whose entities could not all be tracked is marked incomplete,
+   * so the next refresh of the panel sends every entity.
+   *
+   * @param channelKey the key to send a message via the Channel API
+   * @param tag the name of the content panel that is refreshed
+   * @param requestId the ID of the incoming data request to respond to
+   * @param removedIds the IDs of the removed entities by tag, or {@code null} if the refresh is
+   *     incomplete
+   */
+  public void sendDeltaSyncMessage(String channelKey, String tag, String requestId,
+      Map<String, List<String>> removedIds) {
+    checkPreconditions(channelKey, tag, requestId);
+    Map<String, Object> sync = removedIds == null
+        ? ImmutableMap.<String, Object>of(TAG, tag, "complete", false)
+        : ImmutableMap.<String, Object>of(TAG, tag, "complete", true, "removed", removedIds);
+    sendMessage(channelKey, gson.toJson(ImmutableMap.of(SYNC_TAG, sync, REQUEST_ID, requestId)),
+        tag, requestId);
+  }
 
   /**
    * Creates a {@link ChannelMessage} with the JSON representation of the data map.
@@ -177,15 +577,11 @@ public class Channels {
    * @param page the page of objects to send
    * @param tag the name of the content panel to send objects to
    * @param requestId the ID of the incoming data request to respond to
-   * @throws NoSuchMethodException if the method 'results' does not exist on page
-   * @throws InvocationTargetException if the property accessor method throws an exception
-   * @throws IllegalAccessException if the caller does not have access to the property accessor
-   *         method
+   * @throws IllegalArgumentException if the page does not have results
    */
-  public void sendPage(String channelKey, Object page, String tag, String requestId)
-      throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+  public void sendPage(String channelKey, Object page, String tag, String requestId) {
     checkPreconditions(channelKey, tag, requestId);
-    sendObjects(channelKey, (List<?>) PropertyUtils.getProperty(page, "results"), tag, requestId);
+    sendObjects(channelKey, PageAdapter.of(page).getResults(page), tag, requestId);
   }
 
   /**
@@ -198,7 +594,7 @@ public class Channels {
    */
   public void sendSingleObject(String channelKey, Object object, String tag, String requestId) {
     checkPreconditions(channelKey, tag, requestId);
-    sendMessage(channelKey, ImmutableList.of(object), tag, requestId);
+    sendObjects(channelKey, ImmutableList.of(object), tag, requestId);
   }
 
   /**
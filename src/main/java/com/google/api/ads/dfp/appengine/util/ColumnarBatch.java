@@ -0,0 +1,309 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batch of objects in the columnar wire format. The batch is serialized as
+ *
+ * <pre>
+ * {"schemas":[{"fields":[...],"dict":[...]}, ...],"strings":[...],"rows":[[schema, ...], ...]}
+ * </pre>
+ *
+ * Each schema lists the field names of a shape of object and the positions of its string fields.
+ * Each row starts with the index of its schema, followed by the field values in schema order with
+ * trailing nulls left out. The values of string fields are indexes into the strings of the batch,
+ * so a repeated value such as a status is only sent once per message. Every batch holds its own
+ * schemas and strings so that messages can be decoded in any order.
+ */
+class ColumnarBatch {
+
+  /** The number of bytes in an empty batch. */
+  private static final int EMPTY_BYTES =
+      "{\"schemas\":[],\"strings\":[],\"rows\":[]}".length();
+
+  /** The number of bytes in a schema without fields. */
+  private static final int EMPTY_SCHEMA_BYTES = "{\"fields\":[],\"dict\":[]}".length();
+
+  /** The kinds of values a field of a schema holds. */
+  private enum FieldKind {
+    /** Only nulls have been seen, so the field can still become either kind. */
+    UNKNOWN,
+    /** Strings sent as indexes into the strings of the batch. */
+    STRING,
+    /** Any other values, sent as they are. */
+    RAW
+  }
+
+  /**
+   * The field names and field kinds of a shape of object.
+   */
+  private static class Schema {
+    final List<String> fields;
+    final FieldKind[] kinds;
+
+    Schema(List<String> fields) {
+      this.fields = fields;
+      this.kinds = new FieldKind[fields.size()];
+      for (int i = 0; i < kinds.length; i++) {
+        kinds[i] = FieldKind.UNKNOWN;
+      }
+    }
+
+    /**
+     * Checks if the schema can hold an object with the given fields and values.
+     */
+    boolean accepts(List<String> objectFields, List<JsonElement> values) {
+      if (!fields.equals(objectFields)) {
+        return false;
+      }
+      for (int i = 0; i < kinds.length; i++) {
+        FieldKind kind = getKind(values.get(i));
+        if (kind != FieldKind.UNKNOWN && kinds[i] != FieldKind.UNKNOWN && kind != kinds[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * An object encoded against the batch but not yet added to it.
+   */
+  static class PendingRow {
+    private final Schema schema;
+    private final boolean newSchema;
+    private final List<JsonElement> values;
+    private final JsonArray row;
+    private final List<String> newStrings;
+    private final int bytes;
+
+    private PendingRow(Schema schema, boolean newSchema, List<JsonElement> values, JsonArray row,
+        List<String> newStrings, int bytes) {
+      this.schema = schema;
+      this.newSchema = newSchema;
+      this.values = values;
+      this.row = row;
+      this.newStrings = newStrings;
+      this.bytes = bytes;
+    }
+
+    /**
+     * Gets the number of bytes adding the row would add to the batch.
+     */
+    int getBytes() {
+      return bytes;
+    }
+  }
+
+  private final Gson gson;
+  private final List<Schema> schemas = Lists.newArrayList();
+  private final List<String> strings = Lists.newArrayList();
+  private final Map<String, Integer> stringIndexes = Maps.newHashMap();
+  private final JsonArray rows = new JsonArray();
+  private int rowCount;
+  private int bytes = EMPTY_BYTES;
+
+  /**
+   * Constructor.
+   *
+   * @param gson used to serialize field values that are not strings
+   */
+  ColumnarBatch(Gson gson) {
+    this.gson = gson;
+  }
+
+  /**
+   * Encodes an object against the schemas and strings of the batch. The batch is not changed
+   * until the row is {@link #add added}, and the row can only be added while the batch is
+   * unchanged.
+   *
+   * @param object the JSON tree of the object
+   * @return the encoded row
+   */
+  PendingRow prepare(JsonObject object) {
+    List<String> fields = Lists.newArrayList();
+    List<JsonElement> values = Lists.newArrayList();
+    for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+      fields.add(entry.getKey());
+      values.add(entry.getValue());
+    }
+
+    Schema schema = null;
+    int schemaIndex = 0;
+    for (; schemaIndex < schemas.size(); schemaIndex++) {
+      if (schemas.get(schemaIndex).accepts(fields, values)) {
+        schema = schemas.get(schemaIndex);
+        break;
+      }
+    }
+    boolean newSchema = schema == null;
+    int rowBytes = 0;
+    if (newSchema) {
+      schema = new Schema(fields);
+      rowBytes += EMPTY_SCHEMA_BYTES + (schemas.isEmpty() ? 0 : 1);
+      for (String field : fields) {
+        rowBytes += getJsonStringLength(field) + 1;
+      }
+    }
+    // Fields that become string fields are added to the schema's dict.
+    for (int i = 0; i < values.size(); i++) {
+      if (schema.kinds[i] == FieldKind.UNKNOWN && getKind(values.get(i)) == FieldKind.STRING) {
+        rowBytes += getDigits(i) + 1;
+      }
+    }
+
+    int lastValue = values.size() - 1;
+    while (lastValue >= 0 && values.get(lastValue).isJsonNull()) {
+      lastValue--;
+    }
+    JsonArray row = new JsonArray();
+    row.add(new JsonPrimitive(schemaIndex));
+    rowBytes += (rowCount == 0 ? 0 : 1) + 2 + getDigits(schemaIndex);
+    List<String> newStrings = Lists.newArrayList();
+    for (int i = 0; i <= lastValue; i++) {
+      JsonElement value = values.get(i);
+      rowBytes += 1;
+      if (getKind(value) == FieldKind.STRING) {
+        String string = value.getAsString();
+        Integer index = stringIndexes.get(string);
+        if (index == null) {
+          int newIndex = newStrings.indexOf(string);
+          if (newIndex < 0) {
+            newIndex = newStrings.size();
+            newStrings.add(string);
+            rowBytes += getJsonStringLength(string) + (strings.isEmpty() && newIndex == 0 ? 0 : 1);
+          }
+          index = strings.size() + newIndex;
+        }
+        row.add(new JsonPrimitive(index));
+        rowBytes += getDigits(index);
+      } else {
+        row.add(value);
+        rowBytes += value.isJsonNull() ? 4 : Channels.getUtf8Length(gson.toJson(value));
+      }
+    }
+    return new PendingRow(schema, newSchema, values, row, newStrings, rowBytes);
+  }
+
+  /**
+   * Adds a row that was prepared against the current state of the batch.
+   *
+   * @param pendingRow the row
+   */
+  void add(PendingRow pendingRow) {
+    if (pendingRow.newSchema) {
+      schemas.add(pendingRow.schema);
+    }
+    for (int i = 0; i < pendingRow.values.size(); i++) {
+      FieldKind kind = getKind(pendingRow.values.get(i));
+      if (pendingRow.schema.kinds[i] == FieldKind.UNKNOWN) {
+        pendingRow.schema.kinds[i] = kind;
+      }
+    }
+    for (String string : pendingRow.newStrings) {
+      stringIndexes.put(string, strings.size());
+      strings.add(string);
+    }
+    rows.add(pendingRow.row);
+    rowCount++;
+    bytes += pendingRow.bytes;
+  }
+
+  /**
+   * Gets the number of rows in the batch.
+   */
+  int getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Gets the approximate number of bytes in the serialized batch.
+   */
+  int getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Gets the JSON tree of the batch.
+   *
+   * @return the batch as a JSON object
+   */
+  JsonObject toJson() {
+    JsonArray schemaArray = new JsonArray();
+    for (Schema schema : schemas) {
+      JsonArray fieldArray = new JsonArray();
+      JsonArray dictArray = new JsonArray();
+      for (int i = 0; i < schema.fields.size(); i++) {
+        fieldArray.add(new JsonPrimitive(schema.fields.get(i)));
+        if (schema.kinds[i] == FieldKind.STRING) {
+          dictArray.add(new JsonPrimitive(i));
+        }
+      }
+      JsonObject schemaObject = new JsonObject();
+      schemaObject.add("fields", fieldArray);
+      schemaObject.add("dict", dictArray);
+      schemaArray.add(schemaObject);
+    }
+    JsonArray stringArray = new JsonArray();
+    for (String string : strings) {
+      stringArray.add(new JsonPrimitive(string));
+    }
+    JsonObject batch = new JsonObject();
+    batch.add("schemas", schemaArray);
+    batch.add("strings", stringArray);
+    batch.add("rows", rows);
+    return batch;
+  }
+
+  /**
+   * Gets the kind of a field value.
+   */
+  private static FieldKind getKind(JsonElement value) {
+    if (value.isJsonNull()) {
+      return FieldKind.UNKNOWN;
+    }
+    return value.isJsonPrimitive() && value.getAsJsonPrimitive().isString()
+        ? FieldKind.STRING : FieldKind.RAW;
+  }
+
+  /**
+   * Gets the most bytes a string takes as a quoted JSON string.
+   */
+  private static int getJsonStringLength(String string) {
+    int length = 2;
+    for (int i = 0; i < string.length(); i++) {
+      length += Channels.getEscapedLength(string.charAt(i));
+    }
+    return length;
+  }
+
+  /**
+   * Gets the number of decimal digits in a non-negative number.
+   */
+  private static int getDigits(int number) {
+    return number < 10 ? 1 : 1 + getDigits(number / 10);
+  }
+}
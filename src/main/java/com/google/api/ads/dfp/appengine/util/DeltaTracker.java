@@ -0,0 +1,186 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Works out which entities of a panel refresh have to be sent, by comparing them with the
+ * snapshot of the entities the client already has. New and changed entities are sent, unchanged
+ * ones are skipped, and the IDs of entities that are no longer there are sent at the end so the
+ * client can remove them. Entities are identified by the string form of their {@code id} field,
+ * which is a number for most entities and a string for ad units. Entities without one are always
+ * sent.
+ *
+ * A tracker is kept in memcache while a fetch is suspended, so it is serializable.
+ */
+public class DeltaTracker implements Serializable {
+
+  private static final long serialVersionUID = 2L;
+
+  private static final HashFunction CONTENT_HASH = Hashing.murmur3_128();
+
+  /** The snapshot the client has, or {@code null} if every entity has to be sent. */
+  private final EntitySnapshot previous;
+
+  /** The content hash of each entity ID seen by this fetch, by tag. */
+  private final HashMap<String, HashMap<String, Long>> current = Maps.newHashMap();
+
+  private boolean failed;
+  private int sentCount;
+  private int skippedCount;
+
+  /**
+   * Constructor.
+   *
+   * @param previous the snapshot of the entities the client has, or {@code null} if it has none
+   */
+  DeltaTracker(EntitySnapshot previous) {
+    this.previous = previous;
+  }
+
+  /**
+   * Checks if every entity is sent, because there is no snapshot to compare with.
+   *
+   * @return whether the client has to start from an empty panel
+   */
+  public boolean isFull() {
+    return previous == null;
+  }
+
+  /**
+   * Records a batch of entities and filters out the ones the client already has. Entities that
+   * are kept are returned as JSON trees, since they had to be serialized to be hashed.
+   *
+   * @param tag the tag the entities are sent with
+   * @param objects the entities
+   * @param gson used to serialize the entities
+   * @return the entities to send
+   */
+  synchronized List<Object> filter(String tag, List<?> objects, Gson gson) {
+    HashMap<String, Long> tagEntries = current.get(tag);
+    if (tagEntries == null) {
+      tagEntries = Maps.newHashMap();
+      current.put(tag, tagEntries);
+    }
+    List<Object> changed = Lists.newArrayList();
+    for (Object object : objects) {
+      JsonElement tree = object instanceof JsonElement ? (JsonElement) object
+          : gson.toJsonTree(object);
+      String id = getId(tree);
+      if (id == null) {
+        changed.add(object);
+        continue;
+      }
+      long hash = CONTENT_HASH.hashString(gson.toJson(tree), Charsets.UTF_8).asLong();
+      tagEntries.put(id, hash);
+      Long previousHash = previous == null ? null : previous.getHash(tag, id);
+      if (previousHash != null && previousHash == hash) {
+        skippedCount++;
+      } else {
+        changed.add(tree);
+        sentCount++;
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Marks the fetch as failed, so the snapshot is not replaced with its partial results.
+   */
+  public synchronized void markFailed() {
+    failed = true;
+  }
+
+  /**
+   * Checks if the fetch failed.
+   *
+   * @return whether the fetch failed
+   */
+  public synchronized boolean isFailed() {
+    return failed;
+  }
+
+  /**
+   * Gets the IDs of the entities the client has that were not seen by this fetch, by tag.
+   *
+   * @return the removed IDs of each tag that has any
+   */
+  public synchronized Map<String, List<String>> getRemovedIds() {
+    if (previous == null) {
+      return ImmutableMap.of();
+    }
+    Map<String, List<String>> removedIds = Maps.newHashMap();
+    for (String tag : previous.getTags()) {
+      Map<String, Long> tagEntries = current.get(tag);
+      List<String> removed = Lists.newArrayList();
+      for (String id : previous.getIds(tag)) {
+        if (tagEntries == null || !tagEntries.containsKey(id)) {
+          removed.add(id);
+        }
+      }
+      if (!removed.isEmpty()) {
+        removedIds.put(tag, removed);
+      }
+    }
+    return removedIds;
+  }
+
+  /**
+   * Creates the snapshot of the entities seen by this fetch.
+   *
+   * @param requestId the ID of the request that sent the entities
+   * @return the snapshot
+   */
+  synchronized EntitySnapshot toSnapshot(String requestId) {
+    return new EntitySnapshot(requestId, current);
+  }
+
+  /**
+   * Gets the number of entities sent and skipped so far, for logging.
+   */
+  @Override
+  public synchronized String toString() {
+    return "sent " + sentCount + ", skipped " + skippedCount;
+  }
+
+  /**
+   * Gets the ID of an entity as a string, whether it is a number or a string.
+   */
+  private static String getId(JsonElement tree) {
+    if (!tree.isJsonObject()) {
+      return null;
+    }
+    JsonElement id = tree.getAsJsonObject().get("id");
+    if (id == null || !id.isJsonPrimitive()) {
+      return null;
+    }
+    JsonPrimitive primitive = id.getAsJsonPrimitive();
+    return primitive.isNumber() || primitive.isString() ? primitive.getAsString() : null;
+  }
+}
@@ -0,0 +1,124 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reads properties of API entities, such as their IDs. The getter of each property is looked up
+ * once per entity class and kept as a method handle, so reading a property does not need a
+ * reflective lookup.
+ */
+public final class EntityAdapter {
+
+  /** The type of all getter handles: takes the object and returns the property value. */
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+  /** The adapters for each entity class. */
+  private static final ConcurrentMap<Class<?>, EntityAdapter> ADAPTERS =
+      new ConcurrentHashMap<Class<?>, EntityAdapter>();
+
+  /** The entity class this adapter reads. */
+  private final Class<?> entityClass;
+
+  /** The getters of the properties read so far, keyed by property name. */
+  private final ConcurrentMap<String, MethodHandle> getters =
+      new ConcurrentHashMap<String, MethodHandle>();
+
+  private EntityAdapter(Class<?> entityClass) {
+    this.entityClass = entityClass;
+  }
+
+  /**
+   * Gets the adapter for the class of an entity.
+   *
+   * @param entity the entity
+   * @return the adapter for the entity's class
+   */
+  public static EntityAdapter of(Object entity) {
+    Preconditions.checkNotNull(entity, "Cannot adapt null entity.");
+    Class<?> entityClass = entity.getClass();
+    EntityAdapter adapter = ADAPTERS.get(entityClass);
+    if (adapter == null) {
+      ADAPTERS.putIfAbsent(entityClass, new EntityAdapter(entityClass));
+      adapter = ADAPTERS.get(entityClass);
+    }
+    return adapter;
+  }
+
+  /**
+   * Gets the ID of an entity.
+   *
+   * @param entity the entity
+   * @return the ID
+   * @throws IllegalArgumentException if the entity does not have an ID
+   */
+  public Object getId(Object entity) {
+    return getProperty(entity, "id");
+  }
+
+  /**
+   * Gets a property of an entity.
+   *
+   * @param entity the entity
+   * @param property the name of the property, such as {@code orderId}
+   * @return the property value
+   * @throws IllegalArgumentException if the entity does not have the property
+   */
+  public Object getProperty(Object entity, String property) {
+    MethodHandle getter = getters.get(property);
+    if (getter == null) {
+      getter = findGetter(entityClass, property);
+      getters.putIfAbsent(property, getter);
+    }
+    try {
+      return getter.invokeExact(entity);
+    } catch (Throwable t) {
+      throw Throwables.propagate(t);
+    }
+  }
+
+  /**
+   * Finds the getter of a property and adapts it to take and return {@link Object}.
+   *
+   * @param type the class with the property
+   * @param property the name of the property
+   * @return the getter handle
+   * @throws IllegalArgumentException if the class does not have a public getter for the property
+   */
+  static MethodHandle findGetter(Class<?> type, String property) {
+    String suffix = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+    for (String prefix : new String[] {"get", "is"}) {
+      try {
+        Method method = type.getMethod(prefix + suffix);
+        return MethodHandles.publicLookup().unreflect(method).asType(GETTER_TYPE);
+      } catch (NoSuchMethodException e) {
+        // Try the next prefix.
+      } catch (IllegalAccessException e) {
+        throw new IllegalArgumentException(
+            "Cannot access property " + property + " of " + type.getName(), e);
+      }
+    }
+    throw new IllegalArgumentException("No property " + property + " on " + type.getName());
+  }
+}
@@ -0,0 +1,98 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.common.collect.Maps;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The IDs and content hashes of the entities a panel was last sent, grouped by tag. IDs are kept
+ * in their string form in sorted arrays with the hashes alongside, so a snapshot of tens of
+ * thousands of entities fits in a memcache value.
+ */
+final class EntitySnapshot implements Serializable {
+
+  private static final long serialVersionUID = 2L;
+
+  private final String requestId;
+  private final Map<String, String[]> ids = Maps.newHashMap();
+  private final Map<String, long[]> hashes = Maps.newHashMap();
+
+  /**
+   * Constructor.
+   *
+   * @param requestId the ID of the request that sent the entities
+   * @param entries the content hash of each entity ID, by tag
+   */
+  EntitySnapshot(String requestId, Map<String, ? extends Map<String, Long>> entries) {
+    this.requestId = requestId;
+    for (Map.Entry<String, ? extends Map<String, Long>> tagEntries : entries.entrySet()) {
+      String[] tagIds = tagEntries.getValue().keySet().toArray(new String[0]);
+      Arrays.sort(tagIds);
+      long[] tagHashes = new long[tagIds.length];
+      for (int i = 0; i < tagIds.length; i++) {
+        tagHashes[i] = tagEntries.getValue().get(tagIds[i]);
+      }
+      ids.put(tagEntries.getKey(), tagIds);
+      hashes.put(tagEntries.getKey(), tagHashes);
+    }
+  }
+
+  /**
+   * Gets the ID of the request that sent the entities.
+   */
+  String getRequestId() {
+    return requestId;
+  }
+
+  /**
+   * Gets the tags with entities in the snapshot.
+   */
+  Set<String> getTags() {
+    return Collections.unmodifiableSet(ids.keySet());
+  }
+
+  /**
+   * Gets the sorted entity IDs of a tag.
+   *
+   * @param tag the tag
+   * @return the IDs, which must not be modified
+   */
+  String[] getIds(String tag) {
+    String[] tagIds = ids.get(tag);
+    return tagIds == null ? new String[0] : tagIds;
+  }
+
+  /**
+   * Gets the content hash of an entity.
+   *
+   * @param tag the tag of the entity
+   * @param id the ID of the entity
+   * @return the hash, or {@code null} if the entity is not in the snapshot
+   */
+  Long getHash(String tag, String id) {
+    String[] tagIds = ids.get(tag);
+    if (tagIds == null) {
+      return null;
+    }
+    int index = Arrays.binarySearch(tagIds, id);
+    return index < 0 ? null : hashes.get(tag)[index];
+  }
+}
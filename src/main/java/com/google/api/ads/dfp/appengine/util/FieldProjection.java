@@ -0,0 +1,206 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The top-level fields of fetched entities that a client wants to receive. Only the selected
+ * fields of an entity are serialized, so large fields such as targeting are not walked at all
+ * unless they are asked for. Selected fields that hold objects are sent whole.
+ *
+ * The {@code id} field is always selected, since the client and delta tracking identify entities
+ * by it. Nested children are projected with the field that holds the ID of their parent as well,
+ * through {@link #withField}.
+ *
+ * The fields to read from each entity class are worked out once and cached, and projections are
+ * shared between requests that ask for the same fields.
+ */
+public final class FieldProjection {
+
+  /** The field that is selected in every projection. */
+  static final String ID_FIELD = "id";
+
+  /** The maximum number of distinct projections to keep. */
+  private static final int MAX_CACHED_PROJECTIONS = 64;
+
+  /** Projections by the field list they were parsed from. */
+  private static final Cache<String, FieldProjection> PROJECTIONS =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_PROJECTIONS).build();
+
+  private final Set<String> fieldNames;
+
+  /** The fields to read from each entity class, in the order Gson serializes them. */
+  private final ConcurrentMap<Class<?>, List<Field>> plans =
+      new ConcurrentHashMap<Class<?>, List<Field>>();
+
+  private FieldProjection(Set<String> fieldNames) {
+    this.fieldNames = fieldNames;
+  }
+
+  /**
+   * Parses a comma-separated list of field names, such as {@code name,status}. The {@code id}
+   * field is added if it is not listed.
+   *
+   * @param parameter the field list, which may be {@code null}
+   * @return the projection, or {@code null} if no fields are listed
+   */
+  public static FieldProjection parse(String parameter) {
+    Iterable<String> listedNames =
+        Splitter.on(',').trimResults().omitEmptyStrings().split(Strings.nullToEmpty(parameter));
+    if (!listedNames.iterator().hasNext()) {
+      return null;
+    }
+    Set<String> fieldNames =
+        ImmutableSet.<String>builder().add(ID_FIELD).addAll(listedNames).build();
+    String key = Joiner.on(',').join(fieldNames);
+    FieldProjection projection = PROJECTIONS.getIfPresent(key);
+    if (projection == null) {
+      projection = new FieldProjection(fieldNames);
+      PROJECTIONS.put(key, projection);
+    }
+    return projection;
+  }
+
+  /**
+   * Gets a projection that also selects a field.
+   *
+   * @param fieldName the field to select as well
+   * @return the projection, which is this one if it already selects the field
+   */
+  public FieldProjection withField(String fieldName) {
+    if (fieldNames.contains(fieldName)) {
+      return this;
+    }
+    return parse(Joiner.on(',').join(fieldNames) + "," + fieldName);
+  }
+
+  /**
+   * Gets the names of the selected fields.
+   *
+   * @return the field names
+   */
+  public Set<String> getFieldNames() {
+    return fieldNames;
+  }
+
+  /**
+   * Projects a list of objects. Entities are replaced with JSON objects that hold only the
+   * selected fields, while values that Gson does not serialize field by field, such as strings,
+   * arrays, collections and maps, are left as they are.
+   *
+   * @param objects the objects to project
+   * @param gson used to serialize the selected field values
+   * @return the projected objects
+   */
+  public List<?> project(List<?> objects, Gson gson) {
+    List<Object> projected = Lists.newArrayListWithCapacity(objects.size());
+    for (Object object : objects) {
+      projected.add(isEntity(object) ? project(object, gson) : object);
+    }
+    return projected;
+  }
+
+  /**
+   * Projects an entity. A selected field that is {@code null} is kept as a JSON null, which Gson
+   * leaves out when it is not set to serialize nulls.
+   *
+   * @param object the entity
+   * @param gson used to serialize the selected field values
+   * @return a JSON object with the selected fields
+   */
+  JsonObject project(Object object, Gson gson) {
+    JsonObject projected = new JsonObject();
+    for (Field field : getPlan(object.getClass())) {
+      Object value;
+      try {
+        value = field.get(object);
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException("Cannot read field " + field.getName() + ".", e);
+      }
+      projected.add(field.getName(), toJsonTree(value, field.getGenericType(), gson));
+    }
+    return projected;
+  }
+
+  /**
+   * Serializes a field value. Like Gson, the runtime type of the value is used unless the
+   * declared type is parameterized, so that subclass fields are not lost.
+   */
+  private static JsonElement toJsonTree(Object value, Type declaredType, Gson gson) {
+    if (value == null) {
+      return JsonNull.INSTANCE;
+    }
+    return gson.toJsonTree(value, declaredType instanceof Class ? value.getClass() : declaredType);
+  }
+
+  /**
+   * Gets the fields to read from an entity class, working them out on first use. Fields are
+   * listed the way Gson's reflective serialization orders them: the class's own fields first,
+   * then those of each superclass.
+   */
+  private List<Field> getPlan(Class<?> entityClass) {
+    List<Field> plan = plans.get(entityClass);
+    if (plan == null) {
+      List<Field> fields = Lists.newArrayList();
+      for (Class<?> raw = entityClass; raw != null && raw != Object.class;
+          raw = raw.getSuperclass()) {
+        for (Field field : raw.getDeclaredFields()) {
+          int modifiers = field.getModifiers();
+          if (fieldNames.contains(field.getName()) && !Modifier.isStatic(modifiers)
+              && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+            field.setAccessible(true);
+            fields.add(field);
+          }
+        }
+      }
+      plan = ImmutableList.copyOf(fields);
+      plans.putIfAbsent(entityClass, plan);
+    }
+    return plan;
+  }
+
+  /**
+   * Checks if Gson serializes an object field by field.
+   */
+  private static boolean isEntity(Object object) {
+    return object != null && !object.getClass().isArray() && !object.getClass().isEnum()
+        && !(object instanceof CharSequence || object instanceof Number
+            || object instanceof Boolean || object instanceof Character
+            || object instanceof Collection || object instanceof Map
+            || object instanceof JsonElement);
+  }
+}
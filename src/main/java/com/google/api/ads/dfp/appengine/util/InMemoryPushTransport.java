@@ -0,0 +1,273 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.appengine.api.channel.ChannelMessage;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the messages for each channel in memory until they are taken. Nothing connects to the
+ * channel, so the transport is for tests and load runs, which can take the messages and read the
+ * counts of messages and bytes sent, which are also served by the push stats servlet. The
+ * messages of a channel are capped, and the oldest are dropped once a channel is full, so
+ * channels that are never read do not grow without bound.
+ *
+ * A channel exists from when it is opened until it is closed. Like the Channel API, messages sent
+ * to a channel that is not open are dropped.
+ *
+ * The messages only live on the instance that sent them, so the transport only works with a
+ * single instance.
+ */
+@Singleton
+public class InMemoryPushTransport implements PushTransport {
+
+  private static final Logger log = Logger.getLogger(InMemoryPushTransport.class.getName());
+
+  /** The name of the transport. */
+  public static final String NAME = "memory";
+
+  /** System property that sets the number of messages a channel keeps. */
+  static final String CAPACITY_PROPERTY = "dfp.appengine.pushQueueCapacity";
+
+  /** The channel capacity if the system property is not set. */
+  static final int DEFAULT_CAPACITY = 256;
+
+  private final int capacity;
+  private final long sendTimeoutMillis;
+  private final ConcurrentMap<String, Channel> channels = new ConcurrentHashMap<String, Channel>();
+  private final AtomicLong sentCount = new AtomicLong();
+  private final AtomicLong sentBytes = new AtomicLong();
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  @Inject
+  public InMemoryPushTransport() {
+    this(Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY), 0);
+  }
+
+  @VisibleForTesting
+  InMemoryPushTransport(int capacity) {
+    this(capacity, 0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param capacity the number of messages a channel keeps
+   * @param sendTimeoutMillis how long a message waits for room in a full channel that a client is
+   *     reading, before the oldest message is dropped
+   */
+  InMemoryPushTransport(int capacity, long sendTimeoutMillis) {
+    Preconditions.checkArgument(capacity > 0, "Channel capacity must be positive.");
+    Preconditions.checkArgument(sendTimeoutMillis >= 0, "Send timeout must not be negative.");
+    this.capacity = capacity;
+    this.sendTimeoutMillis = sendTimeoutMillis;
+  }
+
+  public String getName() {
+    return NAME;
+  }
+
+  public String open(String channelKey) {
+    openChannel(channelKey);
+    return channelKey;
+  }
+
+  /**
+   * Closes a channel. Its messages are dropped, and so are the messages sent to it until it is
+   * opened again.
+   *
+   * @param channelKey the key of the channel
+   */
+  public void close(String channelKey) {
+    Channel channel = channels.get(channelKey);
+    if (channel != null) {
+      close(channelKey, channel);
+    }
+  }
+
+  public void send(ChannelMessage message) {
+    String channelKey = message.getClientId();
+    Channel channel = channels.get(channelKey);
+    if (channel == null) {
+      droppedCount.incrementAndGet();
+      log.log(Level.FINE, "Dropped a message to closed channel " + channelKey + ".");
+      return;
+    }
+    if (!offer(channel, message.getMessage())) {
+      while (!channel.messages.offer(message.getMessage())) {
+        if (channel.messages.poll() != null) {
+          channel.unreportedDrops.incrementAndGet();
+          droppedCount.incrementAndGet();
+          log.log(Level.WARNING, "Dropped the oldest message of full channel " + channelKey + ".");
+        }
+      }
+    }
+    sentCount.incrementAndGet();
+    sentBytes.addAndGet(Channels.getUtf8Length(message.getMessage()));
+  }
+
+  /**
+   * Takes the oldest message of a channel, waiting for one to be sent if there is none.
+   *
+   * @param channelKey the key of the channel
+   * @param timeout how long to wait
+   * @param unit the unit of the timeout
+   * @return the message, or {@code null} if none was sent in time or the channel is not open
+   * @throws InterruptedException if the calling thread is interrupted while waiting
+   */
+  public String poll(String channelKey, long timeout, TimeUnit unit) throws InterruptedException {
+    Channel channel = channels.get(channelKey);
+    return channel == null ? null : channel.messages.poll(timeout, unit);
+  }
+
+  /**
+   * Takes every message of a channel.
+   *
+   * @param channelKey the key of the channel
+   * @return the messages, oldest first
+   */
+  public List<String> drain(String channelKey) {
+    List<String> messages = Lists.newArrayList();
+    Channel channel = channels.get(channelKey);
+    if (channel != null) {
+      channel.messages.drainTo(messages);
+    }
+    return messages;
+  }
+
+  /**
+   * Gets the number of messages sent through the transport.
+   */
+  public long getSentCount() {
+    return sentCount.get();
+  }
+
+  /**
+   * Gets the number of UTF-8 bytes in the messages sent through the transport.
+   */
+  public long getSentBytes() {
+    return sentBytes.get();
+  }
+
+  /**
+   * Gets the number of messages dropped from full or closed channels, or sent to channels that
+   * were not open.
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  /**
+   * Gets the number of open channels.
+   */
+  public int getChannelCount() {
+    return channels.size();
+  }
+
+  /**
+   * Gets the open channels by key.
+   */
+  Map<String, Channel> getChannels() {
+    return Collections.unmodifiableMap(channels);
+  }
+
+  /**
+   * Gets a channel, opening it if it is not open.
+   *
+   * @param channelKey the key of the channel
+   * @return the channel
+   */
+  Channel openChannel(String channelKey) {
+    Channel channel = channels.get(channelKey);
+    if (channel == null) {
+      Channel created = new Channel(capacity);
+      channel = channels.putIfAbsent(channelKey, created);
+      if (channel == null) {
+        channel = created;
+      }
+    }
+    return channel;
+  }
+
+  /**
+   * Closes a channel, unless it has already been closed and opened again.
+   *
+   * @param channelKey the key of the channel
+   * @param channel the channel
+   */
+  void close(String channelKey, Channel channel) {
+    if (channels.remove(channelKey, channel)) {
+      droppedCount.addAndGet(channel.messages.size());
+      channel.messages.clear();
+    }
+  }
+
+  /**
+   * Adds a message to a channel, waiting for room while a client reads the channel.
+   *
+   * @return whether there was room for the message
+   */
+  private boolean offer(Channel channel, String message) {
+    if (sendTimeoutMillis == 0 || channel.streamCount == 0) {
+      return channel.messages.offer(message);
+    }
+    try {
+      return channel.messages.offer(message, sendTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return channel.messages.offer(message);
+    }
+  }
+
+  /**
+   * The messages of a channel, and what a transport that streams them to the client knows of the
+   * channel.
+   */
+  static final class Channel {
+
+    /** The messages that have not been taken yet. */
+    final BlockingQueue<String> messages;
+
+    /** The number of messages dropped since the client was last told of dropped messages. */
+    final AtomicInteger unreportedDrops = new AtomicInteger();
+
+    /** The number of streams that read the channel, changed while holding the transport lock. */
+    volatile int streamCount;
+
+    /** When the last stream that read the channel ended, or when the channel was opened. */
+    long idleSinceMillis = System.currentTimeMillis();
+
+    Channel(int capacity) {
+      this.messages = new LinkedBlockingQueue<String>(capacity);
+    }
+  }
+}
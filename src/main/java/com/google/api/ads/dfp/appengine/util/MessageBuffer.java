@@ -0,0 +1,244 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A reusable buffer for building channel messages of the form
+ * {@code {"tag":[objects...],"reqId":"requestId"}}. Objects are serialized straight into the
+ * buffer through a {@link JsonWriter}, without building a map and list for each message or a
+ * string for each object, and the buffer's storage is kept between messages.
+ *
+ * A buffer is not thread-safe, so {@link Channels} keeps one per thread.
+ */
+class MessageBuffer {
+
+  /** The largest capacity a buffer keeps between messages, so one large object is not pinned. */
+  private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+  private final Gson gson;
+
+  /** The message being built. */
+  private StringBuilder message = new StringBuilder();
+
+  /** The last serialized object, which is not yet in the message. */
+  private StringBuilder object = new StringBuilder();
+
+  /** Writes objects into the object buffer. */
+  private JsonWriter objectWriter = newJsonWriter(object);
+
+  /** The end of the message after the objects. */
+  private String suffix;
+
+  /** The number of characters before the objects in the message. */
+  private int prefixLength;
+
+  /** The number of UTF-8 bytes in the message without any objects. */
+  private int envelopeBytes;
+
+  /** The number of UTF-8 bytes in the message, including the suffix. */
+  private int messageBytes;
+
+  /** The number of UTF-8 bytes in the last serialized object. */
+  private int objectBytes;
+
+  /** The number of objects in the message. */
+  private int objectCount;
+
+  /**
+   * Constructor.
+   *
+   * @param gson serializes the objects
+   */
+  MessageBuffer(Gson gson) {
+    this.gson = gson;
+  }
+
+  /**
+   * Starts building messages for a panel and request, clearing the buffer.
+   *
+   * @param tag the name of the content panel
+   * @param requestId the ID of the incoming data request
+   */
+  void start(String tag, String requestId) {
+    if (message.capacity() > MAX_RETAINED_CAPACITY) {
+      message = new StringBuilder();
+    }
+    if (object.capacity() > MAX_RETAINED_CAPACITY) {
+      object = new StringBuilder();
+      objectWriter = newJsonWriter(object);
+    }
+    message.setLength(0);
+    message.append('{').append(gson.toJson(tag)).append(":[");
+    prefixLength = message.length();
+    suffix = "]," + gson.toJson(Channels.REQUEST_ID) + ":" + gson.toJson(requestId) + "}";
+    envelopeBytes = getUtf8Length(message, 0, prefixLength)
+        + getUtf8Length(suffix, 0, suffix.length());
+    messageBytes = envelopeBytes;
+    objectCount = 0;
+  }
+
+  /**
+   * Serializes an object into the buffer. The object is not part of the message until it is
+   * appended. If serialization fails, the object writer is replaced, since it is left inside the
+   * object that failed and would break every later object.
+   *
+   * @param value the object to serialize
+   * @return the number of UTF-8 bytes the object adds to the message
+   */
+  int serialize(Object value) {
+    object.setLength(0);
+    boolean serialized = false;
+    try {
+      if (value == null) {
+        object.append("null");
+      } else if (value instanceof JsonElement) {
+        // Gson only picks its JSON tree adapter by the declared type.
+        gson.toJson((JsonElement) value, objectWriter);
+      } else {
+        gson.toJson(value, value.getClass(), objectWriter);
+      }
+      serialized = true;
+    } finally {
+      if (!serialized) {
+        object = new StringBuilder();
+        objectWriter = newJsonWriter(object);
+      }
+    }
+    objectBytes = getUtf8Length(object, 0, object.length());
+    return objectCount > 0 ? objectBytes + 1 : objectBytes;
+  }
+
+  /**
+   * Appends the last serialized object to the message.
+   */
+  void append() {
+    if (objectCount > 0) {
+      message.append(',');
+      messageBytes += 1;
+    }
+    message.append(object);
+    messageBytes += objectBytes;
+    objectCount += 1;
+  }
+
+  /**
+   * Gets the number of objects in the message.
+   *
+   * @return the number of objects
+   */
+  int getObjectCount() {
+    return objectCount;
+  }
+
+  /**
+   * Gets the number of UTF-8 bytes in the message once it is finished.
+   *
+   * @return the number of bytes
+   */
+  int getMessageBytes() {
+    return messageBytes;
+  }
+
+  /**
+   * Finishes the message and starts the next one for the same panel and request.
+   *
+   * @return the JSON of the message
+   */
+  String finishMessage() {
+    message.append(suffix);
+    String json = message.toString();
+    message.setLength(prefixLength);
+    messageBytes = envelopeBytes;
+    objectCount = 0;
+    return json;
+  }
+
+  /**
+   * Gets the number of bytes in the UTF-8 encoding of part of a character sequence.
+   *
+   * @param chars the character sequence
+   * @param start the index of the first character
+   * @param end the index after the last character
+   * @return the number of bytes
+   */
+  static int getUtf8Length(CharSequence chars, int start, int end) {
+    int bytes = 0;
+    for (int i = start; i < end; i++) {
+      char c = chars.charAt(i);
+      bytes += c < 0x80 ? 1 : (c < 0x800 || Character.isSurrogate(c)) ? 2 : 3;
+    }
+    return bytes;
+  }
+
+  /**
+   * Creates a JSON writer that appends to a string builder. The writer is lenient so it can write
+   * one top-level value after another.
+   */
+  private static JsonWriter newJsonWriter(StringBuilder builder) {
+    JsonWriter writer = new JsonWriter(new StringBuilderWriter(builder));
+    writer.setLenient(true);
+    return writer;
+  }
+
+  /**
+   * A writer that appends to a string builder without copying the characters it is given.
+   */
+  private static class StringBuilderWriter extends Writer {
+    private final StringBuilder builder;
+
+    StringBuilderWriter(StringBuilder builder) {
+      this.builder = builder;
+    }
+
+    @Override
+    public void write(int c) {
+      builder.append((char) c);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+      builder.append(chars, offset, length);
+    }
+
+    @Override
+    public void write(String string) {
+      builder.append(string);
+    }
+
+    @Override
+    public void write(String string, int offset, int length) {
+      builder.append(string, offset, offset + length);
+    }
+
+    @Override
+    public Writer append(CharSequence chars) {
+      builder.append(chars);
+      return this;
+    }
+
+    @Override
+    public void flush() throws IOException {}
+
+    @Override
+    public void close() throws IOException {}
+  }
+}
@@ -0,0 +1,56 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses channel messages with raw deflate and encodes them as base64, since channel
+ * messages are strings. The client inflates them with its own decoder, so no zlib header or
+ * checksum is written.
+ */
+final class MessageCompression {
+
+  private static final int BUFFER_BYTES = 8 * 1024;
+
+  private MessageCompression() {}
+
+  /**
+   * Deflates a message and encodes it as base64.
+   *
+   * @param message the JSON message
+   * @return the base64 of the deflated UTF-8 bytes of the message
+   */
+  static String compress(String message) {
+    byte[] input = message.getBytes(Charsets.UTF_8);
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try {
+      deflater.setInput(input);
+      deflater.finish();
+      ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 4 + 64);
+      byte[] buffer = new byte[BUFFER_BYTES];
+      while (!deflater.finished()) {
+        output.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return BaseEncoding.base64().encode(output.toByteArray());
+    } finally {
+      deflater.end();
+    }
+  }
+}
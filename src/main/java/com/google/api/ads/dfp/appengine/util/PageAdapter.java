@@ -0,0 +1,103 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reads the results and total result set size of API pages, such as {@code OrderPage}. The
+ * getters are looked up once per page class and kept as method handles, so reading a page does not
+ * need a reflective lookup.
+ */
+public final class PageAdapter {
+
+  /** The adapters for each page class. */
+  private static final ConcurrentMap<Class<?>, PageAdapter> ADAPTERS =
+      new ConcurrentHashMap<Class<?>, PageAdapter>();
+
+  /** Gets the results of a page. */
+  private final MethodHandle resultsGetter;
+
+  /** The page class this adapter reads. */
+  private final Class<?> pageClass;
+
+  /** Gets the total result set size of a page, or {@code null} until it is first needed. */
+  private volatile MethodHandle totalResultSetSizeGetter;
+
+  private PageAdapter(Class<?> pageClass) {
+    this.pageClass = pageClass;
+    this.resultsGetter = EntityAdapter.findGetter(pageClass, "results");
+  }
+
+  /**
+   * Gets the adapter for the class of a page.
+   *
+   * @param page the page
+   * @return the adapter for the page's class
+   * @throws IllegalArgumentException if the page does not have results
+   */
+  public static PageAdapter of(Object page) {
+    Preconditions.checkNotNull(page, "Cannot adapt null page.");
+    Class<?> pageClass = page.getClass();
+    PageAdapter adapter = ADAPTERS.get(pageClass);
+    if (adapter == null) {
+      ADAPTERS.putIfAbsent(pageClass, new PageAdapter(pageClass));
+      adapter = ADAPTERS.get(pageClass);
+    }
+    return adapter;
+  }
+
+  /**
+   * Gets the results of a page.
+   *
+   * @param page the page
+   * @return the results
+   */
+  public List<?> getResults(Object page) {
+    Object results;
+    try {
+      results = resultsGetter.invokeExact(page);
+    } catch (Throwable t) {
+      throw Throwables.propagate(t);
+    }
+    return (List<?>) results;
+  }
+
+  /**
+   * Gets the total result set size of a page.
+   *
+   * @param page the page
+   * @return the total result set size, or 0 if it is not set
+   * @throws IllegalArgumentException if the page does not have a total result set size
+   */
+  public int getTotalResultSetSize(Object page) {
+    if (totalResultSetSizeGetter == null) {
+      totalResultSetSizeGetter = EntityAdapter.findGetter(pageClass, "totalResultSetSize");
+    }
+    Object totalResultSetSize;
+    try {
+      totalResultSetSize = totalResultSetSizeGetter.invokeExact(page);
+    } catch (Throwable t) {
+      throw Throwables.propagate(t);
+    }
+    return totalResultSetSize == null ? 0 : (Integer) totalResultSetSize;
+  }
+}
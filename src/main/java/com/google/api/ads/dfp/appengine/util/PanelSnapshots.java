@@ -0,0 +1,162 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persists the snapshots of the entities each panel was last sent in memcache, so a refresh of
+ * the panel only sends the entities that were added, changed or removed since.
+ *
+ * A snapshot is keyed by the user, network, tag, filter text, fields and type override of the
+ * request, and is only used for a refresh if the client says it has the results of the request
+ * that saved it. The tracker of a suspended fetch is kept under the request ID until the
+ * continuation task picks it up.
+ */
+@Singleton
+public class PanelSnapshots {
+
+  static final Logger log = Logger.getLogger(PanelSnapshots.class.getName());
+
+  /** Prefix of the memcache keys for snapshots. */
+  static final String SNAPSHOT_PREFIX = "panelSnapshot:";
+
+  /** Prefix of the memcache keys for the trackers of suspended fetches. */
+  static final String PENDING_PREFIX = "panelSnapshotPending:";
+
+  /** The number of seconds to keep a snapshot in memcache. */
+  static final int EXPIRATION_SECONDS = 60 * 60;
+
+  private final MemcacheService memcacheService;
+
+  /**
+   * Constructor.
+   *
+   * @param memcacheService the App Engine caching service
+   */
+  @Inject
+  public PanelSnapshots(MemcacheService memcacheService) {
+    this.memcacheService = Preconditions.checkNotNull(memcacheService);
+  }
+
+  /**
+   * Gets the key of the snapshot of a panel. The request parameters are hashed, since filter text
+   * can be longer than a memcache key.
+   *
+   * @param userId the ID of the user who made the request
+   * @param networkCode the network the panel shows
+   * @param tag the panel that made the request
+   * @param filterText the PQL filter text of the request
+   * @param fields the fields the client asked for
+   * @param typeOverride the type override of the request
+   * @return the snapshot key
+   */
+  public static String getSnapshotKey(String userId, String networkCode, String tag,
+      String filterText, String fields, String typeOverride) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (String part : new String[] {userId, networkCode, tag, filterText, fields, typeOverride}) {
+      String value = Strings.nullToEmpty(part);
+      // Prefix each part with its length so that parts cannot run into each other.
+      hasher.putInt(value.length()).putString(value, Charsets.UTF_8);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Starts tracking the entities of a panel refresh.
+   *
+   * @param snapshotKey the key of the panel's snapshot
+   * @param baseRequestId the ID of the last request whose results the client has, or an empty
+   *     string if it has none
+   * @return the tracker, which compares with the saved snapshot if it is of the base request
+   */
+  public DeltaTracker start(String snapshotKey, String baseRequestId) {
+    EntitySnapshot previous = null;
+    if (!Strings.isNullOrEmpty(baseRequestId)) {
+      previous = (EntitySnapshot) memcacheService.get(SNAPSHOT_PREFIX + snapshotKey);
+      if (previous != null && !baseRequestId.equals(previous.getRequestId())) {
+        previous = null;
+      }
+    }
+    return new DeltaTracker(previous);
+  }
+
+  /**
+   * Takes the tracker of a fetch that is continued or retried. The tracker is removed, so a retry
+   * of this task does not pick up a tracker that is missing the entities sent by this one.
+   *
+   * @param snapshotKey the key of the panel's snapshot
+   * @param requestId the ID of the request
+   * @return the tracker, or {@code null} if there is none, such as when memcache has evicted it
+   */
+  public DeltaTracker resume(String snapshotKey, String requestId) {
+    String pendingKey = getPendingKey(snapshotKey, requestId);
+    DeltaTracker tracker = (DeltaTracker) memcacheService.get(pendingKey);
+    memcacheService.delete(pendingKey);
+    return tracker;
+  }
+
+  /**
+   * Saves the tracker of a fetch that is suspended, for the task that continues it.
+   *
+   * @param snapshotKey the key of the panel's snapshot
+   * @param requestId the ID of the request
+   * @param tracker the tracker
+   */
+  public void suspend(String snapshotKey, String requestId, DeltaTracker tracker) {
+    put(getPendingKey(snapshotKey, requestId), tracker);
+  }
+
+  /**
+   * Saves the snapshot of a fetch that has finished, as the base of the next refresh.
+   *
+   * @param snapshotKey the key of the panel's snapshot
+   * @param requestId the ID of the request
+   * @param tracker the tracker of the fetch
+   */
+  public void finish(String snapshotKey, String requestId, DeltaTracker tracker) {
+    put(SNAPSHOT_PREFIX + snapshotKey, tracker.toSnapshot(requestId));
+  }
+
+  /**
+   * Puts a value in memcache. Values that are too large are dropped, which makes the next refresh
+   * send every entity, since an older snapshot does not match the client's base request.
+   */
+  private void put(String key, Object value) {
+    try {
+      memcacheService.put(key, value, Expiration.byDeltaSeconds(EXPIRATION_SECONDS));
+    } catch (RuntimeException e) {
+      log.log(Level.WARNING, "Could not save panel snapshot.", e);
+    }
+  }
+
+  /**
+   * Gets the memcache key for the tracker of a suspended fetch.
+   */
+  private static String getPendingKey(String snapshotKey, String requestId) {
+    return PENDING_PREFIX + snapshotKey + ":" + requestId;
+  }
+}
@@ -0,0 +1,45 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.appengine.api.channel.ChannelMessage;
+
+/**
+ * Pushes messages to the browser of a user. {@link Channels} sends every message through a
+ * transport, so the App Engine Channel API can be swapped for server-sent events, or for an
+ * in-memory transport in tests and load runs.
+ */
+public interface PushTransport {
+
+  /**
+   * Gets the name of the transport, which tells the client how to connect to it.
+   */
+  String getName();
+
+  /**
+   * Opens a channel for a client.
+   *
+   * @param channelKey the key that messages for the client are sent with
+   * @return the token the client connects to the channel with
+   */
+  String open(String channelKey);
+
+  /**
+   * Sends a message to the client with the message's client ID as its channel key.
+   *
+   * @param message the message
+   */
+  void send(ChannelMessage message);
+}
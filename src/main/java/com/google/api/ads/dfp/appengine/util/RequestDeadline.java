@@ -0,0 +1,35 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.apphosting.api.ApiProxy;
+
+/**
+ * Reports how much time the current request has left before App Engine stops it. Task queue
+ * requests have a longer deadline than user requests, but a large fetch can still run out of time.
+ */
+public class RequestDeadline {
+
+  /**
+   * Gets the time left before the current request's deadline. Outside of App Engine (i.e. in unit
+   * tests), there is no deadline.
+   *
+   * @return the remaining milliseconds, or {@link Long#MAX_VALUE} if there is no deadline
+   */
+  public long getRemainingMillis() {
+    ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+    return environment != null ? environment.getRemainingMillis() : Long.MAX_VALUE;
+  }
+}
@@ -0,0 +1,62 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.appengine.api.ThreadManager;
+import com.google.apphosting.api.ApiProxy;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Utility class for creating executors that run work on behalf of the current request.
+ *
+ * App Engine only allows threads created through {@link ThreadManager} while a request is being
+ * handled, and those threads cannot outlive the request. Executors created here must therefore be
+ * shut down before the request returns.
+ */
+public final class RequestThreads {
+
+  private RequestThreads() {}
+
+  /**
+   * Creates an executor with a fixed number of threads. An executor that runs tasks on the calling
+   * thread is returned if only a single thread is requested.
+   *
+   * @param threads the maximum number of tasks to run at once
+   * @return an executor that must be shut down by the caller
+   */
+  public static ExecutorService newFixedThreadPool(int threads) {
+    Preconditions.checkArgument(threads > 0, "Thread count must be positive.");
+    if (threads == 1) {
+      return MoreExecutors.sameThreadExecutor();
+    }
+    return Executors.newFixedThreadPool(threads, getThreadFactory());
+  }
+
+  /**
+   * Gets a thread factory for the current request. Outside of App Engine (i.e. in unit tests),
+   * plain threads are used instead.
+   *
+   * @return a thread factory
+   */
+  public static ThreadFactory getThreadFactory() {
+    return ApiProxy.getCurrentEnvironment() != null
+        ? ThreadManager.currentRequestThreadFactory() : Executors.defaultThreadFactory();
+  }
+}
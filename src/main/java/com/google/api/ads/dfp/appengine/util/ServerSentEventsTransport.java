@@ -0,0 +1,170 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes messages as server-sent events. Messages wait in memory until the client's event stream
+ * takes them, so the messages sent while the client reconnects are not lost. Each message is one
+ * event, and a comment is sent when no message has been sent for a while to keep idle connections
+ * open.
+ *
+ * While an event stream reads a full channel, a message waits a while for the stream to take
+ * older ones, which slows down the fetch that sends it instead of losing data. If the oldest
+ * message has to be dropped anyway, the stream sends an event with the number of dropped messages
+ * before the next message, so the client does not show partial results as complete. A channel
+ * that no stream has read for a while is closed, since its page is gone.
+ *
+ * An event stream holds a request open for as long as it runs, and App Engine buffers responses,
+ * so this transport is for running the application in a servlet container that streams
+ * responses. Like the in-memory transport, it only works with a single instance.
+ */
+@Singleton
+public class ServerSentEventsTransport extends InMemoryPushTransport {
+
+  /** The name of the transport. */
+  public static final String NAME = "sse";
+
+  /** The key of the event that tells the client how many messages were dropped. */
+  static final String DROPPED_TAG = "dropped";
+
+  /** How long an event stream can be idle before a comment is sent. */
+  static final long HEARTBEAT_MILLIS = 15000;
+
+  /** How long the client waits before it reconnects once an event stream ends. */
+  static final long RETRY_MILLIS = 1000;
+
+  /** How long a message waits for room in a full channel that a stream reads. */
+  static final long SEND_TIMEOUT_MILLIS = 1000;
+
+  /** How long a channel stays open without a stream, which is well above the retry delay. */
+  static final long CLOSE_MILLIS = 60000;
+
+  private final long closeMillis;
+
+  @Inject
+  public ServerSentEventsTransport() {
+    this(Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY), SEND_TIMEOUT_MILLIS,
+        CLOSE_MILLIS);
+  }
+
+  @VisibleForTesting
+  ServerSentEventsTransport(int capacity, long sendTimeoutMillis, long closeMillis) {
+    super(capacity, sendTimeoutMillis);
+    this.closeMillis = closeMillis;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  /**
+   * Opens a channel, and closes the channels that no stream has read for a while.
+   */
+  @Override
+  public synchronized String open(String channelKey) {
+    closeIdleChannels();
+    return super.open(channelKey);
+  }
+
+  /**
+   * Writes the messages of a channel as server-sent events until the deadline passes or the client
+   * disconnects. A message that was taken when the client disconnected is lost. The channel is
+   * opened if it was closed, so a client that comes back gets the messages sent from then on.
+   *
+   * @param channelKey the key of the channel
+   * @param writer the writer of the event stream
+   * @param deadlineMillis when to end the stream, in milliseconds since the epoch
+   * @return the number of messages written
+   * @throws InterruptedException if the calling thread is interrupted while waiting
+   */
+  public int writeEvents(String channelKey, PrintWriter writer, long deadlineMillis)
+      throws InterruptedException {
+    Channel channel = connect(channelKey);
+    try {
+      writer.print("retry: " + RETRY_MILLIS + "\n\n");
+      writer.flush();
+      int count = 0;
+      long remainingMillis;
+      while (!writer.checkError()
+          && (remainingMillis = deadlineMillis - System.currentTimeMillis()) > 0) {
+        String message =
+            channel.messages.poll(Math.min(remainingMillis, HEARTBEAT_MILLIS),
+                TimeUnit.MILLISECONDS);
+        int dropped = channel.unreportedDrops.getAndSet(0);
+        if (dropped > 0) {
+          writeEvent(writer, "{\"" + DROPPED_TAG + "\":" + dropped + "}");
+        }
+        if (message == null) {
+          writer.print(":\n\n");
+        } else {
+          writeEvent(writer, message);
+          count++;
+        }
+        writer.flush();
+      }
+      return count;
+    } finally {
+      disconnect(channel);
+    }
+  }
+
+  /**
+   * Writes a message as an event. Messages are JSON, which only has line breaks between tokens.
+   */
+  private static void writeEvent(PrintWriter writer, String message) {
+    writer.print("data: " + message.replace("\n", "\ndata: ") + "\n\n");
+  }
+
+  /**
+   * Opens a channel for a stream that reads it.
+   */
+  private synchronized Channel connect(String channelKey) {
+    closeIdleChannels();
+    Channel channel = openChannel(channelKey);
+    channel.streamCount++;
+    return channel;
+  }
+
+  /**
+   * Ends a stream that read a channel.
+   */
+  private synchronized void disconnect(Channel channel) {
+    if (--channel.streamCount == 0) {
+      channel.idleSinceMillis = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Closes the channels that no stream has read for a while.
+   */
+  private void closeIdleChannels() {
+    long now = System.currentTimeMillis();
+    for (Map.Entry<String, Channel> entry : getChannels().entrySet()) {
+      Channel channel = entry.getValue();
+      if (channel.streamCount == 0 && now - channel.idleSinceMillis >= closeMillis) {
+        close(entry.getKey(), channel);
+      }
+    }
+  }
+}
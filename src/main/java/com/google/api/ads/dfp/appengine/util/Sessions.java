@@ -19,9 +19,16 @@ import com.google.api.ads.dfp.appengine.oauth.CredentialException;
 import com.google.api.ads.dfp.appengine.oauth.CredentialFactory;
 import com.google.api.ads.dfp.lib.client.DfpSession;
 import com.google.api.client.auth.oauth2.Credential;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 /**
  * {@code Sessions} is used to get DFP sessions for an App Engine application.
  *
@@ -32,12 +39,27 @@ import com.google.inject.name.Named;
  *
  * <code>DfpSession session = Sessions.get('APP_ENGINE_USER_ID');</code>
  *
+ * Sessions are cached for each user and network, and the same session is handed out for as long
+ * as the user's credential stays the same, so that the service stubs built for it can be reused.
+ * Sessions must not be changed by their callers.
+ *
  * @author Jeff Sham
  */
+@Singleton
 public class Sessions {
 
+  /** The maximum number of sessions to cache. */
+  static final int MAX_CACHED_SESSIONS = 1000;
+
+  /** How long a session is cached for, which is the lifetime of an access token. */
+  static final long SESSION_LIFETIME_MINUTES = 60;
+
   private final String applicationName;
   private final CredentialFactory credentialFactory;
+  private final Cache<List<String>, DfpSession> sessions = CacheBuilder.newBuilder()
+      .maximumSize(MAX_CACHED_SESSIONS)
+      .expireAfterWrite(SESSION_LIFETIME_MINUTES, TimeUnit.MINUTES)
+      .build();
 
   @Inject
   public Sessions(CredentialFactory credentialFactory,
@@ -46,7 +68,6 @@ public class Sessions {
     this.applicationName = applicationName;
   }
 
-
   /**
    * Creates a {@link DfpSession} from the user's stored credentials and specified network.
    *
@@ -58,7 +79,7 @@ public class Sessions {
    */
   public DfpSession get(String networkCode, String userId) throws ValidationException,
       CredentialException {
-    return getSessionBuilder(userId).withNetworkCode(networkCode).build();
+    return getSession(userId, networkCode);
   }
 
   /**
@@ -71,20 +92,34 @@ public class Sessions {
    * @throws CredentialException if credential cannot be obtained
    */
   public DfpSession get(String userId) throws ValidationException, CredentialException {
-    return getSessionBuilder(userId).build();
+    return getSession(userId, null);
   }
 
   /**
-   * Create a session builder with base configuration.
+   * Gets the cached session of a user and network, or creates one if there is none or if the
+   * user's credential has changed since it was created.
    *
    * @param userId the App Engine assigned user ID
-   * @return DfpSession.Builder the DFP session
+   * @param networkCode the user's network code, or {@code null} for none
+   * @return session the DFP session
+   * @throws ValidationException if the DFP session could not be validated and created
    * @throws CredentialException if credential cannot be obtained
    */
-  private DfpSession.Builder getSessionBuilder(String userId) throws CredentialException {
+  private DfpSession getSession(String userId, String networkCode) throws ValidationException,
+      CredentialException {
     Credential credential = credentialFactory.getInstance(userId);
-    return new DfpSession.Builder()
-        .withOAuth2Credential(credential)
-        .withApplicationName(applicationName);
+    List<String> key = Arrays.asList(userId, networkCode);
+    DfpSession session = sessions.getIfPresent(key);
+    if (session == null || session.getOAuth2Credential() != credential) {
+      DfpSession.Builder builder = new DfpSession.Builder()
+          .withOAuth2Credential(credential)
+          .withApplicationName(applicationName);
+      if (networkCode != null) {
+        builder.withNetworkCode(networkCode);
+      }
+      session = builder.build();
+      sessions.put(key, session);
+    }
+    return session;
   }
 }
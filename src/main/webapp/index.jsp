@@ -357,15 +357,20 @@ limitations under the License. -->
     trademarks of Google Inc.</div>
   <div id="dfp-signin-tooltip">Click "Sign in" to get started.</div>
   <script type="text/javascript">
-    var channel = new goog.appengine.Channel('<%=request.getAttribute("channel_token")%>');
-    var socket = channel.open();
-    socket.onmessage = dfpwebapp.handleChannelMessage;
+    dfpwebapp.openPushChannel('<%=request.getAttribute("push_transport")%>',
+        '<%=request.getAttribute("channel_token")%>');
     </script>
   <script type="text/javascript">
       // Determine if the user is logged in.
       // Code to run when page loads.
       $(document).ready(function() {
-        panelManager = new dfpwebapp.PanelManager({});
+        panelManager = new dfpwebapp.PanelManager({
+          wireFormat: 'columnar',
+          compression: 'deflate',
+          deltaPanels: ['dfp-panel-ad-units', 'dfp-panel-companies', 'dfp-panel-creatives',
+              'dfp-panel-creativetemplates', 'dfp-panel-custom-targeting', 'dfp-panel-orders',
+              'dfp-panel-placements', 'dfp-panel-roles', 'dfp-panel-users']
+        });
         panelManager.init();
         panelManager.registerPanel('dfp-panel-ad-units', '/get?tag=ad-units');
         panelManager.registerPanel('dfp-panel-companies', '/get?tag=companies');
@@ -134,6 +134,36 @@ dfpwebapp.PanelManager = function(options) {
       options._publisherQueryLanguageDialogTitle ||
       'Publisher Query Language Results';
 
+  /**
+   * The wire format to ask the server for, either 'json' or 'columnar'.
+   * @type {string}
+   */
+  this._wireFormat = options.wireFormat || 'json';
+
+  /**
+   * The compression to ask the server for, either '' or 'deflate'. The server
+   * only compresses messages that get smaller.
+   * @type {string}
+   */
+  this._compression = options.compression || '';
+
+  /**
+   * A map of panel ids to the fields of the entities to fetch for the panel.
+   * Panels that are not listed get every field. The fields of a nested panel
+   * apply to the children too, so they must include the field that holds the
+   * parent ID, such as orderId.
+   * @type {Object.<string, Array.<string>>}
+   */
+  this._panelFields = options.panelFields || {};
+
+  /**
+   * The ids of the panels that are refreshed with deltas. The server only
+   * sends the entities of these panels that changed since the last refresh,
+   * and the ids of the entities to remove.
+   * @type {Array.<string>}
+   */
+  this._deltaPanels = options.deltaPanels || [];
+
   /**
    * A map of panel ids to urls.
    * @type {Object.<string, string>}
@@ -145,6 +175,20 @@ dfpwebapp.PanelManager = function(options) {
    * @type {Object.<string, string>}
    */
   this._panelLastRequestId = {};
+
+  /**
+   * A map of the panel ID to the ID of the last request whose results the
+   * panel shows in full, which is the base of the panel's next delta.
+   * @type {Object.<string, string>}
+   */
+  this._panelSyncedRequestId = {};
+
+  /**
+   * A map of the panel ID to the ID of the request whose delta is patched into
+   * the panel's content.
+   * @type {Object.<string, string>}
+   */
+  this._panelDeltaRequestId = {};
 };
 
 /**
@@ -333,18 +377,33 @@ dfpwebapp.PanelManager.prototype.loadPanel = function(id, displayStyle,
     data['typeOverride'] = '';
   }
 
+  var delta = $.inArray(id, this._deltaPanels) >= 0;
+  if (delta) {
+    data['baseReqId'] = this._panelSyncedRequestId[id] || '';
+  }
+
   data['reqId'] = this.getRequestId(id);
 
   // Set the network code on the outgoing request.
   data['networkCode'] = $('#network').val();
 
+  data['wireFormat'] = this._wireFormat;
+
+  data['compression'] = this._compression;
+
+  data['fields'] = (this._panelFields[id] || []).join(',');
+
 
   // Apply the loading class.
   this.showPanelLoadingView(panelDiv);
-  // Clear old content and load content from the url.
-  $(panelContentDiv).html('');
+  // Clear old content and load content from the url. The content of a delta
+  // panel is kept until the server says whether it sends every entity.
+  if (!delta) {
+    $(panelContentDiv).html('');
+  }
   $.get(url, data).error(function() {
       $(panelDiv).removeClass(self._loadingClass);
+      delete self._panelSyncedRequestId[id];
       // Request failed, show error message.
       $(panelContentDiv).html('<p class="' + self._errorClass +
           '">Error Loading Panel.</p>');
@@ -382,26 +441,121 @@ dfpwebapp.PanelManager.prototype.bind = function(id) {
 };
 
 /**
- * Add new data into the content area.
+ * Add new data into the content area. While a delta is patched into the
+ * panel, objects that the panel already shows replace their old elements.
  *
  * @param {string} id The id of the panel to add to.
  * @param {string} type The type of the objects to be added.
  * @param {Array} objects The object to add to the content area.
  * @param {function} insertCallback The callback method to insert HTML into the
  *     content area.
+ * @param {?string} itemClass The class of the elements of the objects, which
+ *     hold the object ids in their data-id attribute.
  */
 dfpwebapp.PanelManager.prototype.addContent = function(id, type, objects,
-    insertCallback) {
+    insertCallback, itemClass) {
   var panelContentDiv = this.findPanelContent(id);
   var panelDiv = this.findPanel(id);
-  if ($(panelContentDiv).children().length === 0) {
-    this.hidePanelLoadingView(panelDiv);
+  if (itemClass && this._panelDeltaRequestId[id] &&
+      this.isLatestRequest(id, this._panelDeltaRequestId[id])) {
+    this.patchContent($(panelContentDiv), type, objects, insertCallback,
+        itemClass);
+  } else {
+    if ($(panelContentDiv).children().length === 0) {
+      this.hidePanelLoadingView(panelDiv);
+    }
+    insertCallback($(panelContentDiv), type, objects);
   }
-  insertCallback($(panelContentDiv), type, objects);
   // Bind loaded links.
   this.bind(id);
 };
 
+/**
+ * Adds changed objects to the content area, putting the elements of objects
+ * that are already shown in the place of their old elements. The nested
+ * objects of an old element are moved to its new element, since they are sent
+ * separately.
+ *
+ * @param {Element} contentDiv The jQuery element of the content area.
+ * @param {string} type The type of the objects to be added.
+ * @param {Array} objects The objects to add to the content area.
+ * @param {function} insertCallback The callback method to insert HTML into the
+ *     content area.
+ * @param {string} itemClass The class of the elements of the objects.
+ */
+dfpwebapp.PanelManager.prototype.patchContent = function(contentDiv, type,
+    objects, insertCallback, itemClass) {
+  // Info and error messages of an earlier request make way for the objects.
+  contentDiv.children('p').remove();
+  var oldElements = [];
+  for (var i = 0; i < objects.length; i++) {
+    var oldElement = contentDiv.find(
+        dfpwebapp.getItemSelector(itemClass, objects[i].id));
+    if (oldElement.length > 0) {
+      oldElements.push(oldElement.first());
+    }
+  }
+  insertCallback(contentDiv, type, objects);
+  for (var i = 0; i < oldElements.length; i++) {
+    var oldElement = oldElements[i];
+    var newElement = contentDiv.find(dfpwebapp.getItemSelector(itemClass,
+        oldElement.attr('data-id'))).not(oldElement).last();
+    newElement.append(oldElement.children('ul'));
+    oldElement.replaceWith(newElement);
+  }
+};
+
+/**
+ * Starts the results of a panel refresh. If the server sends every entity,
+ * the panel is cleared. Otherwise the entities it sends are patched into the
+ * panel's content.
+ *
+ * @param {string} id The id of the panel.
+ * @param {string} reqId The request ID of the refresh.
+ * @param {boolean} full Whether the server sends every entity.
+ */
+dfpwebapp.PanelManager.prototype.startDelta = function(id, reqId, full) {
+  if (full) {
+    delete this._panelDeltaRequestId[id];
+    $(this.findPanelContent(id)).html('');
+  } else {
+    this._panelDeltaRequestId[id] = reqId;
+  }
+};
+
+/**
+ * Ends the results of a panel refresh by removing the entities that no longer
+ * exist. The refresh becomes the base of the next one, unless the server says
+ * it is incomplete.
+ *
+ * @param {string} id The id of the panel.
+ * @param {string} reqId The request ID of the refresh.
+ * @param {Object} sync The sync message with the ids of the removed entities
+ *     by tag.
+ */
+dfpwebapp.PanelManager.prototype.finishDelta = function(id, reqId, sync) {
+  var panelContentDiv = $(this.findPanelContent(id));
+  delete this._panelDeltaRequestId[id];
+  this.hidePanelLoadingView(this.findPanel(id));
+  if (!sync['complete']) {
+    delete this._panelSyncedRequestId[id];
+    return;
+  }
+  var removed = sync['removed'];
+  for (var tag in removed) {
+    var itemClass = dfpwebapp.getRoute(tag).itemClass;
+    for (var i = 0; i < removed[tag].length; i++) {
+      panelContentDiv.find(
+          dfpwebapp.getItemSelector(itemClass, removed[tag][i])).remove();
+    }
+  }
+  if (panelContentDiv.find('li').length === 0 &&
+      panelContentDiv.children('p').length === 0) {
+    this.printInfo(id, 'No results found.');
+  }
+  this._panelSyncedRequestId[id] = reqId;
+};
+
 /**
  * Add elements for loading panel.
  *
@@ -449,6 +603,25 @@ dfpwebapp.PanelManager.prototype.printError = function(id, message) {
       '">Error Loading Panel:\n' + message + '</p>');
 };
 
+/**
+ * Tells every panel with a request that the server dropped messages, since
+ * the client cannot tell which panels they were for. The requests are
+ * cancelled so the rest of their results are not shown as complete, and the
+ * next refresh of a delta panel sends every entity.
+ *
+ * @param {number} count The number of dropped messages.
+ */
+dfpwebapp.PanelManager.prototype.printDroppedMessages = function(count) {
+  for (var id in this._panels) {
+    delete this._panelSyncedRequestId[id];
+    delete this._panelDeltaRequestId[id];
+    if (this._panelLastRequestId[id]) {
+      this._panelLastRequestId[id] = null;
+      this.printError(id, count + ' messages were dropped. Reload the panel.');
+    }
+  }
+};
+
 /**
  * Get a new request ID for the panel.
  *
@@ -519,6 +692,383 @@ dfpwebapp.getKeys = function(object) {
   return keys;
 };
 
+/**
+ * Pieces of channel messages that were too large to send at once, keyed by
+ * chunk ID.
+ */
+dfpwebapp.messageChunks = {};
+
+/**
+ * Collects a piece of a channel message that was too large to send at once.
+ * Once every piece has arrived, they are joined in order and handled as a
+ * single message.
+ *
+ * @param {Object} chunk The chunk with its ID, index, count and data.
+ */
+dfpwebapp.handleMessageChunk = function(chunk) {
+  var pieces = dfpwebapp.messageChunks[chunk['id']];
+  if (!pieces) {
+    pieces = {received: 0, data: []};
+    dfpwebapp.messageChunks[chunk['id']] = pieces;
+  }
+  if (pieces.data[chunk['index']] === undefined) {
+    pieces.data[chunk['index']] = chunk['data'];
+    pieces.received++;
+  }
+  if (pieces.received === chunk['count']) {
+    delete dfpwebapp.messageChunks[chunk['id']];
+    dfpwebapp.handleChannelMessage({data: pieces.data.join('')});
+  }
+};
+
+/**
+ * Inflates data compressed with raw deflate, as described in RFC 1951.
+ *
+ * @param {string} data The compressed data, encoded as base64.
+ * @return {string} The inflated data, decoded as UTF-8.
+ */
+dfpwebapp.inflate = function() {
+  var LENGTH_BASE = [3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+      35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258];
+  var LENGTH_EXTRA_BITS = [0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3,
+      3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0];
+  var DISTANCE_BASE = [1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129,
+      193, 257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289,
+      16385, 24577];
+  var DISTANCE_EXTRA_BITS = [0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7,
+      7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13];
+  var CODE_LENGTH_ORDER = [16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13,
+      2, 14, 1, 15];
+
+  /**
+   * Builds a canonical Huffman code from the code lengths of its symbols.
+   *
+   * @param {Array.<number>} lengths The code lengths.
+   * @param {number} start The index of the first symbol's code length.
+   * @param {number} count The number of symbols.
+   * @return {Object} The number of codes of each length and the symbols in
+   *     code order.
+   */
+  function buildCode(lengths, start, count) {
+    var counts = [];
+    var offsets = [];
+    var symbols = [];
+    for (var i = 0; i < 16; i++) {
+      counts[i] = 0;
+    }
+    for (var i = 0; i < count; i++) {
+      counts[lengths[start + i]]++;
+    }
+    counts[0] = 0;
+    offsets[1] = 0;
+    for (var i = 1; i < 15; i++) {
+      offsets[i + 1] = offsets[i] + counts[i];
+    }
+    for (var i = 0; i < count; i++) {
+      if (lengths[start + i]) {
+        symbols[offsets[lengths[start + i]]++] = i;
+      }
+    }
+    return {counts: counts, symbols: symbols};
+  }
+
+  var fixedLiteralCode = null;
+  var fixedDistanceCode = null;
+
+  /**
+   * Builds the fixed Huffman codes of block type 1.
+   */
+  function buildFixedCodes() {
+    var lengths = [];
+    for (var i = 0; i < 288; i++) {
+      lengths[i] = i < 144 ? 8 : i < 256 ? 9 : i < 280 ? 7 : 8;
+    }
+    fixedLiteralCode = buildCode(lengths, 0, 288);
+    for (var i = 0; i < 30; i++) {
+      lengths[i] = 5;
+    }
+    fixedDistanceCode = buildCode(lengths, 0, 30);
+  }
+
+  /**
+   * Inflates deflated bytes.
+   *
+   * @param {string} input The deflated bytes, one in each character.
+   * @return {Array.<number>} The inflated bytes.
+   */
+  function inflateBytes(input) {
+    var position = 0;
+    var bitBuffer = 0;
+    var bitCount = 0;
+    var output = [];
+
+    function readBits(count) {
+      while (bitCount < count) {
+        if (position >= input.length) {
+          throw new Error('Compressed data ends early.');
+        }
+        bitBuffer |= input.charCodeAt(position++) << bitCount;
+        bitCount += 8;
+      }
+      var value = bitBuffer & ((1 << count) - 1);
+      bitBuffer >>>= count;
+      bitCount -= count;
+      return value;
+    }
+
+    function decodeSymbol(code) {
+      var value = 0;
+      var first = 0;
+      var index = 0;
+      for (var length = 1; length < 16; length++) {
+        value |= readBits(1);
+        var count = code.counts[length];
+        if (value - count < first) {
+          return code.symbols[index + value - first];
+        }
+        index += count;
+        first = (first + count) << 1;
+        value <<= 1;
+      }
+      throw new Error('Invalid Huffman code.');
+    }
+
+    function readDynamicCodes() {
+      var literalCount = readBits(5) + 257;
+      var distanceCount = readBits(5) + 1;
+      var codeLengthCount = readBits(4) + 4;
+      var lengths = [];
+      for (var i = 0; i < 19; i++) {
+        lengths[i] = 0;
+      }
+      for (var i = 0; i < codeLengthCount; i++) {
+        lengths[CODE_LENGTH_ORDER[i]] = readBits(3);
+      }
+      var codeLengthCode = buildCode(lengths, 0, 19);
+      lengths = [];
+      while (lengths.length < literalCount + distanceCount) {
+        var symbol = decodeSymbol(codeLengthCode);
+        if (symbol < 16) {
+          lengths.push(symbol);
+          continue;
+        }
+        var value = 0;
+        var repeat;
+        if (symbol === 16) {
+          value = lengths[lengths.length - 1];
+          repeat = 3 + readBits(2);
+        } else if (symbol === 17) {
+          repeat = 3 + readBits(3);
+        } else {
+          repeat = 11 + readBits(7);
+        }
+        while (repeat-- > 0) {
+          lengths.push(value);
+        }
+      }
+      return [buildCode(lengths, 0, literalCount),
+          buildCode(lengths, literalCount, distanceCount)];
+    }
+
+    var last;
+    do {
+      last = readBits(1);
+      var type = readBits(2);
+      if (type === 0) {
+        // Stored blocks start at a byte boundary.
+        bitBuffer = 0;
+        bitCount = 0;
+        var length = input.charCodeAt(position) |
+            (input.charCodeAt(position + 1) << 8);
+        position += 4;
+        for (var i = 0; i < length; i++) {
+          output.push(input.charCodeAt(position++));
+        }
+        continue;
+      }
+      var codes;
+      if (type === 1) {
+        if (!fixedLiteralCode) {
+          buildFixedCodes();
+        }
+        codes = [fixedLiteralCode, fixedDistanceCode];
+      } else if (type === 2) {
+        codes = readDynamicCodes();
+      } else {
+        throw new Error('Invalid block type.');
+      }
+      for (;;) {
+        var symbol = decodeSymbol(codes[0]);
+        if (symbol < 256) {
+          output.push(symbol);
+        } else if (symbol === 256) {
+          break;
+        } else {
+          symbol -= 257;
+          var length = LENGTH_BASE[symbol] +
+              readBits(LENGTH_EXTRA_BITS[symbol]);
+          var distanceSymbol = decodeSymbol(codes[1]);
+          var start = output.length - DISTANCE_BASE[distanceSymbol] -
+              readBits(DISTANCE_EXTRA_BITS[distanceSymbol]);
+          for (var i = 0; i < length; i++) {
+            output.push(output[start + i]);
+          }
+        }
+      }
+    } while (!last);
+    return output;
+  }
+
+  /**
+   * Decodes UTF-8 bytes.
+   *
+   * @param {Array.<number>} bytes The bytes.
+   * @return {string} The decoded string.
+   */
+  function decodeUtf8(bytes) {
+    var codeUnits = [];
+    var pieces = [];
+    for (var i = 0; i < bytes.length;) {
+      var b = bytes[i++];
+      var codePoint;
+      if (b < 0x80) {
+        codePoint = b;
+      } else if (b < 0xE0) {
+        codePoint = ((b & 0x1F) << 6) | (bytes[i++] & 0x3F);
+      } else if (b < 0xF0) {
+        codePoint = ((b & 0x0F) << 12) | ((bytes[i++] & 0x3F) << 6) |
+            (bytes[i++] & 0x3F);
+      } else {
+        codePoint = ((b & 0x07) << 18) | ((bytes[i++] & 0x3F) << 12) |
+            ((bytes[i++] & 0x3F) << 6) | (bytes[i++] & 0x3F);
+        codePoint -= 0x10000;
+        codeUnits.push(0xD800 + (codePoint >> 10));
+        codePoint = 0xDC00 + (codePoint & 0x3FF);
+      }
+      codeUnits.push(codePoint);
+      // Convert in pieces to stay under the argument limit of apply.
+      if (codeUnits.length >= 8192) {
+        pieces.push(String.fromCharCode.apply(null, codeUnits));
+        codeUnits = [];
+      }
+    }
+    pieces.push(String.fromCharCode.apply(null, codeUnits));
+    return pieces.join('');
+  }
+
+  return function(data) {
+    return decodeUtf8(inflateBytes(atob(data)));
+  };
+}();
+
+/**
+ * Decodes a batch of objects sent in the columnar wire format. Each row starts
+ * with the index of its schema, followed by the values of the schema's fields
+ * in order, with trailing nulls left out. The values of the fields listed in
+ * the schema's dict are indexes into the strings of the batch.
+ *
+ * @param {Object} batch The batch with its schemas, strings and rows.
+ * @return {Array.<Object>} The decoded objects.
+ */
+dfpwebapp.decodeColumnar = function(batch) {
+  var schemas = batch['schemas'];
+  var strings = batch['strings'];
+  var stringFields = [];
+  for (var i = 0; i < schemas.length; i++) {
+    stringFields[i] = {};
+    for (var j = 0; j < schemas[i]['dict'].length; j++) {
+      stringFields[i][schemas[i]['dict'][j]] = true;
+    }
+  }
+  var objects = [];
+  for (var i = 0; i < batch['rows'].length; i++) {
+    var row = batch['rows'][i];
+    var fields = schemas[row[0]]['fields'];
+    var object = {};
+    for (var j = 0; j < fields.length; j++) {
+      var value = j + 1 < row.length ? row[j + 1] : null;
+      if (value !== null && stringFields[row[0]][j]) {
+        value = strings[value];
+      }
+      object[fields[j]] = value;
+    }
+    objects.push(object);
+  }
+  return objects;
+};
+
+/**
+ * Gets the selector of the element of an object in a panel.
+ *
+ * @param {string} itemClass The class of the elements of the objects.
+ * @param {number|string} objectId The id of the object.
+ * @return {string} The selector.
+ */
+dfpwebapp.getItemSelector = function(itemClass, objectId) {
+  return '.' + itemClass + '[data-id="' + objectId + '"]';
+};
+
+/**
+ * Gets how the objects sent with a tag are displayed: the id of the panel
+ * they go to, their type, the formatter that adds them and the class of their
+ * elements, if the elements can be found by object id.
+ *
+ * @param {string} tag The tag the objects are sent with.
+ * @return {Object} The id, type, formatter and itemClass of the objects.
+ */
+dfpwebapp.getRoute = function(tag) {
+  var route = {
+    id: 'dfp-panel-' + tag,
+    type: tag,
+    formatter: dfpwebapp.formatter.standard,
+    itemClass: tag
+  };
+  switch (tag) {
+    case 'networks':
+      route.formatter = dfpwebapp.formatter.network;
+      route.itemClass = null;
+      break;
+    case 'pql':
+      route.formatter = dfpwebapp.formatter.pql;
+      route.itemClass = null;
+      break;
+    case 'licas':
+      route.formatter = dfpwebapp.formatter.lica;
+      route.itemClass = null;
+      break;
+    case 'custom-targeting-value':
+      route.id = 'dfp-panel-custom-targeting';
+      route.type = 'custom-targeting';
+      route.formatter = dfpwebapp.formatter.nestedValue;
+      route.itemClass = 'custom-targeting-child';
+      break;
+    case 'orders-li':
+      route.id = 'dfp-panel-orders';
+      route.type = 'orders';
+      route.formatter = dfpwebapp.formatter.nestedValue;
+      route.itemClass = 'orders-child';
+      break;
+  }
+  return route;
+};
+
+/**
+ * Connects to the transport that the server pushes messages through. Nothing
+ * connects to the in-memory transport, which is only used for load runs.
+ *
+ * @param {string} transport The name of the push transport.
+ * @param {string} token The token of the channel.
+ */
+dfpwebapp.openPushChannel = function(transport, token) {
+  if (transport == 'sse') {
+    var source = new EventSource('/events');
+    source.onmessage = dfpwebapp.handleChannelMessage;
+  } else if (transport == 'channel') {
+    var socket = new goog.appengine.Channel(token).open();
+    socket.onmessage = dfpwebapp.handleChannelMessage;
+  }
+};
+
 /**
  * Callback for a channel message. This function expects a JSON object as input
  * and sends the message to the correct formatter to display the results.
@@ -526,14 +1076,42 @@ dfpwebapp.getKeys = function(object) {
  * @param {string} msg The message from the server.
  */
 dfpwebapp.handleChannelMessage = function(msg) {
- var data = JSON.parse(msg.data);
+  dfpwebapp.handleChannelData(JSON.parse(msg.data));
+};
+
+/**
+ * Handles the data of a channel message. A compressed message is inflated, and
+ * a message that holds several messages sent close together is split, and
+ * each of them is handled in order.
+ *
+ * @param {Object} data The parsed message.
+ */
+dfpwebapp.handleChannelData = function(data) {
+ if (data['deflate']) {
+   dfpwebapp.handleChannelData(JSON.parse(dfpwebapp.inflate(data['deflate'])));
+   return;
+ }
+ if (data['messages']) {
+   for (var i = 0; i < data['messages'].length; i++) {
+     dfpwebapp.handleChannelData(data['messages'][i]);
+   }
+   return;
+ }
+ if (data['chunk']) {
+   dfpwebapp.handleMessageChunk(data['chunk']);
+   return;
+ }
+ if (data['dropped']) {
+   panelManager.printDroppedMessages(data['dropped']);
+   return;
+ }
  var requestId = dfpwebapp.popRequestId(data);
  var keys = dfpwebapp.getKeys(data);
  if (keys.length == 1) {
    var key = keys[0];
-   var id = 'dfp-panel-' + key;
-   var type = key;
-   var formatter = null;
+   if (data[key] && data[key]['rows'] && !$.isArray(data[key])) {
+     data[key] = dfpwebapp.decodeColumnar(data[key]);
+   }
    switch (key) {
      case 'error':
        var tag = 'dfp-panel-' + data[key]['tag'];
@@ -547,32 +1125,24 @@ dfpwebapp.handleChannelMessage = function(msg) {
          panelManager.printInfo(tag, data[key]['message']);
          return;
        }
-     case 'networks':
-       formatter = dfpwebapp.formatter.network;
-       break;
-     case 'pql':
-       formatter = dfpwebapp.formatter.pql;
-       break;
-     case 'licas':
-       formatter = dfpwebapp.formatter.lica;
-       break;
-     case 'custom-targeting-value':
-       id = 'dfp-panel-custom-targeting';
-       type = 'custom-targeting';
-       formatter = dfpwebapp.formatter.nestedValue;
-       break;
-     case 'orders-li':
-       id = 'dfp-panel-orders';
-       type = 'orders';
-       formatter = dfpwebapp.formatter.nestedValue;
-       break;
-     default:
-       formatter = dfpwebapp.formatter.standard;
-       break;
+     case 'delta':
+       var tag = 'dfp-panel-' + data[key]['tag'];
+       if (panelManager.isLatestRequest(tag, requestId)) {
+         panelManager.startDelta(tag, requestId, data[key]['full']);
+       }
+       return;
+     case 'sync':
+       var tag = 'dfp-panel-' + data[key]['tag'];
+       if (panelManager.isLatestRequest(tag, requestId)) {
+         panelManager.finishDelta(tag, requestId, data[key]);
+       }
+       return;
    }
 
-   if (panelManager.isLatestRequest(id, requestId)) {
-     panelManager.addContent(id, type, data[key], formatter);
+   var route = dfpwebapp.getRoute(key);
+   if (panelManager.isLatestRequest(route.id, requestId)) {
+     panelManager.addContent(route.id, route.type, data[key], route.formatter,
+         route.itemClass);
    }
  }
 };
@@ -666,6 +1236,37 @@ dfpwebapp.formatter = function() {
     }
   }
 
+  /**
+   * Fields of nested objects that hold the ID of their parent object, keyed by
+   * the type of the parent objects.
+   */
+  var parentIdFields = {
+    'orders': 'orderId',
+    'custom-targeting': 'customTargetingKeyId'
+  };
+
+  /**
+   * Finds the element of the parent of a nested object. Nested objects can
+   * arrive in any order, so the parent is looked up by ID, falling back to the
+   * last parent added.
+   *
+   * @param {Element} contentDiv The jQuery element that holds the parents.
+   * @param {string} type The type of the parent objects.
+   * @param {Object} object The nested object.
+   * @return {Element} The parent element.
+   */
+  function findParent(contentDiv, type, object) {
+    var parentIdField = parentIdFields[type];
+    if (parentIdField && object[parentIdField] !== undefined) {
+      var parentObject = contentDiv.find(
+          '.' + type + '[data-id="' + object[parentIdField] + '"]');
+      if (parentObject.length > 0) {
+        return parentObject.first();
+      }
+    }
+    return contentDiv.find('.' + type).last();
+  }
+
   /**
    * Formatter for line items nested under orders.
    *
@@ -674,14 +1275,15 @@ dfpwebapp.formatter = function() {
    * @param {Array} objects The object to add to the content area.
    */
   function nestedValue(contentDiv, type, objects) {
-    var parentObject = contentDiv.find('.' + type).last();
-    if (parentObject.children('ul').length === 0) {
-      parentObject.append($('<ul>'));
-    }
-    var contentContainer = $(parentObject.children('ul'));
     for (var i = 0; i < objects.length; i++) {
       object = objects[i];
-      var element = $('<li>');
+      var parentObject = findParent(contentDiv, type, object);
+      if (parentObject.children('ul').length === 0) {
+        parentObject.append($('<ul>'));
+      }
+      var contentContainer = $(parentObject.children('ul'));
+      var element = $('<li>').addClass(type + '-child')
+          .attr('data-id', object.id);
       var nameSpan = $('<span>' + object.name + '</span>');
       var detailsDiv = createDetailsDiv(type, object);
       var link = createLink(type, object);
@@ -756,7 +1358,7 @@ dfpwebapp.formatter = function() {
     var contentContainer = $(contentDiv.children('ul'));
     for (var i = 0; i < objects.length; i++) {
       object = objects[i];
-      var element = $('<li>').addClass(type);
+      var element = $('<li>').addClass(type).attr('data-id', object.id);
       var nameSpan = $('<span>' + object.name + '</span>');
       var detailsDiv = createDetailsDiv(type, object);
       var link = createLink(type, object);
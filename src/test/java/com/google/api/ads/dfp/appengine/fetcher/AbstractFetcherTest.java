@@ -14,6 +14,8 @@
 
 package com.google.api.ads.dfp.appengine.fetcher;
 
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -30,10 +32,10 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.List;
 
 /**
@@ -48,10 +50,13 @@ public class AbstractFetcherTest {
   private static final String ERROR_STRING = "error";
   private static final String EMPTY_FILTER_TEXT = "";
   private static final String LIMIT_FILTER_TEXT = "LIMIT 1";
+  private static final String NETWORK_CODE = "1234";
+  private static final String ORDER_BY_FILTER_TEXT = "WHERE status = 'APPROVED' ORDER BY name";
   private static final String TAG = "tag";
   private static final String REQUEST_ID = "reqId";
 
   @Mock private Channels channels;
+  @Mock private FetchCursors fetchCursors;
   private AbstractFetcher fetcher;
   @Mock private PageFetcher pageFetcher;
   private OrderPage page;
@@ -66,7 +71,7 @@ public class AbstractFetcherTest {
   public void setUp() throws Exception {
     MockitoAnnotations.initMocks(this);
 
-    fetcher = new AbstractFetcher(null, channels) {
+    fetcher = new AbstractFetcher(null, channels, fetchCursors) {
       public void fetch(String filterText, String channelKey, String tag, String requestId,
           DfpSession session) {}
     };
@@ -85,7 +90,8 @@ public class AbstractFetcherTest {
   public void testFetchObjects_withEmptyFilterText() throws ApiException_Exception {
     when(pageFetcher.getByStatement(any(Statement.class))).thenReturn(page);
 
-    fetcher.fetchObjects(EMPTY_FILTER_TEXT, CHANNEL_KEY, TAG, REQUEST_ID, pageFetcher);
+    fetcher.fetchObjects(EMPTY_FILTER_TEXT, CHANNEL_KEY, NETWORK_CODE, TAG, REQUEST_ID,
+        pageFetcher);
 
     verify(channels).sendObjects(CHANNEL_KEY, orders, TAG, REQUEST_ID);
   }
@@ -94,11 +100,43 @@ public class AbstractFetcherTest {
    * Test method for {@link AbstractFetcher#fetchObjects}.
    */
   @Test
-  public void testFetchObjects_withLimitFilterText() throws ApiException_Exception,
-      IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+  public void testFetchObjects_withEmptyFilterText_pagesByKeyset() throws ApiException_Exception {
     when(pageFetcher.getByStatement(any(Statement.class))).thenReturn(page);
+    ArgumentCaptor<Statement> statementCapture = ArgumentCaptor.forClass(Statement.class);
 
-    fetcher.fetchObjects(LIMIT_FILTER_TEXT, CHANNEL_KEY, TAG, REQUEST_ID, pageFetcher);
+    fetcher.fetchObjects(EMPTY_FILTER_TEXT, CHANNEL_KEY, NETWORK_CODE, TAG, REQUEST_ID,
+        pageFetcher);
+
+    verify(pageFetcher).getByStatement(statementCapture.capture());
+    assertTrue(statementCapture.getValue().getQuery().contains("ORDER BY id ASC"));
+  }
+
+  /**
+   * Test method for {@link AbstractFetcher#fetchObjects}.
+   */
+  @Test
+  public void testFetchObjects_withOrderByFilterText_pagesByOffset()
+      throws ApiException_Exception {
+    when(pageFetcher.getByStatement(any(Statement.class))).thenReturn(page);
+    ArgumentCaptor<Statement> statementCapture = ArgumentCaptor.forClass(Statement.class);
+
+    fetcher.fetchObjects(ORDER_BY_FILTER_TEXT, CHANNEL_KEY, NETWORK_CODE, TAG, REQUEST_ID,
+        pageFetcher);
+
+    verify(pageFetcher).getByStatement(statementCapture.capture());
+    assertFalse(statementCapture.getValue().getQuery().contains("ORDER BY id ASC"));
+    verify(channels).sendObjects(CHANNEL_KEY, orders, TAG, REQUEST_ID);
+  }
+
+  /**
+   * Test method for {@link AbstractFetcher#fetchObjects}.
+   */
+  @Test
+  public void testFetchObjects_withLimitFilterText() throws ApiException_Exception {
+    when(pageFetcher.getByStatement(any(Statement.class))).thenReturn(page);
+
+    fetcher.fetchObjects(LIMIT_FILTER_TEXT, CHANNEL_KEY, NETWORK_CODE, TAG, REQUEST_ID,
+        pageFetcher);
 
     verify(channels).sendPage(CHANNEL_KEY, page, TAG, REQUEST_ID);
   }
@@ -111,7 +149,8 @@ public class AbstractFetcherTest {
     when(pageFetcher.getByStatement(any(Statement.class)))
         .thenThrow(new ApiException_Exception(ERROR_STRING, null));
 
-    fetcher.fetchObjects(LIMIT_FILTER_TEXT, CHANNEL_KEY, TAG, REQUEST_ID, pageFetcher);
+    fetcher.fetchObjects(LIMIT_FILTER_TEXT, CHANNEL_KEY, NETWORK_CODE, TAG, REQUEST_ID,
+        pageFetcher);
 
     verify(channels).sendErrorChannelMessage(CHANNEL_KEY, TAG, REQUEST_ID, ERROR_STRING);
   }
@@ -14,9 +14,11 @@
 
 package com.google.api.ads.dfp.appengine.fetcher;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -24,9 +26,12 @@ import static org.mockito.Mockito.when;
 import com.google.api.ads.dfp.appengine.util.Channels;
 import com.google.api.ads.dfp.jaxws.utils.v201403.StatementBuilder;
 import com.google.api.ads.dfp.jaxws.v201403.ApiException_Exception;
+import com.google.api.ads.dfp.jaxws.v201403.LineItem;
+import com.google.api.ads.dfp.jaxws.v201403.LineItemPage;
 import com.google.api.ads.dfp.jaxws.v201403.Order;
 import com.google.api.ads.dfp.jaxws.v201403.OrderPage;
 import com.google.api.ads.dfp.jaxws.v201403.Statement;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
 import org.junit.Before;
@@ -48,13 +53,18 @@ import java.util.List;
 public class AllNestedFetcherTest {
 
   private static final String CHANNEL_KEY = "channel-key";
-  private static final String FILTER_STATEMENT = "WHERE orderId = ";
+  private static final String CHILD_TAG = "tag-li";
+  private static final String ERROR_STRING = "error";
+  private static final String NETWORK_CODE = "1234";
+  private static final String PARENT_ID_FIELD = "orderId";
   private static final String TAG = "tag";
   private static final String REQUEST_ID = "reqId";
 
-  @Mock private AllSingleEntityFetcher childrenAllFetcher;
+  @Mock private PageFetcher childPageFetcher;
   @Mock private Channels channels;
+  @Mock private FetchCursors fetchCursors;
   private OrderPage orderPage;
+  private LineItemPage lineItemPage;
   @Mock private PageFetcher parentPageFetcher;
   private List<Order> orders;
 
@@ -69,8 +79,8 @@ public class AllNestedFetcherTest {
 
     orderPage = new OrderPage();
     orders = Lists.newArrayList();
-    Order order = new Order();
-    orders.add(order);
+    orders.add(makeOrder(1L));
+    lineItemPage = new LineItemPage();
   }
 
   /**
@@ -80,16 +90,20 @@ public class AllNestedFetcherTest {
   public void testFetchOneSetOfNestedResults() throws ApiException_Exception {
     orderPage.setTotalResultSetSize(1);
     orderPage.getResults().addAll(orders);
+    LineItem lineItem = makeLineItem(1L);
+    lineItemPage.setTotalResultSetSize(1);
+    lineItemPage.getResults().add(lineItem);
     when(parentPageFetcher.getByStatement(any(Statement.class))).thenReturn(orderPage);
-    ArgumentCaptor<String> statementCapture = ArgumentCaptor.forClass(String.class);
+    when(childPageFetcher.getByStatement(any(Statement.class))).thenReturn(lineItemPage);
+    ArgumentCaptor<Statement> statementCapture = ArgumentCaptor.forClass(Statement.class);
 
-    new AllNestedFetcher(parentPageFetcher, childrenAllFetcher, channels, CHANNEL_KEY, TAG,
-        REQUEST_ID).fetchAll(FILTER_STATEMENT);
+    newAllNestedFetcher().fetchAll(PARENT_ID_FIELD);
 
-    verify(childrenAllFetcher).fetchAll(statementCapture.capture());
+    verify(childPageFetcher).getByStatement(statementCapture.capture());
     verify(channels).sendSingleObject(CHANNEL_KEY, orders.get(0), TAG, REQUEST_ID);
+    verify(channels).sendObjects(CHANNEL_KEY, ImmutableList.of(lineItem), CHILD_TAG, REQUEST_ID);
 
-    assertTrue(statementCapture.getValue().contains(FILTER_STATEMENT));
+    assertTrue(statementCapture.getValue().getQuery().contains("orderId IN (1)"));
   }
 
   /**
@@ -99,14 +113,15 @@ public class AllNestedFetcherTest {
   public void testFetchMoreThanOneParentResults() throws ApiException_Exception {
     orderPage.setTotalResultSetSize(StatementBuilder.SUGGESTED_PAGE_LIMIT + 1);
     orderPage.getResults().addAll(orders);
+    lineItemPage.setTotalResultSetSize(0);
     when(parentPageFetcher.getByStatement(any(Statement.class))).thenReturn(orderPage);
+    when(childPageFetcher.getByStatement(any(Statement.class))).thenReturn(lineItemPage);
 
-    new AllNestedFetcher(parentPageFetcher, childrenAllFetcher, channels, CHANNEL_KEY, TAG,
-        REQUEST_ID).fetchAll(FILTER_STATEMENT);
+    newAllNestedFetcher().fetchAll(PARENT_ID_FIELD);
 
     verify(parentPageFetcher, times(2)).getByStatement(any(Statement.class));
     verify(channels, times(2)).sendSingleObject(CHANNEL_KEY, orders.get(0), TAG, REQUEST_ID);
-    verify(childrenAllFetcher, times(2)).fetchAll(anyString());
+    verify(childPageFetcher, times(2)).getByStatement(any(Statement.class));
   }
 
   /**
@@ -114,14 +129,104 @@ public class AllNestedFetcherTest {
    */
   @Test
   public void testFetchNoParentResults() throws ApiException_Exception {
-    List<Order> orders = Lists.newArrayList();
     orderPage.setTotalResultSetSize(0);
-    orderPage.getResults().addAll(orders);
     when(parentPageFetcher.getByStatement(any(Statement.class))).thenReturn(orderPage);
 
-    new AllNestedFetcher(parentPageFetcher, childrenAllFetcher, channels, CHANNEL_KEY, TAG,
-        REQUEST_ID).fetchAll(FILTER_STATEMENT);
+    newAllNestedFetcher().fetchAll(PARENT_ID_FIELD);
 
     verify(channels).sendNoResultMessage(CHANNEL_KEY, TAG, REQUEST_ID);
+    verify(childPageFetcher, never()).getByStatement(any(Statement.class));
+  }
+
+  /**
+   * Test method for {@link AllNestedFetcher#fetchAll}.
+   */
+  @Test
+  public void testFetchNestedResults_groupsChildrenByParent() throws ApiException_Exception {
+    orders.add(makeOrder(2L));
+    orders.add(makeOrder(3L));
+    orderPage.setTotalResultSetSize(orders.size());
+    orderPage.getResults().addAll(orders);
+    LineItem firstLineItem = makeLineItem(2L);
+    LineItem secondLineItem = makeLineItem(1L);
+    LineItem thirdLineItem = makeLineItem(2L);
+    lineItemPage.setTotalResultSetSize(3);
+    lineItemPage.getResults().addAll(
+        ImmutableList.of(firstLineItem, secondLineItem, thirdLineItem));
+    when(parentPageFetcher.getByStatement(any(Statement.class))).thenReturn(orderPage);
+    when(childPageFetcher.getByStatement(any(Statement.class))).thenReturn(lineItemPage);
+
+    newAllNestedFetcher().fetchAll(PARENT_ID_FIELD);
+
+    verify(childPageFetcher).getByStatement(any(Statement.class));
+    verify(channels).sendObjects(
+        CHANNEL_KEY, ImmutableList.of(secondLineItem), CHILD_TAG, REQUEST_ID);
+    verify(channels).sendObjects(
+        CHANNEL_KEY, ImmutableList.of(firstLineItem, thirdLineItem), CHILD_TAG, REQUEST_ID);
+    verify(channels, times(2)).sendObjects(anyString(), any(List.class), anyString(), anyString());
+  }
+
+  /**
+   * Test method for {@link AllNestedFetcher#fetchAll}.
+   */
+  @Test
+  public void testFetchNestedResults_batchesParentIds() throws ApiException_Exception {
+    for (long id = 2; id <= AllNestedFetcher.MAX_PARENT_IDS_PER_QUERY + 1; id++) {
+      orders.add(makeOrder(id));
+    }
+    orderPage.setTotalResultSetSize(orders.size());
+    orderPage.getResults().addAll(orders);
+    lineItemPage.setTotalResultSetSize(0);
+    when(parentPageFetcher.getByStatement(any(Statement.class))).thenReturn(orderPage);
+    when(childPageFetcher.getByStatement(any(Statement.class))).thenReturn(lineItemPage);
+    ArgumentCaptor<Statement> statementCapture = ArgumentCaptor.forClass(Statement.class);
+
+    newAllNestedFetcher().fetchAll(PARENT_ID_FIELD);
+
+    verify(childPageFetcher, times(2)).getByStatement(statementCapture.capture());
+    List<String> queries = Lists.newArrayList();
+    for (Statement statement : statementCapture.getAllValues()) {
+      queries.add(statement.getQuery());
+    }
+    assertEquals(2, queries.size());
+    boolean foundLastBatch = false;
+    for (String query : queries) {
+      foundLastBatch |= query.contains("orderId IN (" + orders.size() + ")");
+    }
+    assertTrue(foundLastBatch);
+  }
+
+  /**
+   * Test method for {@link AllNestedFetcher#fetchAll}.
+   */
+  @Test
+  public void testFetchNestedResults_childFetchThrowsApiException() throws ApiException_Exception {
+    orderPage.setTotalResultSetSize(1);
+    orderPage.getResults().addAll(orders);
+    when(parentPageFetcher.getByStatement(any(Statement.class))).thenReturn(orderPage);
+    when(childPageFetcher.getByStatement(any(Statement.class)))
+        .thenThrow(new ApiException_Exception(ERROR_STRING, null));
+
+    newAllNestedFetcher().fetchAll(PARENT_ID_FIELD);
+
+    verify(channels).sendSingleObject(CHANNEL_KEY, orders.get(0), TAG, REQUEST_ID);
+    verify(channels).sendErrorChannelMessage(CHANNEL_KEY, CHILD_TAG, REQUEST_ID, ERROR_STRING);
+  }
+
+  private AllNestedFetcher newAllNestedFetcher() {
+    return new AllNestedFetcher(parentPageFetcher, childPageFetcher, channels, fetchCursors,
+        CHANNEL_KEY, NETWORK_CODE, TAG, CHILD_TAG, REQUEST_ID);
+  }
+
+  private static Order makeOrder(long id) {
+    Order order = new Order();
+    order.setId(id);
+    return order;
+  }
+
+  private static LineItem makeLineItem(long orderId) {
+    LineItem lineItem = new LineItem();
+    lineItem.setOrderId(orderId);
+    return lineItem;
   }
 }
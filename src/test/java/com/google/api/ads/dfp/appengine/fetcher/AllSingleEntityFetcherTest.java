@@ -14,17 +14,24 @@
 
 package com.google.api.ads.dfp.appengine.fetcher;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.api.ads.dfp.appengine.util.Channels;
+import com.google.api.ads.dfp.appengine.util.RequestDeadline;
 import com.google.api.ads.dfp.jaxws.utils.v201403.StatementBuilder;
 import com.google.api.ads.dfp.jaxws.v201403.AdUnit;
 import com.google.api.ads.dfp.jaxws.v201403.AdUnitPage;
 import com.google.api.ads.dfp.jaxws.v201403.ApiException_Exception;
+import com.google.api.ads.dfp.jaxws.v201403.Order;
+import com.google.api.ads.dfp.jaxws.v201403.OrderPage;
 import com.google.api.ads.dfp.jaxws.v201403.Statement;
 import com.google.common.collect.Lists;
 
@@ -33,8 +40,15 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Tests for AllFetcher implementation.
@@ -44,16 +58,22 @@ import org.mockito.MockitoAnnotations;
 @RunWith(JUnit4.class)
 public class AllSingleEntityFetcherTest {
 
+  private static final Pattern OFFSET_PATTERN = Pattern.compile("OFFSET (\\d+)");
   private static final String API_EXCEPTION = "API exception.";
   private static final String CHANNEL_KEY = "channel-key";
+  private static final long CONTINUATION_THRESHOLD_MILLIS = 60000;
   private static final String FILTER_STATEMENT = "WHERE id = 123";
+  private static final String NETWORK_CODE = "1234";
   private static final String TAG = "tag";
   private static final String REQUEST_ID = "reqId";
+  private static final long TARGET_LATENCY_MILLIS = 5000;
 
   private AllSingleEntityFetcher allFetcher;
   @Mock private Channels channels;
+  @Mock private FetchCursors fetchCursors;
   private AdUnitPage page;
   @Mock private PageFetcher pageFetcher;
+  @Mock private RequestDeadline requestDeadline;
 
   /**
    * Constructor.
@@ -65,7 +85,8 @@ public class AllSingleEntityFetcherTest {
     MockitoAnnotations.initMocks(this);
 
     page = new AdUnitPage();
-    allFetcher = new AllSingleEntityFetcher(pageFetcher, channels, CHANNEL_KEY, TAG, REQUEST_ID);
+    allFetcher = new AllSingleEntityFetcher(pageFetcher, channels, fetchCursors, CHANNEL_KEY,
+        NETWORK_CODE, TAG, REQUEST_ID);
   }
 
   /**
@@ -84,18 +105,157 @@ public class AllSingleEntityFetcherTest {
     assertTrue(statementCapture.getValue().getQuery().contains(FILTER_STATEMENT));
   }
 
+  /**
+   * Test method for {@link AllSingleEntityFetcher#fetchAll}.
+   */
+  @Test
+  public void testFetchMultiplePagesOfResults_stopsWhenCancelled() throws ApiException_Exception {
+    page.setTotalResultSetSize(StatementBuilder.SUGGESTED_PAGE_LIMIT * 4);
+    when(pageFetcher.getByStatement(any(Statement.class))).thenReturn(page);
+    when(channels.isCancelled(CHANNEL_KEY, TAG, REQUEST_ID)).thenReturn(false).thenReturn(true);
+
+    allFetcher.fetchAll("");
+
+    verify(channels, times(1)).sendObjects(CHANNEL_KEY, Lists.newArrayList(), TAG, REQUEST_ID);
+    verify(channels, never()).sendErrorChannelMessage(
+        anyString(), anyString(), anyString(), anyString());
+  }
+
   /**
    * Test method for {@link AllSingleEntityFetcher#fetchAll}.
    */
   @Test
   public void testFetchMultiplePagesOfResults() throws ApiException_Exception {
-    page.setTotalResultSetSize(StatementBuilder.SUGGESTED_PAGE_LIMIT + 1);
+    page = makePage(0, StatementBuilder.SUGGESTED_PAGE_LIMIT + 1);
     when(pageFetcher.getByStatement(any(Statement.class))).thenReturn(page);
 
     allFetcher.fetchAll("");
 
     verify(pageFetcher, times(2)).getByStatement(any(Statement.class));
-    verify(channels, times(2)).sendObjects(CHANNEL_KEY, Lists.newArrayList(), TAG, REQUEST_ID);
+    verify(channels, times(2)).sendObjects(CHANNEL_KEY, page.getResults(), TAG, REQUEST_ID);
+    verify(fetchCursors).save(CHANNEL_KEY, TAG, REQUEST_ID,
+        FetchCursor.ofOffset(StatementBuilder.SUGGESTED_PAGE_LIMIT));
+    verify(fetchCursors).clear(CHANNEL_KEY, TAG, REQUEST_ID);
+  }
+
+  /**
+   * Test method for {@link AllSingleEntityFetcher#fetchAll}.
+   */
+  @Test
+  public void testFetchMultiplePagesOfResults_suspendsNearDeadline() throws ApiException_Exception {
+    page.setTotalResultSetSize(StatementBuilder.SUGGESTED_PAGE_LIMIT * 4);
+    when(pageFetcher.getByStatement(any(Statement.class))).thenReturn(page);
+    when(fetchCursors.load(CHANNEL_KEY, TAG, REQUEST_ID))
+        .thenReturn(FetchCursor.ofOffset(StatementBuilder.SUGGESTED_PAGE_LIMIT));
+    when(requestDeadline.getRemainingMillis()).thenReturn(CONTINUATION_THRESHOLD_MILLIS - 1);
+
+    PagePipeline pagePipeline = new PagePipeline(pageFetcher,
+        new PageSizeController(TARGET_LATENCY_MILLIS), 1, 1, requestDeadline,
+        CONTINUATION_THRESHOLD_MILLIS);
+    new AllSingleEntityFetcher(pagePipeline, channels, fetchCursors, CHANNEL_KEY, TAG, REQUEST_ID)
+        .fetchAll("");
+
+    verify(pageFetcher, times(1)).getByStatement(any(Statement.class));
+    verify(fetchCursors).suspend(CHANNEL_KEY, TAG, REQUEST_ID,
+        FetchCursor.ofOffset(StatementBuilder.SUGGESTED_PAGE_LIMIT * 2));
+    verify(fetchCursors, never()).clear(anyString(), anyString(), anyString());
+  }
+
+  /**
+   * Test method for {@link AllSingleEntityFetcher#fetchAll}.
+   */
+  @Test
+  public void testFetchMultiplePagesOfResults_sentInOffsetOrder() throws ApiException_Exception {
+    final List<AdUnitPage> pages = Lists.newArrayList();
+    for (int i = 0; i < 6; i++) {
+      pages.add(makePage(i * StatementBuilder.SUGGESTED_PAGE_LIMIT,
+          6 * StatementBuilder.SUGGESTED_PAGE_LIMIT));
+    }
+    when(pageFetcher.getByStatement(any(Statement.class))).thenAnswer(new Answer<AdUnitPage>() {
+      public AdUnitPage answer(InvocationOnMock invocation) throws InterruptedException {
+        int index = getOffset((Statement) invocation.getArguments()[0])
+            / StatementBuilder.SUGGESTED_PAGE_LIMIT;
+        // Finish earlier pages last to make sure pages are not sent in completion order.
+        Thread.sleep((pages.size() - index) * 10);
+        return pages.get(index);
+      }
+    });
+
+    PagePipeline pagePipeline =
+        new PagePipeline(pageFetcher, new PageSizeController(TARGET_LATENCY_MILLIS), 3, 1);
+    new AllSingleEntityFetcher(pagePipeline, channels, fetchCursors, CHANNEL_KEY, TAG, REQUEST_ID)
+        .fetchAll("");
+
+    verify(pageFetcher, times(pages.size())).getByStatement(any(Statement.class));
+    InOrder inOrder = inOrder(channels);
+    for (AdUnitPage page : pages) {
+      inOrder.verify(channels).sendObjects(CHANNEL_KEY, page.getResults(), TAG, REQUEST_ID);
+    }
+  }
+
+  /**
+   * Test method for {@link AllSingleEntityFetcher#fetchAllByKeyset}.
+   */
+  @Test
+  public void testFetchAllByKeyset_exactMultipleOfPageSize_doesNotSendEmptyLastPage()
+      throws ApiException_Exception {
+    OrderPage fullPage = makeOrderPage(1, StatementBuilder.SUGGESTED_PAGE_LIMIT);
+    OrderPage emptyPage = makeOrderPage(StatementBuilder.SUGGESTED_PAGE_LIMIT + 1, 0);
+    when(pageFetcher.getByStatement(any(Statement.class)))
+        .thenReturn(fullPage)
+        .thenReturn(emptyPage);
+
+    newKeysetFetcher().fetchAllByKeyset("");
+
+    verify(pageFetcher, times(2)).getByStatement(any(Statement.class));
+    verify(channels).sendObjects(CHANNEL_KEY, fullPage.getResults(), TAG, REQUEST_ID);
+    verify(channels, never()).sendObjects(CHANNEL_KEY, emptyPage.getResults(), TAG, REQUEST_ID);
+    verify(fetchCursors).clear(CHANNEL_KEY, TAG, REQUEST_ID);
+  }
+
+  /**
+   * Test method for {@link AllSingleEntityFetcher#fetchAllByKeyset}.
+   */
+  @Test
+  public void testFetchAllByKeyset_continuedAtEnd_sendsNothing() throws ApiException_Exception {
+    when(pageFetcher.getByStatement(any(Statement.class))).thenReturn(makeOrderPage(1, 0));
+    when(fetchCursors.load(CHANNEL_KEY, TAG, REQUEST_ID))
+        .thenReturn(FetchCursor.ofLastId(StatementBuilder.SUGGESTED_PAGE_LIMIT));
+
+    newKeysetFetcher().fetchAllByKeyset("");
+
+    verify(channels, never()).sendObjects(anyString(), any(List.class), anyString(), anyString());
+    verify(fetchCursors).clear(CHANNEL_KEY, TAG, REQUEST_ID);
+  }
+
+  /**
+   * Test method for {@link AllSingleEntityFetcher#fetchAllByKeyset}.
+   */
+  @Test
+  public void testFetchAllByKeyset_noResults_sendsEmptyPage() throws ApiException_Exception {
+    OrderPage emptyPage = makeOrderPage(1, 0);
+    when(pageFetcher.getByStatement(any(Statement.class))).thenReturn(emptyPage);
+
+    newKeysetFetcher().fetchAllByKeyset("");
+
+    verify(channels).sendObjects(CHANNEL_KEY, emptyPage.getResults(), TAG, REQUEST_ID);
+  }
+
+  /**
+   * Test method for {@link AllSingleEntityFetcher#fetchAllByKeyset}.
+   */
+  @Test
+  public void testFetchAllByKeyset_reportsSerializedRowSize() throws ApiException_Exception {
+    OrderPage lastPage = makeOrderPage(1, 1);
+    when(pageFetcher.getByStatement(any(Statement.class))).thenReturn(lastPage);
+    when(channels.getSerializedBytes(lastPage.getResults().get(0))).thenReturn(10000);
+    PageSizeController pageSizeController = new PageSizeController(TARGET_LATENCY_MILLIS);
+
+    new AllSingleEntityFetcher(new PagePipeline(pageFetcher, pageSizeController, 1, 1), channels,
+        fetchCursors, CHANNEL_KEY, TAG, REQUEST_ID).fetchAllByKeyset("");
+
+    assertEquals((int) (PageSizeController.DEFAULT_TARGET_PAGE_BYTES / 10000),
+        pageSizeController.getPageLimit());
   }
 
   /**
@@ -111,4 +271,62 @@ public class AllSingleEntityFetcherTest {
 
     verify(channels).sendErrorChannelMessage(CHANNEL_KEY, TAG, REQUEST_ID, API_EXCEPTION);
   }
+
+  /**
+   * Gets the offset of a statement.
+   *
+   * @param statement the statement
+   * @return the offset, or 0 if the statement has no offset
+   */
+  private static int getOffset(Statement statement) {
+    Matcher matcher = OFFSET_PATTERN.matcher(statement.getQuery());
+    return matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+  }
+
+  /**
+   * Makes a fetcher with its own page size controller, so that the pages of other tests do not
+   * change its page size.
+   *
+   * @return the fetcher
+   */
+  private AllSingleEntityFetcher newKeysetFetcher() {
+    PagePipeline pagePipeline =
+        new PagePipeline(pageFetcher, new PageSizeController(TARGET_LATENCY_MILLIS), 1, 1);
+    return new AllSingleEntityFetcher(pagePipeline, channels, fetchCursors, CHANNEL_KEY, TAG,
+        REQUEST_ID);
+  }
+
+  /**
+   * Makes a page of orders with consecutive IDs.
+   *
+   * @param firstId the ID of the first order
+   * @param size the number of orders in the page
+   * @return the page
+   */
+  private static OrderPage makeOrderPage(long firstId, int size) {
+    OrderPage orderPage = new OrderPage();
+    orderPage.setTotalResultSetSize(size);
+    for (long id = firstId; id < firstId + size; id++) {
+      Order order = new Order();
+      order.setId(id);
+      orderPage.getResults().add(order);
+    }
+    return orderPage;
+  }
+
+  /**
+   * Makes a page with a single ad unit identified by the page offset.
+   *
+   * @param offset the offset of the page
+   * @param totalResultSetSize the total result set size of the page
+   * @return the page
+   */
+  private static AdUnitPage makePage(int offset, int totalResultSetSize) {
+    AdUnit adUnit = new AdUnit();
+    adUnit.setId(Integer.toString(offset));
+    AdUnitPage page = new AdUnitPage();
+    page.setTotalResultSetSize(totalResultSetSize);
+    page.getResults().add(adUnit);
+    return page;
+  }
 }
@@ -0,0 +1,130 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.fetcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Tests for {@link FetchCursors} and {@link FetchCursor}.
+ */
+@RunWith(JUnit4.class)
+public class FetchCursorsTest {
+
+  private static final String CHANNEL_KEY = "channel-key";
+  private static final String CURSOR_KEY = "fetchCursor:channel-key:tag:reqId";
+  private static final String SUSPENDED_KEY = "fetchSuspended:channel-key:tag:reqId";
+  private static final String REQUEST_ID = "reqId";
+  private static final String TAG = "tag";
+
+  @Mock private MemcacheService memcacheService;
+  private FetchCursors fetchCursors;
+
+  /**
+   * Constructor.
+   */
+  public FetchCursorsTest() {}
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+
+    fetchCursors = new FetchCursors(memcacheService);
+  }
+
+  /**
+   * Test method for {@link FetchCursors#suspend}.
+   */
+  @Test
+  public void testSuspend_savesCursorAndMarksSuspended() {
+    FetchCursor cursor = FetchCursor.ofOffset(1000);
+
+    fetchCursors.suspend(CHANNEL_KEY, TAG, REQUEST_ID, cursor);
+
+    verify(memcacheService).put(eq(CURSOR_KEY), eq(cursor), any(Expiration.class));
+    verify(memcacheService).put(eq(SUSPENDED_KEY), eq(Boolean.TRUE), any(Expiration.class));
+  }
+
+  /**
+   * Test method for {@link FetchCursors#takeSuspended}.
+   */
+  @Test
+  public void testTakeSuspended_returnsCursorOfSuspendedFetch() {
+    FetchCursor cursor = FetchCursor.ofLastId(42L);
+    when(memcacheService.delete(SUSPENDED_KEY)).thenReturn(true);
+    when(memcacheService.get(CURSOR_KEY)).thenReturn(cursor);
+
+    assertEquals(cursor, fetchCursors.takeSuspended(CHANNEL_KEY, TAG, REQUEST_ID));
+  }
+
+  /**
+   * Test method for {@link FetchCursors#takeSuspended}.
+   */
+  @Test
+  public void testTakeSuspended_returnsNullForFinishedFetch() {
+    when(memcacheService.delete(SUSPENDED_KEY)).thenReturn(false);
+
+    assertNull(fetchCursors.takeSuspended(CHANNEL_KEY, TAG, REQUEST_ID));
+    verify(memcacheService, never()).get(CURSOR_KEY);
+  }
+
+  /**
+   * Test method for {@link FetchCursors#restore}.
+   */
+  @Test
+  public void testRestore_doesNotReplaceSavedCursor() {
+    FetchCursor cursor = FetchCursor.ofOffset(500);
+
+    fetchCursors.restore(CHANNEL_KEY, TAG, REQUEST_ID, cursor);
+
+    verify(memcacheService).put(eq(CURSOR_KEY), eq(cursor), any(Expiration.class),
+        eq(MemcacheService.SetPolicy.ADD_ONLY_IF_NOT_PRESENT));
+  }
+
+  /**
+   * Test method for {@link FetchCursor#parse}.
+   */
+  @Test
+  public void testParse_roundTripsCursors() {
+    FetchCursor offsetCursor = FetchCursor.ofOffset(500);
+    FetchCursor keysetCursor = FetchCursor.ofLastId(12345L);
+
+    assertEquals(offsetCursor, FetchCursor.parse(offsetCursor.toString()));
+    assertEquals(keysetCursor, FetchCursor.parse(keysetCursor.toString()));
+  }
+
+  /**
+   * Test method for {@link FetchCursor#parse}.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testParse_throwsIllegalArgumentException() {
+    FetchCursor.parse("offset:abc");
+  }
+}
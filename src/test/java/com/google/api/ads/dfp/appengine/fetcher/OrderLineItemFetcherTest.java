@@ -50,10 +50,12 @@ public class OrderLineItemFetcherTest {
   private static final String ERROR_STRING = "error";
   private static final String FILTER_STATEMENT = "";
   private static final String LINE_ITEM_TAG = "order-li";
+  private static final String NETWORK_CODE = "1234";
   private static final String ORDER_TAG = "order";
   private static final String REQUEST_ID = "reqId";
 
   @Mock private Channels channels;
+  @Mock private FetchCursors fetchCursors;
   private OrderLineItemFetcher orderLineItemFetcher;
   @Mock private LineItemServiceInterface lineItemService;
   @Mock private OrderServiceInterface orderService;
@@ -71,15 +73,17 @@ public class OrderLineItemFetcherTest {
   public void setUp() throws Exception {
     MockitoAnnotations.initMocks(this);
 
-    orderLineItemFetcher = new OrderLineItemFetcher(null, channels);
+    orderLineItemFetcher = new OrderLineItemFetcher(null, channels, fetchCursors);
 
     orderPage = new OrderPage();
     orders = Lists.newArrayList();
     Order order = new Order();
+    order.setId(1L);
     orders.add(order);
     lineItemPage = new LineItemPage();
     lineItems = Lists.newArrayList();
     LineItem lineItem = new LineItem();
+    lineItem.setOrderId(1L);
     lineItems.add(lineItem);
   }
 
@@ -95,8 +99,8 @@ public class OrderLineItemFetcherTest {
     when(orderService.getOrdersByStatement(any(Statement.class))).thenReturn(orderPage);
     when(lineItemService.getLineItemsByStatement(any(Statement.class))).thenReturn(lineItemPage);
 
-    orderLineItemFetcher.fetch(FILTER_STATEMENT, CHANNEL_KEY, ORDER_TAG, REQUEST_ID,
-        orderService, lineItemService);
+    orderLineItemFetcher.fetch(FILTER_STATEMENT, CHANNEL_KEY, NETWORK_CODE, ORDER_TAG,
+        REQUEST_ID, orderService, lineItemService);
 
     verify(channels).sendSingleObject(CHANNEL_KEY, orders.get(0), ORDER_TAG, REQUEST_ID);
     verify(channels).sendObjects(CHANNEL_KEY, lineItems, LINE_ITEM_TAG, REQUEST_ID);
@@ -110,8 +114,8 @@ public class OrderLineItemFetcherTest {
     when(orderService.getOrdersByStatement(any(Statement.class)))
         .thenThrow(new ApiException_Exception(ERROR_STRING, null));
 
-    orderLineItemFetcher.fetch(FILTER_STATEMENT, CHANNEL_KEY, ORDER_TAG, REQUEST_ID,
-        orderService, lineItemService);
+    orderLineItemFetcher.fetch(FILTER_STATEMENT, CHANNEL_KEY, NETWORK_CODE, ORDER_TAG,
+        REQUEST_ID, orderService, lineItemService);
 
     verify(channels).sendErrorChannelMessage(CHANNEL_KEY, ORDER_TAG, REQUEST_ID, ERROR_STRING);
   }
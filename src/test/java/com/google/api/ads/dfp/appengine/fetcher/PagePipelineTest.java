@@ -0,0 +1,395 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.fetcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.ads.dfp.appengine.util.RequestDeadline;
+import com.google.api.ads.dfp.jaxws.utils.v201403.StatementBuilder;
+import com.google.api.ads.dfp.jaxws.v201403.ApiException_Exception;
+import com.google.api.ads.dfp.jaxws.v201403.Order;
+import com.google.api.ads.dfp.jaxws.v201403.OrderPage;
+import com.google.api.ads.dfp.jaxws.v201403.Statement;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests for {@link PagePipeline}.
+ */
+@RunWith(JUnit4.class)
+public class PagePipelineTest {
+
+  private static final String ERROR_STRING = "error";
+  private static final long CONTINUATION_THRESHOLD_MILLIS = 60000;
+  private static final long TARGET_LATENCY_MILLIS = 5000;
+  private static final long FETCH_MILLIS = 200;
+
+  @Mock private PageFetcher pageFetcher;
+  @Mock private RequestDeadline requestDeadline;
+  private OrderPage page;
+  private List<Object> handledPages;
+  private List<FetchCursor> handledCursors;
+  private PageSizeController pageSizeController;
+
+  /**
+   * Constructor.
+   */
+  public PagePipelineTest() {}
+
+  @Before
+  public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+
+    page = new OrderPage();
+    page.setTotalResultSetSize(StatementBuilder.SUGGESTED_PAGE_LIMIT * 3);
+    handledPages = Lists.newArrayList();
+    handledCursors = Lists.newArrayList();
+    pageSizeController = new PageSizeController(TARGET_LATENCY_MILLIS);
+  }
+
+  /**
+   * Test method for {@link PagePipeline#run}.
+   */
+  @Test
+  public void testRun_handlesAllPages() throws Exception {
+    when(pageFetcher.getByStatement(any(Statement.class))).thenReturn(page);
+
+    FetchCursor resumeCursor = new PagePipeline(pageFetcher, pageSizeController, 2, 1)
+        .run(newStatementBuilder(), null, new RecordingHandler());
+
+    assertNull(resumeCursor);
+    assertEquals(3, handledPages.size());
+    assertSame(page, handledPages.get(2));
+    assertEquals(FetchCursor.ofOffset(StatementBuilder.SUGGESTED_PAGE_LIMIT),
+        handledCursors.get(0));
+    assertNull(handledCursors.get(2));
+  }
+
+  /**
+   * Test method for {@link PagePipeline#run}.
+   */
+  @Test
+  public void testRun_startsAtCursor() throws Exception {
+    when(pageFetcher.getByStatement(any(Statement.class))).thenReturn(page);
+    ArgumentCaptor<Statement> statementCapture = ArgumentCaptor.forClass(Statement.class);
+
+    new PagePipeline(pageFetcher, pageSizeController, 2, 1).run(newStatementBuilder(),
+        FetchCursor.ofOffset(StatementBuilder.SUGGESTED_PAGE_LIMIT * 2), new RecordingHandler());
+
+    verify(pageFetcher).getByStatement(statementCapture.capture());
+    assertTrue(statementCapture.getValue().getQuery().endsWith("OFFSET 1000"));
+    assertEquals(1, handledPages.size());
+  }
+
+  /**
+   * Test method for {@link PagePipeline#run}.
+   */
+  @Test
+  public void testRun_stopsNearDeadline() throws Exception {
+    when(pageFetcher.getByStatement(any(Statement.class))).thenReturn(page);
+    when(requestDeadline.getRemainingMillis()).thenReturn(CONTINUATION_THRESHOLD_MILLIS - 1);
+
+    FetchCursor resumeCursor = new PagePipeline(pageFetcher, pageSizeController, 1, 1,
+        requestDeadline, CONTINUATION_THRESHOLD_MILLIS)
+        .run(newStatementBuilder(), null, new RecordingHandler());
+
+    verify(pageFetcher, times(1)).getByStatement(any(Statement.class));
+    assertEquals(FetchCursor.ofOffset(StatementBuilder.SUGGESTED_PAGE_LIMIT), resumeCursor);
+    assertEquals(1, handledPages.size());
+  }
+
+  /**
+   * Test method for {@link PagePipeline#run}.
+   */
+  @Test
+  public void testRun_handsOverRequestedPagesNearDeadline() throws Exception {
+    page.setTotalResultSetSize(StatementBuilder.SUGGESTED_PAGE_LIMIT * 10);
+    when(pageFetcher.getByStatement(any(Statement.class))).thenReturn(page);
+    when(requestDeadline.getRemainingMillis())
+        .thenReturn(CONTINUATION_THRESHOLD_MILLIS)
+        .thenReturn(CONTINUATION_THRESHOLD_MILLIS - 1);
+
+    FetchCursor resumeCursor = new PagePipeline(pageFetcher, pageSizeController, 2, 1,
+        requestDeadline, CONTINUATION_THRESHOLD_MILLIS)
+        .run(newStatementBuilder(), null, new RecordingHandler());
+
+    // The second page was requested before the deadline, so it is handled instead of fetched
+    // again by the continuation.
+    verify(pageFetcher, times(2)).getByStatement(any(Statement.class));
+    assertEquals(2, handledPages.size());
+    assertEquals(FetchCursor.ofOffset(StatementBuilder.SUGGESTED_PAGE_LIMIT * 2), resumeCursor);
+  }
+
+  /**
+   * Test method for {@link PagePipeline#runByKeyset}.
+   */
+  @Test
+  public void testRunByKeyset_stopsNearDeadline() throws Exception {
+    when(pageFetcher.getByStatement(any(Statement.class)))
+        .thenReturn(makeKeysetPage(1, StatementBuilder.SUGGESTED_PAGE_LIMIT));
+    when(requestDeadline.getRemainingMillis()).thenReturn(CONTINUATION_THRESHOLD_MILLIS - 1);
+
+    FetchCursor resumeCursor = new PagePipeline(pageFetcher, pageSizeController, 1, 1,
+        requestDeadline, CONTINUATION_THRESHOLD_MILLIS)
+        .runByKeyset("", null, new RecordingHandler());
+
+    verify(pageFetcher, times(1)).getByStatement(any(Statement.class));
+    assertEquals(1, handledPages.size());
+    assertEquals(FetchCursor.ofLastId(StatementBuilder.SUGGESTED_PAGE_LIMIT), resumeCursor);
+  }
+
+  /**
+   * Test method for {@link PagePipeline#run}.
+   */
+  @Test
+  public void testRun_stopsFetchesBeforeReturning() throws Exception {
+    final CountDownLatch fetchStarted = new CountDownLatch(1);
+    final AtomicBoolean fetchRunning = new AtomicBoolean();
+    page.setTotalResultSetSize(StatementBuilder.SUGGESTED_PAGE_LIMIT * 10);
+    when(pageFetcher.getByStatement(any(Statement.class)))
+        .thenReturn(page)
+        .thenAnswer(new Answer<OrderPage>() {
+          public OrderPage answer(InvocationOnMock invocation) {
+            // Like an API call, the fetch does not stop when its thread is interrupted.
+            fetchRunning.set(true);
+            fetchStarted.countDown();
+            Uninterruptibles.sleepUninterruptibly(FETCH_MILLIS, TimeUnit.MILLISECONDS);
+            fetchRunning.set(false);
+            return page;
+          }
+        });
+
+    try {
+      new PagePipeline(pageFetcher, pageSizeController, 2, 1).run(newStatementBuilder(), null,
+          new PagePipeline.PageHandler() {
+            public void handle(Object handledPage, FetchCursor nextCursor) throws Exception {
+              fetchStarted.await();
+              throw new CancellationException();
+            }
+          });
+      fail("Expected CancellationException.");
+    } catch (CancellationException e) {
+      assertFalse(fetchRunning.get());
+    }
+  }
+
+  /**
+   * Test method for {@link PagePipeline#run}.
+   */
+  @Test
+  public void testRun_throwsFetchException() throws Exception {
+    when(pageFetcher.getByStatement(any(Statement.class)))
+        .thenReturn(page)
+        .thenThrow(new ApiException_Exception(ERROR_STRING, null));
+
+    try {
+      new PagePipeline(pageFetcher, pageSizeController, 1, 1)
+          .run(newStatementBuilder(), null, new RecordingHandler());
+      fail("ApiException_Exception expected.");
+    } catch (ApiException_Exception e) {
+      assertEquals(ERROR_STRING, e.getMessage());
+    }
+    assertEquals(1, handledPages.size());
+  }
+
+  /**
+   * Test method for {@link PagePipeline#run}.
+   */
+  @Test
+  public void testRun_stopsWhenHandlerThrows() throws Exception {
+    when(pageFetcher.getByStatement(any(Statement.class))).thenReturn(page);
+
+    try {
+      new PagePipeline(pageFetcher, pageSizeController, 2, 1).run(newStatementBuilder(),
+          null, new PagePipeline.PageHandler() {
+            public void handle(Object page, FetchCursor nextCursor) {
+              throw new IllegalStateException(ERROR_STRING);
+            }
+          });
+      fail("IllegalStateException expected.");
+    } catch (IllegalStateException e) {
+      assertEquals(ERROR_STRING, e.getMessage());
+    }
+  }
+
+  /**
+   * Test method for {@link PagePipeline#runByKeyset}.
+   */
+  @Test
+  public void testRunByKeyset_pagesAfterLastId() throws Exception {
+    OrderPage fullPage = makeKeysetPage(1, StatementBuilder.SUGGESTED_PAGE_LIMIT);
+    OrderPage lastPage = makeKeysetPage(StatementBuilder.SUGGESTED_PAGE_LIMIT + 1, 1);
+    when(pageFetcher.getByStatement(any(Statement.class)))
+        .thenReturn(fullPage)
+        .thenReturn(lastPage);
+    ArgumentCaptor<Statement> statementCapture = ArgumentCaptor.forClass(Statement.class);
+
+    new PagePipeline(pageFetcher, pageSizeController, 2, 1)
+        .runByKeyset("WHERE status = 'APPROVED'", null, new RecordingHandler());
+
+    verify(pageFetcher, times(2)).getByStatement(statementCapture.capture());
+    assertEquals(2, handledPages.size());
+    assertSame(fullPage, handledPages.get(0));
+    assertSame(lastPage, handledPages.get(1));
+
+    Statement firstStatement = statementCapture.getAllValues().get(0);
+    assertEquals("WHERE status = 'APPROVED' ORDER BY id ASC LIMIT 500",
+        firstStatement.getQuery());
+    assertTrue(firstStatement.getValues().isEmpty());
+
+    Statement secondStatement = statementCapture.getAllValues().get(1);
+    assertTrue(secondStatement.getQuery().startsWith(
+        "WHERE (status = 'APPROVED') AND id > :lastId ORDER BY id ASC LIMIT "));
+    assertEquals(PagePipeline.LAST_ID_VARIABLE, secondStatement.getValues().get(0).getKey());
+    assertEquals(FetchCursor.ofLastId(StatementBuilder.SUGGESTED_PAGE_LIMIT),
+        handledCursors.get(0));
+    assertNull(handledCursors.get(1));
+  }
+
+  /**
+   * Test method for {@link PagePipeline#runByKeyset}.
+   */
+  @Test
+  public void testRunByKeyset_continuesAfterFullPageShorterThanLimit() throws Exception {
+    pageSizeController.recordPage(StatementBuilder.SUGGESTED_PAGE_LIMIT,
+        StatementBuilder.SUGGESTED_PAGE_LIMIT, 1);
+    int limit = pageSizeController.getPageLimit();
+    OrderPage cappedPage = makeKeysetPage(1, StatementBuilder.SUGGESTED_PAGE_LIMIT);
+    OrderPage lastPage = makeKeysetPage(StatementBuilder.SUGGESTED_PAGE_LIMIT + 1, 1);
+    when(pageFetcher.getByStatement(any(Statement.class)))
+        .thenReturn(cappedPage)
+        .thenReturn(lastPage);
+    ArgumentCaptor<Statement> statementCapture = ArgumentCaptor.forClass(Statement.class);
+
+    new PagePipeline(pageFetcher, pageSizeController, 2, 1)
+        .runByKeyset("", null, new RecordingHandler());
+
+    verify(pageFetcher, times(2)).getByStatement(statementCapture.capture());
+    assertTrue(limit > StatementBuilder.SUGGESTED_PAGE_LIMIT);
+    assertEquals("ORDER BY id ASC LIMIT " + limit,
+        statementCapture.getAllValues().get(0).getQuery());
+    assertEquals(2, handledPages.size());
+    assertEquals(FetchCursor.ofLastId(StatementBuilder.SUGGESTED_PAGE_LIMIT),
+        handledCursors.get(0));
+    assertNull(handledCursors.get(1));
+  }
+
+  /**
+   * Test method for {@link PagePipeline#run}.
+   */
+  @Test
+  public void testRun_keepsOffsetPagesAtFullPageLimit() throws Exception {
+    pageSizeController.recordPage(StatementBuilder.SUGGESTED_PAGE_LIMIT,
+        StatementBuilder.SUGGESTED_PAGE_LIMIT, 1);
+    when(pageFetcher.getByStatement(any(Statement.class))).thenReturn(page);
+    ArgumentCaptor<Statement> statementCapture = ArgumentCaptor.forClass(Statement.class);
+
+    new PagePipeline(pageFetcher, pageSizeController, 1, 1)
+        .run(newStatementBuilder(), null, new RecordingHandler());
+
+    verify(pageFetcher, times(3)).getByStatement(statementCapture.capture());
+    assertTrue(statementCapture.getAllValues().get(2).getQuery()
+        .endsWith("LIMIT 500 OFFSET 1000"));
+  }
+
+  /**
+   * Test method for {@link PagePipeline#runByKeyset}.
+   */
+  @Test
+  public void testRunByKeyset_startsAfterCursorId() throws Exception {
+    OrderPage lastPage = makeKeysetPage(43, 1);
+    when(pageFetcher.getByStatement(any(Statement.class))).thenReturn(lastPage);
+    ArgumentCaptor<Statement> statementCapture = ArgumentCaptor.forClass(Statement.class);
+
+    new PagePipeline(pageFetcher, pageSizeController, 2, 1)
+        .runByKeyset("", FetchCursor.ofLastId(42L), new RecordingHandler());
+
+    verify(pageFetcher).getByStatement(statementCapture.capture());
+    assertEquals("WHERE id > :lastId ORDER BY id ASC LIMIT 500",
+        statementCapture.getValue().getQuery());
+    assertEquals(1, handledPages.size());
+  }
+
+  /**
+   * Test method for {@link PagePipeline#runByKeyset}.
+   */
+  @Test
+  public void testRunByKeyset_withEmptyFilterText() throws Exception {
+    OrderPage emptyPage = makeKeysetPage(1, 0);
+    when(pageFetcher.getByStatement(any(Statement.class))).thenReturn(emptyPage);
+    ArgumentCaptor<Statement> statementCapture = ArgumentCaptor.forClass(Statement.class);
+
+    new PagePipeline(pageFetcher, pageSizeController, 2, 1)
+        .runByKeyset("", null, new RecordingHandler());
+
+    verify(pageFetcher).getByStatement(statementCapture.capture());
+    assertEquals("ORDER BY id ASC LIMIT 500", statementCapture.getValue().getQuery());
+    assertEquals(1, handledPages.size());
+  }
+
+  /**
+   * Makes a statement builder for the first page.
+   */
+  private static StatementBuilder newStatementBuilder() {
+    return new StatementBuilder();
+  }
+
+  /**
+   * Makes a page of orders with consecutive IDs.
+   */
+  private static OrderPage makeKeysetPage(long firstId, int size) {
+    OrderPage keysetPage = new OrderPage();
+    keysetPage.setTotalResultSetSize(size);
+    for (long id = firstId; id < firstId + size; id++) {
+      Order order = new Order();
+      order.setId(id);
+      keysetPage.getResults().add(order);
+    }
+    return keysetPage;
+  }
+
+  /** A page handler that records the pages it handles. */
+  private class RecordingHandler implements PagePipeline.PageHandler {
+    public void handle(Object page, FetchCursor nextCursor) {
+      handledPages.add(page);
+      handledCursors.add(nextCursor);
+    }
+  }
+}
@@ -0,0 +1,169 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.fetcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link PageSizeController}.
+ */
+@RunWith(JUnit4.class)
+public class PageSizeControllerTest {
+
+  private static final long TARGET_LATENCY_MILLIS = 1000;
+  private static final long TARGET_PAGE_BYTES = 1000000;
+
+  private PageSizeController controller;
+
+  /**
+   * Constructor.
+   */
+  public PageSizeControllerTest() {}
+
+  @Before
+  public void setUp() {
+    controller = new PageSizeController(TARGET_LATENCY_MILLIS, TARGET_PAGE_BYTES,
+        PageSizeController.DEFAULT_MAX_PAGE_LIMIT);
+  }
+
+  /**
+   * Test method for {@link PageSizeController#getPageLimit}.
+   */
+  @Test
+  public void testGetPageLimit_startsAtFullPage() {
+    assertEquals(PageSizeController.FULL_PAGE_LIMIT, controller.getPageLimit());
+  }
+
+  /**
+   * Test method for {@link PageSizeController#recordPage}.
+   */
+  @Test
+  public void testRecordPage_shrinksSlowPages() {
+    // 500 rows in 5 seconds is 10 ms per row, so 100 rows take the 1 second target.
+    controller.recordPage(500, 500, 5000);
+
+    assertEquals(100, controller.getPageLimit());
+  }
+
+  /**
+   * Test method for {@link PageSizeController#recordPage}.
+   */
+  @Test
+  public void testRecordPage_growsFasterPages() {
+    controller.recordPage(500, 500, 5000);
+    controller.recordPage(100, 100, 100);
+
+    // The moving average is 0.3 * 1 + 0.7 * 10 = 7.3 ms per row.
+    assertEquals(136, controller.getPageLimit());
+  }
+
+  /**
+   * Test method for {@link PageSizeController#recordPage}.
+   */
+  @Test
+  public void testRecordPage_staysWithinBounds() {
+    controller.recordPage(100, 100, 100000);
+    assertEquals(PageSizeController.MIN_PAGE_LIMIT, controller.getPageLimit());
+
+    PageSizeController fastController = new PageSizeController(TARGET_LATENCY_MILLIS);
+    fastController.recordPage(500, 500, 1);
+    assertEquals(PageSizeController.DEFAULT_MAX_PAGE_LIMIT, fastController.getPageLimit());
+  }
+
+  /**
+   * Test method for {@link PageSizeController#recordPage}.
+   */
+  @Test
+  public void testRecordPage_growsPastFullPage() {
+    // 500 rows in 2 seconds is 4 ms per row, so 1250 rows take the 5 second target.
+    PageSizeController fastController = new PageSizeController(5000, TARGET_PAGE_BYTES, 2000);
+    fastController.recordPage(500, 500, 2000);
+
+    assertEquals(1250, fastController.getPageLimit());
+    assertEquals(PageSizeController.FULL_PAGE_LIMIT, fastController.getOffsetPageLimit());
+  }
+
+  /**
+   * Test method for {@link PageSizeController#recordPage}.
+   */
+  @Test
+  public void testRecordPage_countsPageOfFullPageLimitAsFull() {
+    PageSizeController fastController = new PageSizeController(5000, TARGET_PAGE_BYTES, 2000);
+    fastController.recordPage(500, 500, 2000);
+
+    // The API returned 500 of 1250 rows in 2.5 seconds, which is 5 ms per row.
+    fastController.recordPage(1250, 500, 2500);
+
+    // The moving average is 0.3 * 5 + 0.7 * 4 = 4.3 ms per row.
+    assertEquals(1162, fastController.getPageLimit());
+  }
+
+  /**
+   * Test method for {@link PageSizeController#recordRowBytes}.
+   */
+  @Test
+  public void testRecordRowBytes_shrinksPagesWithLargeRows() {
+    // 10000 bytes per row means 100 rows make the 1000000 byte target.
+    controller.recordRowBytes(10000);
+
+    assertEquals(100, controller.getPageLimit());
+  }
+
+  /**
+   * Test method for {@link PageSizeController#recordRowBytes}.
+   */
+  @Test
+  public void testRecordRowBytes_usesSmallerOfLatencyAndPayloadLimits() {
+    controller.recordPage(500, 500, 5000);
+    controller.recordRowBytes(5000);
+    assertEquals(100, controller.getPageLimit());
+
+    PageSizeController fastController = new PageSizeController(TARGET_LATENCY_MILLIS,
+        TARGET_PAGE_BYTES, PageSizeController.DEFAULT_MAX_PAGE_LIMIT);
+    fastController.recordPage(500, 500, 1);
+    fastController.recordRowBytes(5000);
+    assertEquals(200, fastController.getPageLimit());
+  }
+
+  /**
+   * Test method for {@link PageSizeController#recordPage}.
+   */
+  @Test
+  public void testRecordPage_ignoresPartialPages() {
+    controller.recordPage(500, 0, 5000);
+    controller.recordPage(500, 10, 5000);
+
+    assertEquals(PageSizeController.FULL_PAGE_LIMIT, controller.getPageLimit());
+  }
+
+  /**
+   * Test method for {@link PageSizeController#get}.
+   */
+  @Test
+  public void testGet_sharedPerEntityTypeAndNetwork() {
+    assertSame(PageSizeController.get("orders", "1234"), PageSizeController.get("orders", "1234"));
+    assertNotSame(
+        PageSizeController.get("orders", "1234"), PageSizeController.get("orders", "5678"));
+    assertNotSame(
+        PageSizeController.get("orders", "1234"), PageSizeController.get("creatives", "1234"));
+  }
+}
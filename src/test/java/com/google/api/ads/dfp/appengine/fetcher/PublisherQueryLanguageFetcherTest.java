@@ -17,14 +17,18 @@ package com.google.api.ads.dfp.appengine.fetcher;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.api.ads.dfp.appengine.util.Channels;
 import com.google.api.ads.dfp.jaxws.v201403.ApiException_Exception;
+import com.google.api.ads.dfp.jaxws.v201403.ColumnType;
 import com.google.api.ads.dfp.jaxws.v201403.PublisherQueryLanguageServiceInterface;
 import com.google.api.ads.dfp.jaxws.v201403.ResultSet;
+import com.google.api.ads.dfp.jaxws.v201403.Row;
 import com.google.api.ads.dfp.jaxws.v201403.Statement;
+import com.google.api.ads.dfp.jaxws.v201403.TextValue;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -48,10 +52,12 @@ public class PublisherQueryLanguageFetcherTest {
   private static final String CHANNEL_KEY = "channel-key";
   private static final String ERROR_STRING = "error";
   private static final String FILTER_TEXT = "filter-text";
+  private static final String LIMIT_FILTER_TEXT = "filter-text LIMIT 10";
   private static final String TAG = "tag";
   private static final String REQUEST_ID = "reqId";
 
   @Mock private Channels channels;
+  @Mock private FetchCursors fetchCursors;
   private PublisherQueryLanguageFetcher pqlFetcher;
   @Mock private PublisherQueryLanguageServiceInterface pqlService;
 
@@ -64,7 +70,7 @@ public class PublisherQueryLanguageFetcherTest {
   public void setUp() throws Exception {
     MockitoAnnotations.initMocks(this);
 
-    pqlFetcher = new PublisherQueryLanguageFetcher(null, channels);
+    pqlFetcher = new PublisherQueryLanguageFetcher(null, channels, fetchCursors);
   }
 
   /**
@@ -80,7 +86,65 @@ public class PublisherQueryLanguageFetcherTest {
     verify(channels).sendObjects(eq(CHANNEL_KEY), Mockito.<List<String[]>>anyObject(),
         eq(TAG), eq(REQUEST_ID));
 
-    assertEquals(statementCapture.getValue().getQuery(), FILTER_TEXT);
+    assertEquals(FILTER_TEXT + " LIMIT " + PublisherQueryLanguageFetcher.PAGE_LIMIT + " OFFSET 0",
+        statementCapture.getValue().getQuery());
+  }
+
+  /**
+   * Test method for {@link PublisherQueryLanguageFetcher#fetch}.
+   */
+  @Test
+  public void testFetchObjects_withLimitFilterText() throws ApiException_Exception {
+    ArgumentCaptor<Statement> statementCapture = ArgumentCaptor.forClass(Statement.class);
+    when(pqlService.select(statementCapture.capture())).thenReturn(new ResultSet());
+
+    pqlFetcher.fetch(LIMIT_FILTER_TEXT, CHANNEL_KEY, TAG, REQUEST_ID, pqlService);
+
+    verify(pqlService).select(any(Statement.class));
+    assertEquals(LIMIT_FILTER_TEXT, statementCapture.getValue().getQuery());
+  }
+
+  /**
+   * Test method for {@link PublisherQueryLanguageFetcher#fetch}.
+   */
+  @Test
+  public void testFetchObjects_streamsPages() throws ApiException_Exception {
+    ResultSet fullPage = makeResultSet(PublisherQueryLanguageFetcher.PAGE_LIMIT);
+    ResultSet lastPage = makeResultSet(1);
+    ArgumentCaptor<Statement> statementCapture = ArgumentCaptor.forClass(Statement.class);
+    when(pqlService.select(statementCapture.capture()))
+        .thenReturn(fullPage)
+        .thenReturn(lastPage);
+    ArgumentCaptor<List> rowsCapture = ArgumentCaptor.forClass(List.class);
+
+    pqlFetcher.fetch(FILTER_TEXT + ";", CHANNEL_KEY, TAG, REQUEST_ID, pqlService);
+
+    verify(pqlService, times(2)).select(any(Statement.class));
+    assertEquals(FILTER_TEXT + " LIMIT 500 OFFSET 500",
+        statementCapture.getAllValues().get(1).getQuery());
+    verify(channels, times(2)).sendObjects(
+        eq(CHANNEL_KEY), rowsCapture.capture(), eq(TAG), eq(REQUEST_ID));
+    // Only the first page starts with the column labels.
+    assertEquals(PublisherQueryLanguageFetcher.PAGE_LIMIT + 1,
+        rowsCapture.getAllValues().get(0).size());
+    assertEquals(1, rowsCapture.getAllValues().get(1).size());
+    verify(fetchCursors).save(CHANNEL_KEY, TAG, REQUEST_ID,
+        FetchCursor.ofOffset(PublisherQueryLanguageFetcher.PAGE_LIMIT));
+    verify(fetchCursors).clear(CHANNEL_KEY, TAG, REQUEST_ID);
+  }
+
+  /**
+   * Test method for {@link PublisherQueryLanguageFetcher#fetch}.
+   */
+  @Test
+  public void testFetchObjects_stopsWhenCancelled() throws ApiException_Exception {
+    when(pqlService.select(any(Statement.class)))
+        .thenReturn(makeResultSet(PublisherQueryLanguageFetcher.PAGE_LIMIT));
+    when(channels.isCancelled(CHANNEL_KEY, TAG, REQUEST_ID)).thenReturn(false).thenReturn(true);
+
+    pqlFetcher.fetch(FILTER_TEXT, CHANNEL_KEY, TAG, REQUEST_ID, pqlService);
+
+    verify(pqlService, times(1)).select(any(Statement.class));
   }
 
   /**
@@ -96,4 +160,21 @@ public class PublisherQueryLanguageFetcherTest {
     verify(channels).sendErrorChannelMessage(CHANNEL_KEY, TAG, REQUEST_ID, ERROR_STRING);
   }
 
+  /**
+   * Makes a result set with a single column and the given number of rows.
+   */
+  private static ResultSet makeResultSet(int size) {
+    ResultSet resultSet = new ResultSet();
+    ColumnType columnType = new ColumnType();
+    columnType.setLabelName("id");
+    resultSet.getColumnTypes().add(columnType);
+    for (int i = 0; i < size; i++) {
+      TextValue value = new TextValue();
+      value.setValue(String.valueOf(i));
+      Row row = new Row();
+      row.getValues().add(value);
+      resultSet.getRows().add(row);
+    }
+    return resultSet;
+  }
 }
@@ -0,0 +1,205 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.google.api.ads.dfp.jaxws.v201403.LineItem;
+import com.google.api.ads.dfp.jaxws.v201403.Order;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.inject.Guice;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link PrecomputedTypeAdapterFactory}.
+ */
+@RunWith(JUnit4.class)
+public class PrecomputedTypeAdapterFactoryTest {
+
+  private PrecomputedTypeAdapterFactory factory;
+  private Gson precomputedGson;
+  private Gson reflectiveGson;
+
+  /**
+   * Constructor.
+   */
+  public PrecomputedTypeAdapterFactoryTest() {}
+
+  @Before
+  public void setUp() {
+    factory = new PrecomputedTypeAdapterFactory(ImmutableList.<Class<?>>of(Entity.class));
+    precomputedGson = new GsonBuilder().serializeNulls().registerTypeAdapterFactory(factory)
+        .create();
+    reflectiveGson = new GsonBuilder().serializeNulls().create();
+  }
+
+  /**
+   * Test method for {@link PrecomputedTypeAdapterFactory#create}.
+   */
+  @Test
+  public void testToJson_sameAsReflective() {
+    Entity entity = makeEntity();
+
+    assertEquals(reflectiveGson.toJson(entity), precomputedGson.toJson(entity));
+    assertEquals(reflectiveGson.toJson(new Entity()), precomputedGson.toJson(new Entity()));
+    assertEquals(reflectiveGson.toJson(ImmutableList.of(entity, entity)),
+        precomputedGson.toJson(ImmutableList.of(entity, entity)));
+  }
+
+  /**
+   * Test method for {@link PrecomputedTypeAdapterFactory#create}.
+   */
+  @Test
+  public void testToJson_withoutSerializeNulls_sameAsReflective() {
+    Gson gson = new GsonBuilder().registerTypeAdapterFactory(factory).create();
+    Entity entity = makeEntity();
+
+    assertEquals(new Gson().toJson(entity), gson.toJson(entity));
+    assertEquals(new Gson().toJson(new Entity()), gson.toJson(new Entity()));
+  }
+
+  /**
+   * Test method for {@link PrecomputedTypeAdapterFactory#create}.
+   */
+  @Test
+  public void testToJson_dfpEntities_sameAsReflective() {
+    Gson gson = Guice.createInjector(new GsonModule()).getInstance(Gson.class);
+    Order order = new Order();
+    order.setId(1L);
+    order.setName("Order \u00e9");
+    LineItem lineItem = new LineItem();
+    lineItem.setOrderId(1L);
+    lineItem.setId(2L);
+
+    assertEquals(reflectiveGson.toJson(order), gson.toJson(order));
+    assertEquals(reflectiveGson.toJson(lineItem), gson.toJson(lineItem));
+  }
+
+  /**
+   * Test method for {@link PrecomputedTypeAdapterFactory#create}.
+   */
+  @Test
+  public void testFromJson_readsWithReflectiveAdapter() {
+    Entity entity = precomputedGson.fromJson("{\"id\":5,\"name\":\"e\",\"notes\":[\"n\"]}",
+        Entity.class);
+
+    assertEquals(Long.valueOf(5L), entity.id);
+    assertEquals("e", entity.name);
+    assertEquals(ImmutableList.of("n"), entity.notes);
+  }
+
+  /**
+   * Test method for {@link PrecomputedTypeAdapterFactory#create}.
+   */
+  @Test
+  public void testCreate_leavesClassesWithTypeVariablesToReflectiveAdapters() {
+    assertNull(factory.create(precomputedGson, new TypeToken<Holder<String>>() {}));
+    assertNull(factory.create(precomputedGson, TypeToken.get(Holder.class)));
+    assertNull(factory.create(precomputedGson, TypeToken.get(String.class)));
+    assertNotNull(factory.create(precomputedGson, TypeToken.get(Value.class)));
+  }
+
+  /**
+   * Makes an entity with a value in every field.
+   */
+  private static Entity makeEntity() {
+    Entity entity = new Entity();
+    entity.id = 42L;
+    entity.name = "Line item <1> \u2603";
+    entity.externalId = "ext";
+    entity.status = Status.READY;
+    entity.priority = 8;
+    entity.notes = Lists.newArrayList("a", null, "b");
+    entity.value = new TextValue("text");
+    entity.values = Lists.<Value>newArrayList(new TextValue("one"), new NumberValue(2.5), null);
+    entity.attributes = ImmutableMap.of("k", 1L);
+    entity.extra = new NumberValue(7);
+    entity.holder = new Holder<String>();
+    entity.holder.value = "held";
+    entity.cache = "not written";
+    return entity;
+  }
+
+  /** The statuses of a test entity. */
+  public enum Status {
+    READY,
+    @SerializedName("paused") PAUSED
+  }
+
+  /** The superclass of a test entity, like the summaries of DFP entities. */
+  public static class EntitySummary {
+    protected Long id;
+    protected String name;
+    @SerializedName("external_id")
+    protected String externalId;
+    protected Status status;
+  }
+
+  /** An entity for testing. */
+  public static class Entity extends EntitySummary {
+    static final String IGNORED = "ignored";
+    protected long priority;
+    protected List<String> notes;
+    protected Value value;
+    protected List<Value> values;
+    protected Map<String, Long> attributes;
+    protected Object extra;
+    protected Holder<String> holder;
+    protected transient String cache;
+  }
+
+  /** An abstract value, like DFP's values. */
+  public abstract static class Value {}
+
+  /** A text value. */
+  public static class TextValue extends Value {
+    protected final String text;
+
+    /** Constructor. */
+    public TextValue(String text) {
+      this.text = text;
+    }
+  }
+
+  /** A number value. */
+  public static final class NumberValue extends Value {
+    protected final double number;
+
+    /** Constructor. */
+    public NumberValue(double number) {
+      this.number = number;
+    }
+  }
+
+  /** A generic class, which is left to the reflective adapters. */
+  public static class Holder<T> {
+    protected T value;
+  }
+}
@@ -0,0 +1,367 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.api.ads.dfp.appengine.oauth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.auth.oauth2.CredentialStore;
+import com.google.api.client.auth.oauth2.StoredCredential;
+import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.client.util.Clock;
+import com.google.api.client.util.Sleeper;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.common.collect.Maps;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link CachingCredentialStore}.
+ */
+@RunWith(JUnit4.class)
+public class CachingCredentialStoreTest {
+
+  private static final String USER_ID = "user-id";
+  private static final String ACCESS_TOKEN = "access-token";
+  private static final String REFRESHED_ACCESS_TOKEN = "refreshed-access-token";
+  private static final String REFRESH_TOKEN = "refresh-token";
+  private static final long NOW_MILLIS = 1400000000000L;
+
+  @Mock private MemcacheService memcacheService;
+  @Mock private CredentialRefreshSchedule refreshSchedule;
+  private Map<Object, Object> memcache;
+  private FakeCredentialStore datastore;
+  private CachingCredentialStore credentialStore;
+  private CachingCredentialStore otherInstanceStore;
+
+  /**
+   * Constructor.
+   */
+  public CachingCredentialStoreTest() {}
+
+  @Before
+  public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    memcache = Maps.newHashMap();
+    datastore = new FakeCredentialStore();
+    when(memcacheService.get(any())).thenAnswer(new Answer<Object>() {
+      public Object answer(InvocationOnMock invocation) {
+        return memcache.get(invocation.getArguments()[0]);
+      }
+    });
+    doAnswer(new Answer<Void>() {
+      public Void answer(InvocationOnMock invocation) {
+        memcache.put(invocation.getArguments()[0], invocation.getArguments()[1]);
+        return null;
+      }
+    }).when(memcacheService).put(any(), any(), any(Expiration.class));
+    when(memcacheService.put(any(), any(), any(Expiration.class), any(SetPolicy.class)))
+        .thenAnswer(new Answer<Boolean>() {
+          public Boolean answer(InvocationOnMock invocation) {
+            Object key = invocation.getArguments()[0];
+            if (memcache.containsKey(key)) {
+              return false;
+            }
+            memcache.put(key, invocation.getArguments()[1]);
+            return true;
+          }
+        });
+    when(memcacheService.delete(any())).thenAnswer(new Answer<Boolean>() {
+      public Boolean answer(InvocationOnMock invocation) {
+        return memcache.remove(invocation.getArguments()[0]) != null;
+      }
+    });
+    credentialStore = new CachingCredentialStore(datastore, memcacheService, new FixedClock());
+    otherInstanceStore =
+        new CachingCredentialStore(datastore, memcacheService, new FixedClock());
+  }
+
+  /**
+   * Test method for {@link CachingCredentialStore#load}.
+   */
+  @Test
+  public void testLoad_readsDatastoreOnce() throws Exception {
+    datastore.put(ACCESS_TOKEN, TimeUnit.HOURS.toMillis(1));
+
+    Credential first = newCredential();
+    assertTrue(credentialStore.load(USER_ID, first));
+    Credential second = newCredential();
+    assertTrue(credentialStore.load(USER_ID, second));
+
+    assertEquals(ACCESS_TOKEN, second.getAccessToken());
+    assertEquals(REFRESH_TOKEN, second.getRefreshToken());
+    assertEquals(1, datastore.loadCount);
+    assertEquals(2, credentialStore.getLoadCount());
+    assertEquals(1, credentialStore.getStoreLoadCount());
+  }
+
+  /**
+   * Test method for {@link CachingCredentialStore#load}.
+   */
+  @Test
+  public void testLoad_otherInstanceReadsMemcache() throws Exception {
+    datastore.put(ACCESS_TOKEN, TimeUnit.HOURS.toMillis(1));
+
+    credentialStore.load(USER_ID, newCredential());
+    Credential credential = newCredential();
+    assertTrue(otherInstanceStore.load(USER_ID, credential));
+
+    assertEquals(ACCESS_TOKEN, credential.getAccessToken());
+    assertEquals(1, datastore.loadCount);
+  }
+
+  /**
+   * Test method for {@link CachingCredentialStore#load}.
+   */
+  @Test
+  public void testLoad_expiringCredential_seesRefreshOfOtherInstance() throws Exception {
+    datastore.put(ACCESS_TOKEN, TimeUnit.MINUTES.toMillis(10));
+    credentialStore.load(USER_ID, newCredential());
+    Credential refreshed = newCredential()
+        .setAccessToken(REFRESHED_ACCESS_TOKEN)
+        .setExpirationTimeMilliseconds(NOW_MILLIS + TimeUnit.HOURS.toMillis(1));
+
+    otherInstanceStore.store(USER_ID, refreshed);
+    Credential credential = newCredential();
+    credentialStore.load(USER_ID, credential);
+
+    assertEquals(REFRESHED_ACCESS_TOKEN, credential.getAccessToken());
+    assertEquals(REFRESHED_ACCESS_TOKEN, datastore.credentials.get(USER_ID).getAccessToken());
+    assertEquals(1, datastore.loadCount);
+  }
+
+  /**
+   * Test method for {@link CachingCredentialStore#store}.
+   */
+  @Test
+  public void testStore_writesThrough() throws Exception {
+    credentialStore.store(USER_ID, newCredential()
+        .setAccessToken(ACCESS_TOKEN)
+        .setExpirationTimeMilliseconds(NOW_MILLIS + TimeUnit.HOURS.toMillis(1)));
+
+    Credential credential = newCredential();
+    assertTrue(otherInstanceStore.load(USER_ID, credential));
+
+    assertEquals(ACCESS_TOKEN, credential.getAccessToken());
+    assertEquals(ACCESS_TOKEN, datastore.credentials.get(USER_ID).getAccessToken());
+    assertEquals(0, datastore.loadCount);
+  }
+
+  /**
+   * Test method for {@link CachingCredentialStore#delete}, as called by
+   * {@link CredentialFactory#getInstance} when a credential cannot be refreshed.
+   */
+  @Test
+  public void testDelete_refreshFails_removesCredentialFromAllTiers() throws Exception {
+    datastore.put(ACCESS_TOKEN, TimeUnit.MINUTES.toMillis(1));
+    otherInstanceStore.load(USER_ID, newCredential());
+    CredentialFactory credentialFactory = new CredentialFactory(credentialStore,
+        new FailingTokenServer(), new JacksonFactory(), memcacheService, refreshSchedule,
+        "client-id", "client-secret", new FixedClock(), Sleeper.DEFAULT);
+    // A third instance loads the credential while it is being deleted.
+    CachingCredentialStore thirdInstanceStore =
+        new CachingCredentialStore(datastore, memcacheService, new FixedClock());
+    datastore.loadOnDelete = thirdInstanceStore;
+
+    try {
+      credentialFactory.getInstance(USER_ID);
+      fail("Expected CredentialException.");
+    } catch (CredentialException e) {
+      // Expected.
+    }
+
+    assertFalse(datastore.loadedOnDelete);
+    assertNull(datastore.credentials.get(USER_ID));
+    assertEquals(CachingCredentialStore.DELETED,
+        memcache.get(CachingCredentialStore.MEMCACHE_PREFIX + USER_ID));
+    assertFalse(credentialStore.load(USER_ID, newCredential()));
+    assertFalse(thirdInstanceStore.load(USER_ID, newCredential()));
+    // The other instance still holds the expiring credential in memory, which it passes over.
+    assertFalse(otherInstanceStore.load(USER_ID, newCredential()));
+  }
+
+  /**
+   * Test method for {@link CachingCredentialStore#load}.
+   */
+  @Test
+  public void testLoad_overlappingDelete_doesNotCacheDeletedCredential() throws Exception {
+    datastore.put(ACCESS_TOKEN, TimeUnit.HOURS.toMillis(1));
+    datastore.deleteOnLoad = otherInstanceStore;
+
+    // The credential was read before it was deleted.
+    assertTrue(credentialStore.load(USER_ID, newCredential()));
+
+    assertEquals(CachingCredentialStore.DELETED,
+        memcache.get(CachingCredentialStore.MEMCACHE_PREFIX + USER_ID));
+    assertFalse(credentialStore.load(USER_ID, newCredential()));
+    assertEquals(1, datastore.loadCount);
+  }
+
+  /**
+   * Test method for {@link CachingCredentialStore#store}.
+   */
+  @Test
+  public void testStore_replacesDeletedMark() throws Exception {
+    datastore.put(ACCESS_TOKEN, TimeUnit.HOURS.toMillis(1));
+    credentialStore.delete(USER_ID, newCredential());
+    Credential credential = newCredential()
+        .setAccessToken(REFRESHED_ACCESS_TOKEN)
+        .setExpirationTimeMilliseconds(NOW_MILLIS + TimeUnit.HOURS.toMillis(1));
+
+    credentialStore.store(USER_ID, credential);
+
+    Credential loaded = newCredential();
+    assertTrue(otherInstanceStore.load(USER_ID, loaded));
+    assertEquals(REFRESHED_ACCESS_TOKEN, loaded.getAccessToken());
+    assertEquals(0, datastore.loadCount);
+  }
+
+  /**
+   * Test method for {@link CachingCredentialStore#delete}.
+   */
+  @Test
+  public void testDelete_datastoreFails_removesCredentialFromCaches() throws Exception {
+    datastore.put(ACCESS_TOKEN, TimeUnit.HOURS.toMillis(1));
+    credentialStore.load(USER_ID, newCredential());
+    datastore.fail = true;
+
+    try {
+      credentialStore.delete(USER_ID, newCredential());
+      fail("Expected IOException.");
+    } catch (IOException e) {
+      // Expected.
+    }
+
+    assertNull(memcache.get(CachingCredentialStore.MEMCACHE_PREFIX + USER_ID));
+    datastore.fail = false;
+    credentialStore.load(USER_ID, newCredential());
+    assertEquals(2, datastore.loadCount);
+  }
+
+  private static Credential newCredential() {
+    return new GoogleCredential.Builder()
+        .setJsonFactory(new JacksonFactory())
+        .setTransport(new FailingTokenServer())
+        .setClientSecrets("client-id", "client-secret")
+        .build();
+  }
+
+  /**
+   * A credential store that keeps credentials in a map, and counts the loads. A load or delete can
+   * be interleaved with a delete or load of another instance.
+   */
+  private static class FakeCredentialStore implements CredentialStore {
+
+    private final Map<String, StoredCredential> credentials = Maps.newHashMap();
+    private int loadCount;
+    private boolean fail;
+    private CachingCredentialStore deleteOnLoad;
+    private CachingCredentialStore loadOnDelete;
+    private boolean loadedOnDelete;
+
+    void put(String accessToken, long expiresInMillis) {
+      credentials.put(USER_ID, new StoredCredential()
+          .setAccessToken(accessToken)
+          .setRefreshToken(REFRESH_TOKEN)
+          .setExpirationTimeMilliseconds(NOW_MILLIS + expiresInMillis));
+    }
+
+    public boolean load(String userId, Credential credential) throws IOException {
+      loadCount++;
+      StoredCredential stored = credentials.get(userId);
+      if (deleteOnLoad != null) {
+        CachingCredentialStore store = deleteOnLoad;
+        deleteOnLoad = null;
+        store.delete(userId, newCredential());
+      }
+      if (stored == null) {
+        return false;
+      }
+      credential.setAccessToken(stored.getAccessToken());
+      credential.setRefreshToken(stored.getRefreshToken());
+      credential.setExpirationTimeMilliseconds(stored.getExpirationTimeMilliseconds());
+      return true;
+    }
+
+    public void store(String userId, Credential credential) throws IOException {
+      if (fail) {
+        throw new IOException();
+      }
+      credentials.put(userId, new StoredCredential(credential));
+    }
+
+    public void delete(String userId, Credential credential) throws IOException {
+      if (fail) {
+        throw new IOException();
+      }
+      if (loadOnDelete != null) {
+        CachingCredentialStore store = loadOnDelete;
+        loadOnDelete = null;
+        loadedOnDelete = store.load(userId, newCredential());
+      }
+      credentials.remove(userId);
+    }
+  }
+
+  /**
+   * A token server that rejects every refresh.
+   */
+  private static class FailingTokenServer extends MockHttpTransport {
+
+    @Override
+    public LowLevelHttpRequest buildRequest(String method, String url) {
+      return new MockLowLevelHttpRequest(url).setResponse(new MockLowLevelHttpResponse()
+          .setContentType("application/json")
+          .setStatusCode(400)
+          .setContent("{\"error\":\"invalid_grant\"}"));
+    }
+  }
+
+  /**
+   * A clock that does not move.
+   */
+  private static class FixedClock implements Clock {
+
+    public long currentTimeMillis() {
+      return NOW_MILLIS;
+    }
+  }
+}
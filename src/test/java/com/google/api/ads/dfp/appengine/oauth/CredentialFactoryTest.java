@@ -0,0 +1,501 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.oauth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.auth.oauth2.CredentialStore;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.client.util.Clock;
+import com.google.api.client.util.Sleeper;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link CredentialFactory}.
+ */
+@RunWith(JUnit4.class)
+public class CredentialFactoryTest {
+
+  private static final String USER_ID = "user-id";
+  private static final String STORED_ACCESS_TOKEN = "stored-access-token";
+  private static final String REFRESHED_ACCESS_TOKEN = "refreshed-access-token";
+  private static final String REFRESH_TOKEN = "refresh-token";
+  private static final long TOKEN_LIFETIME_SECONDS = 3600;
+
+  @Mock private CredentialStore credentialStore;
+  @Mock private MemcacheService memcacheService;
+  @Mock private CredentialRefreshSchedule refreshSchedule;
+  private TokenServer tokenServer;
+  private FakeClock clock;
+  private Sleeper sleeper;
+  private String storedAccessToken;
+  private Long storedExpiresInMillis;
+  private CredentialFactory credentialFactory;
+
+  /**
+   * Constructor.
+   */
+  public CredentialFactoryTest() {}
+
+  @Before
+  public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    tokenServer = new TokenServer();
+    clock = new FakeClock();
+    sleeper = new Sleeper() {
+      public void sleep(long millis) {
+        clock.advance(millis);
+      }
+    };
+    setLeaseTaken(false);
+    doAnswer(new Answer<Boolean>() {
+      public Boolean answer(InvocationOnMock invocation) {
+        Credential credential = (Credential) invocation.getArguments()[1];
+        credential.setAccessToken(storedAccessToken);
+        credential.setRefreshToken(REFRESH_TOKEN);
+        credential.setExpirationTimeMilliseconds(storedExpiresInMillis == null ? null
+            : clock.currentTimeMillis() + storedExpiresInMillis);
+        return true;
+      }
+    }).when(credentialStore).load(eq(USER_ID), any(Credential.class));
+    credentialFactory = new CredentialFactory(credentialStore, tokenServer, new JacksonFactory(),
+        memcacheService, refreshSchedule, "client-id", "client-secret", clock, new Sleeper() {
+          public void sleep(long millis) throws InterruptedException {
+            sleeper.sleep(millis);
+          }
+        });
+  }
+
+  /**
+   * Test method for {@link CredentialFactory#getInstance}.
+   */
+  @Test
+  public void testGetInstance_refreshesExpiredCredentialOnce() throws Exception {
+    setStoredCredential(null, null);
+
+    Credential first = credentialFactory.getInstance(USER_ID);
+    Credential second = credentialFactory.getInstance(USER_ID);
+
+    assertSame(first, second);
+    assertEquals(REFRESHED_ACCESS_TOKEN, second.getAccessToken());
+    assertEquals(1, tokenServer.requestCount);
+    verify(credentialStore, times(1)).load(eq(USER_ID), any(Credential.class));
+    // The refreshed token is written back to the store.
+    verify(credentialStore).store(eq(USER_ID), any(Credential.class));
+    assertEquals(2, credentialFactory.getRequestCount());
+    assertEquals(1, credentialFactory.getHitCount());
+    assertEquals(1, credentialFactory.getRefreshesSaved());
+    verify(memcacheService).delete(CredentialFactory.LEASE_PREFIX + USER_ID);
+  }
+
+  /**
+   * Test method for {@link CredentialFactory#getInstance}.
+   */
+  @Test
+  public void testGetInstance_usesStoredCredentialThatIsNotExpiring() throws Exception {
+    setStoredCredential(STORED_ACCESS_TOKEN, TimeUnit.MINUTES.toMillis(30));
+
+    Credential credential = credentialFactory.getInstance(USER_ID);
+
+    assertEquals(STORED_ACCESS_TOKEN, credential.getAccessToken());
+    assertEquals(0, tokenServer.requestCount);
+    assertEquals(0, credentialFactory.getRefreshCount());
+  }
+
+  /**
+   * Test method for {@link CredentialFactory#getInstance}.
+   */
+  @Test
+  public void testGetInstance_refreshesShortlyBeforeExpiry() throws Exception {
+    setStoredCredential(null, null);
+    credentialFactory.getInstance(USER_ID);
+
+    clock.advance(TimeUnit.SECONDS.toMillis(TOKEN_LIFETIME_SECONDS
+        - CredentialFactory.EXPIRY_MARGIN_SECONDS - 1));
+    credentialFactory.getInstance(USER_ID);
+    assertEquals(1, tokenServer.requestCount);
+
+    clock.advance(TimeUnit.SECONDS.toMillis(1));
+    credentialFactory.getInstance(USER_ID);
+    assertEquals(2, tokenServer.requestCount);
+    verify(credentialStore, times(2)).load(eq(USER_ID), any(Credential.class));
+  }
+
+  /**
+   * Test method for {@link CredentialFactory#getInstance}.
+   */
+  @Test
+  public void testGetInstance_refreshFails_deletesCredential() throws Exception {
+    setStoredCredential(null, null);
+    tokenServer.fail = true;
+
+    try {
+      credentialFactory.getInstance(USER_ID);
+      fail("CredentialException should have been thrown.");
+    } catch (CredentialException e) {
+      // Expected.
+    }
+
+    verify(credentialStore).delete(eq(USER_ID), any(Credential.class));
+    assertEquals(0, credentialFactory.getHitCount());
+  }
+
+  /**
+   * Test method for {@link CredentialFactory#getInstance}.
+   */
+  @Test
+  public void testGetInstance_concurrentCallersShareOneRefresh() throws Exception {
+    setStoredCredential(null, null);
+    tokenServer.blocker = new CountDownLatch(1);
+    Future<Credential> first = Executors.newSingleThreadExecutor().submit(
+        new Callable<Credential>() {
+          public Credential call() throws CredentialException {
+            return credentialFactory.getInstance(USER_ID);
+          }
+        });
+    while (tokenServer.requestCount == 0) {
+      Thread.sleep(1);
+    }
+    Future<Credential> second = Executors.newSingleThreadExecutor().submit(
+        new Callable<Credential>() {
+          public Credential call() throws CredentialException {
+            return credentialFactory.getInstance(USER_ID);
+          }
+        });
+    while (credentialFactory.getCoalescedCount() == 0) {
+      Thread.sleep(1);
+    }
+
+    tokenServer.blocker.countDown();
+
+    assertSame(first.get(), second.get());
+    assertEquals(1, tokenServer.requestCount);
+    verify(credentialStore, times(1)).load(eq(USER_ID), any(Credential.class));
+  }
+
+  /**
+   * Test method for {@link CredentialFactory#getInstance}.
+   */
+  @Test
+  public void testGetInstance_leaseTaken_waitsForOtherInstance() throws Exception {
+    setStoredCredential(null, null);
+    setLeaseTaken(true);
+    sleeper = new Sleeper() {
+      public void sleep(long millis) throws InterruptedException {
+        // Another instance refreshes the stored credential.
+        setStoredCredential(REFRESHED_ACCESS_TOKEN, TimeUnit.MINUTES.toMillis(60));
+      }
+    };
+
+    Credential credential = credentialFactory.getInstance(USER_ID);
+
+    assertEquals(REFRESHED_ACCESS_TOKEN, credential.getAccessToken());
+    assertEquals(0, tokenServer.requestCount);
+    assertEquals(1, credentialFactory.getLeaseWaitCount());
+    verify(memcacheService, never()).delete(anyString());
+  }
+
+  /**
+   * Test method for {@link CredentialFactory#getInstance}.
+   */
+  @Test
+  public void testGetInstance_leaseTaken_refreshesAfterWaiting() throws Exception {
+    setStoredCredential(null, null);
+    setLeaseTaken(true);
+
+    Credential credential = credentialFactory.getInstance(USER_ID);
+
+    assertEquals(REFRESHED_ACCESS_TOKEN, credential.getAccessToken());
+    assertEquals(1, tokenServer.requestCount);
+    // The stored credential is reloaded after each poll until the wait is over.
+    int polls = (int) (CredentialFactory.LEASE_WAIT_MILLIS / CredentialFactory.LEASE_POLL_MILLIS);
+    verify(credentialStore, times(polls + 1)).load(eq(USER_ID), any(Credential.class));
+  }
+
+  /**
+   * Test method for {@link CredentialFactory#getInstance}.
+   */
+  @Test
+  public void testGetInstance_schedulesRefreshAhead() throws Exception {
+    setStoredCredential(null, null);
+
+    Credential credential = credentialFactory.getInstance(USER_ID);
+    credentialFactory.getInstance(USER_ID);
+
+    verify(refreshSchedule, times(2)).recordUse(USER_ID);
+    verify(refreshSchedule).schedule(USER_ID, credential.getExpirationTimeMilliseconds(),
+        TimeUnit.SECONDS.toMillis(CredentialFactory.REFRESH_AHEAD_SECONDS));
+  }
+
+  /**
+   * Test method for {@link CredentialFactory#refreshAhead}.
+   */
+  @Test
+  public void testRefreshAhead_activeUser() throws Exception {
+    setStoredCredential(null, null);
+    credentialFactory.getInstance(USER_ID);
+    when(refreshSchedule.isActive(USER_ID)).thenReturn(true);
+    // The token is still good enough for requests, but is within the refresh-ahead window.
+    clock.advance(TimeUnit.SECONDS.toMillis(TOKEN_LIFETIME_SECONDS
+        - CredentialFactory.REFRESH_AHEAD_SECONDS + 1));
+    setStoredCredential(REFRESHED_ACCESS_TOKEN,
+        TimeUnit.SECONDS.toMillis(CredentialFactory.REFRESH_AHEAD_SECONDS - 1));
+
+    assertTrue(credentialFactory.refreshAhead(USER_ID));
+    Credential credential = credentialFactory.getInstance(USER_ID);
+
+    assertEquals(2, tokenServer.requestCount);
+    assertEquals(Long.valueOf(TOKEN_LIFETIME_SECONDS), credential.getExpiresInSeconds());
+    assertEquals(1, credentialFactory.getRefreshCount());
+    assertEquals(1, credentialFactory.getBackgroundRefreshCount());
+    assertEquals(1, credentialFactory.getHitCount());
+    verify(refreshSchedule, times(2)).schedule(eq(USER_ID), anyLong(), anyLong());
+  }
+
+  /**
+   * Test method for {@link CredentialFactory#refreshAhead}.
+   */
+  @Test
+  public void testRefreshAhead_concurrentWithGetInstance_sharesOneRefresh() throws Exception {
+    setStoredCredential(null, null);
+    when(refreshSchedule.isActive(USER_ID)).thenReturn(true);
+    // Without memcache every instance takes the lease, so only the single flight is left.
+    when(memcacheService.put(any(), any(), any(Expiration.class), any(SetPolicy.class)))
+        .thenThrow(new RuntimeException());
+    tokenServer.blocker = new CountDownLatch(1);
+    Future<Boolean> background = Executors.newSingleThreadExecutor().submit(
+        new Callable<Boolean>() {
+          public Boolean call() throws CredentialException {
+            return credentialFactory.refreshAhead(USER_ID);
+          }
+        });
+    while (tokenServer.requestCount == 0) {
+      Thread.sleep(1);
+    }
+    Future<Credential> request = Executors.newSingleThreadExecutor().submit(
+        new Callable<Credential>() {
+          public Credential call() throws CredentialException {
+            return credentialFactory.getInstance(USER_ID);
+          }
+        });
+    while (credentialFactory.getCoalescedCount() == 0) {
+      Thread.sleep(1);
+    }
+
+    tokenServer.blocker.countDown();
+
+    assertTrue(background.get());
+    assertEquals(REFRESHED_ACCESS_TOKEN, request.get().getAccessToken());
+    assertEquals(1, tokenServer.requestCount);
+    assertEquals(1, credentialFactory.getBackgroundRefreshCount());
+    assertEquals(0, credentialFactory.getRefreshCount());
+  }
+
+  /**
+   * Test method for {@link CredentialFactory#refreshAhead}.
+   */
+  @Test
+  public void testRefreshAhead_waitsForLoadOfRequest() throws Exception {
+    setStoredCredential(null, null);
+    when(refreshSchedule.isActive(USER_ID)).thenReturn(true);
+    when(memcacheService.put(any(), any(), any(Expiration.class), any(SetPolicy.class)))
+        .thenThrow(new RuntimeException());
+    tokenServer.blocker = new CountDownLatch(1);
+    Future<Credential> request = Executors.newSingleThreadExecutor().submit(
+        new Callable<Credential>() {
+          public Credential call() throws CredentialException {
+            return credentialFactory.getInstance(USER_ID);
+          }
+        });
+    while (tokenServer.requestCount == 0) {
+      Thread.sleep(1);
+    }
+    Future<Boolean> background = Executors.newSingleThreadExecutor().submit(
+        new Callable<Boolean>() {
+          public Boolean call() throws CredentialException {
+            return credentialFactory.refreshAhead(USER_ID);
+          }
+        });
+    while (credentialFactory.getCoalescedCount() == 0) {
+      Thread.sleep(1);
+    }
+
+    tokenServer.blocker.countDown();
+
+    assertEquals(REFRESHED_ACCESS_TOKEN, request.get().getAccessToken());
+    assertTrue(background.get());
+    // The refreshed token is valid for longer than the refresh-ahead window.
+    assertEquals(1, tokenServer.requestCount);
+    assertEquals(1, credentialFactory.getRefreshCount());
+    assertEquals(0, credentialFactory.getBackgroundRefreshCount());
+  }
+
+  /**
+   * Test method for {@link CredentialFactory#refreshAhead}.
+   */
+  @Test
+  public void testRefreshAhead_idleUser() throws Exception {
+    setStoredCredential(null, null);
+    when(refreshSchedule.isActive(USER_ID)).thenReturn(false);
+
+    assertFalse(credentialFactory.refreshAhead(USER_ID));
+
+    assertEquals(0, tokenServer.requestCount);
+    assertEquals(1, credentialFactory.getIdleCount());
+    verify(credentialStore, never()).load(eq(USER_ID), any(Credential.class));
+  }
+
+  /**
+   * Test method for {@link CredentialFactory#refreshAhead}.
+   */
+  @Test
+  public void testRefreshAhead_refreshFails_dropsCachedCredential() throws Exception {
+    when(refreshSchedule.isActive(USER_ID)).thenReturn(true);
+    setStoredCredential(STORED_ACCESS_TOKEN, TimeUnit.MINUTES.toMillis(10));
+    credentialFactory.getInstance(USER_ID);
+    tokenServer.fail = true;
+
+    try {
+      credentialFactory.refreshAhead(USER_ID);
+      fail("CredentialException should have been thrown.");
+    } catch (CredentialException e) {
+      // Expected.
+    }
+    credentialFactory.getInstance(USER_ID);
+
+    verify(credentialStore).delete(eq(USER_ID), any(Credential.class));
+    verify(credentialStore, times(3)).load(eq(USER_ID), any(Credential.class));
+    assertEquals(0, credentialFactory.getHitCount());
+  }
+
+  /**
+   * Test method for {@link CredentialFactory#invalidate}.
+   */
+  @Test
+  public void testInvalidate() throws Exception {
+    setStoredCredential(STORED_ACCESS_TOKEN, TimeUnit.MINUTES.toMillis(30));
+    credentialFactory.getInstance(USER_ID);
+
+    credentialFactory.invalidate(USER_ID);
+    credentialFactory.getInstance(USER_ID);
+
+    verify(credentialStore, times(2)).load(eq(USER_ID), any(Credential.class));
+    assertEquals(0, credentialFactory.getHitCount());
+  }
+
+  /**
+   * Sets the credential the store loads, which always has a refresh token.
+   *
+   * @param accessToken the access token, or {@code null} for none
+   * @param expiresInMillis how long until the access token expires, or {@code null} for never
+   */
+  private void setStoredCredential(String accessToken, Long expiresInMillis) {
+    storedAccessToken = accessToken;
+    storedExpiresInMillis = expiresInMillis;
+  }
+
+  /**
+   * Makes the refresh lease taken or free in memcache.
+   *
+   * @param taken whether another instance holds the lease
+   */
+  private void setLeaseTaken(boolean taken) {
+    when(memcacheService.put(eq(CredentialFactory.LEASE_PREFIX + USER_ID), any(),
+        any(Expiration.class), eq(SetPolicy.ADD_ONLY_IF_NOT_PRESENT))).thenReturn(!taken);
+  }
+
+  /**
+   * A token server that counts the refresh requests and hands out a new access token for each.
+   */
+  private static class TokenServer extends MockHttpTransport {
+
+    private volatile int requestCount;
+    private boolean fail;
+    private CountDownLatch blocker;
+
+    @Override
+    public LowLevelHttpRequest buildRequest(String method, String url) {
+      requestCount++;
+      if (blocker != null) {
+        try {
+          blocker.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      MockLowLevelHttpResponse response = new MockLowLevelHttpResponse()
+          .setContentType("application/json");
+      if (fail) {
+        response.setStatusCode(400);
+        response.setContent("{\"error\":\"invalid_grant\"}");
+      } else {
+        response.setContent("{\"access_token\":\"" + REFRESHED_ACCESS_TOKEN
+            + "\",\"token_type\":\"Bearer\",\"expires_in\":" + TOKEN_LIFETIME_SECONDS + "}");
+      }
+      return new MockLowLevelHttpRequest(url).setResponse(response);
+    }
+  }
+
+  /**
+   * A clock that only moves when it is told to.
+   */
+  private static class FakeClock implements Clock {
+
+    private long currentTimeMillis = 1400000000000L;
+
+    public long currentTimeMillis() {
+      return currentTimeMillis;
+    }
+
+    void advance(long millis) {
+      currentTimeMillis += millis;
+    }
+  }
+}
@@ -0,0 +1,123 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.oauth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.client.util.Clock;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.TaskAlreadyExistsException;
+import com.google.appengine.api.taskqueue.TaskOptions;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Tests for {@link CredentialRefreshSchedule}.
+ */
+@RunWith(JUnit4.class)
+public class CredentialRefreshScheduleTest {
+
+  private static final String USER_ID = "user-id";
+  private static final long NOW = 1400000000000L;
+
+  @Mock private MemcacheService memcacheService;
+  @Mock private Queue queue;
+  private long currentTimeMillis;
+  private CredentialRefreshSchedule refreshSchedule;
+
+  /**
+   * Constructor.
+   */
+  public CredentialRefreshScheduleTest() {}
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    currentTimeMillis = NOW;
+    refreshSchedule = new CredentialRefreshSchedule(memcacheService, queue, new Clock() {
+      public long currentTimeMillis() {
+        return currentTimeMillis;
+      }
+    });
+  }
+
+  /**
+   * Test method for {@link CredentialRefreshSchedule#recordUse}.
+   */
+  @Test
+  public void testRecordUse_atMostOncePerInterval() {
+    refreshSchedule.recordUse(USER_ID);
+    currentTimeMillis += CredentialRefreshSchedule.USE_RECORD_INTERVAL_MILLIS - 1;
+    refreshSchedule.recordUse(USER_ID);
+    currentTimeMillis += 1;
+    refreshSchedule.recordUse(USER_ID);
+
+    verify(memcacheService, times(2)).put(eq(CredentialRefreshSchedule.ACTIVE_PREFIX + USER_ID),
+        any(), any(Expiration.class));
+  }
+
+  /**
+   * Test method for {@link CredentialRefreshSchedule#isActive}.
+   */
+  @Test
+  public void testIsActive() {
+    when(memcacheService.contains(CredentialRefreshSchedule.ACTIVE_PREFIX + USER_ID))
+        .thenReturn(true);
+
+    assertTrue(refreshSchedule.isActive(USER_ID));
+  }
+
+  /**
+   * Test method for {@link CredentialRefreshSchedule#schedule}.
+   */
+  @Test
+  public void testSchedule() {
+    ArgumentCaptor<TaskOptions> taskCapture = ArgumentCaptor.forClass(TaskOptions.class);
+
+    refreshSchedule.schedule(USER_ID, NOW + 3600000, 900000);
+
+    verify(queue).add(taskCapture.capture());
+    TaskOptions task = taskCapture.getValue();
+    assertEquals(CredentialRefreshSchedule.REFRESH_URL, task.getUrl());
+    assertEquals(Long.valueOf(NOW + 2700000), task.getEtaMillis());
+    assertTrue(task.toString().contains("-" + (NOW + 3600000)));
+  }
+
+  /**
+   * Test method for {@link CredentialRefreshSchedule#schedule}.
+   */
+  @Test
+  public void testSchedule_alreadyScheduled() {
+    when(queue.add(any(TaskOptions.class))).thenThrow(new TaskAlreadyExistsException("exists"));
+
+    refreshSchedule.schedule(USER_ID, NOW + 3600000, 900000);
+
+    verify(queue).add(any(TaskOptions.class));
+  }
+}
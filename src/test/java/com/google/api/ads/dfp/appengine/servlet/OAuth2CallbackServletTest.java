@@ -0,0 +1,103 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.servlet;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.ads.dfp.appengine.oauth.AuthorizationCodeFlowFactory;
+import com.google.api.ads.dfp.appengine.oauth.CredentialFactory;
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.auth.oauth2.CredentialStore;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.appengine.api.users.User;
+import com.google.appengine.api.users.UserService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Tests for {@link OAuth2CallbackServlet}.
+ */
+@RunWith(JUnit4.class)
+public class OAuth2CallbackServletTest {
+
+  private static final String USER_ID = "user-id";
+  private static final String REDIRECT_URL = "/oauth2callback";
+
+  @Mock private CredentialStore credentialStore;
+  @Mock private CredentialFactory credentialFactory;
+  @Mock private UserService userService;
+  @Mock private HttpServletRequest request;
+  @Mock private HttpServletResponse response;
+  private OAuth2CallbackServlet servlet;
+
+  /**
+   * Constructor.
+   */
+  public OAuth2CallbackServletTest() {}
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(userService.getCurrentUser()).thenReturn(new User("user@example.com", "example.com",
+        USER_ID));
+    // A token server that exchanges any authorization code for a new credential.
+    MockHttpTransport tokenServer = new MockHttpTransport() {
+      @Override
+      public LowLevelHttpRequest buildRequest(String method, String url) {
+        return new MockLowLevelHttpRequest(url).setResponse(new MockLowLevelHttpResponse()
+            .setContentType("application/json")
+            .setContent("{\"access_token\":\"access-token\",\"token_type\":\"Bearer\","
+                + "\"refresh_token\":\"refresh-token\",\"expires_in\":3600}"));
+      }
+    };
+    servlet = new OAuth2CallbackServlet(new AuthorizationCodeFlowFactory(credentialStore,
+        new JacksonFactory(), tokenServer, "client-id", "client-secret", "scope"),
+        credentialFactory, userService, REDIRECT_URL);
+  }
+
+  /**
+   * Test method for {@link OAuth2CallbackServlet#onSuccess}.
+   */
+  @Test
+  public void testDoGet_invalidatesCachedCredentialOnceNewOneIsStored() throws Exception {
+    when(request.getRequestURL()).thenReturn(new StringBuffer("http://localhost" + REDIRECT_URL));
+    when(request.getMethod()).thenReturn("GET");
+    when(request.getQueryString()).thenReturn("code=authorization-code");
+
+    servlet.service(request, response);
+
+    InOrder inOrder = inOrder(credentialStore, credentialFactory);
+    inOrder.verify(credentialStore).store(eq(USER_ID), any(Credential.class));
+    inOrder.verify(credentialFactory).invalidate(USER_ID);
+    verify(response).sendRedirect("/dfp");
+  }
+}
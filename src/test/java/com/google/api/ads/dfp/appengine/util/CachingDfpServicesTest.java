@@ -0,0 +1,196 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.api.ads.dfp.appengine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import com.google.api.ads.dfp.jaxws.v201403.ApiException_Exception;
+import com.google.api.ads.dfp.jaxws.v201403.OrderServiceInterface;
+import com.google.api.ads.dfp.jaxws.v201403.UserServiceInterface;
+import com.google.api.ads.dfp.lib.client.DfpSession;
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link CachingDfpServices}.
+ */
+@RunWith(JUnit4.class)
+public class CachingDfpServicesTest {
+
+  private final List<Object> createdStubs = Collections.synchronizedList(Lists.newArrayList());
+  private final List<Object> callingStubs = Collections.synchronizedList(Lists.newArrayList());
+  private volatile CountDownLatch release;
+  private volatile Throwable failure;
+  private volatile long nanos;
+  private CachingDfpServices dfpServices;
+  private DfpSession session;
+
+  /**
+   * Constructor.
+   */
+  public CachingDfpServicesTest() {}
+
+  @Before
+  public void setUp() throws Exception {
+    Ticker ticker = new Ticker() {
+      @Override
+      public long read() {
+        return nanos;
+      }
+    };
+    dfpServices = new CachingDfpServices(ticker) {
+      @Override
+      <T> T create(DfpSession session, Class<T> interfaceClass) {
+        T stub = Mockito.mock(interfaceClass, new Answer<Object>() {
+          public Object answer(InvocationOnMock invocation) throws Throwable {
+            callingStubs.add(invocation.getMock());
+            if (release != null) {
+              release.await();
+            }
+            if (failure != null) {
+              throw failure;
+            }
+            return null;
+          }
+        });
+        createdStubs.add(stub);
+        return stub;
+      }
+    };
+    session = new DfpSession.Builder().build();
+  }
+
+  /**
+   * Test method for {@link CachingDfpServices#get}.
+   */
+  @Test
+  public void testGet_returnsOneStubPerSessionAndService() throws Exception {
+    DfpSession otherSession = new DfpSession.Builder().build();
+
+    OrderServiceInterface orderService = dfpServices.get(session, OrderServiceInterface.class);
+
+    assertSame(orderService, dfpServices.get(session, OrderServiceInterface.class));
+    assertNotSame(orderService, dfpServices.get(otherSession, OrderServiceInterface.class));
+    dfpServices.get(session, UserServiceInterface.class);
+    // Stubs are built when they are first called.
+    assertEquals(0, createdStubs.size());
+  }
+
+  /**
+   * Test method for {@link CachingDfpServices#get}.
+   */
+  @Test
+  public void testGet_dropsStubsOfUnusedSession() throws Exception {
+    OrderServiceInterface orderService = dfpServices.get(session, OrderServiceInterface.class);
+    nanos += TimeUnit.MINUTES.toNanos(Sessions.SESSION_LIFETIME_MINUTES) - 1;
+
+    assertSame(orderService, dfpServices.get(session, OrderServiceInterface.class));
+
+    nanos += TimeUnit.MINUTES.toNanos(Sessions.SESSION_LIFETIME_MINUTES);
+
+    assertNotSame(orderService, dfpServices.get(session, OrderServiceInterface.class));
+  }
+
+  /**
+   * Test method for {@link CachingDfpServices#get}.
+   */
+  @Test
+  public void testGet_reusesStubBetweenCalls() throws Exception {
+    OrderServiceInterface orderService = dfpServices.get(session, OrderServiceInterface.class);
+
+    orderService.getOrdersByStatement(null);
+    orderService.getOrdersByStatement(null);
+
+    assertEquals(1, createdStubs.size());
+    assertEquals(2, callingStubs.size());
+  }
+
+  /**
+   * Test method for {@link CachingDfpServices#get}.
+   */
+  @Test
+  public void testGet_concurrentCallsUseSeparateStubs() throws Exception {
+    final OrderServiceInterface orderService =
+        dfpServices.get(session, OrderServiceInterface.class);
+    release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    List<Future<Void>> calls = Lists.newArrayList();
+    for (int i = 0; i < 2; i++) {
+      calls.add(executor.submit(new Callable<Void>() {
+        public Void call() throws ApiException_Exception {
+          orderService.getOrdersByStatement(null);
+          return null;
+        }
+      }));
+    }
+    while (callingStubs.size() < 2) {
+      Thread.sleep(1);
+    }
+
+    release.countDown();
+    for (Future<Void> call : calls) {
+      call.get(10, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    assertEquals(2, createdStubs.size());
+    assertNotSame(callingStubs.get(0), callingStubs.get(1));
+    // Both stubs are back in the pool for later calls.
+    orderService.getOrdersByStatement(null);
+    orderService.getOrdersByStatement(null);
+    assertEquals(2, createdStubs.size());
+  }
+
+  /**
+   * Test method for {@link CachingDfpServices#get}.
+   */
+  @Test
+  public void testGet_rethrowsExceptionOfStub() throws Exception {
+    ApiException_Exception exception = new ApiException_Exception("error", null);
+    failure = exception;
+    OrderServiceInterface orderService = dfpServices.get(session, OrderServiceInterface.class);
+
+    try {
+      orderService.getOrdersByStatement(null);
+      fail("Expected ApiException_Exception.");
+    } catch (ApiException_Exception e) {
+      assertSame(exception, e);
+    }
+    failure = null;
+    orderService.getOrdersByStatement(null);
+    assertEquals(1, createdStubs.size());
+  }
+}
@@ -0,0 +1,110 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Tests for {@link CancellationRegistry}.
+ */
+@RunWith(JUnit4.class)
+public class CancellationRegistryTest {
+
+  private static final String CHANNEL_KEY = "channel-key";
+  private static final String MEMCACHE_KEY = "latestRequest:channel-key:tag";
+  private static final String NEW_REQUEST_ID = "2";
+  private static final String OLD_REQUEST_ID = "1";
+  private static final String TAG = "tag";
+
+  @Mock private MemcacheService memcacheService;
+
+  /**
+   * Constructor.
+   */
+  public CancellationRegistryTest() {}
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+  }
+
+  /**
+   * Test method for {@link CancellationRegistry#setLatestRequest}.
+   */
+  @Test
+  public void testSetLatestRequest_cancelsOlderRequests() {
+    CancellationRegistry registry = new CancellationRegistry(memcacheService, 60000);
+
+    registry.setLatestRequest(CHANNEL_KEY, TAG, NEW_REQUEST_ID);
+
+    verify(memcacheService).put(eq(MEMCACHE_KEY), eq(NEW_REQUEST_ID), any(Expiration.class));
+    assertTrue(registry.isCancelled(CHANNEL_KEY, TAG, OLD_REQUEST_ID));
+    assertFalse(registry.isCancelled(CHANNEL_KEY, TAG, NEW_REQUEST_ID));
+  }
+
+  /**
+   * Test method for {@link CancellationRegistry#isCancelled}.
+   */
+  @Test
+  public void testIsCancelled_readsOtherInstancesFromMemcache() {
+    when(memcacheService.get(MEMCACHE_KEY)).thenReturn(NEW_REQUEST_ID);
+    CancellationRegistry registry = new CancellationRegistry(memcacheService, 0);
+
+    assertTrue(registry.isCancelled(CHANNEL_KEY, TAG, OLD_REQUEST_ID));
+    assertFalse(registry.isCancelled(CHANNEL_KEY, TAG, NEW_REQUEST_ID));
+  }
+
+  /**
+   * Test method for {@link CancellationRegistry#isCancelled}.
+   */
+  @Test
+  public void testIsCancelled_unknownPanelIsNotCancelled() {
+    CancellationRegistry registry = new CancellationRegistry(memcacheService, 0);
+
+    assertFalse(registry.isCancelled(CHANNEL_KEY, TAG, OLD_REQUEST_ID));
+  }
+
+  /**
+   * Test method for {@link CancellationRegistry#isCancelled}.
+   */
+  @Test
+  public void testIsCancelled_cachesLookups() {
+    when(memcacheService.get(anyString())).thenReturn(OLD_REQUEST_ID);
+    CancellationRegistry registry = new CancellationRegistry(memcacheService, 60000);
+
+    for (int i = 0; i < 10; i++) {
+      assertFalse(registry.isCancelled(CHANNEL_KEY, TAG, OLD_REQUEST_ID));
+    }
+
+    verify(memcacheService, times(1)).get(MEMCACHE_KEY);
+  }
+}
@@ -0,0 +1,266 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.appengine.api.channel.ChannelMessage;
+import com.google.common.base.Strings;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link ChannelOutboxes}.
+ */
+@RunWith(JUnit4.class)
+public class ChannelOutboxesTest {
+
+  private static final String CHANNEL_KEY = "channel-key";
+  private static final int MAX_SENDERS = 2;
+  private static final int MESSAGE_BYTE_BUDGET = 100;
+  private static final String OTHER_TAG = "other-tag";
+  private static final String REQUEST_ID = "reqId";
+  private static final String TAG = "tag";
+  private static final String THIRD_TAG = "third-tag";
+
+  @Mock private PushTransport pushTransport;
+  private ChannelOutboxes channelOutboxes;
+
+  /**
+   * Constructor.
+   */
+  public ChannelOutboxesTest() {}
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    channelOutboxes = new ChannelOutboxes(pushTransport, 1, MESSAGE_BYTE_BUDGET, 0, MAX_SENDERS);
+  }
+
+  /**
+   * Test method for {@link ChannelOutboxes#close}.
+   */
+  @Test
+  public void testClose_sendsQueuedMessagesInOrder() throws InterruptedException {
+    channelOutboxes.open(CHANNEL_KEY, TAG, REQUEST_ID);
+    ChannelOutbox outbox = channelOutboxes.get(CHANNEL_KEY, TAG, REQUEST_ID);
+    ChannelMessage[] messages = new ChannelMessage[5];
+    for (int i = 0; i < messages.length; i++) {
+      messages[i] = new ChannelMessage(CHANNEL_KEY, "message " + i);
+      outbox.send(messages[i]);
+    }
+
+    channelOutboxes.close(CHANNEL_KEY, TAG, REQUEST_ID);
+
+    InOrder inOrder = inOrder(pushTransport);
+    for (ChannelMessage message : messages) {
+      inOrder.verify(pushTransport).send(message);
+    }
+    assertNull(channelOutboxes.get(CHANNEL_KEY, TAG, REQUEST_ID));
+  }
+
+  /**
+   * Test method for {@link ChannelOutboxes#open}.
+   */
+  @Test
+  public void testSend_waitsWhileOutboxIsFull() throws InterruptedException {
+    final CountDownLatch sending = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    doAnswer(new Answer<Void>() {
+      public Void answer(InvocationOnMock invocation) throws InterruptedException {
+        sending.countDown();
+        release.await();
+        return null;
+      }
+    }).when(pushTransport).send(any(ChannelMessage.class));
+    channelOutboxes.open(CHANNEL_KEY, TAG, REQUEST_ID);
+    final ChannelOutbox outbox = channelOutboxes.get(CHANNEL_KEY, TAG, REQUEST_ID);
+    final CountDownLatch queued = new CountDownLatch(3);
+    Thread fetcher = new Thread(new Runnable() {
+      public void run() {
+        try {
+          for (int i = 0; i < 3; i++) {
+            outbox.send(new ChannelMessage(CHANNEL_KEY, "message " + i));
+            queued.countDown();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    fetcher.start();
+
+    // One message is being sent and one fills the queue, so the third has to wait.
+    sending.await();
+    assertFalse(queued.await(100, TimeUnit.MILLISECONDS));
+    assertEquals(1, queued.getCount());
+    release.countDown();
+    fetcher.join();
+    channelOutboxes.close(CHANNEL_KEY, TAG, REQUEST_ID);
+
+    verify(pushTransport, times(3)).send(any(ChannelMessage.class));
+  }
+
+  /**
+   * Test method for {@link ChannelOutboxes#close}.
+   */
+  @Test
+  public void testClose_continuesAfterFailedSend() throws InterruptedException {
+    ChannelMessage failed = new ChannelMessage(CHANNEL_KEY, "failed");
+    ChannelMessage sent = new ChannelMessage(CHANNEL_KEY, "sent");
+    doThrow(new IllegalArgumentException()).when(pushTransport).send(failed);
+    channelOutboxes.open(CHANNEL_KEY, TAG, REQUEST_ID);
+    ChannelOutbox outbox = channelOutboxes.get(CHANNEL_KEY, TAG, REQUEST_ID);
+
+    outbox.send(failed);
+    outbox.send(sent);
+    channelOutboxes.close(CHANNEL_KEY, TAG, REQUEST_ID);
+
+    verify(pushTransport).send(sent);
+  }
+
+  /**
+   * Test method for {@link ChannelOutboxes#close}.
+   */
+  @Test
+  public void testClose_coalescesMessagesWithinWindow() throws InterruptedException {
+    channelOutboxes =
+        new ChannelOutboxes(pushTransport, 10, MESSAGE_BYTE_BUDGET, 60000, MAX_SENDERS);
+    channelOutboxes.open(CHANNEL_KEY, TAG, REQUEST_ID);
+    ChannelOutbox outbox = channelOutboxes.get(CHANNEL_KEY, TAG, REQUEST_ID);
+    ArgumentCaptor<ChannelMessage> messageCapture = ArgumentCaptor.forClass(ChannelMessage.class);
+
+    outbox.send(new ChannelMessage(CHANNEL_KEY, "{\"orders\":[1],\"reqId\":\"1\"}"));
+    outbox.send(new ChannelMessage(CHANNEL_KEY, "{\"orders-li\":[2],\"reqId\":\"1\"}"));
+    channelOutboxes.close(CHANNEL_KEY, TAG, REQUEST_ID);
+
+    verify(pushTransport).send(messageCapture.capture());
+    assertEquals(CHANNEL_KEY, messageCapture.getValue().getClientId());
+    assertEquals("{\"messages\":[{\"orders\":[1],\"reqId\":\"1\"},"
+        + "{\"orders-li\":[2],\"reqId\":\"1\"}]}", messageCapture.getValue().getMessage());
+  }
+
+  /**
+   * Test method for {@link ChannelOutboxes#close}.
+   */
+  @Test
+  public void testClose_coalescesWithinMessageByteBudget() throws InterruptedException {
+    channelOutboxes =
+        new ChannelOutboxes(pushTransport, 10, MESSAGE_BYTE_BUDGET, 60000, MAX_SENDERS);
+    channelOutboxes.open(CHANNEL_KEY, TAG, REQUEST_ID);
+    ChannelOutbox outbox = channelOutboxes.get(CHANNEL_KEY, TAG, REQUEST_ID);
+    String message = "{\"orders\":[\"" + Strings.repeat("x", 15) + "\"],\"reqId\":\"1\"}";
+    ArgumentCaptor<ChannelMessage> messageCapture = ArgumentCaptor.forClass(ChannelMessage.class);
+
+    for (int i = 0; i < 3; i++) {
+      outbox.send(new ChannelMessage(CHANNEL_KEY, message));
+    }
+    channelOutboxes.close(CHANNEL_KEY, TAG, REQUEST_ID);
+
+    verify(pushTransport, times(2)).send(messageCapture.capture());
+    assertTrue(messageCapture.getAllValues().get(0).getMessage().length() <= MESSAGE_BYTE_BUDGET);
+    assertTrue(messageCapture.getAllValues().get(0).getMessage().startsWith("{\"messages\":"));
+    assertEquals(message, messageCapture.getAllValues().get(1).getMessage());
+  }
+
+  /**
+   * Test method for {@link ChannelOutboxes#close}.
+   */
+  @Test
+  public void testClose_keepsOutboxOfOtherPanelWithSameRequestId() throws InterruptedException {
+    channelOutboxes.open(CHANNEL_KEY, TAG, REQUEST_ID);
+    channelOutboxes.open(CHANNEL_KEY, OTHER_TAG, REQUEST_ID);
+    ChannelOutbox otherOutbox = channelOutboxes.get(CHANNEL_KEY, OTHER_TAG, REQUEST_ID);
+
+    channelOutboxes.close(CHANNEL_KEY, TAG, REQUEST_ID);
+
+    assertNull(channelOutboxes.get(CHANNEL_KEY, TAG, REQUEST_ID));
+    assertSame(otherOutbox, channelOutboxes.get(CHANNEL_KEY, OTHER_TAG, REQUEST_ID));
+    ChannelMessage message = new ChannelMessage(CHANNEL_KEY, "message");
+    otherOutbox.send(message);
+    channelOutboxes.close(CHANNEL_KEY, OTHER_TAG, REQUEST_ID);
+    verify(pushTransport).send(message);
+  }
+
+  /**
+   * Test method for {@link ChannelOutboxes#open}.
+   */
+  @Test
+  public void testOpen_boundsNumberOfSenders() {
+    channelOutboxes.open(CHANNEL_KEY, TAG, REQUEST_ID);
+    channelOutboxes.open(CHANNEL_KEY, OTHER_TAG, REQUEST_ID);
+    channelOutboxes.open(CHANNEL_KEY, THIRD_TAG, REQUEST_ID);
+
+    assertNotNull(channelOutboxes.get(CHANNEL_KEY, TAG, REQUEST_ID));
+    assertNotNull(channelOutboxes.get(CHANNEL_KEY, OTHER_TAG, REQUEST_ID));
+    assertNull(channelOutboxes.get(CHANNEL_KEY, THIRD_TAG, REQUEST_ID));
+
+    channelOutboxes.close(CHANNEL_KEY, THIRD_TAG, REQUEST_ID);
+    channelOutboxes.close(CHANNEL_KEY, TAG, REQUEST_ID);
+    channelOutboxes.open(CHANNEL_KEY, THIRD_TAG, REQUEST_ID);
+
+    assertNotNull(channelOutboxes.get(CHANNEL_KEY, THIRD_TAG, REQUEST_ID));
+    channelOutboxes.close(CHANNEL_KEY, OTHER_TAG, REQUEST_ID);
+    channelOutboxes.close(CHANNEL_KEY, THIRD_TAG, REQUEST_ID);
+  }
+
+  /**
+   * Test method for {@link ChannelOutboxes#open}.
+   */
+  @Test
+  public void testOpen_reopeningKeepsOneSender() {
+    channelOutboxes.open(CHANNEL_KEY, TAG, REQUEST_ID);
+    channelOutboxes.open(CHANNEL_KEY, TAG, REQUEST_ID);
+    channelOutboxes.open(CHANNEL_KEY, OTHER_TAG, REQUEST_ID);
+
+    assertNotNull(channelOutboxes.get(CHANNEL_KEY, TAG, REQUEST_ID));
+    assertNotNull(channelOutboxes.get(CHANNEL_KEY, OTHER_TAG, REQUEST_ID));
+    channelOutboxes.close(CHANNEL_KEY, TAG, REQUEST_ID);
+    channelOutboxes.close(CHANNEL_KEY, OTHER_TAG, REQUEST_ID);
+  }
+
+  /**
+   * Test method for {@link ChannelOutboxes#close}.
+   */
+  @Test
+  public void testClose_withoutOpenOutbox() {
+    channelOutboxes.close(CHANNEL_KEY, TAG, REQUEST_ID);
+
+    assertNull(channelOutboxes.get(CHANNEL_KEY, TAG, REQUEST_ID));
+  }
+}
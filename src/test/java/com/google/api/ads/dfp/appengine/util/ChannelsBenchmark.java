@@ -0,0 +1,182 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.appengine.api.channel.ChannelMessage;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+/**
+ * Measures the bytes allocated for each entity sent through {@link Channels}, comparing the
+ * reusable message buffer with the ways messages used to be built. Run with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.google.api.ads.dfp.appengine.util.ChannelsBenchmark} on a HotSpot JVM,
+ * which can report the bytes allocated by a thread.
+ */
+public class ChannelsBenchmark {
+
+  private static final String CHANNEL_KEY = "channel-key";
+  private static final String TAG = "orders";
+  private static final String REQUEST_ID = "1400000000000";
+  private static final int ENTITIES_PER_PAGE = 500;
+  private static final int WARMUP_PAGES = 500;
+  private static final int MEASURED_PAGES = 2000;
+
+  private final Gson gson = new GsonBuilder().serializeNulls().create();
+  private final PushTransport pushTransport = newNoOpProxy(PushTransport.class);
+  private final List<SampleEntity> entities = Lists.newArrayList();
+
+  private ChannelsBenchmark() {
+    for (int i = 0; i < ENTITIES_PER_PAGE; i++) {
+      entities.add(new SampleEntity(i));
+    }
+  }
+
+  public static void main(String[] args) {
+    new ChannelsBenchmark().run();
+  }
+
+  private void run() {
+    final Channels channels = new Channels(pushTransport, gson,
+        new CancellationRegistry(newNoOpProxy(MemcacheService.class), 60000),
+        new ChannelOptions(), new ChannelOutboxes(pushTransport),
+        Channels.DEFAULT_MESSAGE_BYTE_BUDGET);
+
+    measure("ImmutableMap per batch of 5", new Runnable() {
+      public void run() {
+        sendWithMapPerBatch();
+      }
+    });
+    measure("String per entity", new Runnable() {
+      public void run() {
+        sendWithStringPerEntity();
+      }
+    });
+    measure("Reusable buffer", new Runnable() {
+      public void run() {
+        channels.sendObjects(CHANNEL_KEY, entities, TAG, REQUEST_ID);
+      }
+    });
+  }
+
+  /**
+   * Sends pages of entities and prints the bytes allocated for each entity.
+   */
+  private void measure(String name, Runnable sendPage) {
+    for (int i = 0; i < WARMUP_PAGES; i++) {
+      sendPage.run();
+    }
+    com.sun.management.ThreadMXBean threadBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+    long startNanos = System.nanoTime();
+    for (int i = 0; i < MEASURED_PAGES; i++) {
+      sendPage.run();
+    }
+    long elapsedNanos = System.nanoTime() - startNanos;
+    long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+    long entities = (long) MEASURED_PAGES * ENTITIES_PER_PAGE;
+    System.out.printf("%-30s %8d bytes/entity %8d ns/entity%n", name,
+        allocatedBytes / entities, elapsedNanos / entities);
+  }
+
+  /**
+   * Builds messages the way they were built with a fixed batch size.
+   */
+  private void sendWithMapPerBatch() {
+    List<Object> list = Lists.newArrayList();
+    for (Object entity : entities) {
+      list.add(entity);
+      if (list.size() == 5) {
+        pushTransport.send(new ChannelMessage(CHANNEL_KEY, gson.toJson(
+            ImmutableMap.of(TAG, ImmutableList.copyOf(list), Channels.REQUEST_ID, REQUEST_ID))));
+        list.clear();
+      }
+    }
+  }
+
+  /**
+   * Builds messages by serializing each entity to a string and concatenating the strings.
+   */
+  private void sendWithStringPerEntity() {
+    String prefix = "{" + gson.toJson(TAG) + ":[";
+    String suffix = "]," + gson.toJson(Channels.REQUEST_ID) + ":" + gson.toJson(REQUEST_ID) + "}";
+    int envelopeBytes = Channels.getUtf8Length(prefix) + Channels.getUtf8Length(suffix);
+    StringBuilder batch = new StringBuilder();
+    int batchBytes = 0;
+    for (Object entity : entities) {
+      String json = gson.toJson(entity);
+      int bytes = Channels.getUtf8Length(json);
+      if (batch.length() > 0
+          && envelopeBytes + batchBytes + 1 + bytes > Channels.DEFAULT_MESSAGE_BYTE_BUDGET) {
+        pushTransport.send(new ChannelMessage(CHANNEL_KEY, prefix + batch + suffix));
+        batch.setLength(0);
+        batchBytes = 0;
+      }
+      if (batch.length() > 0) {
+        batch.append(',');
+        batchBytes += 1;
+      }
+      batch.append(json);
+      batchBytes += bytes;
+    }
+    if (batch.length() > 0) {
+      pushTransport.send(new ChannelMessage(CHANNEL_KEY, prefix + batch + suffix));
+    }
+  }
+
+  /**
+   * Creates an implementation of an interface whose methods do nothing and return null.
+   */
+  private static <T> T newNoOpProxy(Class<T> type) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) {
+            return null;
+          }
+        }));
+  }
+
+  /** An entity with about as many fields as a small DFP entity. */
+  @SuppressWarnings("unused")
+  private static class SampleEntity {
+    private final Long id;
+    private final String name;
+    private final String status;
+    private final Long advertiserId;
+    private final String notes;
+    private final List<Long> appliedLabelIds;
+
+    SampleEntity(long id) {
+      this.id = id;
+      this.name = "Order #" + id + " <Spring campaign>";
+      this.status = "APPROVED";
+      this.advertiserId = 1000L + id;
+      this.notes = null;
+      this.appliedLabelIds = ImmutableList.of(1L, 2L, 3L);
+    }
+  }
+}
@@ -18,14 +18,25 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import com.google.api.ads.dfp.appengine.DfpTags;
 import com.google.appengine.api.channel.ChannelMessage;
-import com.google.appengine.api.channel.ChannelService;
+import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.BaseEncoding;
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -33,11 +44,15 @@ import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
-import java.lang.reflect.InvocationTargetException;
+import java.io.ByteArrayOutputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 /**
  * Tests for {@link Channels}.
@@ -49,10 +64,14 @@ public class ChannelsTest {
 
   private static final String CHANNEL_KEY = "channel-key";
   private static final String MY_MESSAGE = "my message";
+  private static final String OTHER_TAG = "other-tag";
   private static final String TAG = "tag";
   private static final String REQUEST_ID = "reqId";
+  @Mock private CancellationRegistry cancellationRegistry;
+  private ChannelOptions channelOptions = new ChannelOptions();
+  private ChannelOutboxes channelOutboxes;
   private Channels channels;
-  @Mock private ChannelService channelService;
+  @Mock private PushTransport pushTransport;
   private Gson gson = new Gson();
 
   /**
@@ -63,7 +82,11 @@ public class ChannelsTest {
   @Before
   public void setUp() throws Exception {
     MockitoAnnotations.initMocks(this);
-    channels = new Channels(channelService, gson);
+    channelOutboxes =
+        new ChannelOutboxes(pushTransport, 1, Channels.DEFAULT_MESSAGE_BYTE_BUDGET, 0,
+            ChannelOutboxes.DEFAULT_MAX_SENDERS);
+    channels = new Channels(pushTransport, gson, cancellationRegistry, channelOptions,
+        channelOutboxes);
   }
 
   /**
@@ -76,7 +99,7 @@ public class ChannelsTest {
 
     channels.sendSingleObject(CHANNEL_KEY, object, TAG, REQUEST_ID);
 
-    verify(channelService).sendMessage(messageCapture.capture());
+    verify(pushTransport).send(messageCapture.capture());
 
     assertEquals(CHANNEL_KEY, messageCapture.getValue().getClientId());
     assertEquals(jsonFromList(REQUEST_ID, Lists.newArrayList(object)),
@@ -88,12 +111,12 @@ public class ChannelsTest {
    */
   @Test
   public void testSendObjects_singleBatch() {
-    List<Object> list = makeList(Channels.BATCH_SIZE);
+    List<Object> list = makeList(20);
     ArgumentCaptor<ChannelMessage> messageCapture = ArgumentCaptor.forClass(ChannelMessage.class);
 
     channels.sendObjects(CHANNEL_KEY, list, TAG, REQUEST_ID);
 
-    verify(channelService).sendMessage(messageCapture.capture());
+    verify(pushTransport).send(messageCapture.capture());
 
     assertEquals(jsonFromList(REQUEST_ID, list), messageCapture.getValue().getMessage());
   }
@@ -103,11 +126,70 @@ public class ChannelsTest {
    */
   @Test
   public void testSendObjects_multipleBatches() {
-    List<Object> list = makeList(Channels.BATCH_SIZE + 1);
+    int messageByteBudget = jsonFromList(REQUEST_ID, makeList(2)).length();
+    channels = new Channels(pushTransport, gson, cancellationRegistry, channelOptions,
+        channelOutboxes, messageByteBudget);
+    List<Object> list = makeList(3);
+    ArgumentCaptor<ChannelMessage> messageCapture = ArgumentCaptor.forClass(ChannelMessage.class);
 
     channels.sendObjects(CHANNEL_KEY, list, TAG, REQUEST_ID);
 
-    verify(channelService, times(2)).sendMessage(any(ChannelMessage.class));
+    verify(pushTransport, times(2)).send(messageCapture.capture());
+    assertEquals(jsonFromList(REQUEST_ID, list.subList(0, 2)),
+        messageCapture.getAllValues().get(0).getMessage());
+    assertEquals(jsonFromList(REQUEST_ID, list.subList(2, 3)),
+        messageCapture.getAllValues().get(1).getMessage());
+  }
+
+  /**
+   * Test method for {@link Channels#sendObjects}.
+   */
+  @Test
+  public void testSendObjects_reusesBufferBetweenCalls() {
+    List<Object> firstList = Lists.<Object>newArrayList("first", null, 1);
+    List<Object> secondList = Lists.<Object>newArrayList(ImmutableMap.of("key", "<value>"));
+    ArgumentCaptor<ChannelMessage> messageCapture = ArgumentCaptor.forClass(ChannelMessage.class);
+
+    channels.sendObjects(CHANNEL_KEY, firstList, TAG, REQUEST_ID);
+    channels.sendObjects(CHANNEL_KEY, secondList, TAG, "otherReqId");
+
+    verify(pushTransport, times(2)).send(messageCapture.capture());
+    assertEquals(jsonFromList(REQUEST_ID, firstList),
+        messageCapture.getAllValues().get(0).getMessage());
+    assertEquals(jsonFromList("otherReqId", secondList),
+        messageCapture.getAllValues().get(1).getMessage());
+  }
+
+  /**
+   * Test method for {@link Channels#sendObjects}.
+   */
+  @Test
+  public void testSendObjects_splitsOversizedObject() {
+    channels = new Channels(pushTransport, gson, cancellationRegistry, channelOptions,
+        channelOutboxes, 200);
+    StringBuilder name = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      name.append("<name \uD83D\uDE00 \u00e9> ");
+    }
+    List<String> list = Lists.newArrayList(name.toString());
+    ArgumentCaptor<ChannelMessage> messageCapture = ArgumentCaptor.forClass(ChannelMessage.class);
+
+    channels.sendObjects(CHANNEL_KEY, list, TAG, REQUEST_ID);
+
+    verify(pushTransport, Mockito.atLeast(2)).send(messageCapture.capture());
+    StringBuilder joined = new StringBuilder();
+    List<ChannelMessage> chunkMessages = messageCapture.getAllValues();
+    for (int i = 0; i < chunkMessages.size(); i++) {
+      String message = chunkMessages.get(i).getMessage();
+      assertTrue(Channels.getUtf8Length(message) <= 200);
+      @SuppressWarnings("unchecked") // That's the defined message format.
+      Map<String, Map<String, Object>> chunk = gson.fromJson(message, Map.class);
+      assertEquals(i, ((Number) chunk.get(Channels.CHUNK_TAG).get("index")).intValue());
+      assertEquals(chunkMessages.size(),
+          ((Number) chunk.get(Channels.CHUNK_TAG).get("count")).intValue());
+      joined.append(chunk.get(Channels.CHUNK_TAG).get("data"));
+    }
+    assertEquals(jsonFromList(REQUEST_ID, list), joined.toString());
   }
 
   /**
@@ -119,7 +201,7 @@ public class ChannelsTest {
 
     channels.sendObjects(CHANNEL_KEY, Lists.newArrayList(), TAG, REQUEST_ID);
 
-    verify(channelService).sendMessage(messageCapture.capture());
+    verify(pushTransport).send(messageCapture.capture());
 
     assertEquals(CHANNEL_KEY, messageCapture.getValue().getClientId());
     @SuppressWarnings("unchecked") // That's the defined message format.
@@ -134,8 +216,7 @@ public class ChannelsTest {
    * Test method for {@link Channels#sendPage}.
    */
   @Test
-  public void testSendPage()
-      throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+  public void testSendPage() {
     Page page = new Page();
     List<Object> list = Lists.newArrayList(new Object());
     page.getResults().addAll(list);
@@ -143,7 +224,7 @@ public class ChannelsTest {
 
     channels.sendPage(CHANNEL_KEY, page, TAG, REQUEST_ID);
 
-    verify(channelService).sendMessage(messageCapture.capture());
+    verify(pushTransport).send(messageCapture.capture());
 
     assertEquals(CHANNEL_KEY, messageCapture.getValue().getClientId());
     assertEquals(jsonFromList(REQUEST_ID, list), messageCapture.getValue().getMessage());
@@ -153,16 +234,47 @@ public class ChannelsTest {
    * Test method for {@link Channels#sendPage}.
    */
   @Test
-  public void testSendPage_throwsNoMethodException()
-      throws IllegalAccessException, InvocationTargetException {
+  public void testSendPage_throwsIllegalArgumentException() {
     try {
       channels.sendPage(CHANNEL_KEY, new Object(), TAG, REQUEST_ID);
-      fail("NoSuchMethodException expected.");
-    } catch (NoSuchMethodException e) {
+      fail("IllegalArgumentException expected.");
+    } catch (IllegalArgumentException e) {
       // Pass.
     }
   }
 
+  /**
+   * Test method for {@link Channels#sendObjects}.
+   */
+  @Test
+  public void testSendObjects_cancelled() {
+    when(cancellationRegistry.isCancelled(CHANNEL_KEY, TAG, REQUEST_ID)).thenReturn(true);
+
+    channels.sendObjects(CHANNEL_KEY, Lists.newArrayList(new Object()), TAG, REQUEST_ID);
+    channels.sendErrorChannelMessage(CHANNEL_KEY, TAG, REQUEST_ID, MY_MESSAGE);
+
+    verify(pushTransport, never()).send(any(ChannelMessage.class));
+  }
+
+  /**
+   * Test method for {@link Channels#sendObjects}.
+   */
+  @Test
+  public void testSendObjects_throughOutbox_sendsInfoAfterData() {
+    List<Object> list = makeList(2);
+    ArgumentCaptor<ChannelMessage> messageCapture = ArgumentCaptor.forClass(ChannelMessage.class);
+
+    channelOutboxes.open(CHANNEL_KEY, TAG, REQUEST_ID);
+    channels.sendObjects(CHANNEL_KEY, list, TAG, REQUEST_ID);
+    channels.sendNoResultMessage(CHANNEL_KEY, TAG, REQUEST_ID);
+    channelOutboxes.close(CHANNEL_KEY, TAG, REQUEST_ID);
+
+    verify(pushTransport, times(2)).send(messageCapture.capture());
+    assertEquals(jsonFromList(REQUEST_ID, list),
+        messageCapture.getAllValues().get(0).getMessage());
+    assertTrue(messageCapture.getAllValues().get(1).getMessage().contains(Channels.INFO_TAG));
+  }
+
   /**
    * Test method for {@link Channels#sendInfoMessage}.
    */
@@ -172,7 +284,7 @@ public class ChannelsTest {
 
     channels.sendInfoMessage(CHANNEL_KEY, TAG, REQUEST_ID, MY_MESSAGE);
 
-    verify(channelService).sendMessage(messageCapture.capture());
+    verify(pushTransport).send(messageCapture.capture());
 
     assertEquals(CHANNEL_KEY, messageCapture.getValue().getClientId());
     @SuppressWarnings("unchecked") // That's the defined message format.
@@ -192,7 +304,7 @@ public class ChannelsTest {
 
     channels.sendErrorChannelMessage(CHANNEL_KEY, TAG, REQUEST_ID, MY_MESSAGE);
 
-    verify(channelService).sendMessage(messageCapture.capture());
+    verify(pushTransport).send(messageCapture.capture());
 
     assertEquals(CHANNEL_KEY, messageCapture.getValue().getClientId());
     @SuppressWarnings("unchecked") // That's the defined message format.
@@ -203,6 +315,293 @@ public class ChannelsTest {
     assertEquals(MY_MESSAGE, message.get(Channels.ERROR_TAG).get(Channels.MESSAGE));
   }
 
+  /**
+   * Test method for {@link Channels#getSerializedBytes}.
+   */
+  @Test
+  public void testGetSerializedBytes_usesGsonOfChannel() {
+    channels = new Channels(pushTransport, new GsonBuilder().serializeNulls().create(),
+        cancellationRegistry, channelOptions, channelOutboxes);
+
+    assertEquals("{\"id\":2,\"status\":\"READY\",\"name\":null}".length(),
+        channels.getSerializedBytes(new Entity(2L, "READY", null)));
+  }
+
+  /**
+   * Test method for {@link Channels#sendObjects}.
+   */
+  @Test
+  public void testSendObjects_columnar() {
+    channels = new Channels(pushTransport, new GsonBuilder().serializeNulls().create(),
+        cancellationRegistry, channelOptions, channelOutboxes);
+    channelOptions.setWireFormat(
+        CHANNEL_KEY, TAG, REQUEST_ID, ChannelOptions.WireFormat.COLUMNAR);
+    List<Entity> list = Lists.newArrayList(new Entity(1L, "READY", "a"),
+        new Entity(2L, "READY", null), new Entity(3L, "PAUSED", "b"));
+    ArgumentCaptor<ChannelMessage> messageCapture = ArgumentCaptor.forClass(ChannelMessage.class);
+
+    channels.sendObjects(CHANNEL_KEY, list, TAG, REQUEST_ID);
+
+    verify(pushTransport).send(messageCapture.capture());
+    assertEquals("{\"tag\":{"
+        + "\"schemas\":[{\"fields\":[\"id\",\"status\",\"name\"],\"dict\":[1,2]}],"
+        + "\"strings\":[\"READY\",\"a\",\"PAUSED\",\"b\"],"
+        + "\"rows\":[[0,1,0,1],[0,2,0],[0,3,2,3]]},\"reqId\":\"reqId\"}",
+        messageCapture.getValue().getMessage());
+  }
+
+  /**
+   * Test method for {@link Channels#sendObjects}.
+   */
+  @Test
+  public void testSendObjects_columnarMultipleBatches() {
+    channels = new Channels(pushTransport, gson, cancellationRegistry, channelOptions,
+        channelOutboxes, 200);
+    channelOptions.setWireFormat(
+        CHANNEL_KEY, TAG, REQUEST_ID, ChannelOptions.WireFormat.COLUMNAR);
+    List<Entity> list = Lists.newArrayList();
+    for (long id = 0; id < 20; id++) {
+      list.add(new Entity(id, id % 3 == 0 ? "PAUSED" : "READY", id % 2 == 0 ? null : "name" + id));
+    }
+    ArgumentCaptor<ChannelMessage> messageCapture = ArgumentCaptor.forClass(ChannelMessage.class);
+
+    channels.sendObjects(CHANNEL_KEY, list, TAG, REQUEST_ID);
+
+    verify(pushTransport, Mockito.atLeast(2)).send(messageCapture.capture());
+    JsonArray decoded = new JsonArray();
+    for (ChannelMessage message : messageCapture.getAllValues()) {
+      assertTrue(Channels.getUtf8Length(message.getMessage()) <= 200);
+      decodeColumnar(new JsonParser().parse(message.getMessage()).getAsJsonObject()
+          .getAsJsonObject(TAG), decoded);
+    }
+    assertEquals(gson.toJsonTree(list), decoded);
+  }
+
+  /**
+   * Test method for {@link Channels#sendObjects}.
+   */
+  @Test
+  public void testSendObjects_withFieldProjection() {
+    channelOptions.setFieldProjection(
+        CHANNEL_KEY, TAG, REQUEST_ID, FieldProjection.parse("id,status"));
+    List<Entity> list = Lists.newArrayList(new Entity(1L, "READY", "a"));
+    ArgumentCaptor<ChannelMessage> messageCapture = ArgumentCaptor.forClass(ChannelMessage.class);
+
+    channels.sendObjects(CHANNEL_KEY, list, TAG, REQUEST_ID);
+
+    verify(pushTransport).send(messageCapture.capture());
+    assertEquals("{\"tag\":[{\"id\":1,\"status\":\"READY\"}],\"reqId\":\"reqId\"}",
+        messageCapture.getValue().getMessage());
+  }
+
+  /**
+   * Test method for {@link Channels#sendObjects}.
+   */
+  @Test
+  public void testSendObjects_columnarSkipsValuesThatAreNotObjects() {
+    channelOptions.setWireFormat(
+        CHANNEL_KEY, TAG, REQUEST_ID, ChannelOptions.WireFormat.COLUMNAR);
+    List<String> list = Lists.newArrayList("first", "second");
+    ArgumentCaptor<ChannelMessage> messageCapture = ArgumentCaptor.forClass(ChannelMessage.class);
+
+    channels.sendObjects(CHANNEL_KEY, list, TAG, REQUEST_ID);
+
+    verify(pushTransport).send(messageCapture.capture());
+    assertEquals(jsonFromList(REQUEST_ID, list), messageCapture.getValue().getMessage());
+  }
+
+  /**
+   * Test method for {@link Channels#sendObjects}.
+   */
+  @Test
+  public void testSendObjects_withDeltaTracker_sendsChangedObjects() {
+    DeltaTracker previous = new DeltaTracker(null);
+    previous.filter(TAG, Lists.newArrayList(new Entity(1L, "READY", "a"),
+        new Entity(2L, "READY", "b")), gson);
+    channelOptions.setDeltaTracker(CHANNEL_KEY, TAG, REQUEST_ID,
+        new DeltaTracker(previous.toSnapshot("baseReqId")));
+    List<Entity> list = Lists.newArrayList(new Entity(1L, "READY", "a"),
+        new Entity(2L, "PAUSED", "b"), new Entity(3L, "READY", "c"));
+    ArgumentCaptor<ChannelMessage> messageCapture = ArgumentCaptor.forClass(ChannelMessage.class);
+
+    channels.sendObjects(CHANNEL_KEY, list, TAG, REQUEST_ID);
+
+    verify(pushTransport).send(messageCapture.capture());
+    assertEquals(jsonFromList(REQUEST_ID, list.subList(1, 3)),
+        messageCapture.getValue().getMessage());
+  }
+
+  /**
+   * Test method for {@link Channels#sendObjects}.
+   */
+  @Test
+  public void testSendObjects_withDeltaTracker_sendsNothingIfUnchanged() {
+    List<Entity> list = Lists.newArrayList(new Entity(1L, "READY", "a"));
+    DeltaTracker previous = new DeltaTracker(null);
+    previous.filter(TAG, list, gson);
+    channelOptions.setDeltaTracker(CHANNEL_KEY, TAG, REQUEST_ID,
+        new DeltaTracker(previous.toSnapshot("baseReqId")));
+
+    channels.sendObjects(CHANNEL_KEY, list, TAG, REQUEST_ID);
+
+    verify(pushTransport, never()).send(any(ChannelMessage.class));
+  }
+
+  /**
+   * Test method for {@link Channels#sendDeltaSyncMessage}.
+   */
+  @Test
+  public void testSendDeltaSyncMessage() {
+    Map<String, List<String>> removedIds = ImmutableMap.<String, List<String>>of(
+        TAG, Lists.newArrayList("4", "5"));
+    ArgumentCaptor<ChannelMessage> messageCapture = ArgumentCaptor.forClass(ChannelMessage.class);
+
+    channels.sendDeltaSyncMessage(CHANNEL_KEY, TAG, REQUEST_ID, removedIds);
+    channels.sendDeltaSyncMessage(CHANNEL_KEY, TAG, REQUEST_ID, null);
+
+    verify(pushTransport, times(2)).send(messageCapture.capture());
+    assertEquals("{\"sync\":{\"tag\":\"tag\",\"complete\":true,"
+        + "\"removed\":{\"tag\":[\"4\",\"5\"]}},\"reqId\":\"reqId\"}",
+        messageCapture.getAllValues().get(0).getMessage());
+    assertEquals("{\"sync\":{\"tag\":\"tag\",\"complete\":false},\"reqId\":\"reqId\"}",
+        messageCapture.getAllValues().get(1).getMessage());
+  }
+
+  /**
+   * Test method for {@link Channels#sendObjects}.
+   */
+  @Test
+  public void testSendObjects_compressed() throws Exception {
+    channelOptions.setCompressed(CHANNEL_KEY, TAG, REQUEST_ID, true);
+    List<Entity> list = Lists.newArrayList();
+    for (long id = 0; id < 2000; id++) {
+      list.add(new Entity(id, "READY", "Line item #" + id));
+    }
+    ArgumentCaptor<ChannelMessage> messageCapture = ArgumentCaptor.forClass(ChannelMessage.class);
+
+    channels.sendObjects(CHANNEL_KEY, list, TAG, REQUEST_ID);
+
+    // Uncompressed, the objects take up two or more messages.
+    assertTrue(jsonFromList(REQUEST_ID, list).length() > Channels.DEFAULT_MESSAGE_BYTE_BUDGET);
+    verify(pushTransport).send(messageCapture.capture());
+    String message = messageCapture.getValue().getMessage();
+    assertTrue(Channels.getUtf8Length(message) <= Channels.DEFAULT_MESSAGE_BYTE_BUDGET);
+    assertEquals(jsonFromList(REQUEST_ID, list), inflate(
+        new JsonParser().parse(message).getAsJsonObject().get(Channels.DEFLATE_TAG).getAsString()));
+  }
+
+  /**
+   * Test method for {@link Channels#sendObjects}.
+   */
+  @Test
+  public void testSendObjects_compressedOnlyIfSmaller() {
+    channelOptions.setCompressed(CHANNEL_KEY, TAG, REQUEST_ID, true);
+    List<Entity> list = Lists.newArrayList(new Entity(1L, "READY", "a"));
+    ArgumentCaptor<ChannelMessage> messageCapture = ArgumentCaptor.forClass(ChannelMessage.class);
+
+    channels.sendObjects(CHANNEL_KEY, list, TAG, REQUEST_ID);
+
+    verify(pushTransport).send(messageCapture.capture());
+    assertEquals(jsonFromList(REQUEST_ID, list), messageCapture.getValue().getMessage());
+  }
+
+  /**
+   * Test method for {@link Channels#sendObjects}.
+   */
+  @Test
+  public void testSendObjects_ignoresOptionsOfOtherPanelWithSameRequestId() {
+    channelOptions.setFieldProjection(
+        CHANNEL_KEY, OTHER_TAG, REQUEST_ID, FieldProjection.parse("id"));
+    List<Entity> list = Lists.newArrayList(new Entity(1L, "READY", "a"));
+    ArgumentCaptor<ChannelMessage> messageCapture = ArgumentCaptor.forClass(ChannelMessage.class);
+
+    channels.sendObjects(CHANNEL_KEY, list, TAG, REQUEST_ID);
+
+    verify(pushTransport).send(messageCapture.capture());
+    assertEquals(jsonFromList(REQUEST_ID, list), messageCapture.getValue().getMessage());
+  }
+
+  /**
+   * Test method for {@link Channels#sendObjects}.
+   */
+  @Test
+  public void testSendObjects_withFieldProjection_keepsIdAndParentIdOfChildren() {
+    channelOptions.setFieldProjection(
+        CHANNEL_KEY, TAG, REQUEST_ID, FieldProjection.parse("status"));
+    List<LineItem> list = Lists.newArrayList(new LineItem(3L, 7L, "READY"));
+    ArgumentCaptor<ChannelMessage> messageCapture = ArgumentCaptor.forClass(ChannelMessage.class);
+
+    channels.sendObjects(CHANNEL_KEY, list, TAG + DfpTags.LINE_ITEM_CHILD_SUFFIX, REQUEST_ID);
+
+    verify(pushTransport).send(messageCapture.capture());
+    assertEquals("{\"tag-li\":[{\"id\":3,\"orderId\":7,\"status\":\"READY\"}],"
+        + "\"reqId\":\"reqId\"}", messageCapture.getValue().getMessage());
+  }
+
+  /**
+   * Test method for {@link Channels#sendObjects}.
+   */
+  @Test
+  public void testSendObjects_nestedChildrenUseOptionsOfRequest() {
+    channelOptions.setFieldProjection(
+        CHANNEL_KEY, TAG, REQUEST_ID, FieldProjection.parse("id,status"));
+    List<Entity> list = Lists.newArrayList(new Entity(1L, "READY", "a"));
+    ArgumentCaptor<ChannelMessage> messageCapture = ArgumentCaptor.forClass(ChannelMessage.class);
+
+    channels.sendObjects(CHANNEL_KEY, list, TAG + DfpTags.LINE_ITEM_CHILD_SUFFIX, REQUEST_ID);
+
+    verify(pushTransport).send(messageCapture.capture());
+    assertEquals("{\"tag-li\":[{\"id\":1,\"status\":\"READY\"}],\"reqId\":\"reqId\"}",
+        messageCapture.getValue().getMessage());
+  }
+
+  /**
+   * Decodes a columnar batch the way the client does.
+   *
+   * @param batch the batch
+   * @param objects the array to add the decoded objects to
+   */
+  private void decodeColumnar(JsonObject batch, JsonArray objects) {
+    JsonArray schemas = batch.getAsJsonArray("schemas");
+    JsonArray strings = batch.getAsJsonArray("strings");
+    for (JsonElement rowElement : batch.getAsJsonArray("rows")) {
+      JsonArray row = rowElement.getAsJsonArray();
+      JsonObject schema = schemas.get(row.get(0).getAsInt()).getAsJsonObject();
+      JsonArray fields = schema.getAsJsonArray("fields");
+      Set<Integer> stringFields = Sets.newHashSet();
+      for (JsonElement index : schema.getAsJsonArray("dict")) {
+        stringFields.add(index.getAsInt());
+      }
+      JsonObject object = new JsonObject();
+      for (int i = 0; i < fields.size(); i++) {
+        JsonElement value = i + 1 < row.size() ? row.get(i + 1) : JsonNull.INSTANCE;
+        if (!value.isJsonNull() && stringFields.contains(i)) {
+          value = strings.get(value.getAsInt());
+        }
+        object.add(fields.get(i).getAsString(), value);
+      }
+      objects.add(object);
+    }
+  }
+
+  /**
+   * Inflates a compressed message the way the client does.
+   *
+   * @param data the base64 of the deflated message
+   * @return the message
+   */
+  private String inflate(String data) throws DataFormatException {
+    Inflater inflater = new Inflater(true);
+    inflater.setInput(BaseEncoding.base64().decode(data));
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    while (!inflater.finished()) {
+      output.write(buffer, 0, inflater.inflate(buffer));
+    }
+    inflater.end();
+    return new String(output.toByteArray(), Charsets.UTF_8);
+  }
+
   /**
    * Make a JSON string of a message from a request ID and list.
    *
@@ -244,4 +643,32 @@ public class ChannelsTest {
       return results;
     }
   }
+
+  /** An entity for testing. */
+  public static class Entity {
+    private final long id;
+    private final String status;
+    private final String name;
+
+    /** Constructor. */
+    public Entity(long id, String status, String name) {
+      this.id = id;
+      this.status = status;
+      this.name = name;
+    }
+  }
+
+  /** A nested child entity for testing. */
+  public static class LineItem {
+    private final long id;
+    private final long orderId;
+    private final String status;
+
+    /** Constructor. */
+    public LineItem(long id, long orderId, String status) {
+      this.id = id;
+      this.orderId = orderId;
+      this.status = status;
+    }
+  }
 }
@@ -0,0 +1,191 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.List;
+
+/**
+ * Tests for {@link DeltaTracker} and {@link EntitySnapshot}.
+ */
+@RunWith(JUnit4.class)
+public class DeltaTrackerTest {
+
+  private static final String CHILD_TAG = "tag-li";
+  private static final String REQUEST_ID = "reqId";
+  private static final String TAG = "tag";
+
+  private final Gson gson = new Gson();
+
+  /**
+   * Constructor.
+   */
+  public DeltaTrackerTest() {}
+
+  /**
+   * Test method for {@link DeltaTracker#filter}.
+   */
+  @Test
+  public void testFilter_withoutSnapshot_keepsEveryObject() {
+    DeltaTracker tracker = new DeltaTracker(null);
+
+    List<Object> changed = tracker.filter(TAG, ImmutableList.of(
+        new Entity(1L, "a"), new Entity(2L, "b")), gson);
+
+    assertTrue(tracker.isFull());
+    assertEquals(gson.toJsonTree(ImmutableList.of(new Entity(1L, "a"), new Entity(2L, "b"))),
+        toJsonArray(changed));
+    assertTrue(tracker.getRemovedIds().isEmpty());
+  }
+
+  /**
+   * Test method for {@link DeltaTracker#filter}.
+   */
+  @Test
+  public void testFilter_keepsAddedAndChangedObjects() {
+    DeltaTracker tracker = new DeltaTracker(makeSnapshot(
+        new Entity(1L, "a"), new Entity(2L, "b"), new Entity(3L, "c")));
+
+    List<Object> changed = tracker.filter(TAG, ImmutableList.of(
+        new Entity(1L, "a"), new Entity(2L, "changed"), new Entity(4L, "d")), gson);
+
+    assertFalse(tracker.isFull());
+    assertEquals(gson.toJsonTree(ImmutableList.of(new Entity(2L, "changed"), new Entity(4L, "d"))),
+        toJsonArray(changed));
+    assertEquals(ImmutableMap.of(TAG, ImmutableList.of("3")), tracker.getRemovedIds());
+  }
+
+  /**
+   * Test method for {@link DeltaTracker#filter}.
+   */
+  @Test
+  public void testFilter_keepsObjectsWithoutIds() {
+    DeltaTracker tracker = new DeltaTracker(makeSnapshot());
+    List<String> row = Lists.newArrayList("1", "a");
+
+    List<Object> changed = tracker.filter(TAG, ImmutableList.of(row), gson);
+
+    assertEquals(ImmutableList.of(row), changed);
+  }
+
+  /**
+   * Test method for {@link DeltaTracker#filter}.
+   */
+  @Test
+  public void testFilter_withStringIds_tracksAndRemovesObjects() {
+    DeltaTracker previous = new DeltaTracker(null);
+    previous.filter(TAG, ImmutableList.of(new AdUnit("abc", "a"), new AdUnit("def", "b"),
+        new AdUnit("ghi", "c")), gson);
+    DeltaTracker tracker = new DeltaTracker(previous.toSnapshot(REQUEST_ID));
+
+    List<Object> changed = tracker.filter(TAG, ImmutableList.of(
+        new AdUnit("abc", "a"), new AdUnit("def", "changed")), gson);
+
+    assertEquals(gson.toJsonTree(ImmutableList.of(new AdUnit("def", "changed"))),
+        toJsonArray(changed));
+    assertEquals(ImmutableMap.of(TAG, ImmutableList.of("ghi")), tracker.getRemovedIds());
+    assertEquals(2, tracker.toSnapshot(REQUEST_ID).getIds(TAG).length);
+  }
+
+  /**
+   * Test method for {@link DeltaTracker#getRemovedIds}.
+   */
+  @Test
+  public void testGetRemovedIds_byTag() {
+    DeltaTracker previous = new DeltaTracker(null);
+    previous.filter(TAG, ImmutableList.of(new Entity(1L, "a")), gson);
+    previous.filter(CHILD_TAG, ImmutableList.of(new Entity(10L, "x"), new Entity(11L, "y")), gson);
+    DeltaTracker tracker = new DeltaTracker(previous.toSnapshot(REQUEST_ID));
+
+    tracker.filter(TAG, ImmutableList.of(new Entity(1L, "a")), gson);
+    tracker.filter(CHILD_TAG, ImmutableList.of(new Entity(11L, "y")), gson);
+
+    assertEquals(ImmutableMap.of(CHILD_TAG, ImmutableList.of("10")), tracker.getRemovedIds());
+  }
+
+  /**
+   * Test method for {@link EntitySnapshot#getHash}.
+   */
+  @Test
+  public void testToSnapshot() {
+    EntitySnapshot snapshot = makeSnapshot(new Entity(5L, "e"), new Entity(3L, "c"));
+
+    assertEquals(REQUEST_ID, snapshot.getRequestId());
+    assertEquals(2, snapshot.getIds(TAG).length);
+    assertEquals("3", snapshot.getIds(TAG)[0]);
+    assertTrue(snapshot.getHash(TAG, "5") != null);
+    assertNull(snapshot.getHash(TAG, "4"));
+    assertNull(snapshot.getHash(CHILD_TAG, "5"));
+  }
+
+  /**
+   * Collects the JSON trees the tracker kept into an array.
+   */
+  private static JsonArray toJsonArray(List<Object> trees) {
+    JsonArray array = new JsonArray();
+    for (Object tree : trees) {
+      array.add((JsonElement) tree);
+    }
+    return array;
+  }
+
+  /**
+   * Makes the snapshot of a request that sent entities with {@link #TAG}.
+   */
+  private EntitySnapshot makeSnapshot(Entity... entities) {
+    DeltaTracker tracker = new DeltaTracker(null);
+    tracker.filter(TAG, ImmutableList.copyOf(entities), gson);
+    return tracker.toSnapshot(REQUEST_ID);
+  }
+
+  /** An entity with a string ID, like an ad unit, for testing. */
+  public static class AdUnit {
+    private final String id;
+    private final String name;
+
+    /** Constructor. */
+    public AdUnit(String id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+  }
+
+  /** An entity for testing. */
+  public static class Entity {
+    private final long id;
+    private final String name;
+
+    /** Constructor. */
+    public Entity(long id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+  }
+}
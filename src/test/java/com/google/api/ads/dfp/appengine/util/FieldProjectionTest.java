@@ -0,0 +1,152 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.List;
+
+/**
+ * Tests for {@link FieldProjection}.
+ */
+@RunWith(JUnit4.class)
+public class FieldProjectionTest {
+
+  private Gson gson = new Gson();
+
+  /**
+   * Constructor.
+   */
+  public FieldProjectionTest() {}
+
+  /**
+   * Test method for {@link FieldProjection#parse}.
+   */
+  @Test
+  public void testParse() {
+    FieldProjection projection = FieldProjection.parse(" id, name,,status ");
+
+    assertEquals(ImmutableSet.of("id", "name", "status"), projection.getFieldNames());
+    assertSame(projection, FieldProjection.parse(" id, name,,status "));
+  }
+
+  /**
+   * Test method for {@link FieldProjection#parse}.
+   */
+  @Test
+  public void testParse_alwaysSelectsId() {
+    FieldProjection projection = FieldProjection.parse("name");
+
+    assertEquals(ImmutableSet.of("id", "name"), projection.getFieldNames());
+    assertEquals("{\"name\":\"item\",\"id\":1}",
+        gson.toJson(projection.project(new Item(), gson)));
+  }
+
+  /**
+   * Test method for {@link FieldProjection#withField}.
+   */
+  @Test
+  public void testWithField() {
+    FieldProjection projection = FieldProjection.parse("name");
+
+    FieldProjection withNotes = projection.withField("notes");
+
+    assertEquals(ImmutableSet.of("id", "name", "notes"), withNotes.getFieldNames());
+    assertSame(withNotes, projection.withField("notes"));
+    assertSame(projection, projection.withField("name"));
+  }
+
+  /**
+   * Test method for {@link FieldProjection#parse}.
+   */
+  @Test
+  public void testParse_withoutFields() {
+    assertNull(FieldProjection.parse(null));
+    assertNull(FieldProjection.parse(" , "));
+  }
+
+  /**
+   * Test method for {@link FieldProjection#project}.
+   */
+  @Test
+  public void testProject_keepsSelectedFieldsInGsonOrder() {
+    FieldProjection projection = FieldProjection.parse("id,budget,name,missing");
+
+    JsonElement projected = projection.project(new Item(), gson);
+
+    assertEquals("{\"name\":\"item\",\"budget\":{\"currencyCode\":\"USD\",\"microAmount\":5},"
+        + "\"id\":1}", gson.toJson(projected));
+  }
+
+  /**
+   * Test method for {@link FieldProjection#project}.
+   */
+  @Test
+  public void testProject_keepsNullsOnlyIfGsonSerializesThem() {
+    FieldProjection projection = FieldProjection.parse("id,notes");
+    Gson nullGson = new GsonBuilder().serializeNulls().create();
+
+    JsonElement projected = projection.project(new Item(), gson);
+    JsonElement projectedWithNulls = projection.project(new Item(), nullGson);
+
+    assertEquals("{\"id\":1}", gson.toJson(projected));
+    assertEquals("{\"notes\":null,\"id\":1}", nullGson.toJson(projectedWithNulls));
+  }
+
+  /**
+   * Test method for {@link FieldProjection#project}.
+   */
+  @Test
+  public void testProject_leavesValuesThatAreNotEntities() {
+    FieldProjection projection = FieldProjection.parse("id");
+    List<Object> objects = ImmutableList.<Object>of("row", new String[] {"a", "b"});
+
+    List<?> projected = projection.project(objects, gson);
+
+    assertSame(objects.get(0), projected.get(0));
+    assertSame(objects.get(1), projected.get(1));
+  }
+
+  /** A superclass of an entity for testing. */
+  public static class Entity {
+    private long id = 1L;
+  }
+
+  /** An entity for testing. */
+  public static class Item extends Entity {
+    private String name = "item";
+    private String notes;
+    private Money budget = new Money();
+    private List<String> targeting = ImmutableList.of("large", "tree");
+  }
+
+  /** A nested object for testing. */
+  public static class Money {
+    private String currencyCode = "USD";
+    private long microAmount = 5L;
+  }
+}
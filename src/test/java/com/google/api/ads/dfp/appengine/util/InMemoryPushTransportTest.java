@@ -0,0 +1,120 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.google.appengine.api.channel.ChannelMessage;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link InMemoryPushTransport}.
+ */
+@RunWith(JUnit4.class)
+public class InMemoryPushTransportTest {
+
+  private static final String CHANNEL_KEY = "channel-key";
+  private static final String OTHER_CHANNEL_KEY = "other-channel-key";
+
+  private InMemoryPushTransport pushTransport;
+
+  /**
+   * Constructor.
+   */
+  public InMemoryPushTransportTest() {}
+
+  @Before
+  public void setUp() {
+    pushTransport = new InMemoryPushTransport(2);
+  }
+
+  /**
+   * Test method for {@link InMemoryPushTransport#send}.
+   */
+  @Test
+  public void testSend_keepsMessagesByChannel() throws InterruptedException {
+    assertEquals(CHANNEL_KEY, pushTransport.open(CHANNEL_KEY));
+    pushTransport.open(OTHER_CHANNEL_KEY);
+
+    pushTransport.send(new ChannelMessage(CHANNEL_KEY, "first"));
+    pushTransport.send(new ChannelMessage(OTHER_CHANNEL_KEY, "other"));
+    pushTransport.send(new ChannelMessage(CHANNEL_KEY, "second"));
+
+    assertEquals("first", pushTransport.poll(CHANNEL_KEY, 0, TimeUnit.MILLISECONDS));
+    assertEquals("second", pushTransport.poll(CHANNEL_KEY, 0, TimeUnit.MILLISECONDS));
+    assertNull(pushTransport.poll(CHANNEL_KEY, 0, TimeUnit.MILLISECONDS));
+    assertEquals(ImmutableList.of("other"), pushTransport.drain(OTHER_CHANNEL_KEY));
+    assertEquals(3, pushTransport.getSentCount());
+    assertEquals("firstothersecond".length(), pushTransport.getSentBytes());
+  }
+
+  /**
+   * Test method for {@link InMemoryPushTransport#send}.
+   */
+  @Test
+  public void testSend_dropsOldestMessagesOfFullChannel() {
+    pushTransport.open(CHANNEL_KEY);
+    for (int i = 0; i < 5; i++) {
+      pushTransport.send(new ChannelMessage(CHANNEL_KEY, "message " + i));
+    }
+
+    assertEquals(ImmutableList.of("message 3", "message 4"), pushTransport.drain(CHANNEL_KEY));
+    assertEquals(5, pushTransport.getSentCount());
+    assertEquals(3, pushTransport.getDroppedCount());
+  }
+
+  /**
+   * Test method for {@link InMemoryPushTransport#send}.
+   */
+  @Test
+  public void testSend_dropsMessagesOfChannelThatIsNotOpen() {
+    pushTransport.send(new ChannelMessage(CHANNEL_KEY, "message"));
+
+    assertEquals(0, pushTransport.getChannelCount());
+    assertEquals(ImmutableList.of(), pushTransport.drain(CHANNEL_KEY));
+    assertEquals(0, pushTransport.getSentCount());
+    assertEquals(1, pushTransport.getDroppedCount());
+  }
+
+  /**
+   * Test method for {@link InMemoryPushTransport#close}.
+   */
+  @Test
+  public void testClose_evictsChannel() throws InterruptedException {
+    pushTransport.open(CHANNEL_KEY);
+    pushTransport.open(OTHER_CHANNEL_KEY);
+    pushTransport.send(new ChannelMessage(CHANNEL_KEY, "first"));
+
+    pushTransport.close(CHANNEL_KEY);
+    pushTransport.send(new ChannelMessage(CHANNEL_KEY, "second"));
+
+    assertEquals(1, pushTransport.getChannelCount());
+    assertNull(pushTransport.poll(CHANNEL_KEY, 0, TimeUnit.MILLISECONDS));
+    assertEquals(2, pushTransport.getDroppedCount());
+
+    pushTransport.open(CHANNEL_KEY);
+    pushTransport.send(new ChannelMessage(CHANNEL_KEY, "third"));
+
+    assertEquals(ImmutableList.of("third"), pushTransport.drain(CHANNEL_KEY));
+  }
+}
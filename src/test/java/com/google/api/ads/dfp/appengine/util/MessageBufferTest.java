@@ -0,0 +1,88 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.api.ads.dfp.appengine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+
+/**
+ * Tests for {@link MessageBuffer}.
+ */
+@RunWith(JUnit4.class)
+public class MessageBufferTest {
+
+  private static final String REQUEST_ID = "reqId";
+  private static final String TAG = "tag";
+
+  /**
+   * Constructor.
+   */
+  public MessageBufferTest() {}
+
+  /**
+   * Test method for {@link MessageBuffer#serialize}.
+   */
+  @Test
+  public void testSerialize_afterFailedObject_buildsValidMessage() {
+    Gson gson = new GsonBuilder()
+        .registerTypeAdapter(Unserializable.class, new TypeAdapter<Unserializable>() {
+          @Override
+          public void write(JsonWriter out, Unserializable value) throws IOException {
+            out.beginObject();
+            out.name("id");
+            throw new IllegalStateException("Cannot serialize.");
+          }
+
+          @Override
+          public Unserializable read(JsonReader in) {
+            throw new UnsupportedOperationException();
+          }
+        })
+        .create();
+    MessageBuffer buffer = new MessageBuffer(gson);
+    buffer.start(TAG, REQUEST_ID);
+    try {
+      buffer.serialize(new Unserializable());
+      fail("Expected IllegalStateException.");
+    } catch (IllegalStateException e) {
+      // Expected.
+    }
+
+    buffer.start(TAG, REQUEST_ID);
+    buffer.serialize(ImmutableMap.of("id", 1));
+    buffer.append();
+    buffer.serialize(ImmutableMap.of("id", 2));
+    buffer.append();
+
+    assertEquals("{\"tag\":[{\"id\":1},{\"id\":2}],\"reqId\":\"reqId\"}", buffer.finishMessage());
+  }
+
+  /** An object whose serialization fails partway. */
+  private static class Unserializable {}
+}
@@ -0,0 +1,96 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.google.api.ads.dfp.jaxws.v201403.LineItem;
+import com.google.api.ads.dfp.jaxws.v201403.Order;
+import com.google.api.ads.dfp.jaxws.v201403.OrderPage;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link PageAdapter} and {@link EntityAdapter}.
+ */
+@RunWith(JUnit4.class)
+public class PageAdapterTest {
+
+  /**
+   * Constructor.
+   */
+  public PageAdapterTest() {}
+
+  /**
+   * Test method for {@link PageAdapter#getResults} and {@link PageAdapter#getTotalResultSetSize}.
+   */
+  @Test
+  public void testPageAdapter_readsResultsAndTotal() {
+    OrderPage page = new OrderPage();
+    page.setTotalResultSetSize(12);
+    page.getResults().add(new Order());
+
+    PageAdapter adapter = PageAdapter.of(page);
+
+    assertSame(page.getResults(), adapter.getResults(page));
+    assertEquals(12, adapter.getTotalResultSetSize(page));
+    assertSame(adapter, PageAdapter.of(new OrderPage()));
+  }
+
+  /**
+   * Test method for {@link PageAdapter#getTotalResultSetSize}.
+   */
+  @Test
+  public void testPageAdapter_unsetTotalIsZero() {
+    OrderPage page = new OrderPage();
+
+    assertEquals(0, PageAdapter.of(page).getTotalResultSetSize(page));
+  }
+
+  /**
+   * Test method for {@link PageAdapter#of}.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testPageAdapter_notAPage() {
+    PageAdapter.of(new Order());
+  }
+
+  /**
+   * Test method for {@link EntityAdapter#getId} and {@link EntityAdapter#getProperty}.
+   */
+  @Test
+  public void testEntityAdapter_readsProperties() {
+    LineItem lineItem = new LineItem();
+    lineItem.setId(3L);
+    lineItem.setOrderId(7L);
+
+    EntityAdapter adapter = EntityAdapter.of(lineItem);
+
+    assertEquals(3L, adapter.getId(lineItem));
+    assertEquals(7L, adapter.getProperty(lineItem, "orderId"));
+  }
+
+  /**
+   * Test method for {@link EntityAdapter#getProperty}.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testEntityAdapter_missingProperty() {
+    Order order = new Order();
+    EntityAdapter.of(order).getProperty(order, "customTargetingKeyId");
+  }
+}
@@ -0,0 +1,145 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Tests for {@link PanelSnapshots}.
+ */
+@RunWith(JUnit4.class)
+public class PanelSnapshotsTest {
+
+  private static final String BASE_REQUEST_ID = "baseReqId";
+  private static final String REQUEST_ID = "reqId";
+  private static final String SNAPSHOT_KEY = "snapshot-key";
+  private static final String TAG = "tag";
+
+  @Mock private MemcacheService memcacheService;
+  private PanelSnapshots panelSnapshots;
+
+  /**
+   * Constructor.
+   */
+  public PanelSnapshotsTest() {}
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+
+    panelSnapshots = new PanelSnapshots(memcacheService);
+  }
+
+  /**
+   * Test method for {@link PanelSnapshots#start}.
+   */
+  @Test
+  public void testStart_usesSnapshotOfBaseRequest() {
+    when(memcacheService.get(PanelSnapshots.SNAPSHOT_PREFIX + SNAPSHOT_KEY))
+        .thenReturn(makeSnapshot(BASE_REQUEST_ID));
+
+    DeltaTracker tracker = panelSnapshots.start(SNAPSHOT_KEY, BASE_REQUEST_ID);
+
+    assertFalse(tracker.isFull());
+    assertEquals(ImmutableMap.of(TAG, ImmutableList.of("1")), tracker.getRemovedIds());
+  }
+
+  /**
+   * Test method for {@link PanelSnapshots#start}.
+   */
+  @Test
+  public void testStart_ignoresSnapshotOfOtherRequest() {
+    when(memcacheService.get(PanelSnapshots.SNAPSHOT_PREFIX + SNAPSHOT_KEY))
+        .thenReturn(makeSnapshot("otherReqId"));
+
+    assertTrue(panelSnapshots.start(SNAPSHOT_KEY, BASE_REQUEST_ID).isFull());
+    assertTrue(panelSnapshots.start(SNAPSHOT_KEY, "").isFull());
+  }
+
+  /**
+   * Test method for {@link PanelSnapshots#resume}.
+   */
+  @Test
+  public void testResume_takesTrackerOfSuspendedFetch() {
+    String pendingKey = PanelSnapshots.PENDING_PREFIX + SNAPSHOT_KEY + ":" + REQUEST_ID;
+    DeltaTracker tracker = new DeltaTracker(null);
+    when(memcacheService.get(pendingKey)).thenReturn(tracker);
+
+    panelSnapshots.suspend(SNAPSHOT_KEY, REQUEST_ID, tracker);
+
+    verify(memcacheService).put(eq(pendingKey), eq(tracker), any(Expiration.class));
+    assertEquals(tracker, panelSnapshots.resume(SNAPSHOT_KEY, REQUEST_ID));
+    verify(memcacheService).delete(pendingKey);
+  }
+
+  /**
+   * Test method for {@link PanelSnapshots#finish}.
+   */
+  @Test
+  public void testFinish_savesSnapshot() {
+    DeltaTracker tracker = new DeltaTracker(null);
+    tracker.filter(TAG, ImmutableList.of(ImmutableMap.of("id", 7L)), new Gson());
+    ArgumentCaptor<Object> snapshotCapture = ArgumentCaptor.forClass(Object.class);
+
+    panelSnapshots.finish(SNAPSHOT_KEY, REQUEST_ID, tracker);
+
+    verify(memcacheService).put(eq(PanelSnapshots.SNAPSHOT_PREFIX + SNAPSHOT_KEY),
+        snapshotCapture.capture(), any(Expiration.class));
+    EntitySnapshot snapshot = (EntitySnapshot) snapshotCapture.getValue();
+    assertEquals(REQUEST_ID, snapshot.getRequestId());
+    assertEquals("7", snapshot.getIds(TAG)[0]);
+  }
+
+  /**
+   * Test method for {@link PanelSnapshots#getSnapshotKey}.
+   */
+  @Test
+  public void testGetSnapshotKey_dependsOnEveryParameter() {
+    String key = PanelSnapshots.getSnapshotKey("user", "1234", TAG, "", "id,name", null);
+
+    assertEquals(key, PanelSnapshots.getSnapshotKey("user", "1234", TAG, "", "id,name", ""));
+    assertFalse(key.equals(PanelSnapshots.getSnapshotKey("user", "1234", TAG, "", "id", "name")));
+    assertFalse(key.equals(PanelSnapshots.getSnapshotKey("user", "5678", TAG, "", "id,name", "")));
+  }
+
+  /**
+   * Makes the snapshot of a request that sent one entity.
+   */
+  private static EntitySnapshot makeSnapshot(String requestId) {
+    DeltaTracker tracker = new DeltaTracker(null);
+    tracker.filter(TAG, ImmutableList.of(ImmutableMap.of("id", 1L)), new Gson());
+    return tracker.toSnapshot(requestId);
+  }
+}
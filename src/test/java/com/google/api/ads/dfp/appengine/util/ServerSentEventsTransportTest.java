@@ -0,0 +1,196 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.appengine.api.channel.ChannelMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link ServerSentEventsTransport}.
+ */
+@RunWith(JUnit4.class)
+public class ServerSentEventsTransportTest {
+
+  private static final String CHANNEL_KEY = "channel-key";
+  private static final String OTHER_CHANNEL_KEY = "other-channel-key";
+
+  private ServerSentEventsTransport pushTransport;
+
+  /**
+   * Constructor.
+   */
+  public ServerSentEventsTransportTest() {}
+
+  @Before
+  public void setUp() {
+    pushTransport = new ServerSentEventsTransport(10, 0, ServerSentEventsTransport.CLOSE_MILLIS);
+    pushTransport.open(CHANNEL_KEY);
+  }
+
+  /**
+   * Test method for {@link ServerSentEventsTransport#writeEvents}.
+   */
+  @Test
+  public void testWriteEvents() throws InterruptedException {
+    pushTransport.send(new ChannelMessage(CHANNEL_KEY, "{\"orders\":[1]}"));
+    pushTransport.send(new ChannelMessage(CHANNEL_KEY, "{\n\"orders\":[2]}"));
+    StringWriter output = new StringWriter();
+
+    int count = pushTransport.writeEvents(CHANNEL_KEY, new PrintWriter(output),
+        System.currentTimeMillis() + 100);
+
+    assertEquals(2, count);
+    assertEquals("retry: " + ServerSentEventsTransport.RETRY_MILLIS + "\n\n"
+        + "data: {\"orders\":[1]}\n\n"
+        + "data: {\ndata: \"orders\":[2]}\n\n"
+        + ":\n\n", output.toString());
+  }
+
+  /**
+   * Test method for {@link ServerSentEventsTransport#writeEvents}.
+   */
+  @Test
+  public void testWriteEvents_stopsWhenClientDisconnects() throws InterruptedException {
+    pushTransport.send(new ChannelMessage(CHANNEL_KEY, "first"));
+    pushTransport.send(new ChannelMessage(CHANNEL_KEY, "second"));
+    Writer disconnected = new Writer() {
+      @Override
+      public void write(char[] buffer, int offset, int length) throws IOException {
+        throw new IOException("Connection closed.");
+      }
+
+      @Override
+      public void flush() throws IOException {
+        throw new IOException("Connection closed.");
+      }
+
+      @Override
+      public void close() {}
+    };
+
+    // The stream would otherwise run until the deadline.
+    int count = pushTransport.writeEvents(CHANNEL_KEY, new PrintWriter(disconnected),
+        System.currentTimeMillis() + 60000);
+
+    assertEquals(0, count);
+    assertEquals(2, pushTransport.drain(CHANNEL_KEY).size());
+  }
+
+  /**
+   * Test method for {@link ServerSentEventsTransport#writeEvents}.
+   */
+  @Test
+  public void testWriteEvents_reportsDroppedMessages() throws InterruptedException {
+    pushTransport = new ServerSentEventsTransport(1, 0, ServerSentEventsTransport.CLOSE_MILLIS);
+    pushTransport.open(CHANNEL_KEY);
+    pushTransport.send(new ChannelMessage(CHANNEL_KEY, "first"));
+    pushTransport.send(new ChannelMessage(CHANNEL_KEY, "second"));
+    StringWriter output = new StringWriter();
+
+    int count = pushTransport.writeEvents(CHANNEL_KEY, new PrintWriter(output),
+        System.currentTimeMillis() + 100);
+
+    assertEquals(1, count);
+    assertEquals("retry: " + ServerSentEventsTransport.RETRY_MILLIS + "\n\n"
+        + "data: {\"dropped\":1}\n\n"
+        + "data: second\n\n"
+        + ":\n\n", output.toString());
+  }
+
+  /**
+   * Test method for {@link ServerSentEventsTransport#send}.
+   */
+  @Test
+  public void testSend_waitsForConnectedStream() throws InterruptedException {
+    pushTransport = new ServerSentEventsTransport(1, 5000, ServerSentEventsTransport.CLOSE_MILLIS);
+    pushTransport.open(CHANNEL_KEY);
+    final CountDownLatch connected = new CountDownLatch(1);
+    final StringWriter output = new StringWriter();
+    // Takes a while to write each event, so the channel fills up.
+    final Writer slowWriter = new Writer() {
+      @Override
+      public void write(char[] buffer, int offset, int length) {
+        output.write(buffer, offset, length);
+      }
+
+      @Override
+      public void flush() throws IOException {
+        connected.countDown();
+        try {
+          Thread.sleep(20);
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+
+      @Override
+      public void close() {}
+    };
+    Thread stream = new Thread() {
+      @Override
+      public void run() {
+        try {
+          pushTransport.writeEvents(CHANNEL_KEY, new PrintWriter(slowWriter),
+              System.currentTimeMillis() + 1000);
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      }
+    };
+    stream.start();
+    assertTrue(connected.await(1, TimeUnit.SECONDS));
+
+    for (int i = 0; i < 5; i++) {
+      pushTransport.send(new ChannelMessage(CHANNEL_KEY, "message " + i));
+    }
+    stream.join();
+
+    assertEquals(0, pushTransport.getDroppedCount());
+    for (int i = 0; i < 5; i++) {
+      assertTrue(output.toString().contains("data: message " + i + "\n\n"));
+    }
+  }
+
+  /**
+   * Test method for {@link ServerSentEventsTransport#open}.
+   */
+  @Test
+  public void testOpen_closesChannelsWithoutStreams() throws InterruptedException {
+    pushTransport = new ServerSentEventsTransport(10, 0, 0);
+    pushTransport.open(CHANNEL_KEY);
+    pushTransport.writeEvents(OTHER_CHANNEL_KEY, new PrintWriter(new StringWriter()),
+        System.currentTimeMillis());
+
+    pushTransport.open(OTHER_CHANNEL_KEY);
+    pushTransport.send(new ChannelMessage(CHANNEL_KEY, "message"));
+
+    assertEquals(1, pushTransport.getChannelCount());
+    assertEquals(1, pushTransport.getDroppedCount());
+  }
+}
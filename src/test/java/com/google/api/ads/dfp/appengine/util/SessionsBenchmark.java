@@ -0,0 +1,107 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import com.google.api.ads.common.lib.exception.ValidationException;
+import com.google.api.ads.dfp.appengine.oauth.CredentialFactory;
+import com.google.api.ads.dfp.jaxws.factory.DfpServices;
+import com.google.api.ads.dfp.jaxws.v201403.OrderServiceInterface;
+import com.google.api.ads.dfp.lib.client.DfpSession;
+import com.google.api.client.auth.oauth2.BearerToken;
+import com.google.api.client.auth.oauth2.Credential;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the time and bytes allocated to set up a fetch, i.e. to get the DFP session of a user
+ * and network and the service stub the fetcher calls, with {@link Sessions} and
+ * {@link CachingDfpServices} compared with building both for every fetch. Run with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.google.api.ads.dfp.appengine.util.SessionsBenchmark} on a HotSpot JVM,
+ * which can report the bytes allocated by a thread.
+ */
+public class SessionsBenchmark {
+
+  private static final String APPLICATION_NAME = "benchmark";
+  private static final String NETWORK_CODE = "1234";
+  private static final String USER_ID = "user-id";
+  private static final int WARMUP_FETCHES = 2000;
+  private static final int MEASURED_FETCHES = 10000;
+
+  private final Credential credential =
+      new Credential(BearerToken.authorizationHeaderAccessMethod()).setAccessToken("token");
+
+  private SessionsBenchmark() {}
+
+  public static void main(String[] args) throws Exception {
+    new SessionsBenchmark().run();
+  }
+
+  private void run() throws Exception {
+    final DfpServices dfpServices = new DfpServices();
+    measure("Session and stub per fetch", new FetchSetup() {
+      public Object run() throws ValidationException {
+        DfpSession session = new DfpSession.Builder()
+            .withOAuth2Credential(credential)
+            .withApplicationName(APPLICATION_NAME)
+            .withNetworkCode(NETWORK_CODE)
+            .build();
+        return dfpServices.get(session, OrderServiceInterface.class);
+      }
+    });
+
+    final Sessions sessions = new Sessions(new CredentialFactory(null, null, null, null, null,
+        "client-id", "client-secret") {
+      @Override
+      public Credential getInstance(String userId) {
+        return credential;
+      }
+    }, APPLICATION_NAME);
+    final CachingDfpServices cachingDfpServices = new CachingDfpServices();
+    measure("Cached session and stub", new FetchSetup() {
+      public Object run() throws Exception {
+        return cachingDfpServices.get(sessions.get(NETWORK_CODE, USER_ID),
+            OrderServiceInterface.class);
+      }
+    });
+  }
+
+  /**
+   * Sets up fetches and prints the time and bytes allocated for each.
+   */
+  private void measure(String name, FetchSetup setup) throws Exception {
+    for (int i = 0; i < WARMUP_FETCHES; i++) {
+      setup.run();
+    }
+    com.sun.management.ThreadMXBean threadBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+    long startNanos = System.nanoTime();
+    for (int i = 0; i < MEASURED_FETCHES; i++) {
+      setup.run();
+    }
+    long elapsedNanos = System.nanoTime() - startNanos;
+    long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+    System.out.printf("%-30s %10d bytes/fetch %10d ns/fetch%n", name,
+        allocatedBytes / MEASURED_FETCHES, elapsedNanos / MEASURED_FETCHES);
+  }
+
+  /** The setup of a fetch. */
+  private interface FetchSetup {
+
+    Object run() throws Exception;
+  }
+}
@@ -0,0 +1,95 @@
+// Copyright 2026 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.api.ads.dfp.appengine.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.when;
+
+import com.google.api.ads.dfp.appengine.oauth.CredentialFactory;
+import com.google.api.ads.dfp.lib.client.DfpSession;
+import com.google.api.client.auth.oauth2.BearerToken;
+import com.google.api.client.auth.oauth2.Credential;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Tests for {@link Sessions}.
+ */
+@RunWith(JUnit4.class)
+public class SessionsTest {
+
+  private static final String APPLICATION_NAME = "application";
+  private static final String NETWORK_CODE = "1234";
+  private static final String OTHER_NETWORK_CODE = "5678";
+  private static final String USER_ID = "user-id";
+
+  @Mock private CredentialFactory credentialFactory;
+  private Credential credential;
+  private Sessions sessions;
+
+  /**
+   * Constructor.
+   */
+  public SessionsTest() {}
+
+  @Before
+  public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    credential = newCredential();
+    when(credentialFactory.getInstance(USER_ID)).thenReturn(credential);
+    sessions = new Sessions(credentialFactory, APPLICATION_NAME);
+  }
+
+  /**
+   * Test method for {@link Sessions#get(String, String)}.
+   */
+  @Test
+  public void testGet_reusesSessionOfNetwork() throws Exception {
+    DfpSession session = sessions.get(NETWORK_CODE, USER_ID);
+
+    assertSame(session, sessions.get(NETWORK_CODE, USER_ID));
+    assertEquals(NETWORK_CODE, session.getNetworkCode());
+    assertSame(credential, session.getOAuth2Credential());
+    assertEquals(OTHER_NETWORK_CODE, sessions.get(OTHER_NETWORK_CODE, USER_ID).getNetworkCode());
+    assertNull(sessions.get(USER_ID).getNetworkCode());
+  }
+
+  /**
+   * Test method for {@link Sessions#get(String, String)}.
+   */
+  @Test
+  public void testGet_newSessionWhenCredentialChanges() throws Exception {
+    DfpSession session = sessions.get(NETWORK_CODE, USER_ID);
+    Credential refreshed = newCredential();
+    when(credentialFactory.getInstance(USER_ID)).thenReturn(refreshed);
+
+    DfpSession newSession = sessions.get(NETWORK_CODE, USER_ID);
+
+    assertNotSame(session, newSession);
+    assertSame(refreshed, newSession.getOAuth2Credential());
+  }
+
+  private static Credential newCredential() {
+    return new Credential(BearerToken.authorizationHeaderAccessMethod());
+  }
+}